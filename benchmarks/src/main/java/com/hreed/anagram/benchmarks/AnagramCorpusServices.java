@@ -0,0 +1,117 @@
+package com.hreed.anagram.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.hreed.anagram.server.metrics.InstrumentedAnagramCorpusService;
+import com.hreed.anagram.server.metrics.MetricsRegistry;
+import com.hreed.anagram.server.service.AnagramCorpusService;
+import com.hreed.anagram.server.service.impl.AnagramCorpusServiceArena;
+import com.hreed.anagram.server.service.impl.AnagramCorpusServiceInMemory;
+import com.hreed.anagram.server.service.impl.DurableAnagramCorpusService;
+
+/**
+ * Builds the AnagramCorpusService implementations under benchmark by name, so every benchmark runs each implementation on equal terms
+ * (same dictionary, same words, same JMH settings). Select implementations on the command line with `-p implementation=...`.
+ *
+ * To benchmark a new implementation, give it a name here and add that name to the implementation @Params.
+ */
+public final class AnagramCorpusServices {
+
+	public static final String DICTIONARY = "/dictionary.txt";
+	public static final String IN_MEMORY = "inMemory";
+	//The in memory service behind the metrics wrapper the server actually uses, to keep an eye on the cost of the instrumentation
+	public static final String INSTRUMENTED = "instrumented";
+	//The in memory service with every change logged and fsynced to a temporary directory before it is acknowledged
+	public static final String DURABLE = "durable";
+	//The corpus packed into one byte arena, with changes going to a small overlay until it is repacked
+	public static final String ARENA = "arena";
+
+	private AnagramCorpusServices() {
+	}
+
+	/**
+	 * @param implementation The name of the implementation
+	 * @return A new instance of the implementation, with the bundled dictionary loaded
+	 */
+	public static AnagramCorpusService create(String implementation) {
+		if (IN_MEMORY.equals(implementation)) {
+			//No snapshot, so every implementation pays for parsing the same text dictionary
+			return new AnagramCorpusServiceInMemory(null);
+		}
+		if (INSTRUMENTED.equals(implementation)) {
+			return new InstrumentedAnagramCorpusService(new AnagramCorpusServiceInMemory(null), new MetricsRegistry());
+		}
+		if (DURABLE.equals(implementation)) {
+			try {
+				return durable(temporaryDirectory(), true);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		if (ARENA.equals(implementation)) {
+			return new AnagramCorpusServiceArena(null);
+		}
+		throw new IllegalArgumentException("Unknown AnagramCorpusService implementation `" + implementation + "`");
+	}
+
+	/**
+	 * @param directory The directory for the write-ahead log and snapshots
+	 * @param fsync Whether each change is fsynced before it is acknowledged
+	 * @return A durable in memory service, recovered from the directory the same way the server starts one. It only snapshots when asked to,
+	 * so snapshots never land in the middle of a measurement.
+	 */
+	public static DurableAnagramCorpusService durable(File directory, boolean fsync) throws IOException {
+		return new DurableAnagramCorpusService(new AnagramCorpusServiceInMemory(null, null, null, false), directory.getPath(), fsync, 0);
+	}
+
+	/**
+	 * @return A new empty directory, deleted along with its files when the benchmark JVM exits
+	 */
+	public static File temporaryDirectory() throws IOException {
+		final File directory = Files.createTempDirectory("anagram-benchmark").toFile();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteFiles(directory)));
+		return directory;
+	}
+
+	/**
+	 * Deletes every file in the directory, and then the directory itself.
+	 */
+	public static void deleteFiles(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	/**
+	 * @return Every valid word in the bundled dictionary, shuffled with a fixed seed so each run looks up the same words in the same order
+	 */
+	public static String[] dictionaryWords() throws IOException {
+		List<String> words = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(AnagramCorpusServices.class.getResourceAsStream(DICTIONARY), "UTF-8"));
+		try {
+			String word;
+			while ((word = reader.readLine()) != null) {
+				if (word.matches("^[A-Za-z][a-z]*")) {
+					words.add(word);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		Collections.shuffle(words, new Random(42));
+		return words.toArray(new String[words.size()]);
+	}
+}
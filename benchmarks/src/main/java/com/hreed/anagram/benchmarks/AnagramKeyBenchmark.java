@@ -0,0 +1,54 @@
+package com.hreed.anagram.benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hreed.anagram.server.service.impl.AnagramKey;
+
+/**
+ * Keys words from the bundled dictionary, with the packed AnagramKey the corpus uses and with the sorted String key it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class AnagramKeyBenchmark {
+
+	private String[] words;
+
+	@Setup
+	public void loadWords() throws IOException {
+		words = AnagramCorpusServices.dictionaryWords();
+	}
+
+	@Benchmark
+	public int packedKey(WordCursor cursor) {
+		return AnagramKey.of(cursor.next(words)).hashCode();
+	}
+
+	@Benchmark
+	public int foldedKey(WordCursor cursor) {
+		return AnagramKey.foldedOf(cursor.next(words)).hashCode();
+	}
+
+	@Benchmark
+	public int sortedStringKey(WordCursor cursor) {
+		char[] letters = cursor.next(words).toCharArray();
+		Arrays.sort(letters);
+		return new String(letters).hashCode();
+	}
+}
@@ -0,0 +1,293 @@
+package com.hreed.anagram.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.hreed.anagram.server.metrics.LatencyHistogram;
+
+/**
+ * Holds thousands of keep-alive connections open to a running server and has each of them look up anagrams over and over,
+ * to compare the servlet and reactive serving modes under many concurrent connections. Unlike the JMH benchmarks it goes
+ * through the whole HTTP stack, so it needs the server started separately, in whichever mode is being measured:
+ * <pre>
+ * java -jar server/target/hreed_assessment-1.0.jar [--spring.main.web-application-type=reactive]
+ * java -cp benchmarks/target/benchmarks.jar com.hreed.anagram.benchmarks.ConnectionLoad [host] [port] [connections] [seconds] [pause ms]
+ * </pre>
+ * Every connection sends its next request once the last response is in, after the optional pause. Without a pause the server
+ * always has one request outstanding per connection. All of the connections are driven by one thread with a selector,
+ * so the client doesn't need a thread per connection any more than the server should.
+ * The first third of the run is a warmup, and only the rest is measured.
+ */
+public class ConnectionLoad {
+
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+
+	private final InetSocketAddress address;
+	private final String[] words;
+	private final long pauseNanos;
+	private final Selector selector;
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+	//Connections waiting out their pause, soonest first
+	private final PriorityQueue<Connection> paused = new PriorityQueue<Connection>((a, b) -> Long.compare(a.due, b.due));
+	private final LatencyHistogram latency = new LatencyHistogram();
+	//From opening each connection to the response to its first request, which includes any wait in the server's accept queue
+	private final LatencyHistogram firstResponse = new LatencyHistogram();
+	private boolean measuring;
+	private long requests;
+	private long errors;
+	private long connectFailures;
+	private long dropped;
+	private int nextWord;
+
+	ConnectionLoad(InetSocketAddress address, String[] words, long pauseNanos) throws IOException {
+		this.address = address;
+		this.words = words;
+		this.pauseNanos = pauseNanos;
+		this.selector = Selector.open();
+	}
+
+	public static void main(String[] args) throws IOException {
+		String host = args.length > 0 ? args[0] : "localhost";
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+		int connections = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+		long pauseMillis = args.length > 4 ? Long.parseLong(args[4]) : 0;
+		ConnectionLoad load = new ConnectionLoad(new InetSocketAddress(host, port), AnagramCorpusServices.dictionaryWords(), TimeUnit.MILLISECONDS.toNanos(pauseMillis));
+		load.run(connections, TimeUnit.SECONDS.toNanos(seconds));
+	}
+
+	void run(int connections, long durationNanos) throws IOException {
+		long start = System.nanoTime();
+		for (int i = 0; i < connections; i++){
+			connect(new Connection());
+		}
+		long measureFrom = start + durationNanos / 3;
+		long end = start + durationNanos;
+		long now;
+		while ((now = System.nanoTime()) < end){
+			if (!measuring && now >= measureFrom){
+				measuring = true;
+				measureFrom = now;
+			}
+			while (!paused.isEmpty() && paused.peek().due <= now){
+				send(paused.poll(), now);
+			}
+			long wait = paused.isEmpty() ? end - now : Math.min(end, paused.peek().due) - now;
+			selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+			Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+			while (selected.hasNext()){
+				SelectionKey key = selected.next();
+				selected.remove();
+				Connection connection = (Connection) key.attachment();
+				try {
+					if (key.isConnectable()){
+						finishConnect(connection);
+					} else if (key.isWritable()){
+						write(connection);
+					} else if (key.isReadable()){
+						read(connection);
+					}
+				} catch (IOException e){
+					//Closed or reset by the server (Tomcat closes a keep-alive connection after 100 requests). Counted, and replaced so the number of connections stays the same
+					dropped++;
+					key.cancel();
+					connection.channel.close();
+					connect(new Connection());
+				}
+			}
+		}
+		double measuredSeconds = (System.nanoTime() - measureFrom) / 1e9;
+		int open = 0;
+		for (SelectionKey key : selector.keys()){
+			if (((Connection) key.attachment()).connected){
+				open++;
+			}
+			key.channel().close();
+		}
+		System.out.println(String.format("connections=%d open=%d connect_failures=%d closed_by_server=%d first_response_p50_ms=%.1f first_response_p99_ms=%.1f first_response_max_ms=%.1f",
+				connections, open, connectFailures, dropped, firstResponse.getValueAtQuantile(0.5) / 1e6, firstResponse.getValueAtQuantile(0.99) / 1e6, firstResponse.getMaxNanos() / 1e6));
+		System.out.println(String.format("requests=%d errors=%d throughput=%.0f/s p50_ms=%.2f p90_ms=%.2f p99_ms=%.2f p999_ms=%.2f max_ms=%.2f",
+				requests, errors, requests / measuredSeconds, latency.getValueAtQuantile(0.5) / 1e6, latency.getValueAtQuantile(0.9) / 1e6,
+				latency.getValueAtQuantile(0.99) / 1e6, latency.getValueAtQuantile(0.999) / 1e6, latency.getMaxNanos() / 1e6));
+	}
+
+	private void connect(Connection connection) throws IOException {
+		connection.channel = SocketChannel.open();
+		connection.channel.configureBlocking(false);
+		connection.opened = System.nanoTime();
+		try {
+			if (connection.channel.connect(address)){
+				connection.channel.register(selector, 0, connection);
+				connected(connection);
+			} else {
+				connection.channel.register(selector, SelectionKey.OP_CONNECT, connection);
+			}
+		} catch (IOException e){
+			connectFailures++;
+			connection.channel.close();
+		}
+	}
+
+	private void finishConnect(Connection connection) throws IOException {
+		try {
+			connection.channel.finishConnect();
+		} catch (IOException e){
+			//Refused, or timed out waiting in a full accept queue. Not retried, so it shows up as fewer open connections
+			connectFailures++;
+			connection.channel.close();
+			return;
+		}
+		connected(connection);
+	}
+
+	private void connected(Connection connection) throws IOException {
+		connection.connected = true;
+		send(connection, System.nanoTime());
+	}
+
+	private void send(Connection connection, long now) throws IOException {
+		String word = words[nextWord++ % words.length];
+		connection.request = ByteBuffer.wrap(("GET /anagrams/" + word + ".json HTTP/1.1\r\nHost: " + address.getHostString() + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+		connection.response.reset();
+		connection.started = now;
+		write(connection);
+	}
+
+	private void write(Connection connection) throws IOException {
+		connection.channel.write(connection.request);
+		connection.channel.keyFor(selector).interestOps(connection.request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+
+	private void read(Connection connection) throws IOException {
+		readBuffer.clear();
+		if (connection.channel.read(readBuffer) < 0){
+			throw new IOException("Closed by the server");
+		}
+		readBuffer.flip();
+		if (!connection.response.consume(readBuffer)){
+			return;
+		}
+		long now = System.nanoTime();
+		if (!connection.answered){
+			//Kept out of the request latencies, which are for connections already up and running
+			connection.answered = true;
+			firstResponse.recordSince(connection.opened);
+		} else if (measuring){
+			latency.recordSince(connection.started);
+			requests++;
+			if (connection.response.status < 200 || connection.response.status >= 300){
+				errors++;
+			}
+		}
+		if (pauseNanos == 0){
+			send(connection, now);
+		} else {
+			connection.due = now + pauseNanos;
+			connection.channel.keyFor(selector).interestOps(0);
+			paused.add(connection);
+		}
+	}
+
+	private static final class Connection {
+		SocketChannel channel;
+		boolean connected;
+		boolean answered;
+		long opened;
+		long started;
+		long due;
+		ByteBuffer request;
+		final Response response = new Response();
+	}
+
+	/**
+	 * Just enough of an HTTP/1.1 response parser to tell where a response ends, with either a Content-Length or a chunked body.
+	 */
+	static final class Response {
+
+		private final StringBuilder line = new StringBuilder();
+		private boolean inHeaders;
+		private boolean chunked;
+		private boolean inChunkSize;
+		private boolean lastChunk;
+		private long remaining;
+		int status;
+
+		void reset(){
+			line.setLength(0);
+			inHeaders = true;
+			chunked = false;
+			inChunkSize = false;
+			lastChunk = false;
+			remaining = -1;
+			status = 0;
+		}
+
+		/**
+		 * @return Whether the response is complete
+		 */
+		boolean consume(ByteBuffer bytes){
+			while (bytes.hasRemaining()){
+				if (remaining > 0){
+					int skipped = (int) Math.min(remaining, bytes.remaining());
+					bytes.position(bytes.position() + skipped);
+					remaining -= skipped;
+					if (remaining == 0 && !chunked){
+						return true;
+					}
+					continue;
+				}
+				char c = (char) bytes.get();
+				if (c != '\n'){
+					if (c != '\r'){
+						line.append(c);
+					}
+					continue;
+				}
+				if (endOfLine(line.toString())){
+					return true;
+				}
+				line.setLength(0);
+			}
+			return false;
+		}
+
+		//Handles a header line, chunk size line or the blank line after a chunk, and returns whether the response is complete
+		private boolean endOfLine(String text){
+			if (inHeaders){
+				if (status == 0){
+					status = Integer.parseInt(text.substring(9, 12));
+				} else if (text.isEmpty()){
+					inHeaders = false;
+					inChunkSize = chunked;
+					return !chunked && remaining <= 0;
+				} else if (text.regionMatches(true, 0, "content-length:", 0, 15)){
+					remaining = Long.parseLong(text.substring(15).trim());
+				} else if (text.regionMatches(true, 0, "transfer-encoding:", 0, 18)){
+					chunked = text.toLowerCase().contains("chunked");
+				}
+				return false;
+			}
+			if (inChunkSize){
+				int size = Integer.parseInt(text.split(";")[0].trim(), 16);
+				lastChunk = size == 0;
+				remaining = size;
+				inChunkSize = false;
+				return false;
+			}
+			//The blank line that ends a chunk's data, or the whole body after the last chunk
+			if (lastChunk){
+				return true;
+			}
+			inChunkSize = true;
+			return false;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package com.hreed.anagram.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hreed.anagram.server.metrics.QueryTracker;
+import com.hreed.anagram.server.web.AnagramController;
+
+/**
+ * The controller endpoints, including writing the response out as JSON the way Spring's message converter does,
+ * but without the HTTP stack in front of them. Shows how much of a request's time goes to building and serializing the response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ControllerBenchmark {
+
+	private static final int BATCH_SIZE = 100;
+	//Lookups on a real server are heavily skewed towards a few popular words, which is what the response cache is for
+	private static final int POPULAR_WORDS = 1000;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private AnagramController controller;
+	private String[] popularWords;
+
+	@Setup
+	public void createController(CorpusState corpus) throws ReflectiveOperationException {
+		controller = new AnagramController();
+		//The controller is normally autowired by Spring
+		Field service = AnagramController.class.getDeclaredField("anagramCorpusService");
+		service.setAccessible(true);
+		service.set(controller, corpus.service);
+		Field queryTracker = AnagramController.class.getDeclaredField("queryTracker");
+		queryTracker.setAccessible(true);
+		queryTracker.set(controller, new QueryTracker(100, 100, TimeUnit.MINUTES.toNanos(5), null));
+		popularWords = Arrays.copyOf(corpus.words, POPULAR_WORDS);
+	}
+
+	@Benchmark
+	public int getAnagrams(CorpusState corpus, WordCursor cursor, ResponseBuffer response) throws IOException {
+		controller.getAnagrams(cursor.next(corpus.words), null, null, response.reset());
+		return response.bytes.size();
+	}
+
+	@Benchmark
+	public int getAnagramsWithLimit(CorpusState corpus, WordCursor cursor, ResponseBuffer response) throws IOException {
+		controller.getAnagrams(cursor.next(corpus.words), "1", null, response.reset());
+		return response.bytes.size();
+	}
+
+	@Benchmark
+	public int getAnagramsPopular(CorpusState corpus, WordCursor cursor, ResponseBuffer response) throws IOException {
+		controller.getAnagrams(cursor.next(popularWords), null, null, response.reset());
+		return response.bytes.size();
+	}
+
+	/**
+	 * How GET /anagrams/:word.json used to build its response, putting the anagram set into a map for Jackson to serialize,
+	 * to compare against getAnagrams writing the service's cached JSON.
+	 */
+	@Benchmark
+	public byte[] getAnagramsSerialized(CorpusState corpus, WordCursor cursor) throws JsonProcessingException {
+		return serialize(corpus, cursor.next(corpus.words));
+	}
+
+	@Benchmark
+	public byte[] getAnagramsSerializedPopular(CorpusState corpus, WordCursor cursor) throws JsonProcessingException {
+		return serialize(corpus, cursor.next(popularWords));
+	}
+
+	private byte[] serialize(CorpusState corpus, String word) throws JsonProcessingException {
+		Map<String, Object> response = new HashMap<String, Object>();
+		response.put("anagrams", corpus.service.getAnagrams(word, null));
+		return mapper.writeValueAsBytes(response);
+	}
+
+	/**
+	 * A batch of words looked up one request at a time. Compare against getAnagramsBatch.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public int getAnagramsOneByOne(CorpusState corpus, WordCursor cursor, ResponseBuffer response) throws IOException {
+		int bytes = 0;
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			controller.getAnagrams(cursor.next(corpus.words), null, null, response.reset());
+			bytes += response.bytes.size();
+		}
+		return bytes;
+	}
+
+	/**
+	 * The same batch of words sent as one request, one word per line, and streamed back as NDJSON.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public int getAnagramsBatch(CorpusState corpus, WordCursor cursor) throws IOException {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			body.append(cursor.next(corpus.words)).append('\n');
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		controller.getAnagramsBatch(textRequest(body.toString()), null, null, IGNORED_RESPONSE).writeTo(output);
+		return output.size();
+	}
+
+	@Benchmark
+	public byte[] getDictionaryMetadata() throws JsonProcessingException {
+		return mapper.writeValueAsBytes(controller.getDictionaryMetadata(null));
+	}
+
+	@Benchmark
+	public int getLargestAnagramSets() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		controller.getLargestAnagramSets(null, null, IGNORED_RESPONSE).writeTo(output);
+		return output.size();
+	}
+
+	@Benchmark
+	public int getAnagramGroupsBySize() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		controller.getAnagramGroupsBySize("5", null, null, IGNORED_RESPONSE).writeTo(output);
+		return output.size();
+	}
+
+	/**
+	 * A page of 100 sets from the middle of the size 2+ listing, which is most of the dictionary.
+	 */
+	@Benchmark
+	public int getAnagramGroupsBySizePage() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		controller.getAnagramGroupsBySize("2", "100", "2-stone", IGNORED_RESPONSE).writeTo(output);
+		return output.size();
+	}
+
+	/**
+	 * Just enough of a servlet response for GET /anagrams/:word.json, which writes its JSON straight to the response's output stream.
+	 */
+	@State(Scope.Thread)
+	public static class ResponseBuffer {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+		private final ServletOutputStream output = new ServletOutputStream() {
+			@Override
+			public void write(int b) {
+				bytes.write(b);
+			}
+
+			@Override
+			public void write(byte[] buffer, int offset, int length) {
+				bytes.write(buffer, offset, length);
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener listener) {
+			}
+		};
+		private final HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+				HttpServletResponse.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+				(proxy, method, args) -> "getOutputStream".equals(method.getName()) ? output : null);
+
+		HttpServletResponse reset() {
+			bytes.reset();
+			return response;
+		}
+	}
+
+	//Just enough of a servlet request and response for the streaming endpoints, which only read the body and set the content type
+	private static final HttpServletResponse IGNORED_RESPONSE = (HttpServletResponse) Proxy.newProxyInstance(
+			HttpServletResponse.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class}, (proxy, method, args) -> null);
+
+	private static HttpServletRequest textRequest(String body) {
+		final ByteArrayInputStream bytes = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+		final ServletInputStream input = new ServletInputStream() {
+			@Override
+			public int read() {
+				return bytes.read();
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) {
+				return bytes.read(buffer, offset, length);
+			}
+
+			@Override
+			public boolean isFinished() {
+				return bytes.available() == 0;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setReadListener(ReadListener listener) {
+			}
+		};
+		return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getInputStream":
+						return input;
+					case "getContentType":
+						return "text/plain";
+					default:
+						return null;
+					}
+				});
+	}
+}
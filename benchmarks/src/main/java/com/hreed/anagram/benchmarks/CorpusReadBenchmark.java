@@ -0,0 +1,98 @@
+package com.hreed.anagram.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Read-only calls against the full dictionary. Run with `-t` to see how each call scales with concurrent readers, e.g. `-t 1 -t 4`.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class CorpusReadBenchmark {
+
+	@Param({"5"})
+	public int groupSize;
+
+	@Benchmark
+	public Set<String> getAnagrams(CorpusState corpus, WordCursor cursor) {
+		return corpus.service.getAnagrams(cursor.next(corpus.words), null);
+	}
+
+	@Benchmark
+	public Set<String> getAnagramsWithLimit(CorpusState corpus, WordCursor cursor) {
+		return corpus.service.getAnagrams(cursor.next(corpus.words), 1);
+	}
+
+	@Benchmark
+	public int writeAnagramsJson(CorpusState corpus, WordCursor cursor, ControllerBenchmark.ResponseBuffer response) throws IOException {
+		response.reset();
+		corpus.service.writeAnagramsJson(cursor.next(corpus.words), null, false, response.bytes);
+		return response.bytes.size();
+	}
+
+	@Benchmark
+	public Set<String> getAnagramsCaseInsensitive(CorpusState corpus, WordCursor cursor) {
+		return corpus.service.getAnagramsCaseInsensitive(cursor.next(corpus.words), null);
+	}
+
+	//The case insensitive lookup the folded key index replaced, which probed once for the lowercase word and once more for each capitalized position
+	@Benchmark
+	public Set<String> getAnagramsCaseInsensitivePerPosition(CorpusState corpus, WordCursor cursor) {
+		String word = cursor.next(corpus.words);
+		char[] letters = word.toLowerCase().toCharArray();
+		Set<String> anagrams = new HashSet<String>(corpus.service.getAnagrams(new String(letters), null));
+		for (int i = 0; i < letters.length; i++) {
+			char letter = letters[i];
+			letters[i] = Character.toUpperCase(letter);
+			anagrams.addAll(corpus.service.getAnagrams(new String(letters), null));
+			letters[i] = letter;
+		}
+		anagrams.remove(word);
+		return anagrams;
+	}
+
+	@Benchmark
+	public int visitAnagrams(CorpusState corpus, WordCursor cursor, Blackhole blackhole) throws IOException {
+		return corpus.service.visitAnagrams(cursor.next(corpus.words), null, false, blackhole::consume);
+	}
+
+	@Benchmark
+	public Map<String, Object> getCorpusMetadata(CorpusState corpus) {
+		return corpus.service.getCorpusMetadata();
+	}
+
+	@Benchmark
+	public ArrayList<Set<String>> getLargestAnagramSets(CorpusState corpus) {
+		return corpus.service.getLargestAnagramSets();
+	}
+
+	@Benchmark
+	public ArrayList<Set<String>> getAnagramGroupsBySize(CorpusState corpus) {
+		return corpus.service.getAnagramGroupsBySize(groupSize);
+	}
+
+	@Benchmark
+	public Object visitAnagramGroupsBySize(CorpusState corpus, Blackhole blackhole) throws IOException {
+		return corpus.service.visitAnagramGroupsBySize(groupSize, null, null, blackhole::consume);
+	}
+}
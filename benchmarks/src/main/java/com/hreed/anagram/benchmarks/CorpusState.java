@@ -0,0 +1,29 @@
+package com.hreed.anagram.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+
+/**
+ * A service with the bundled dictionary loaded, shared by every thread of a benchmark.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+
+	@Param({AnagramCorpusServices.IN_MEMORY, AnagramCorpusServices.INSTRUMENTED, AnagramCorpusServices.DURABLE, AnagramCorpusServices.ARENA})
+	public String implementation;
+
+	public AnagramCorpusService service;
+	public String[] words;
+
+	@Setup
+	public void loadDictionary() throws IOException {
+		service = AnagramCorpusServices.create(implementation);
+		words = AnagramCorpusServices.dictionaryWords();
+	}
+}
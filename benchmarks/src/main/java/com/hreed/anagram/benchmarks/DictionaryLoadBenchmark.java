@@ -0,0 +1,46 @@
+package com.hreed.anagram.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+
+/**
+ * Times a full reload of the bundled dictionary, as /reload.json does it.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class DictionaryLoadBenchmark {
+
+	@Param({AnagramCorpusServices.IN_MEMORY, AnagramCorpusServices.INSTRUMENTED, AnagramCorpusServices.DURABLE, AnagramCorpusServices.ARENA})
+	public String implementation;
+
+	private AnagramCorpusService service;
+
+	@Setup
+	public void createService() {
+		service = AnagramCorpusServices.create(implementation);
+	}
+
+	@Benchmark
+	public Map<String, Object> populateCorpusFromDictionaryFile() {
+		service.populateCorpusFromDictionaryFile(AnagramCorpusServices.DICTIONARY);
+		return service.getCorpusMetadata();
+	}
+}
@@ -0,0 +1,73 @@
+package com.hreed.anagram.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hreed.anagram.server.service.impl.DurableAnagramCorpusService;
+
+/**
+ * Write throughput of the durable service: every change is logged, and fsynced when `fsync` is true, before it returns.
+ * Each writer thread waits on its own fsync, so adding threads is what shows off group commit. Compare e.g. `-t 1` with `-t 8`,
+ * and compare the throughput with `anagram_wal_syncs` going up far slower than the number of writes.
+ *
+ * The snapshot benchmark times writing out the whole corpus, which is what the periodic snapshot costs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class DurableWriteBenchmark {
+
+	@Param({"true", "false"})
+	public boolean fsync;
+
+	private File directory;
+	private DurableAnagramCorpusService service;
+	private String[] words;
+
+	@Setup
+	public void openLog() throws IOException {
+		directory = AnagramCorpusServices.temporaryDirectory();
+		service = AnagramCorpusServices.durable(directory, fsync);
+		words = AnagramCorpusServices.dictionaryWords();
+	}
+
+	@TearDown
+	public void closeLog() throws IOException {
+		service.close();
+		AnagramCorpusServices.deleteFiles(directory);
+	}
+
+	@Benchmark
+	public void rewriteWord(WordCursor cursor) {
+		String word = cursor.next(words);
+		service.deleteWord(word);
+		service.addWords(Collections.singleton(word));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 2)
+	@Measurement(iterations = 5)
+	public void snapshot() throws IOException {
+		service.snapshot();
+	}
+}
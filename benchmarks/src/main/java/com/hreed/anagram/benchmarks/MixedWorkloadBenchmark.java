@@ -0,0 +1,68 @@
+package com.hreed.anagram.benchmarks;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Readers and writers working on the same corpus at once. Writers delete dictionary words and add them straight back,
+ * so the corpus stays the same size for the whole run while every write still really changes an anagram set.
+ *
+ * The thread split in each group is only the default, other splits can be run with `-tg`, e.g. `-tg 6,2` or `-tg 1,1`.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class MixedWorkloadBenchmark {
+
+	private static final int BATCH_SIZE = 16;
+
+	@Benchmark
+	@Group("readMostly")
+	@GroupThreads(3)
+	public Set<String> readMostlyLookup(CorpusState corpus, WordCursor cursor) {
+		return corpus.service.getAnagrams(cursor.next(corpus.words), null);
+	}
+
+	@Benchmark
+	@Group("readMostly")
+	@GroupThreads(1)
+	public void readMostlyRewrite(CorpusState corpus, WordCursor cursor) {
+		String word = cursor.next(corpus.words);
+		corpus.service.deleteWord(word);
+		corpus.service.addWords(Collections.singleton(word));
+	}
+
+	@Benchmark
+	@Group("batchedWrites")
+	@GroupThreads(2)
+	public Set<String> batchedWritesLookup(CorpusState corpus, WordCursor cursor) {
+		return corpus.service.getAnagramsCaseInsensitive(cursor.next(corpus.words), null);
+	}
+
+	@Benchmark
+	@Group("batchedWrites")
+	@GroupThreads(2)
+	public void batchedWritesRewrite(CorpusState corpus, WordCursor cursor) {
+		Set<String> batch = new HashSet<String>();
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			String word = cursor.next(corpus.words);
+			corpus.service.deleteWord(word);
+			batch.add(word);
+		}
+		corpus.service.addWords(batch);
+	}
+}
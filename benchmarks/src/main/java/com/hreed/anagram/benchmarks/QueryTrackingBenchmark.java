@@ -0,0 +1,107 @@
+package com.hreed.anagram.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hreed.anagram.server.metrics.QueryTracker;
+
+/**
+ * How much recording every lookup for /recent.json and /popular.json costs the lookups, with many threads looking up at once.
+ * Each lookup is recorded by the QueryTracker the controllers use, by a plain synchronized log and count of every word for comparison,
+ * or not at all. Run with `-t` for other numbers of threads, and `-p implementation=inMemory` to only look up against one storage engine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Threads(16)
+@State(Scope.Benchmark)
+public class QueryTrackingBenchmark {
+
+	public static final String NONE = "none";
+	public static final String TRACKER = "tracker";
+	public static final String SYNCHRONIZED = "synchronized";
+
+	//A handful of words looked up over and over, as when a client hammers the same few lookups
+	private static final int HOT_WORDS = 16;
+
+	@Param({NONE, TRACKER, SYNCHRONIZED})
+	public String tracking;
+
+	private QueryTracker tracker;
+	private SynchronizedTracker synchronizedTracker;
+	private String[] hotWords;
+
+	@Setup
+	public void createTracker(CorpusState corpus) {
+		tracker = new QueryTracker(100, 100, TimeUnit.MINUTES.toNanos(5), null);
+		synchronizedTracker = new SynchronizedTracker(100);
+		hotWords = Arrays.copyOf(corpus.words, HOT_WORDS);
+	}
+
+	@TearDown
+	public void closeTracker() {
+		tracker.close();
+	}
+
+	@Benchmark
+	public Set<String> lookup(CorpusState corpus, WordCursor cursor) {
+		return lookup(corpus, cursor.next(corpus.words));
+	}
+
+	@Benchmark
+	public Set<String> lookupHot(CorpusState corpus, WordCursor cursor) {
+		return lookup(corpus, cursor.next(hotWords));
+	}
+
+	private Set<String> lookup(CorpusState corpus, String word) {
+		if (TRACKER.equals(tracking)) {
+			tracker.record(word);
+		} else if (SYNCHRONIZED.equals(tracking)) {
+			synchronizedTracker.record(word);
+		}
+		return corpus.service.getAnagrams(word, null);
+	}
+
+	/**
+	 * The obvious way to keep the same two lists, with every lookup taking one lock to append to a queue and count the word.
+	 */
+	static final class SynchronizedTracker {
+
+		private final int recentSize;
+		private final ArrayDeque<String> recent = new ArrayDeque<String>();
+		private final Map<String, Long> counts = new HashMap<String, Long>();
+
+		SynchronizedTracker(int recentSize) {
+			this.recentSize = recentSize;
+		}
+
+		synchronized void record(String word) {
+			if (recent.size() == recentSize) {
+				recent.removeFirst();
+			}
+			recent.addLast(word);
+			Long count = counts.get(word);
+			counts.put(word, count == null ? 1 : count + 1);
+		}
+	}
+}
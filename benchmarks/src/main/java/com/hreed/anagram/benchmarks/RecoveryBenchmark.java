@@ -0,0 +1,89 @@
+package com.hreed.anagram.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hreed.anagram.server.service.impl.DurableAnagramCorpusService;
+
+/**
+ * Times a restart of the durable service: building the in memory service, loading the snapshot of the dictionary into it,
+ * then replaying however many changes were logged after it. With `snapshot` false there is no snapshot at all, and the whole history
+ * is replayed on top of the dictionary, as before the first snapshot is taken.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+
+	@Param({"true", "false"})
+	public boolean snapshot;
+
+	@Param({"0", "10000", "100000"})
+	public int loggedChanges;
+
+	private File directory;
+	private DurableAnagramCorpusService recovered;
+	private Set<String> logFiles;
+
+	@Setup
+	public void writeLog() throws IOException {
+		directory = AnagramCorpusServices.temporaryDirectory();
+		String[] words = AnagramCorpusServices.dictionaryWords();
+		DurableAnagramCorpusService service = AnagramCorpusServices.durable(directory, false);
+		if (snapshot) {
+			service.snapshot();
+		}
+		for (int i = 0; i < loggedChanges; i += 2) {
+			String word = words[(i / 2) % words.length];
+			service.deleteWord(word);
+			service.addWords(Collections.singleton(word));
+		}
+		service.close();
+		logFiles = new HashSet<String>(Arrays.asList(directory.list()));
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeRecovered() throws IOException {
+		recovered.close();
+		//Recovery always starts a new segment, so drop it again to keep every invocation replaying the same log
+		for (File file : directory.listFiles()) {
+			if (!logFiles.contains(file.getName())) {
+				file.delete();
+			}
+		}
+	}
+
+	@TearDown
+	public void deleteLog() {
+		AnagramCorpusServices.deleteFiles(directory);
+	}
+
+	@Benchmark
+	public Map<String, Object> recover() throws IOException {
+		recovered = AnagramCorpusServices.durable(directory, false);
+		return recovered.getCorpusMetadata();
+	}
+}
@@ -0,0 +1,73 @@
+package com.hreed.anagram.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hreed.anagram.server.service.impl.AnagramKey;
+
+/**
+ * Sub-anagram searches through the letter mask index, next to the full scan of every anagram set that the index replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class SubAnagramBenchmark {
+
+	@Param({"anagrams", "retinas", "education", "stone", "quartzes"})
+	public String rack;
+
+	//Every anagram set with its folded key, for the full scan
+	private List<AnagramKey> keys;
+	private List<Set<String>> groups;
+
+	@Setup
+	public void listGroups(CorpusState corpus) {
+		keys = new ArrayList<AnagramKey>();
+		groups = new ArrayList<Set<String>>();
+		for (Set<String> group : corpus.service.getAnagramGroupsBySize(1)) {
+			keys.add(AnagramKey.foldedOf(group.iterator().next()));
+			groups.add(group);
+		}
+	}
+
+	@Benchmark
+	public Map<String, Object> getSubAnagrams(CorpusState corpus) {
+		return corpus.service.getSubAnagrams(rack, null, Integer.MAX_VALUE, true);
+	}
+
+	@Benchmark
+	public Set<String> getSubAnagramsByFullScan() {
+		AnagramKey rackKey = AnagramKey.foldedOf(rack);
+		Set<String> words = new HashSet<String>();
+		for (int i = 0; i < keys.size(); i++) {
+			AnagramKey key = keys.get(i);
+			boolean fits = true;
+			for (int letter = 0; letter < 26 && fits; letter++) {
+				fits = key.lowercaseCount(letter) <= rackKey.lowercaseCount(letter);
+			}
+			if (fits) {
+				words.addAll(groups.get(i));
+			}
+		}
+		return words;
+	}
+}
@@ -0,0 +1,54 @@
+package com.hreed.anagram.benchmarks;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Wildcard searches through the letter mask index, next to filling in each blank with all 26 letters and looking up every result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class WildcardBenchmark {
+
+	@Param({"ap?le", "?rain", "st??e", "qu??k", "??t", "an?gr?m?"})
+	public String query;
+
+	@Benchmark
+	public Set<String> getWildcardAnagrams(CorpusState corpus) {
+		return corpus.service.getWildcardAnagrams(query, null, false);
+	}
+
+	@Benchmark
+	public Set<String> getWildcardAnagramsByExpandedBlanks(CorpusState corpus) {
+		Set<String> words = new HashSet<String>();
+		expandBlanks(corpus, query, words);
+		return words;
+	}
+
+	private static void expandBlanks(CorpusState corpus, String query, Set<String> words) {
+		int blank = query.indexOf('?');
+		if (blank < 0) {
+			words.addAll(corpus.service.getAnagrams(query, null));
+			return;
+		}
+		for (char letter = 'a'; letter <= 'z'; letter++) {
+			expandBlanks(corpus, query.substring(0, blank) + letter + query.substring(blank + 1), words);
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package com.hreed.anagram.benchmarks;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Each benchmark thread walks the shared word list from its own starting point, so threads don't all hammer the same keys.
+ */
+@State(Scope.Thread)
+public class WordCursor {
+
+	private static int nextStart = 0;
+	private int position = nextStart();
+
+	private static synchronized int nextStart() {
+		nextStart += 7919;
+		return nextStart;
+	}
+
+	public String next(String[] words) {
+		position = (position + 1) % words.length;
+		return words[position];
+	}
+}
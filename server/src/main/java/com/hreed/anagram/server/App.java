@@ -1,12 +1,26 @@
 package com.hreed.anagram.server;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
 
 @SpringBootApplication
 public class App {
 
+    static final String WEB_APPLICATION_TYPE = "spring.main.web-application-type";
+
     public static void main(String[] args) {
-        SpringApplication.run(App.class, args);
+        SpringApplication application = new SpringApplication(App.class);
+        //Spring Boot 2.0.0 sets up a servlet environment before it reads spring.main.web-application-type, which leaves the
+        //servlet configuration switched on next to the reactive one. So the reactive mode is picked out up front instead,
+        //from the command line, system properties or environment variables.
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        if (WebApplicationType.REACTIVE.name().equalsIgnoreCase(environment.getProperty(WEB_APPLICATION_TYPE))) {
+            application.setWebApplicationType(WebApplicationType.REACTIVE);
+        }
+        application.run(args);
     }
 }
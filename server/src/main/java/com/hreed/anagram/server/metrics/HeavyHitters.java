@@ -0,0 +1,214 @@
+package com.hreed.anagram.server.metrics;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Finds the most frequent items in a stream in a fixed amount of memory, with older counts fading away over time.
+ *
+ * Every item is counted in a count-min sketch: a few rows of counters, each item bumping one counter per row picked by a different hash.
+ * An item's count is the smallest of its counters, which can only be too high (when other items share all of its counters), never too low.
+ * Counters are only raised as far as the new count needs (conservative update), which keeps that error down for the rare items.
+ * Alongside the sketch, the top items are kept as candidates by their counts. An item that isn't a candidate takes the place of
+ * the smallest one as soon as its count is higher, so the sketch never has to be searched for the top items. The candidates are kept in a
+ * min-heap by count, so the smallest one is always at hand, and raising a count or replacing the smallest only moves a candidate down the heap.
+ *
+ * Counts decay by halving every counter at once, so an item has to keep being seen to stay on top.
+ *
+ * Not thread safe. The QueryTracker only ever touches it from one thread at a time, and never from the threads serving lookups.
+ */
+public final class HeavyHitters<T> {
+
+	private static final int DEPTH = 4;
+
+	private final int width;
+	private final int mask;
+	private final long[] counters;
+	private final int capacity;
+	private final Map<T, Candidate<T>> candidates = new HashMap<T, Candidate<T>>();
+	//The candidates as a min-heap by count, the smallest first. Only the first candidates.size() places are used.
+	private final Candidate<T>[] heap;
+
+	/**
+	 * @param capacity How many of the top items to keep
+	 * @param width How many counters to keep in each row of the sketch, rounded up to a power of two.
+	 * Each count is too high by at most about 3 in width of all the counts added together, and usually far less.
+	 */
+	public HeavyHitters(int capacity, int width){
+		this.capacity = capacity;
+		this.width = Math.max(1, Integer.highestOneBit(Math.max(1, width) - 1) << 1);
+		this.mask = this.width - 1;
+		this.counters = new long[DEPTH * this.width];
+		@SuppressWarnings("unchecked")
+		Candidate<T>[] heap = new Candidate[Math.max(capacity, 0)];
+		this.heap = heap;
+	}
+
+	/**
+	 * Counts one more occurrence of the item.
+	 *
+	 * @return The item's count, including this one
+	 */
+	public long add(T item){
+		return add(item, 1);
+	}
+
+	/**
+	 * Counts the given number of occurrences of the item at once.
+	 *
+	 * @return The item's count, including these
+	 */
+	public long add(T item, long occurrences){
+		int hash = item.hashCode() * 0x9E3779B9;
+		//Each row's counter comes from the two halves of one hash (Kirsch and Mitzenmacher), which is as good as separate hashes here
+		int first = hash ^ (hash >>> 16);
+		int second = (hash >>> 16 | hash << 16) * 0x85EBCA6B | 1;
+		long count = Long.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++){
+			count = Math.min(count, counters[index(row, first, second)]);
+		}
+		count += occurrences;
+		for (int row = 0; row < DEPTH; row++){
+			int index = index(row, first, second);
+			if (counters[index] < count){
+				counters[index] = count;
+			}
+		}
+		offer(item, count);
+		return count;
+	}
+
+	private int index(int row, int first, int second){
+		return row * width + ((first + row * second) & mask);
+	}
+
+	private void offer(T item, long count){
+		Candidate<T> candidate = candidates.get(item);
+		if (candidate != null){
+			//Counts only go up between decays, so the candidate can only need to move down the heap
+			candidate.count = count;
+			siftDown(candidate.index);
+			return;
+		}
+		int size = candidates.size();
+		if (size < heap.length){
+			candidate = new Candidate<T>(item, count);
+			candidates.put(item, candidate);
+			place(candidate, size);
+			siftUp(size);
+			return;
+		}
+		if (size == 0 || count <= heap[0].count){
+			return;
+		}
+		//The item takes the smallest candidate's place, at the top of the heap
+		candidate = heap[0];
+		candidates.remove(candidate.item);
+		candidate.item = item;
+		candidate.count = count;
+		candidates.put(item, candidate);
+		siftDown(0);
+	}
+
+	private void siftUp(int index){
+		Candidate<T> candidate = heap[index];
+		while (index > 0){
+			int parent = (index - 1) >>> 1;
+			if (heap[parent].count <= candidate.count){
+				break;
+			}
+			place(heap[parent], index);
+			index = parent;
+		}
+		place(candidate, index);
+	}
+
+	private void siftDown(int index){
+		int size = candidates.size();
+		Candidate<T> candidate = heap[index];
+		while (true){
+			int child = 2 * index + 1;
+			if (child >= size){
+				break;
+			}
+			if (child + 1 < size && heap[child + 1].count < heap[child].count){
+				child++;
+			}
+			if (candidate.count <= heap[child].count){
+				break;
+			}
+			place(heap[child], index);
+			index = child;
+		}
+		place(candidate, index);
+	}
+
+	private void place(Candidate<T> candidate, int index){
+		heap[index] = candidate;
+		candidate.index = index;
+	}
+
+	/**
+	 * Halves every count the given number of times, dropping the candidates whose counts reach zero.
+	 */
+	public void decay(int halvings){
+		if (halvings <= 0){
+			return;
+		}
+		int shift = Math.min(halvings, 63);
+		for (int i = 0; i < counters.length; i++){
+			counters[i] >>>= shift;
+		}
+		//Halving keeps the candidates in heap order, and the ones that reach zero are the smallest, so they come off the top of the heap
+		int size = candidates.size();
+		for (int i = 0; i < size; i++){
+			heap[i].count >>>= shift;
+		}
+		while (size > 0 && heap[0].count == 0){
+			candidates.remove(heap[0].item);
+			size--;
+			place(heap[size], 0);
+			heap[size] = null;
+			if (size > 0){
+				siftDown(0);
+			}
+		}
+	}
+
+	/**
+	 * @param limit The most items to return
+	 * @return The top items and their counts, highest count first (and alphabetically for equal counts)
+	 */
+	public List<Entry<T, Long>> top(int limit){
+		List<Entry<T, Long>> top = new ArrayList<Entry<T, Long>>();
+		for (Candidate<T> candidate : candidates.values()){
+			top.add(new SimpleImmutableEntry<T, Long>(candidate.item, candidate.count));
+		}
+		Collections.sort(top, new Comparator<Entry<T, Long>>() {
+			public int compare(Entry<T, Long> first, Entry<T, Long> second){
+				int result = Long.compare(second.getValue(), first.getValue());
+				return result != 0 ? result : String.valueOf(first.getKey()).compareTo(String.valueOf(second.getKey()));
+			}
+		});
+		return top.subList(0, Math.min(Math.max(limit, 0), top.size()));
+	}
+
+	//An item on the heap, with its count and where it is on the heap
+	private static final class Candidate<T> {
+
+		T item;
+		long count;
+		int index;
+
+		Candidate(T item, long count){
+			this.item = item;
+			this.count = count;
+		}
+	}
+}
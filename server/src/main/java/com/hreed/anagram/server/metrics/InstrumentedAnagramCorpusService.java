@@ -0,0 +1,440 @@
+package com.hreed.anagram.server.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+import com.hreed.anagram.server.service.AnagramCorpusSnapshot;
+import com.hreed.anagram.server.service.AnagramGroupVisitor;
+import com.hreed.anagram.server.service.AnagramVisitor;
+import com.hreed.anagram.server.service.GroupCursor;
+
+/**
+ * Wraps any AnagramCorpusService, recording the latency of every call in a histogram per operation
+ * and counting the calls that throw.
+ *
+ * Every operation's histogram and error counter are looked up once up front, so timing a call is just two clock reads
+ * and a few atomic increments, with no locking or allocation.
+ *
+ * Snapshots are wrapped too, and reads from a snapshot are recorded under the same operations as the service's own methods for them.
+ */
+public class InstrumentedAnagramCorpusService implements AnagramCorpusService {
+
+	static final String LATENCY = "anagram_service_latency_seconds";
+	static final String ERRORS = "anagram_service_errors_total";
+
+	private final AnagramCorpusService delegate;
+	private final Operation addWords;
+	private final Operation getAnagrams;
+	private final Operation getAnagramsCaseInsensitive;
+	private final Operation visitAnagrams;
+	private final Operation writeAnagramsJson;
+	private final Operation getWildcardAnagrams;
+	private final Operation getSubAnagrams;
+	private final Operation getAnagramPhrases;
+	private final Operation deleteWord;
+	private final Operation deleteAnagrams;
+	private final Operation deleteAllWords;
+	private final Operation populateCorpusFromDictionaryFile;
+	private final Operation getCorpusMetadata;
+	private final Operation getSnapshot;
+	private final Operation getMemoryFootprint;
+	private final Operation getLargestAnagramSets;
+	private final Operation visitLargestAnagramSets;
+	private final Operation getAnagramGroupsBySize;
+	private final Operation visitAnagramGroupsBySize;
+
+	/**
+	 * @param delegate The service doing the actual work
+	 * @param metrics The registry to record into
+	 */
+	public InstrumentedAnagramCorpusService(AnagramCorpusService delegate, MetricsRegistry metrics){
+		this.delegate = delegate;
+		addWords = new Operation(metrics, "addWords");
+		getAnagrams = new Operation(metrics, "getAnagrams");
+		getAnagramsCaseInsensitive = new Operation(metrics, "getAnagramsCaseInsensitive");
+		visitAnagrams = new Operation(metrics, "visitAnagrams");
+		writeAnagramsJson = new Operation(metrics, "writeAnagramsJson");
+		getWildcardAnagrams = new Operation(metrics, "getWildcardAnagrams");
+		getSubAnagrams = new Operation(metrics, "getSubAnagrams");
+		getAnagramPhrases = new Operation(metrics, "getAnagramPhrases");
+		deleteWord = new Operation(metrics, "deleteWord");
+		deleteAnagrams = new Operation(metrics, "deleteAnagrams");
+		deleteAllWords = new Operation(metrics, "deleteAllWords");
+		populateCorpusFromDictionaryFile = new Operation(metrics, "populateCorpusFromDictionaryFile");
+		getCorpusMetadata = new Operation(metrics, "getCorpusMetadata");
+		getSnapshot = new Operation(metrics, "getSnapshot");
+		getMemoryFootprint = new Operation(metrics, "getMemoryFootprint");
+		getLargestAnagramSets = new Operation(metrics, "getLargestAnagramSets");
+		visitLargestAnagramSets = new Operation(metrics, "visitLargestAnagramSets");
+		getAnagramGroupsBySize = new Operation(metrics, "getAnagramGroupsBySize");
+		visitAnagramGroupsBySize = new Operation(metrics, "visitAnagramGroupsBySize");
+	}
+
+	@Override
+	public int addWords(Set<String> newWords) {
+		long start = System.nanoTime();
+		try {
+			return delegate.addWords(newWords);
+		} catch (RuntimeException e) {
+			addWords.failed();
+			throw e;
+		} finally {
+			addWords.finished(start);
+		}
+	}
+
+	@Override
+	public Set<String> getAnagrams(String word, Integer limit) {
+		long start = System.nanoTime();
+		try {
+			return delegate.getAnagrams(word, limit);
+		} catch (RuntimeException e) {
+			getAnagrams.failed();
+			throw e;
+		} finally {
+			getAnagrams.finished(start);
+		}
+	}
+
+	@Override
+	public Set<String> getAnagramsCaseInsensitive(String word, Integer limit) {
+		long start = System.nanoTime();
+		try {
+			return delegate.getAnagramsCaseInsensitive(word, limit);
+		} catch (RuntimeException e) {
+			getAnagramsCaseInsensitive.failed();
+			throw e;
+		} finally {
+			getAnagramsCaseInsensitive.finished(start);
+		}
+	}
+
+	@Override
+	public int visitAnagrams(String word, Integer limit, boolean caseInsensitive, AnagramVisitor visitor) throws IOException {
+		long start = System.nanoTime();
+		try {
+			return delegate.visitAnagrams(word, limit, caseInsensitive, visitor);
+		} catch (IOException | RuntimeException e) {
+			visitAnagrams.failed();
+			throw e;
+		} finally {
+			visitAnagrams.finished(start);
+		}
+	}
+
+	@Override
+	public void writeAnagramsJson(String word, Integer limit, boolean caseInsensitive, OutputStream out) throws IOException {
+		long start = System.nanoTime();
+		try {
+			delegate.writeAnagramsJson(word, limit, caseInsensitive, out);
+		} catch (IOException | RuntimeException e) {
+			writeAnagramsJson.failed();
+			throw e;
+		} finally {
+			writeAnagramsJson.finished(start);
+		}
+	}
+
+	@Override
+	public Set<String> getWildcardAnagrams(String query, Integer limit, boolean caseInsensitive) {
+		long start = System.nanoTime();
+		try {
+			return delegate.getWildcardAnagrams(query, limit, caseInsensitive);
+		} catch (RuntimeException e) {
+			getWildcardAnagrams.failed();
+			throw e;
+		} finally {
+			getWildcardAnagrams.finished(start);
+		}
+	}
+
+	@Override
+	public Map<String, Object> getSubAnagrams(String letters, String after, Integer limit, boolean caseInsensitive) {
+		long start = System.nanoTime();
+		try {
+			return delegate.getSubAnagrams(letters, after, limit, caseInsensitive);
+		} catch (RuntimeException e) {
+			getSubAnagrams.failed();
+			throw e;
+		} finally {
+			getSubAnagrams.finished(start);
+		}
+	}
+
+	@Override
+	public Map<String, Object> getAnagramPhrases(String letters, Integer limit, Integer maxWords, boolean caseInsensitive) {
+		long start = System.nanoTime();
+		try {
+			return delegate.getAnagramPhrases(letters, limit, maxWords, caseInsensitive);
+		} catch (RuntimeException e) {
+			getAnagramPhrases.failed();
+			throw e;
+		} finally {
+			getAnagramPhrases.finished(start);
+		}
+	}
+
+	@Override
+	public void deleteWord(String word) {
+		long start = System.nanoTime();
+		try {
+			delegate.deleteWord(word);
+		} catch (RuntimeException e) {
+			deleteWord.failed();
+			throw e;
+		} finally {
+			deleteWord.finished(start);
+		}
+	}
+
+	@Override
+	public void deleteAnagrams(String word) {
+		long start = System.nanoTime();
+		try {
+			delegate.deleteAnagrams(word);
+		} catch (RuntimeException e) {
+			deleteAnagrams.failed();
+			throw e;
+		} finally {
+			deleteAnagrams.finished(start);
+		}
+	}
+
+	@Override
+	public void deleteAllWords() {
+		long start = System.nanoTime();
+		try {
+			delegate.deleteAllWords();
+		} catch (RuntimeException e) {
+			deleteAllWords.failed();
+			throw e;
+		} finally {
+			deleteAllWords.finished(start);
+		}
+	}
+
+	@Override
+	public void populateCorpusFromDictionaryFile(String fileName) {
+		long start = System.nanoTime();
+		try {
+			delegate.populateCorpusFromDictionaryFile(fileName);
+		} catch (RuntimeException e) {
+			populateCorpusFromDictionaryFile.failed();
+			throw e;
+		} finally {
+			populateCorpusFromDictionaryFile.finished(start);
+		}
+	}
+
+	@Override
+	public Map<String, Object> getCorpusMetadata() {
+		long start = System.nanoTime();
+		try {
+			return delegate.getCorpusMetadata();
+		} catch (RuntimeException e) {
+			getCorpusMetadata.failed();
+			throw e;
+		} finally {
+			getCorpusMetadata.finished(start);
+		}
+	}
+
+	@Override
+	public AnagramCorpusSnapshot getSnapshot() {
+		long start = System.nanoTime();
+		try {
+			return new InstrumentedSnapshot(delegate.getSnapshot());
+		} catch (RuntimeException e) {
+			getSnapshot.failed();
+			throw e;
+		} finally {
+			getSnapshot.finished(start);
+		}
+	}
+
+	@Override
+	public Map<String, Object> getMemoryFootprint() {
+		long start = System.nanoTime();
+		try {
+			return delegate.getMemoryFootprint();
+		} catch (RuntimeException e) {
+			getMemoryFootprint.failed();
+			throw e;
+		} finally {
+			getMemoryFootprint.finished(start);
+		}
+	}
+
+	@Override
+	public ArrayList<Set<String>> getLargestAnagramSets() {
+		long start = System.nanoTime();
+		try {
+			return delegate.getLargestAnagramSets();
+		} catch (RuntimeException e) {
+			getLargestAnagramSets.failed();
+			throw e;
+		} finally {
+			getLargestAnagramSets.finished(start);
+		}
+	}
+
+	@Override
+	public GroupCursor visitLargestAnagramSets(GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+		long start = System.nanoTime();
+		try {
+			return delegate.visitLargestAnagramSets(after, limit, visitor);
+		} catch (IOException | RuntimeException e) {
+			visitLargestAnagramSets.failed();
+			throw e;
+		} finally {
+			visitLargestAnagramSets.finished(start);
+		}
+	}
+
+	@Override
+	public ArrayList<Set<String>> getAnagramGroupsBySize(int size) {
+		long start = System.nanoTime();
+		try {
+			return delegate.getAnagramGroupsBySize(size);
+		} catch (RuntimeException e) {
+			getAnagramGroupsBySize.failed();
+			throw e;
+		} finally {
+			getAnagramGroupsBySize.finished(start);
+		}
+	}
+
+	@Override
+	public GroupCursor visitAnagramGroupsBySize(int size, GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+		long start = System.nanoTime();
+		try {
+			return delegate.visitAnagramGroupsBySize(size, after, limit, visitor);
+		} catch (IOException | RuntimeException e) {
+			visitAnagramGroupsBySize.failed();
+			throw e;
+		} finally {
+			visitAnagramGroupsBySize.finished(start);
+		}
+	}
+
+	/**
+	 * Times the reads from a snapshot of the wrapped service.
+	 */
+	private final class InstrumentedSnapshot implements AnagramCorpusSnapshot {
+
+		private final AnagramCorpusSnapshot snapshot;
+
+		InstrumentedSnapshot(AnagramCorpusSnapshot snapshot){
+			this.snapshot = snapshot;
+		}
+
+		@Override
+		public long getVersion() {
+			return snapshot.getVersion();
+		}
+
+		@Override
+		public Map<String, Object> getCorpusMetadata() {
+			long start = System.nanoTime();
+			try {
+				return snapshot.getCorpusMetadata();
+			} catch (RuntimeException e) {
+				getCorpusMetadata.failed();
+				throw e;
+			} finally {
+				getCorpusMetadata.finished(start);
+			}
+		}
+
+		@Override
+		public long[] getWordLengthCounts() {
+			long start = System.nanoTime();
+			try {
+				return snapshot.getWordLengthCounts();
+			} catch (RuntimeException e) {
+				getCorpusMetadata.failed();
+				throw e;
+			} finally {
+				getCorpusMetadata.finished(start);
+			}
+		}
+
+		@Override
+		public ArrayList<Set<String>> getLargestAnagramSets() {
+			long start = System.nanoTime();
+			try {
+				return snapshot.getLargestAnagramSets();
+			} catch (RuntimeException e) {
+				getLargestAnagramSets.failed();
+				throw e;
+			} finally {
+				getLargestAnagramSets.finished(start);
+			}
+		}
+
+		@Override
+		public GroupCursor visitLargestAnagramSets(GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+			long start = System.nanoTime();
+			try {
+				return snapshot.visitLargestAnagramSets(after, limit, visitor);
+			} catch (IOException | RuntimeException e) {
+				visitLargestAnagramSets.failed();
+				throw e;
+			} finally {
+				visitLargestAnagramSets.finished(start);
+			}
+		}
+
+		@Override
+		public ArrayList<Set<String>> getAnagramGroupsBySize(int size) {
+			long start = System.nanoTime();
+			try {
+				return snapshot.getAnagramGroupsBySize(size);
+			} catch (RuntimeException e) {
+				getAnagramGroupsBySize.failed();
+				throw e;
+			} finally {
+				getAnagramGroupsBySize.finished(start);
+			}
+		}
+
+		@Override
+		public GroupCursor visitAnagramGroupsBySize(int size, GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+			long start = System.nanoTime();
+			try {
+				return snapshot.visitAnagramGroupsBySize(size, after, limit, visitor);
+			} catch (IOException | RuntimeException e) {
+				visitAnagramGroupsBySize.failed();
+				throw e;
+			} finally {
+				visitAnagramGroupsBySize.finished(start);
+			}
+		}
+	}
+
+	/**
+	 * The latency histogram and error counter of a single operation.
+	 */
+	private static final class Operation {
+		private final LatencyHistogram latency;
+		private final LongAdder errors;
+
+		Operation(MetricsRegistry metrics, String name){
+			latency = metrics.timer(LATENCY, "operation", name);
+			errors = metrics.counter(ERRORS, "operation", name);
+		}
+
+		void finished(long start){
+			latency.recordSince(start);
+		}
+
+		void failed(){
+			errors.increment();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.hreed.anagram.server.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds, in the style of HdrHistogram.
+ *
+ * Buckets are log-linear: every power of two is split into 16 equal sub-buckets, so any recorded value
+ * lands in a bucket no more than about 6% wider than the value itself, from single nanoseconds up to hours,
+ * in a fixed array of under a thousand counters.
+ *
+ * Recording a value finds its bucket with a couple of shifts and bumps a few atomic counters, so it never locks or allocates
+ * and is cheap enough to leave on the hottest paths. Reading percentiles walks the buckets, and is only meant for the metrics endpoints.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	//Values below SUB_BUCKETS get a bucket each, then every power of two from there up to 2^62 gets SUB_BUCKETS
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * @param nanos The latency to record. Negative values (from a clock going backwards) are recorded as zero.
+	 */
+	public void record(long nanos){
+		if (nanos < 0){
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucketOf(nanos));
+		count.increment();
+		totalNanos.add(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)){
+			max = maxNanos.get();
+		}
+	}
+
+	/**
+	 * @param startNanos A start time from System.nanoTime()
+	 */
+	public void recordSince(long startNanos){
+		record(System.nanoTime() - startNanos);
+	}
+
+	static int bucketOf(long value){
+		if (value < SUB_BUCKETS){
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	//The largest value that falls into the bucket
+	static long highestValueIn(int bucket){
+		if (bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (SUB_BUCKETS + subBucket) * width + width - 1;
+	}
+
+	public long getCount(){
+		return count.sum();
+	}
+
+	public long getTotalNanos(){
+		return totalNanos.sum();
+	}
+
+	public long getMaxNanos(){
+		return maxNanos.get();
+	}
+
+	/**
+	 * @param quantile The quantile to find, between 0 and 1 (0.99 for the 99th percentile)
+	 * @return The latency at or below which the given fraction of recorded values fall, to within the bucket precision
+	 */
+	public long getValueAtQuantile(double quantile){
+		long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int bucket = 0; bucket < BUCKET_COUNT; bucket++){
+			snapshot[bucket] = counts.get(bucket);
+			total += snapshot[bucket];
+		}
+		return valueAtQuantile(snapshot, total, quantile);
+	}
+
+	private long valueAtQuantile(long[] snapshot, long total, double quantile){
+		if (total == 0){
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKET_COUNT; bucket++){
+			seen += snapshot[bucket];
+			if (seen >= target){
+				//Never report more than the largest value actually seen
+				return Math.min(highestValueIn(bucket), maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+
+	/**
+	 * @return The count, mean, common percentiles and max, in microseconds, from a single pass over the buckets
+	 */
+	public Map<String, Object> toMap(){
+		long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int bucket = 0; bucket < BUCKET_COUNT; bucket++){
+			snapshot[bucket] = counts.get(bucket);
+			total += snapshot[bucket];
+		}
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("count", total);
+		result.put("mean_us", total == 0 ? 0.0 : microseconds(totalNanos.sum() / (double) total));
+		result.put("p50_us", microseconds(valueAtQuantile(snapshot, total, 0.5)));
+		result.put("p90_us", microseconds(valueAtQuantile(snapshot, total, 0.9)));
+		result.put("p99_us", microseconds(valueAtQuantile(snapshot, total, 0.99)));
+		result.put("p999_us", microseconds(valueAtQuantile(snapshot, total, 0.999)));
+		result.put("max_us", microseconds(maxNanos.get()));
+		return result;
+	}
+
+	private static double microseconds(double nanos){
+		return Math.round(nanos / 100.0) / 10.0;
+	}
+}
@@ -0,0 +1,46 @@
+package com.hreed.anagram.server.metrics;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+import com.hreed.anagram.server.service.impl.StorageConfig;
+import com.hreed.anagram.server.web.MetricsInterceptor;
+import com.hreed.anagram.server.web.MetricsWebFilter;
+
+/**
+ * Wires the metrics in: the controller gets an instrumented wrapper around whichever storage is configured (see {@link StorageConfig}),
+ * and every request passes through the MetricsInterceptor,
+ * or the MetricsWebFilter when the server runs in reactive mode.
+ */
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+
+	private final MetricsRegistry metrics;
+
+	public MetricsConfig(MetricsRegistry metrics){
+		this.metrics = metrics;
+	}
+
+	@Bean
+	@Primary
+	public AnagramCorpusService instrumentedAnagramCorpusService(StorageConfig.Storage storage){
+		return new InstrumentedAnagramCorpusService(storage.service(), metrics);
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry){
+		registry.addInterceptor(new MetricsInterceptor(metrics));
+	}
+
+	@Bean
+	@ConditionalOnWebApplication(type = Type.REACTIVE)
+	public MetricsWebFilter metricsWebFilter(){
+		return new MetricsWebFilter(metrics);
+	}
+}
@@ -0,0 +1,151 @@
+package com.hreed.anagram.server.metrics;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds every metric the server records: latency histograms, counters and gauges.
+ *
+ * Metrics are grouped into families by name, and within a family by the value of a single label (the endpoint or operation).
+ * Metrics should be looked up once and held onto by whatever records them, so the hot paths never touch the registry itself.
+ *
+ * The registry can be written out either as nested JSON for /metrics.json, or in the Prometheus text exposition format for /metrics.
+ */
+@Component
+public class MetricsRegistry {
+
+	private static final String NO_LABEL = "";
+
+	private final ConcurrentHashMap<String, Family> families = new ConcurrentHashMap<String, Family>();
+
+	/**
+	 * @param name The name of the histogram family, in seconds (e.g. anagram_service_latency_seconds)
+	 * @param label The name of the label that tells the histograms in the family apart
+	 * @param value The value of the label for this histogram
+	 * @return The histogram, created the first time it is asked for
+	 */
+	public LatencyHistogram timer(String name, String label, String value){
+		return (LatencyHistogram) family(name, Type.SUMMARY, label).series.computeIfAbsent(value, series -> new LatencyHistogram());
+	}
+
+	/**
+	 * @param name The name of the counter family (e.g. anagram_http_errors_total)
+	 * @param label The name of the label that tells the counters in the family apart
+	 * @param value The value of the label for this counter
+	 * @return The counter, created the first time it is asked for
+	 */
+	public LongAdder counter(String name, String label, String value){
+		return (LongAdder) family(name, Type.COUNTER, label).series.computeIfAbsent(value, series -> new LongAdder());
+	}
+
+	/**
+	 * @param name The name of the gauge
+	 * @param gauge Reads the current value of the gauge. It is only called when the metrics are read, and replaces any earlier gauge of the same name.
+	 */
+	public void gauge(String name, Supplier<? extends Number> gauge){
+		family(name, Type.GAUGE, null).series.put(NO_LABEL, gauge);
+	}
+
+	private Family family(String name, Type type, String label){
+		Family family = families.get(name);
+		if (family == null){
+			family = families.computeIfAbsent(name, newName -> new Family(type, label));
+		}
+		if (family.type != type){
+			throw new IllegalArgumentException("Metric `"+name+"` is already registered as a "+family.type.name().toLowerCase());
+		}
+		return family;
+	}
+
+	/**
+	 * @return Every metric by family and then by label value, with histograms summarized in microseconds
+	 */
+	public Map<String, Object> toMap(){
+		Map<String, Object> result = new TreeMap<String, Object>();
+		for (Entry<String, Family> family : families.entrySet()){
+			if (family.getValue().type == Type.GAUGE){
+				result.put(family.getKey(), read(family.getValue().series.get(NO_LABEL)));
+				continue;
+			}
+			Map<String, Object> series = new TreeMap<String, Object>();
+			for (Entry<String, Object> metric : family.getValue().series.entrySet()){
+				series.put(metric.getKey(), read(metric.getValue()));
+			}
+			result.put(family.getKey(), series);
+		}
+		return result;
+	}
+
+	/**
+	 * @return Every metric in the Prometheus text exposition format (version 0.0.4), with histograms as summaries in seconds
+	 */
+	public String toText(){
+		StringBuilder text = new StringBuilder();
+		for (Entry<String, Family> entry : new TreeMap<String, Family>(families).entrySet()){
+			String name = entry.getKey();
+			Family family = entry.getValue();
+			text.append("# TYPE ").append(name).append(' ').append(family.type.name().toLowerCase()).append('\n');
+			for (Entry<String, Object> metric : new TreeMap<String, Object>(family.series).entrySet()){
+				String labels = family.label == null ? "" : family.label + "=\"" + escape(metric.getKey()) + "\"";
+				Object value = metric.getValue();
+				if (value instanceof LatencyHistogram){
+					LatencyHistogram histogram = (LatencyHistogram) value;
+					String separator = labels.isEmpty() ? "" : ",";
+					for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}){
+						appendSample(text, name, labels + separator + "quantile=\"" + quantile + "\"", histogram.getValueAtQuantile(quantile) / 1e9);
+					}
+					appendSample(text, name + "_sum", labels, histogram.getTotalNanos() / 1e9);
+					appendSample(text, name + "_count", labels, histogram.getCount());
+				} else {
+					appendSample(text, name, labels, read(value));
+				}
+			}
+		}
+		return text.toString();
+	}
+
+	private static void appendSample(StringBuilder text, String name, String labels, Object value){
+		text.append(name);
+		if (!labels.isEmpty()){
+			text.append('{').append(labels).append('}');
+		}
+		text.append(' ').append(value).append('\n');
+	}
+
+	private static String escape(String labelValue){
+		return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object read(Object metric){
+		if (metric instanceof LatencyHistogram){
+			return ((LatencyHistogram) metric).toMap();
+		}
+		if (metric instanceof LongAdder){
+			return ((LongAdder) metric).sum();
+		}
+		Number value = ((Supplier<? extends Number>) metric).get();
+		return value == null ? 0 : value;
+	}
+
+	private enum Type {
+		SUMMARY, COUNTER, GAUGE
+	}
+
+	private static final class Family {
+		final Type type;
+		final String label;
+		final ConcurrentHashMap<String, Object> series = new ConcurrentHashMap<String, Object>();
+
+		Family(Type type, String label){
+			this.type = type;
+			this.label = label;
+		}
+	}
+}
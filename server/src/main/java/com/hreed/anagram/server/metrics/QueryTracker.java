@@ -0,0 +1,219 @@
+package com.hreed.anagram.server.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.hreed.anagram.server.service.impl.AnagramKey;
+
+/**
+ * Keeps track of which words are being looked up, for GET /recent.json and GET /popular.json.
+ *
+ * Recording a lookup only writes it into a {@link RecentQueries} ring, which never locks, so the lookup endpoints can call it on every request
+ * without the request threads ever waiting on each other or on a reader. Counting happens off the request threads: whenever a ring
+ * has filled halfway since the last drain, a background thread drains every ring into two {@link HeavyHitters}, one counting the words
+ * as they were looked up and one counting their case-folded anagram keys. Drains are at least 100ms apart, so if lookups come in faster
+ * than that, the rings wrap around before they are drained. Whenever they do, the tracker halves the share of lookups it samples,
+ * and doubles it again once the lookups slow down. A lookup that isn't sampled is only counted, and each sampled one is counted
+ * as many times as the sample rate, so the counts stay estimates of every lookup rather than taking ever more time away from them.
+ *
+ * Counts are halved every half-life, so the popular words are the ones looked up the most lately rather than since the server started.
+ */
+@Component
+public class QueryTracker {
+
+	private static final int SKETCH_WIDTH = 1 << 14;
+	private static final int MAX_RINGS = 64;
+	//Draining is held to this often, which bounds the time the counting takes away from the lookups however fast they come in
+	private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	//Samples at least one lookup in this many however fast they come in
+	private static final int MAX_SAMPLE_SHIFT = 10;
+
+	private final int recentSize;
+	private final RecentQueries recent;
+	private final HeavyHitters<String> words;
+	private final HeavyHitters<AnagramKey> keys;
+	private final long halfLifeNanos;
+	private final ExecutorService ownExecutor;
+	private final Executor drainer;
+	private final AtomicBoolean drainPending = new AtomicBoolean();
+	//A drain is started each time a ring takes another half of its capacity, which is a power of two
+	private final long drainMask;
+	private final LongSupplier clock;
+	private volatile long nextDrainAt;
+	//One less than the sample rate, which is a power of two
+	private volatile int sampleMask;
+	private int sampleShift;
+	private long drainedAt;
+	private long decayedAt;
+
+	@Autowired
+	public QueryTracker(@Value("${anagram.queries.recent-size:100}") int recentSize,
+			@Value("${anagram.queries.top-size:100}") int topSize,
+			@Value("${anagram.queries.half-life-seconds:300}") long halfLifeSeconds){
+		this(recentSize, topSize, TimeUnit.SECONDS.toNanos(halfLifeSeconds), null);
+	}
+
+	/**
+	 * @param recentSize The most recent lookups to keep
+	 * @param topSize How many of the most looked up words and keys to keep
+	 * @param halfLifeNanos How long it takes for a count to be halved
+	 * @param drainer Runs the drains, or null to drain on a thread of the tracker's own
+	 */
+	public QueryTracker(int recentSize, int topSize, long halfLifeNanos, Executor drainer){
+		this(recentSize, topSize, halfLifeNanos, drainer, System::nanoTime);
+	}
+
+	/**
+	 * @param clock The time lookups are recorded and counts decay by, in nanoseconds
+	 */
+	QueryTracker(int recentSize, int topSize, long halfLifeNanos, Executor drainer, LongSupplier clock){
+		this.recentSize = recentSize;
+		this.clock = clock;
+		this.nextDrainAt = clock.getAsLong();
+		this.drainedAt = nextDrainAt;
+		this.decayedAt = nextDrainAt;
+		//Enough rings that concurrent request threads rarely share one, and enough room in each that the drainer has time to catch up
+		this.recent = new RecentQueries(Math.max(recentSize, 256), Math.min(4 * Runtime.getRuntime().availableProcessors(), MAX_RINGS), clock);
+		this.words = new HeavyHitters<String>(topSize, SKETCH_WIDTH);
+		this.keys = new HeavyHitters<AnagramKey>(topSize, SKETCH_WIDTH);
+		this.halfLifeNanos = Math.max(halfLifeNanos, 1);
+		this.drainMask = recent.capacity() / 2 - 1;
+		if (drainer == null){
+			this.ownExecutor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "query-tracking");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.drainer = ownExecutor;
+		} else {
+			this.ownExecutor = null;
+			this.drainer = drainer;
+		}
+	}
+
+	@PreDestroy
+	public void close(){
+		if (ownExecutor != null){
+			ownExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Records a lookup of the word. Never blocks, and is cheap enough to call on every lookup.
+	 */
+	public void record(String word){
+		long sequence = recent.record(word, sampleMask);
+		if (sequence >= 0 && (sequence & drainMask) == drainMask && clock.getAsLong() - nextDrainAt >= 0 && drainPending.compareAndSet(false, true)){
+			drainer.execute(this::drain);
+		}
+	}
+
+	private synchronized void drain(){
+		drainPending.set(false);
+		long dropped = recent.dropped();
+		//Lookups can wait in the rings across a half-life, so each is counted after the halvings that came before it, and before the ones after it
+		final TreeMap<Long, List<Lookup>> byHalfLife = new TreeMap<Long, List<Lookup>>();
+		long backlog = recent.drain((word, nanos, weight) -> byHalfLife.computeIfAbsent(Math.max(0, (nanos - decayedAt) / halfLifeNanos),
+				halfLife -> new ArrayList<Lookup>()).add(new Lookup(word, weight)));
+		long halvings = 0;
+		for (Entry<Long, List<Lookup>> lookups : byHalfLife.entrySet()){
+			decay(lookups.getKey() - halvings);
+			halvings = lookups.getKey();
+			for (Lookup lookup : lookups.getValue()){
+				words.add(lookup.word, lookup.weight);
+				AnagramKey key = AnagramKey.foldedOf(lookup.word);
+				if (key != null){
+					keys.add(key, lookup.weight);
+				}
+			}
+		}
+		long now = clock.getAsLong();
+		decay((now - decayedAt) / halfLifeNanos);
+		adjustSampling(recent.dropped() > dropped, backlog, now - drainedAt);
+		drainedAt = now;
+		nextDrainAt = now + DRAIN_INTERVAL_NANOS;
+	}
+
+	//Samples half as many lookups once they lap the drains, and twice as many again once even that many would fill less than an eighth of a ring
+	//between drains. A drain soon after the last one (as for /popular.json) has too little to go on, so it never raises the rate.
+	private void adjustSampling(boolean lapped, long backlog, long sinceLastDrain){
+		if (lapped){
+			sampleShift = Math.min(sampleShift + 1, MAX_SAMPLE_SHIFT);
+		} else if (sampleShift > 0 && sinceLastDrain >= DRAIN_INTERVAL_NANOS && backlog * 2 * DRAIN_INTERVAL_NANOS < recent.capacity() / 8 * sinceLastDrain){
+			sampleShift--;
+		}
+		sampleMask = (1 << sampleShift) - 1;
+	}
+
+	private void decay(long halvings){
+		if (halvings > 0){
+			words.decay((int) Math.min(halvings, 63));
+			keys.decay((int) Math.min(halvings, 63));
+			decayedAt += halvings * halfLifeNanos;
+		}
+	}
+
+	/**
+	 * @param limit The most words to return, or null for as many as are kept
+	 * @return The most recently looked up words, newest first, with repeats
+	 */
+	public List<String> getRecentQueries(Integer limit){
+		return recent.latest(limit == null ? recentSize : Math.min(limit, recentSize));
+	}
+
+	/**
+	 * @param limit The most words and keys to return, or null for as many as are kept
+	 * @return The most looked up words and case-folded anagram keys with their decayed counts, along with how many lookups were recorded,
+	 * how many sampled lookups were overwritten before they were counted, and one in how many lookups is being sampled
+	 */
+	public synchronized Map<String, Object> getPopularQueries(Integer limit){
+		//Counts everything recorded up to now first, so a lookup shows up straight away
+		drain();
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		int top = limit == null ? Integer.MAX_VALUE : limit;
+		result.put("words", counts(words.top(top), "word"));
+		result.put("keys", counts(keys.top(top), "key"));
+		result.put("recorded", recent.recorded());
+		result.put("dropped", recent.dropped());
+		result.put("sample_rate", sampleMask + 1);
+		result.put("half_life_seconds", halfLifeNanos / 1e9);
+		return result;
+	}
+
+	private static <T> List<Map<String, Object>> counts(List<Entry<T, Long>> top, String name){
+		List<Map<String, Object>> counts = new ArrayList<Map<String, Object>>();
+		for (Entry<T, Long> entry : top){
+			Map<String, Object> count = new LinkedHashMap<String, Object>();
+			count.put(name, entry.getKey().toString());
+			count.put("count", entry.getValue());
+			counts.add(count);
+		}
+		return counts;
+	}
+
+	private static final class Lookup {
+		final String word;
+		final int weight;
+
+		Lookup(String word, int weight){
+			this.word = word;
+			this.weight = weight;
+		}
+	}
+}
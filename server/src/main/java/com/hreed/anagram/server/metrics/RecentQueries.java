@@ -0,0 +1,212 @@
+package com.hreed.anagram.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * A lock-free log of the most recently searched words, kept in a set of fixed size ring buffers.
+ *
+ * Each thread writes to one of the rings, picked by its thread id, so threads serving requests at the same time almost never
+ * touch the same counter. Recording a word claims the ring's next slot with a single atomic increment and overwrites whatever was there,
+ * so it never locks and never waits on a reader. Every ring holds the whole capacity, so the newest entries across all of them
+ * are always the most recent searches, whichever threads they came in on.
+ *
+ * Searches can be sampled: with a sample rate of n, only every nth search on each ring is written to it, and the rest are only counted,
+ * without allocating an entry or reading the clock.
+ *
+ * The rings double as a buffer for counting the searches elsewhere. {@link #drain} hands over every entry written since the last drain.
+ * If the writers lap the drain, the overwritten entries are counted as dropped rather than slowing the writers down.
+ */
+public final class RecentQueries {
+
+	private static final Comparator<Query> NEWEST_FIRST = new Comparator<Query>() {
+		public int compare(Query first, Query second){
+			return Long.compare(second.nanos, first.nanos);
+		}
+	};
+
+	private final Ring[] rings;
+	private final int ringMask;
+	private final int capacity;
+	private final int slotMask;
+	private final LongSupplier clock;
+	//Only touched by whichever thread is draining, which the caller makes sure is one at a time
+	private long dropped;
+
+	/**
+	 * @param capacity How many entries each ring holds, rounded up to a power of two. This is the most {@link #latest} can return.
+	 * @param rings How many rings to spread the writers over, rounded up to a power of two
+	 */
+	public RecentQueries(int capacity, int rings){
+		this(capacity, rings, System::nanoTime);
+	}
+
+	/**
+	 * @param clock The time each search is recorded at, in nanoseconds
+	 */
+	RecentQueries(int capacity, int rings, LongSupplier clock){
+		this.clock = clock;
+		this.capacity = powerOfTwoAtLeast(capacity);
+		this.slotMask = this.capacity - 1;
+		this.rings = new Ring[powerOfTwoAtLeast(rings)];
+		this.ringMask = this.rings.length - 1;
+		for (int i = 0; i < this.rings.length; i++){
+			this.rings[i] = new Ring(this.capacity);
+		}
+	}
+
+	private static int powerOfTwoAtLeast(int value){
+		return Math.max(1, Integer.highestOneBit(Math.max(1, value) - 1) << 1);
+	}
+
+	/**
+	 * Records every search. Safe to call from any number of threads at once.
+	 *
+	 * @return How many entries the calling thread's ring had taken before this one
+	 */
+	public long record(String word){
+		return record(word, 0);
+	}
+
+	/**
+	 * Records a sample of the searches. Safe to call from any number of threads at once.
+	 *
+	 * @param sampleMask One less than the sample rate, which must be a power of two. 0 records every search.
+	 * @return How many entries the calling thread's ring had taken before this one, which the caller can use to decide when to drain,
+	 * or -1 if the search wasn't sampled
+	 */
+	public long record(String word, int sampleMask){
+		Ring ring = rings[(int) Thread.currentThread().getId() & ringMask];
+		//Whether to sample is decided before anything else is done, so a search that isn't sampled only costs the increments
+		if (sampleMask != 0 && (ring.sampling.getAndIncrement() & sampleMask) != 0){
+			ring.skipped.getAndIncrement();
+			return -1;
+		}
+		long sequence = ring.written.getAndIncrement();
+		//Readers only need to see the entry eventually, so the slot is written without a full fence
+		ring.slots.lazySet((int) sequence & slotMask, new Query(word, sequence, clock.getAsLong(), sampleMask + 1));
+		return sequence;
+	}
+
+	public int capacity(){
+		return capacity;
+	}
+
+	/**
+	 * @param limit The most words to return
+	 * @return The most recently searched words, newest first. A search still being recorded may not be included yet.
+	 */
+	public List<String> latest(int limit){
+		List<Query> queries = new ArrayList<Query>();
+		for (Ring ring : rings){
+			for (int slot = 0; slot < capacity; slot++){
+				Query query = ring.slots.get(slot);
+				if (query != null){
+					queries.add(query);
+				}
+			}
+		}
+		Collections.sort(queries, NEWEST_FIRST);
+		List<String> words = new ArrayList<String>();
+		for (Query query : queries.subList(0, Math.min(Math.max(limit, 0), queries.size()))){
+			words.add(query.word);
+		}
+		return words;
+	}
+
+	/**
+	 * Hands every word recorded since the last drain to the consumer.
+	 * Must only be called by one thread at a time. A slot that has been claimed but not yet written stops the drain of its ring there,
+	 * to be picked up by the next one.
+	 *
+	 * @return The most entries any one ring had taken since the last drain, including any that had been overwritten
+	 */
+	public long drain(QueryConsumer consumer){
+		long backlog = 0;
+		for (Ring ring : rings){
+			long written = ring.written.get();
+			long sequence = ring.drained;
+			backlog = Math.max(backlog, written - sequence);
+			if (written - sequence > capacity){
+				dropped += written - capacity - sequence;
+				sequence = written - capacity;
+			}
+			for (; sequence < written; sequence++){
+				Query query = ring.slots.get((int) sequence & slotMask);
+				if (query == null || query.sequence < sequence){
+					break;
+				}
+				if (query.sequence > sequence){
+					//Overwritten by a writer that has lapped the drain since it started
+					dropped++;
+				} else {
+					consumer.accept(query.word, query.nanos, query.weight);
+				}
+			}
+			ring.drained = sequence;
+		}
+		return backlog;
+	}
+
+	/**
+	 * @return How many searches have been recorded in total, sampled or not
+	 */
+	public long recorded(){
+		long recorded = 0;
+		for (Ring ring : rings){
+			recorded += ring.written.get() + ring.skipped.get();
+		}
+		return recorded;
+	}
+
+	/**
+	 * @return How many entries were overwritten before a drain could hand them over. Only up to date as of the last drain.
+	 */
+	public long dropped(){
+		return dropped;
+	}
+
+	/**
+	 * Takes the drained entries
+	 */
+	public interface QueryConsumer {
+		/**
+		 * @param word The word searched for
+		 * @param nanos The time it was recorded at, in nanoseconds
+		 * @param weight How many searches the entry stands for, which is the sample rate it was recorded at
+		 */
+		void accept(String word, long nanos, int weight);
+	}
+
+	private static final class Ring {
+		final AtomicLong written = new AtomicLong();
+		//Only touched while sampling
+		final AtomicLong sampling = new AtomicLong();
+		final AtomicLong skipped = new AtomicLong();
+		final AtomicReferenceArray<Query> slots;
+		long drained;
+
+		Ring(int capacity){
+			slots = new AtomicReferenceArray<Query>(capacity);
+		}
+	}
+
+	private static final class Query {
+		final String word;
+		final long sequence;
+		final long nanos;
+		final int weight;
+
+		Query(String word, long sequence, long nanos, int weight){
+			this.word = word;
+			this.sequence = sequence;
+			this.nanos = nanos;
+			this.weight = weight;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.hreed.anagram.server.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Set;
@@ -11,14 +13,16 @@ public interface AnagramCorpusService {
 	/**Takes a set of words and adds them to the corpus if they don't already exist
 	 * 
 	 * @param newWords The collection of new words to be added
+	 * @return How many of the words were added, leaving out any that were already in the corpus or aren't valid words
 	 */
-	public void addWords(Set<String> newWords);
+	public int addWords(Set<String> newWords);
 	
 	/**Given a word and limit value, return all anagrams for the given word, up to the limit provided.
 	 * 
 	 * @param word The word to be used for finding anagrams of
 	 * @param limit Limit on the number of anagrams returned.  Returns all if null.
-	 * @return The set of all (or potentially limited) anagrams of the provided word
+	 * @return The set of all (or potentially limited) anagrams of the provided word, in alphabetical order, so a limit always keeps the same anagrams.
+	 * The set is read-only, and may be a view of the corpus rather than a copy.
 	 */
 	public Set<String> getAnagrams(String word, Integer limit);
 	
@@ -27,9 +31,65 @@ public interface AnagramCorpusService {
 	 * @param word The word to be used for finding anagrams of
 	 * @param limit Limit on the number of anagrams returned. Returns all if null.
 	 * @return The set of all (or porentially limited) anagrams of the provided word, regardless of capitalized characters.
+	 * Like {@link #getAnagrams(String, Integer)}, it is read-only and in alphabetical order.
 	 */
 	public Set<String> getAnagramsCaseInsensitive(String word, Integer limit);
-	
+
+	/**Given a word and limit value, pass each anagram of the word to the visitor in alphabetical order, up to the limit provided.
+	 * Nothing is copied along the way; the visitor is handed the words straight out of the corpus, which makes this the cheap path for batch lookups.
+	 * 
+	 * @param word The word to be used for finding anagrams of
+	 * @param limit Limit on the number of anagrams visited. Visits all if null.
+	 * @param caseInsensitive If true, visit anagrams regardless of capitalization
+	 * @param visitor Receives each anagram
+	 * @return The number of anagrams visited
+	 * @throws IOException If the visitor failed to write out an anagram
+	 */
+	public int visitAnagrams(String word, Integer limit, boolean caseInsensitive, AnagramVisitor visitor) throws IOException;
+
+	/**Given a word and limit value, write its anagrams straight to the stream as the JSON object {"anagrams":[...]}, in alphabetical order, up to the limit provided.
+	 * This is what GET /anagrams/:word.json sends, and implementations are free to serve it from already serialized bytes.
+	 * 
+	 * @param word The word to be used for finding anagrams of
+	 * @param limit Limit on the number of anagrams written. Writes all if null.
+	 * @param caseInsensitive If true, include anagrams regardless of capitalization
+	 * @param out Where to write the JSON (as UTF-8)
+	 * @throws IOException If the JSON couldn't be written to the stream
+	 */
+	public void writeAnagramsJson(String word, Integer limit, boolean caseInsensitive, OutputStream out) throws IOException;
+
+	/**Given a query where each '?' is a blank that may stand in for any lowercase letter, return every word that is an anagram of the query, up to the limit provided.
+	 * 
+	 * @param query The letters to find anagrams of, including up to three blanks
+	 * @param limit Limit on the number of anagrams returned. Returns all if null.
+	 * @param caseInsensitive If true, return matches regardless of capitalization
+	 * @return The set of all (or potentially limited) words matching the query, in alphabetical order, so a limit always keeps the same words
+	 * @throws IllegalArgumentException If the query has more than three blanks
+	 */
+	public Set<String> getWildcardAnagrams(String query, Integer limit, boolean caseInsensitive);
+
+	/**Given a rack of letters, return every word in the corpus that can be spelled using some or all of them, longest words first.
+	 * Searches are bounded by a maximum number of results and a time budget, so very large racks may return a partial result.
+	 *
+	 * @param letters The letters available to spell words from
+	 * @param after The last word of the previous page, to page through more words than the configured maximum, or null to start from the first
+	 * @param limit Limit on the number of words returned. Returns up to the configured maximum if null.
+	 * @param caseInsensitive Whether proper nouns may be included
+	 * @return The words found under "anagrams", and whether the search ran out of time under "timed_out"
+	 */
+	public Map<String, Object> getSubAnagrams(String letters, String after, Integer limit, boolean caseInsensitive);
+
+	/**Given a rack of letters (or a phrase), return phrases of one or more words from the corpus that use every letter exactly once.
+	 * Searches are bounded by a maximum number of results and a time budget, so very large racks may return a partial result.
+	 *
+	 * @param letters The letters to be rearranged. Whitespace is ignored.
+	 * @param limit Limit on the number of phrases returned. Returns up to the configured maximum if null.
+	 * @param maxWords The most words allowed in a single phrase. Uses the default of three if null.
+	 * @param caseInsensitive Whether proper nouns may be included
+	 * @return The phrases found under "phrases", and whether the search ran out of time under "timed_out"
+	 */
+	public Map<String, Object> getAnagramPhrases(String letters, Integer limit, Integer maxWords, boolean caseInsensitive);
+
 	/**
 	 * Deletes the specified word from the corpus if it exists
 	 * @param word The word to be deleted
@@ -47,8 +107,8 @@ public interface AnagramCorpusService {
 	 */
 	public void deleteAllWords();
 
-	/**Clears the current corpus,
-	 * then loads an internal file from the relative path, given the name of the file
+	/**Replaces the current corpus with the contents of an internal file from the relative path, given the name of the file.
+	 * The new corpus is built completely before it replaces the current one, so lookups never see a partially loaded dictionary.
 	 * 
 	 * @param fileName The name of the text file to load into the corpus. Assumes the file is located at /src/main/resources
 	 */
@@ -60,21 +120,59 @@ public interface AnagramCorpusService {
 	 * @return The set of all metadata in a key,value collection.
 	 */
 	public Map<String, Object> getCorpusMetadata();
+
+	/**
+	 * Takes a snapshot of the corpus as it is right now, for reading the metadata and the anagram set listings at one consistent version.
+	 * Taking one is constant time and copies nothing, and writers carry on changing the corpus without affecting it.
+	 * @return The snapshot of the latest version of the corpus
+	 */
+	public AnagramCorpusSnapshot getSnapshot();
+
+	/**
+	 * Reports how much memory the corpus takes up, broken down by the structures it is stored in, for sizing the heap.
+	 * Sizes are estimated from the usual layout of objects on a 64-bit JVM rather than measured, so they are close but not exact.
+	 * @return The storage engine's name, the bytes taken by each structure under "structures", their total, and the raw size of the words for comparison.
+	 */
+	public Map<String, Object> getMemoryFootprint();
 	
 	/**
 	 * Returns a list of the largest anagram sets. In the event of a tie for size, multiple sets are returned.
 	 * If the dictionary is empty, an empty ArrayList is returned.
-	 * @return An ArrayList containing zero, one, or many sets of anagrams.
+	 * @return An ArrayList containing zero, one, or many read-only sets of anagrams.
 	 */
 	public ArrayList<Set<String>> getLargestAnagramSets();
 	
+	/**
+	 * Passes the largest anagram sets to the visitor one page at a time, in key order, without copying them into a list.
+	 * 
+	 * @param after Where the previous page left off, or null for the first page
+	 * @param limit Limit on the number of sets visited. Visits all of the remaining sets if null.
+	 * @param visitor Receives each anagram set
+	 * @return Where this page left off, to be passed in for the next page, or null if there are no more sets
+	 * @throws IOException If the visitor failed to write out a set
+	 */
+	public GroupCursor visitLargestAnagramSets(GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException;
+	
 	/**
 	 * Returns a list of all anagram sets of an equal or greater size than the provided value.
 	 * Will return all available anagram sets for values of one or less
 	 * 
 	 * @param size The minimum size of all anagram sets to be returned.
-	 * @return A list of all anagram sets of size equal or greater than the provided value
+	 * @return A list of all read-only anagram sets of size equal or greater than the provided value
 	 */
 	public ArrayList<Set<String>> getAnagramGroupsBySize(int size);
 	
+	/**
+	 * Passes the anagram sets of an equal or greater size than the provided value to the visitor one page at a time,
+	 * smallest sets first and in key order within a size, without copying them into a list.
+	 * 
+	 * @param size The minimum size of the anagram sets to be visited.
+	 * @param after Where the previous page left off, or null for the first page
+	 * @param limit Limit on the number of sets visited. Visits all of the remaining sets if null.
+	 * @param visitor Receives each anagram set
+	 * @return Where this page left off, to be passed in for the next page, or null if there are no more sets
+	 * @throws IOException If the visitor failed to write out a set
+	 */
+	public GroupCursor visitAnagramGroupsBySize(int size, GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException;
+	
 }
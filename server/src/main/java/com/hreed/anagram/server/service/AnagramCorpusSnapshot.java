@@ -0,0 +1,52 @@
+package com.hreed.anagram.server.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A consistent, read-only view of the whole corpus as it was at one version.
+ *
+ * Every change to the corpus publishes a new version, and a snapshot only ever sees the changes made up to its own.
+ * The metadata and the listings of anagram sets read from one snapshot therefore always agree with each other,
+ * however many writers carry on changing the corpus while they're being read, and however long the snapshot is held on to.
+ */
+public interface AnagramCorpusSnapshot {
+
+	/**
+	 * @return The version of the corpus this is a snapshot of. Versions only ever go up, so a later change always has a higher version.
+	 */
+	public long getVersion();
+
+	/**
+	 * The same as {@link AnagramCorpusService#getCorpusMetadata()}, as of this snapshot's version
+	 */
+	public Map<String, Object> getCorpusMetadata();
+
+	/**
+	 * @return The number of words of each length as of this snapshot's version, indexed by length.
+	 * Unlike the metadata's median, these can be added up across the nodes of a sharded corpus.
+	 */
+	public long[] getWordLengthCounts();
+
+	/**
+	 * The same as {@link AnagramCorpusService#getLargestAnagramSets()}, as of this snapshot's version
+	 */
+	public ArrayList<Set<String>> getLargestAnagramSets();
+
+	/**
+	 * The same as {@link AnagramCorpusService#visitLargestAnagramSets(GroupCursor, Integer, AnagramGroupVisitor)}, as of this snapshot's version
+	 */
+	public GroupCursor visitLargestAnagramSets(GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException;
+
+	/**
+	 * The same as {@link AnagramCorpusService#getAnagramGroupsBySize(int)}, as of this snapshot's version
+	 */
+	public ArrayList<Set<String>> getAnagramGroupsBySize(int size);
+
+	/**
+	 * The same as {@link AnagramCorpusService#visitAnagramGroupsBySize(int, GroupCursor, Integer, AnagramGroupVisitor)}, as of this snapshot's version
+	 */
+	public GroupCursor visitAnagramGroupsBySize(int size, GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException;
+}
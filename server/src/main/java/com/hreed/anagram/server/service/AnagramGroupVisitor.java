@@ -0,0 +1,17 @@
+package com.hreed.anagram.server.service;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Receives anagram sets one at a time, so a caller can write them straight out
+ * instead of having the service collect them into a list first.
+ */
+public interface AnagramGroupVisitor {
+
+	/**
+	 * @param group The next anagram set. It is read-only, and only valid for the duration of the call unless it is copied.
+	 * @throws IOException If the set couldn't be written out. This stops the walk and is passed on to its caller.
+	 */
+	public void visit(Set<String> group) throws IOException;
+}
@@ -0,0 +1,16 @@
+package com.hreed.anagram.server.service;
+
+import java.io.IOException;
+
+/**
+ * Receives the results of a lookup one word at a time, so a caller can write them straight out
+ * instead of having the service collect them into a set first.
+ */
+public interface AnagramVisitor {
+
+	/**
+	 * @param word The next word found
+	 * @throws IOException If the word couldn't be written out. This stops the lookup and is passed on to its caller.
+	 */
+	public void visit(String word) throws IOException;
+}
@@ -0,0 +1,86 @@
+package com.hreed.anagram.server.service;
+
+import java.util.regex.Pattern;
+
+/**
+ * Marks where a page of anagram sets left off, so the next page can pick up right after it.
+ *
+ * Anagram sets are listed by size and then by key, and the cursor records both: the size of the last set on the page,
+ * and one of its words (any word of a set identifies its key). It is written out as "size-word", e.g. "5-alerts".
+ * Since it names a position rather than an offset, words added or removed between pages never cause sets to be skipped or repeated,
+ * other than sets that changed size in the meantime. A cursor with no word, e.g. "5-", is the start of the sets of that size.
+ */
+public final class GroupCursor {
+
+	private static final Pattern FORMAT = Pattern.compile("[1-9][0-9]{0,8}-([A-Za-z][a-z]*)?");
+
+	private final int size;
+	private final String word;
+
+	/**
+	 * @param size The size of the last anagram set on the page
+	 * @param word Any word of the last anagram set on the page
+	 */
+	public GroupCursor(int size, String word){
+		this.size = size;
+		this.word = word;
+	}
+
+	/**
+	 * @param size The size of the first anagram set on the page
+	 * @return A cursor for a page that starts with the first set of the given size
+	 */
+	public static GroupCursor start(int size){
+		return new GroupCursor(size, "");
+	}
+
+	/**
+	 * @param cursor A cursor as written out by {@link #toString()}
+	 * @return The cursor, or null if none was given
+	 * @throws IllegalArgumentException If the cursor isn't one this class wrote
+	 */
+	public static GroupCursor parse(String cursor){
+		if (cursor == null){
+			return null;
+		}
+		if (!FORMAT.matcher(cursor).matches()){
+			throw new IllegalArgumentException("Invalid cursor : "+cursor);
+		}
+		int dash = cursor.indexOf('-');
+		return new GroupCursor(Integer.parseInt(cursor.substring(0, dash)), cursor.substring(dash + 1));
+	}
+
+	public int getSize(){
+		return size;
+	}
+
+	/**
+	 * @return A word of the last anagram set on the page, or an empty string if this is the start of the sets of its size
+	 */
+	public String getWord(){
+		return word;
+	}
+
+	public boolean isStart(){
+		return word.isEmpty();
+	}
+
+	@Override
+	public boolean equals(Object other){
+		if (!(other instanceof GroupCursor)){
+			return false;
+		}
+		GroupCursor cursor = (GroupCursor) other;
+		return size == cursor.size && word.equals(cursor.word);
+	}
+
+	@Override
+	public int hashCode(){
+		return 31 * size + word.hashCode();
+	}
+
+	@Override
+	public String toString(){
+		return size + "-" + word;
+	}
+}
@@ -0,0 +1,361 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.hreed.anagram.server.metrics.MetricsRegistry;
+import com.hreed.anagram.server.service.AnagramCorpusSnapshot;
+import com.hreed.anagram.server.service.AnagramGroupVisitor;
+import com.hreed.anagram.server.service.GroupCursor;
+
+/**
+ * What the heap and arena storage engines share: the current corpus and the swap that replaces it, loading the dictionary (or its snapshot)
+ * into a new corpus off to the side, carrying the changes made during a reload over to that corpus, and the reads answered from a version of it.
+ * Each engine says how its corpus is built, and how words are looked up and changed in it.
+ *
+ * @param <C> The corpus the engine keeps its words in
+ */
+abstract class AbstractAnagramCorpusService<C extends StoredCorpus> implements RestorableAnagramCorpusService {
+
+	static final String DEFAULT_DICTIONARY = "/dictionary.txt";
+	//Only words made up of roman characters, where only the first character may be capitalized
+	private static final Pattern VALID_WORD = Pattern.compile("^[A-Za-z][a-z]*");
+	static final int DEFAULT_SEARCH_MAX_RESULTS = 1000;
+	static final long DEFAULT_SEARCH_TIMEOUT_MILLIS = 250;
+
+	//Every corpus this service publishes takes its version numbers from here, so they keep going up across reloads
+	final AtomicLong versions = new AtomicLong();
+	//Readers always work against whichever corpus is current, and a reload publishes a complete replacement in a single swap
+	final AtomicReference<C> corpus;
+	//Changes hold this shared and a reload holds it exclusively to swap in its corpus, so no change lands on the old corpus after the swap
+	private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+	private final Object reloadLock = new Object();
+	//The changes made while a reload builds its new corpus, to be made again on it before it is published. Null unless a reload is running.
+	private volatile List<Function<C,?>> reloadChanges;
+	private String snapshotFile;
+	//The keys this node keeps of a sharded corpus, or null to keep every key
+	private Predicate<AnagramKey> owned;
+	//Details of the last dictionary load, reported as gauges
+	private volatile long lastIngestLines;
+	private volatile long lastIngestNanos;
+	private final AtomicLong ingestCount = new AtomicLong();
+	private AnagramSearchEngine searchEngine = new AnagramSearchEngine(DEFAULT_SEARCH_MAX_RESULTS, DEFAULT_SEARCH_TIMEOUT_MILLIS);
+	private Logger log = Logger.getLogger(this.getClass());
+
+	/**
+	 * Starts out with an empty corpus. The engine loads the dictionary once it is ready to.
+	 *
+	 * @param snapshotFile Path to a precompiled binary snapshot of the dictionary, or "classpath:/name" for one on the class path (see {@link CorpusSnapshot}).
+	 * When it is blank, missing or invalid the dictionary text file is loaded instead.
+	 * @param shardNodes When this node holds one share of a sharded corpus, every node's base URL, comma separated (see {@link ShardRing}).
+	 * Only the anagram sets that belong on this node are loaded from the dictionary.
+	 * @param shardSelf This node's base URL, as it appears in shardNodes
+	 */
+	AbstractAnagramCorpusService(String snapshotFile, String shardNodes, String shardSelf){
+		corpus = new AtomicReference<C>(emptyCorpus());
+		if (snapshotFile != null && !snapshotFile.trim().isEmpty()){
+			this.snapshotFile = snapshotFile.trim();
+		}
+		owned = ShardRing.partition(shardNodes, shardSelf);
+	}
+
+	/**
+	 * @return A new corpus with no words in it, numbered from {@link #versions}. Called from the constructor, so it mustn't rely on the engine's own fields.
+	 */
+	abstract C emptyCorpus();
+
+	/**
+	 * @return A new corpus holding the given anagram sets, numbered from {@link #versions}
+	 */
+	abstract C newCorpus(Map<AnagramKey,? extends Collection<String>> groups);
+
+	/**Overrides the bounds placed on sub-anagram and phrase searches.
+	 *
+	 * @param maxResults The most results a single search may return
+	 * @param timeoutMillis How long a single search may run before it returns what it has found so far
+	 */
+	@Autowired(required = false)
+	public void configureSearch(@Value("${anagram.search.max-results:" + DEFAULT_SEARCH_MAX_RESULTS + "}") int maxResults,
+			@Value("${anagram.search.timeout-ms:" + DEFAULT_SEARCH_TIMEOUT_MILLIS + "}") long timeoutMillis){
+		searchEngine = new AnagramSearchEngine(maxResults, timeoutMillis);
+	}
+
+	/**Registers gauges for the size of the corpus and the last dictionary load.
+	 *
+	 * @param metrics The registry to add the gauges to
+	 */
+	@Autowired(required = false)
+	public void registerMetrics(MetricsRegistry metrics){
+		metrics.gauge("anagram_corpus_words", () -> corpus.get().wordCount());
+		metrics.gauge("anagram_corpus_anagram_sets", () -> corpus.get().groupCount());
+		metrics.gauge("anagram_ingest_loads", () -> ingestCount.get());
+		metrics.gauge("anagram_ingest_last_lines", () -> lastIngestLines);
+		metrics.gauge("anagram_ingest_last_duration_seconds", () -> lastIngestNanos / 1e9);
+		metrics.gauge("anagram_ingest_last_words_per_second", () -> lastIngestNanos == 0 ? 0 : (long) (lastIngestLines * 1e9 / lastIngestNanos));
+	}
+
+	/**
+	 * @param word The word to be validated
+	 * @return True if the word only contains roman characters & is either lowercase or properly capitalized
+	 */
+	static boolean isValidWord(String word){
+		//This regex excludes two hyphenated entries from the provided dictionary "Jean-Christophe" and "Jean-Pierre"
+		return VALID_WORD.matcher(word).matches();
+	}
+
+	/**Groups the valid words of a request up by key, so each anagram set is only updated once per request no matter how many of its words are added.
+	 * Invalid words are left out.
+	 */
+	Map<AnagramKey,List<String>> validWordsByKey(Set<String> newWords){
+		Map<AnagramKey,List<String>> wordsByKey = new HashMap<AnagramKey,List<String>>();
+		for (String word : newWords){
+			if (isValidWord(word)){
+				AnagramKey key = AnagramKey.of(word);
+				List<String> keyWords = wordsByKey.get(key);
+				if (keyWords == null){
+					keyWords = new ArrayList<String>(2);
+					wordsByKey.put(key, keyWords);
+				}
+				keyWords.add(word);
+			} else if (log.isDebugEnabled()){
+				log.debug("Invalid word:"+word);
+			}
+		}
+		return wordsByKey;
+	}
+
+	/**Makes a change to the current corpus. While a reload is building a new corpus, the change is also kept to be made again on that one
+	 * before it is published, so it isn't lost when the old corpus is swapped out.
+	 *
+	 * @param change The change, given the corpus to make it on
+	 * @return Whatever the change returns when it is made on the current corpus
+	 */
+	<T> T change(Function<C,T> change){
+		swapLock.readLock().lock();
+		try {
+			List<Function<C,?>> changes = reloadChanges;
+			if (changes == null){
+				return apply(change);
+			}
+			//Made one at a time during a reload, so they are made again in the order they were first made
+			synchronized (changes){
+				changes.add(change);
+				return apply(change);
+			}
+		} finally {
+			swapLock.readLock().unlock();
+		}
+	}
+
+	/**Makes a change on the current corpus. Engines that have to make their changes one at a time, or follow them up, override this.
+	 *
+	 * @return Whatever the change returns
+	 */
+	<T> T apply(Function<C,T> change){
+		return change.apply(corpus.get());
+	}
+
+	@Override
+	public void deleteAllWords() {
+		change(current -> {
+			//The current corpus is replaced outright. A corpus that a reload is still building has each of its sets removed instead, when this is made again on it.
+			if (current == corpus.get()){
+				publish(emptyCorpus());
+			} else {
+				for (AnagramKey key : new ArrayList<AnagramKey>(current.groups().keySet())){
+					current.removeGroup(key);
+				}
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public void populateCorpusFromDictionaryFile(String fileName){
+		//One reload at a time, each keeping the changes made while it runs
+		synchronized (reloadLock){
+			reloadChanges = new ArrayList<Function<C,?>>();
+			try {
+				loadDictionary(fileName);
+			} finally {
+				swapLock.writeLock().lock();
+				reloadChanges = null;
+				swapLock.writeLock().unlock();
+			}
+		}
+	}
+
+	private void loadDictionary(String fileName){
+		if (populateCorpusFromSnapshot(fileName) == true){
+			return;
+		}
+		log.info("Loading dictionary file `"+fileName+"`");
+		InputStream inputStream = openDictionary(fileName);
+		if (inputStream == null){
+			log.error("Unable to locate dictionary file `"+fileName+"` on class path. Dictionary not loaded.");
+			return;
+		}
+		try {
+			long start = System.nanoTime();
+			//The new corpus is built off to the side, so readers keep seeing the old one until it is complete
+			DictionaryIngest.Ingested ingested = DictionaryIngest.groups(inputStream, owned);
+			C newCorpus = newCorpus(ingested.groups);
+			publishReloaded(newCorpus);
+			long elapsedNanos = Math.max(System.nanoTime() - start, 1);
+			recordIngest(ingested.lines, elapsedNanos);
+			log.info("Ingested "+ingested.lines+" lines from `"+fileName+"` into "+newCorpus.groupCount()+" anagram sets in "
+					+elapsedNanos/1000000+"ms ("+(long) (ingested.lines * 1e9 / elapsedNanos)+" words/sec, "
+					+ForkJoinPool.getCommonPoolParallelism()+" workers)");
+		} catch (IOException e) {
+			log.error("Error processing dictionary file `"+fileName+"`. Is it formatted properly?");
+		}
+	}
+
+	/**Opens a dictionary file on the class path
+	 *
+	 * @param fileName The name of the dictionary file
+	 * @return The file, or null if there is no such file
+	 */
+	InputStream openDictionary(String fileName){
+		return getClass().getResourceAsStream(fileName);
+	}
+
+	/**Loads the corpus from the configured binary snapshot, if there is one and it was built from the given dictionary.
+	 *
+	 * @param fileName The name of the dictionary file the snapshot should have been built from
+	 * @return True if the corpus was loaded from the snapshot, false if the text dictionary still needs to be loaded
+	 */
+	private boolean populateCorpusFromSnapshot(String fileName){
+		if (snapshotFile == null){
+			return false;
+		}
+		try {
+			long start = System.nanoTime();
+			Map<AnagramKey,Set<String>> snapshot = CorpusSnapshot.read(snapshotFile, fileName);
+			if (owned != null){
+				snapshot.keySet().removeIf(owned.negate());
+			}
+			C newCorpus = newCorpus(snapshot);
+			publishReloaded(newCorpus);
+			recordIngest(newCorpus.wordCount(), Math.max(System.nanoTime() - start, 1));
+			log.info("Loaded dictionary snapshot `"+snapshotFile+"` ("+snapshot.size()+" anagram sets) in "+(System.nanoTime()-start)/1000000+"ms");
+			return true;
+		} catch (FileNotFoundException e) {
+			log.info("No dictionary snapshot found at `"+snapshotFile+"`, falling back to dictionary file `"+fileName+"`");
+			return false;
+		} catch (IOException e) {
+			log.warn("Unable to use dictionary snapshot `"+snapshotFile+"`, falling back to dictionary file `"+fileName+"` : "+e.getMessage());
+			return false;
+		}
+	}
+
+	//Swaps in the corpus a reload built, once the changes made while it was being built have been made on it too
+	private void publishReloaded(C newCorpus){
+		swapLock.writeLock().lock();
+		try {
+			for (Function<C,?> change : reloadChanges){
+				change.apply(newCorpus);
+			}
+			reloadChanges = null;
+			publish(newCorpus);
+		} finally {
+			swapLock.writeLock().unlock();
+		}
+	}
+
+	/**Swaps in a whole new corpus. Engines that keep anything derived from the corpus override this to drop it.
+	 */
+	void publish(C newCorpus){
+		corpus.set(newCorpus);
+	}
+
+	private void recordIngest(long lines, long elapsedNanos){
+		lastIngestLines = lines;
+		lastIngestNanos = elapsedNanos;
+		ingestCount.incrementAndGet();
+	}
+
+	@Override
+	public Map<AnagramKey,Set<String>> corpusGroups(){
+		return corpus.get().groups();
+	}
+
+	@Override
+	public void restoreCorpus(Map<AnagramKey,? extends Collection<String>> groups){
+		long start = System.nanoTime();
+		C newCorpus = newCorpus(groups);
+		//Taking the swap lock means a change can't be applied to the old corpus after it has been replaced
+		swapLock.writeLock().lock();
+		try {
+			publish(newCorpus);
+		} finally {
+			swapLock.writeLock().unlock();
+		}
+		recordIngest(newCorpus.wordCount(), Math.max(System.nanoTime() - start, 1));
+	}
+
+	@Override
+	public Set<String> getWildcardAnagrams(String query, Integer limit, boolean caseInsensitive) {
+		return searchEngine.wildcardAnagrams(corpus.get(), query, limit, caseInsensitive);
+	}
+
+	@Override
+	public Map<String, Object> getSubAnagrams(String letters, String after, Integer limit, boolean caseInsensitive) {
+		return searchEngine.subAnagrams(corpus.get(), letters, after, limit, caseInsensitive);
+	}
+
+	@Override
+	public Map<String, Object> getAnagramPhrases(String letters, Integer limit, Integer maxWords, boolean caseInsensitive) {
+		int words = maxWords != null ? maxWords : AnagramSearchEngine.DEFAULT_PHRASE_WORDS;
+		return searchEngine.phrases(corpus.get(), letters, limit, words, caseInsensitive);
+	}
+
+	@Override
+	public Map<String, Object> getCorpusMetadata() {
+		//The statistics are kept up to date as words are added and removed, so there's no need to walk the corpus here
+		return corpus.get().snapshot().getCorpusMetadata();
+	}
+
+	@Override
+	public AnagramCorpusSnapshot getSnapshot() {
+		return corpus.get().snapshot();
+	}
+
+	@Override
+	public ArrayList<Set<String>> getLargestAnagramSets() {
+		return corpus.get().snapshot().getLargestAnagramSets();
+	}
+
+	@Override
+	public ArrayList<Set<String>> getAnagramGroupsBySize(int size) {
+		return corpus.get().snapshot().getAnagramGroupsBySize(size);
+	}
+
+	@Override
+	public GroupCursor visitLargestAnagramSets(GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+		return corpus.get().snapshot().visitLargestAnagramSets(after, limit, visitor);
+	}
+
+	@Override
+	public GroupCursor visitAnagramGroupsBySize(int size, GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+		return corpus.get().snapshot().visitAnagramGroupsBySize(size, after, limit, visitor);
+	}
+}
@@ -0,0 +1,193 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.hreed.anagram.server.metrics.MetricsRegistry;
+import com.hreed.anagram.server.service.AnagramVisitor;
+
+/**
+ * A compact storage engine, enabled with anagram.storage=arena. The corpus is packed into a {@link WordArena}: every word as ASCII bytes in one array,
+ * and the anagram sets and indexes as ranges and int arrays over it, which takes a fraction of the heap the {@link AnagramCorpusServiceInMemory} does.
+ *
+ * Changes are kept in a small overlay next to the arena (see {@link ArenaCorpus}), and once it grows past a sixteenth of the corpus the whole corpus is
+ * repacked into a new arena off to the side and swapped in, just like a dictionary reload. Changes are applied one at a time, and readers never wait for them.
+ *
+ * Lookups are written out straight from the arena's bytes, so there's no cache of serialized lookups, and anagram.cache.max-bytes has no effect.
+ */
+public class AnagramCorpusServiceArena extends AbstractAnagramCorpusService<ArenaCorpus> {
+
+	//Held while the corpus is changed, so changes are applied one at a time and none is lost to a repack
+	private final Object writeLock = new Object();
+	private final AtomicLong compactions = new AtomicLong();
+	private volatile long lastCompactionNanos;
+	private Logger log = Logger.getLogger(this.getClass());
+
+	public AnagramCorpusServiceArena(){
+		this(null);
+	}
+
+	/**
+	 * @param snapshotFile Path to a precompiled binary snapshot of the dictionary, or "classpath:/name" for one on the class path (see {@link CorpusSnapshot}).
+	 * When it is blank, missing or invalid the dictionary text file is loaded instead.
+	 */
+	public AnagramCorpusServiceArena(String snapshotFile){
+		this(snapshotFile, null, null);
+	}
+
+	/**
+	 * @param snapshotFile Path to a precompiled binary snapshot of the dictionary, or "classpath:/name" for one on the class path (see {@link CorpusSnapshot}).
+	 * When it is blank, missing or invalid the dictionary text file is loaded instead.
+	 * @param shardNodes When this node holds one share of a sharded corpus, every node's base URL, comma separated (see {@link ShardRing})
+	 * @param shardSelf This node's base URL, as it appears in shardNodes
+	 */
+	public AnagramCorpusServiceArena(String snapshotFile, String shardNodes, String shardSelf){
+		this(snapshotFile, shardNodes, shardSelf, true);
+	}
+
+	/**
+	 * @param loadDictionary Whether to load the dictionary now, or to start empty for the corpus to be restored from elsewhere
+	 * (as the {@link DurableAnagramCorpusService} does from its own snapshots)
+	 */
+	public AnagramCorpusServiceArena(String snapshotFile, String shardNodes, String shardSelf, boolean loadDictionary){
+		super(snapshotFile, shardNodes, shardSelf);
+		if (loadDictionary){
+			populateCorpusFromDictionaryFile(DEFAULT_DICTIONARY);
+		}
+	}
+
+	@Override
+	ArenaCorpus emptyCorpus(){
+		return new ArenaCorpus(versions);
+	}
+
+	@Override
+	ArenaCorpus newCorpus(Map<AnagramKey,? extends Collection<String>> groups){
+		return new ArenaCorpus(groups, versions);
+	}
+
+	/**Registers gauges for the size of the corpus, the last dictionary load and the repacking of the arena.
+	 *
+	 * @param metrics The registry to add the gauges to
+	 */
+	@Override
+	@Autowired(required = false)
+	public void registerMetrics(MetricsRegistry metrics){
+		super.registerMetrics(metrics);
+		metrics.gauge("anagram_arena_overlay_sets", () -> corpus.get().movedSets());
+		metrics.gauge("anagram_arena_compactions", () -> compactions.get());
+		metrics.gauge("anagram_arena_last_compaction_seconds", () -> lastCompactionNanos / 1e9);
+	}
+
+	@Override
+	public int addWords(Set<String> newWords) {
+		Map<AnagramKey,List<String>> wordsByKey = validWordsByKey(newWords);
+		if (wordsByKey.isEmpty()){
+			return 0;
+		}
+		return change(current -> {
+			int added = 0;
+			for (Map.Entry<AnagramKey,List<String>> keyWords : wordsByKey.entrySet()){
+				added += current.insertAll(keyWords.getKey(), keyWords.getValue());
+			}
+			return added;
+		});
+	}
+
+	@Override
+	public Set<String> getAnagrams(String word, Integer limit) {
+		AnagramKey key = AnagramKey.of(word);
+		if (key == null){
+			return Collections.emptySet();
+		}
+		Set<String> result = corpus.get().get(key, word, limit);
+		return result == null ? Collections.<String>emptySet() : result;
+	}
+
+	@Override
+	public Set<String> getAnagramsCaseInsensitive(String word, Integer limit) {
+		AnagramKey foldedKey = AnagramKey.foldedOf(word);
+		if (foldedKey == null){
+			return Collections.emptySet();
+		}
+		Set<String> result = corpus.get().getFolded(foldedKey, word, limit);
+		return result == null ? Collections.<String>emptySet() : result;
+	}
+
+	@Override
+	public int visitAnagrams(String word, Integer limit, boolean caseInsensitive, AnagramVisitor visitor) throws IOException {
+		Set<String> anagrams = caseInsensitive ? getAnagramsCaseInsensitive(word, limit) : getAnagrams(word, limit);
+		for (String anagram : anagrams){
+			visitor.visit(anagram);
+		}
+		return anagrams.size();
+	}
+
+	@Override
+	public void writeAnagramsJson(String word, Integer limit, boolean caseInsensitive, OutputStream out) throws IOException {
+		AnagramKey key = caseInsensitive ? AnagramKey.foldedOf(word) : AnagramKey.of(word);
+		corpus.get().writeJson(key, caseInsensitive, word, limit, out);
+	}
+
+	@Override
+	public void deleteWord(String word) {
+		AnagramKey key = AnagramKey.of(word);
+		if (key == null){
+			return;
+		}
+		change(current -> current.remove(key, word));
+	}
+
+	@Override
+	public void deleteAnagrams(String word) {
+		AnagramKey key = AnagramKey.of(word);
+		if (key == null){
+			return;
+		}
+		change(current -> current.removeGroup(key));
+	}
+
+	/**Makes changes one at a time, repacking the corpus once enough of it has moved out of the arena.
+	 */
+	@Override
+	<T> T apply(Function<ArenaCorpus,T> change){
+		synchronized (writeLock){
+			T result = super.apply(change);
+			compactIfNeeded(corpus.get());
+			return result;
+		}
+	}
+
+	//Repacks the corpus once enough of it has moved out of the arena. Always called holding the writeLock.
+	private void compactIfNeeded(ArenaCorpus current){
+		if (!current.needsCompaction()){
+			return;
+		}
+		long start = System.nanoTime();
+		corpus.set(current.compact());
+		lastCompactionNanos = System.nanoTime() - start;
+		compactions.incrementAndGet();
+		log.info("Repacked "+current.wordCount()+" words into a new arena in "+lastCompactionNanos/1000000+"ms");
+	}
+
+	//How many times the arena has been repacked
+	long compactionCount(){
+		return compactions.get();
+	}
+
+	@Override
+	public Map<String, Object> getMemoryFootprint() {
+		ArenaCorpus current = corpus.get();
+		return HeapFootprint.report("arena", current.wordCount(), current.wordBytes(), current.footprint());
+	}
+}
@@ -1,319 +1,228 @@
 package com.hreed.anagram.server.service.impl;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
-import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
-import com.hreed.anagram.server.service.AnagramCorpusService;
+import com.hreed.anagram.server.metrics.MetricsRegistry;
+import com.hreed.anagram.server.service.AnagramVisitor;
 
-@Component
-public class AnagramCorpusServiceInMemory implements AnagramCorpusService {
+/**
+ * Keeps the corpus on the heap as ordinary objects: a String per word, held in immutable sorted {@link WordGroup}s under concurrent maps.
+ * This is the default storage engine. Set anagram.storage=arena for the more compact {@link AnagramCorpusServiceArena}.
+ */
+public class AnagramCorpusServiceInMemory extends AbstractAnagramCorpusService<Corpus> {
 	
-	private ConcurrentHashMap<String,Set<String>> corpus;
-	private Logger log = Logger.getLogger(this.getClass());
+	private volatile AnagramResponseCache responseCache = new AnagramResponseCache(AnagramResponseCache.DEFAULT_MAX_BYTES);
 	
 	
-	public AnagramCorpusServiceInMemory(){		
-		corpus = new ConcurrentHashMap<String,Set<String>>();
-		populateCorpusFromDictionaryFile("/dictionary.txt");
+	public AnagramCorpusServiceInMemory(){
+		this(null);
+	}
+	
+	/**
+	 * @param snapshotFile Path to a precompiled binary snapshot of the dictionary, or "classpath:/name" for one on the class path (see {@link CorpusSnapshot}).
+	 * When it is blank, missing or invalid the dictionary text file is loaded instead.
+	 */
+	public AnagramCorpusServiceInMemory(String snapshotFile){
+		this(snapshotFile, null, null);
+	}
+	
+	/**
+	 * @param snapshotFile Path to a precompiled binary snapshot of the dictionary, or "classpath:/name" for one on the class path (see {@link CorpusSnapshot}).
+	 * When it is blank, missing or invalid the dictionary text file is loaded instead.
+	 * @param shardNodes When this node holds one share of a sharded corpus, every node's base URL, comma separated (see {@link ShardRing}).
+	 * Only the anagram sets that belong on this node are loaded from the dictionary.
+	 * @param shardSelf This node's base URL, as it appears in shardNodes
+	 */
+	public AnagramCorpusServiceInMemory(String snapshotFile, String shardNodes, String shardSelf){
+		this(snapshotFile, shardNodes, shardSelf, true);
 	}
 
-	@Override
-	public void addWords(Set<String> newWords) {		
-		Iterator<String> newWordsIterator = newWords.iterator();
-		while (newWordsIterator.hasNext()){
-			String currentWord = newWordsIterator.next();
-			if (validateWord(currentWord) == true){
-				insertWord(currentWord);	
-			}			
+	/**
+	 * @param loadDictionary Whether to load the dictionary now, or to start empty for the corpus to be restored from elsewhere
+	 * (as the {@link DurableAnagramCorpusService} does from its own snapshots)
+	 */
+	public AnagramCorpusServiceInMemory(String snapshotFile, String shardNodes, String shardSelf, boolean loadDictionary){
+		super(snapshotFile, shardNodes, shardSelf);
+		if (loadDictionary){
+			populateCorpusFromDictionaryFile(DEFAULT_DICTIONARY);
 		}
 	}
 
+	/**Overrides the size of the cache of serialized lookups behind {@link #writeAnagramsJson(String, Integer, boolean, OutputStream)}.
+	 *
+	 * @param maxBytes Roughly how many bytes of JSON the cache may hold. Zero disables the cache.
+	 */
+	@Autowired(required = false)
+	public void configureResponseCache(@Value("${anagram.cache.max-bytes:" + AnagramResponseCache.DEFAULT_MAX_BYTES + "}") long maxBytes){
+		responseCache = new AnagramResponseCache(maxBytes);
+	}
+
 	@Override
-	public Set<String> getAnagrams(String word, Integer limit) {
-		Set<String> anagrams = new HashSet<String>();
-		String key = generateKey(word);
-		Set<String> result = corpus.get(key); 
-		//Assuming a word set was found for the key, return the set minus the searched for word
-		if (result != null){						
-				anagrams.addAll(result);
-				anagrams.remove(word);
-		    //if a limit on response needs to be applied
-			if (limit != null){				
-				Iterator<String> resultIterator = anagrams.iterator();
-				Set<String> limitedAnagrams = new HashSet<String>();
-				for (int i = 0; i < limit; i++) {
-					if (resultIterator.hasNext()){
-						limitedAnagrams.add(resultIterator.next());						
-					}
-				}
-				anagrams = limitedAnagrams;
-			}					
-		}
-		//Either return a discovered set, minus utilized word or an empty set
-		return anagrams;		
+	Corpus emptyCorpus(){
+		return new Corpus(versions);
 	}
-	
+
 	@Override
-	public Set<String> getAnagramsCaseInsensitive(String word, Integer limit) {
-		Set<String> anagrams = new HashSet<String>();
-		//First get all anagrams based on the lowercase word
-		String normalizedWord = word.toLowerCase();
-		String key = generateKey(normalizedWord);
-		Set<String> result = corpus.get(key);
-		if (result != null){
-			anagrams.addAll(result);
-		}
-		//Now get anagrams results based on each of the characters being uppercase
-		for (int i = 0; i < normalizedWord.length(); i++){
-			char[] characterArray = normalizedWord.toCharArray();
-			characterArray[i] = Character.toUpperCase(characterArray[i]);
-			String capitalizedWord = new String(characterArray);
-			key = generateKey(capitalizedWord);
-			result = corpus.get(key);
-			if (result != null){
-				anagrams.addAll(result);
-			}			
-		}
-		//Now that we have all anagrams, regardless of capitalization, we remove the seed word, and adjust the set for the limit
-		anagrams.remove(word);
-		if (limit != null && anagrams.size() > limit){
-			Iterator<String> resultIterator = anagrams.iterator();
-			Set<String> limitedAnagrams = new HashSet<String>();
-			for (int i = 0; i < limit; i++) {
-				if (resultIterator.hasNext()){
-					limitedAnagrams.add(resultIterator.next());						
-				}
-			}
-			anagrams = limitedAnagrams;
-		}				
-		return anagrams;
+	Corpus newCorpus(Map<AnagramKey,? extends Collection<String>> groups){
+		return new Corpus(groups, versions);
 	}
 
-	//In order to create a standard key across words, 
-	//first the string is converted into a charArray, unicode sorted, then converted back into a string.
-	/**Generates a key for the corpus by converting the string into a charArray, sorting it,
-	 * then converting it back into a string
-	 * 
-	 * @param word The word used to create the key
-	 * @return The resulting key
+	/**Registers gauges for the size of the corpus, the last dictionary load and the cache of serialized lookups.
+	 *
+	 * @param metrics The registry to add the gauges to
 	 */
-	private String generateKey(String word){
-		char[] wordArray = word.toCharArray();
-		Arrays.sort(wordArray);
-		return new String(wordArray);
+	@Override
+	@Autowired(required = false)
+	public void registerMetrics(MetricsRegistry metrics){
+		super.registerMetrics(metrics);
+		metrics.gauge("anagram_response_cache_hits", () -> responseCache.stats().hitCount());
+		metrics.gauge("anagram_response_cache_misses", () -> responseCache.stats().missCount());
+		metrics.gauge("anagram_response_cache_hit_rate", () -> responseCache.stats().hitRate());
+		metrics.gauge("anagram_response_cache_evictions", () -> responseCache.stats().evictionCount());
+		metrics.gauge("anagram_response_cache_evicted_bytes", () -> responseCache.stats().evictionWeight());
+		metrics.gauge("anagram_response_cache_invalidations", () -> responseCache.invalidations());
+		metrics.gauge("anagram_response_cache_stale", () -> responseCache.stale());
+		metrics.gauge("anagram_response_cache_entries", () -> responseCache.entries());
+		metrics.gauge("anagram_response_cache_bytes", () -> responseCache.bytes());
 	}
-	
-	/**Inserts a word into the HashMap used for storing the corpus.
-	 * 
-	 * @param word The word to be added to the HashMap
-	 */
-	private void insertWord(String word){		
-		String key = generateKey(word);
-		//If there is already a word set for a given key, try and add the new word
-		Set<String> wordSet = corpus.get(key);
-		if (wordSet!= null){
-			wordSet.add(word);			
-			log.debug("Key match, adding new word : " + word);			
-		} else {
-		//If there isn't a set for a given key, initialize the hashset
-			Set<String> newSet = new HashSet<String>();
-			newSet.add(word);
-			corpus.put(key, newSet);
-			log.debug("New Key, adding new set for word : " + word);			
+
+	@Override
+	public int addWords(Set<String> newWords) {
+		Map<AnagramKey,List<String>> wordsByKey = validWordsByKey(newWords);
+		return change(currentCorpus -> {
+			int added = 0;
+			for (Map.Entry<AnagramKey,List<String>> keyWords : wordsByKey.entrySet()){
+				List<String> words = keyWords.getValue();
+				int keyAdded;
+				if (words.size() == 1){
+					keyAdded = currentCorpus.insert(keyWords.getKey(), words.get(0)) ? 1 : 0;
+				} else {
+					keyAdded = currentCorpus.insertAll(keyWords.getKey(), words);
+				}
+				if (keyAdded > 0){
+					responseCache.invalidate(keyWords.getKey());
+					added += keyAdded;
+				}
+			}
+			return added;
+		});
+	}
+
+	@Override
+	public Set<String> getAnagrams(String word, Integer limit) {
+		AnagramKey key = AnagramKey.of(word);
+		//Words with non-roman characters can't have any anagrams in the corpus
+		if (key == null){
+			return Collections.emptySet();
 		}
-	}	
-	
-	/** Before a word is inserted into the corpus, it needs to be validated to ensure it
-	 * 1.) contains only Roman characters (a-z)
-	 * 2.) It does not have non-standard capitalization (i.e. daRe)
-	 * 
-	 * @param word The word to be validate
-	 * @return True if the word only contains roman characters & is either lowercase or properly capitalized
-	 */
-	private boolean validateWord(String word){	
-		//This regex checks to only add words that consist of words made up of roman characters, 
-		//where only the first character may be capitalized
-		//This regex excludes two hyphenated entries from the provided dictionary "Jean-Christophe" and "Jean-Pierre"
-		if (word.matches("^[A-Za-z][a-z]*")){	
-			return true;
-		} else {
-			log.debug("Invalid word:"+word);
-			return false;			
+		WordGroup result = corpus.get().get(key);
+		if (result == null){
+			return Collections.emptySet();
 		}
+		//The group is immutable, so rather than copying it the caller gets a view of it minus the searched for word, cut off at the limit
+		return result.view(word, limit);
 	}
 	
 	@Override
-	public void populateCorpusFromDictionaryFile(String fileName){
-		deleteAllWords();
-		log.info("Loading dictionary file `"+fileName+"` at startup");
-		String word;
-		try {
-			InputStream inputStream = getClass().getResourceAsStream(fileName);
-			BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
-			
-			while ((word=bufferedReader.readLine())!=null){
-				if (validateWord(word) == true){
-					insertWord(word);	
-				}				
-			}
-		} catch (FileNotFoundException e) {
-			log.error("Unable to locate dictionary file `"+fileName+"` on class path. Dictionary not loaded.");
-			
-		} catch (IOException e) {
-			log.error("Error processing dictionary file `"+fileName+"`. Is it formatted properly?");
+	public Set<String> getAnagramsCaseInsensitive(String word, Integer limit) {
+		//Every capitalization of a word shares the same folded key, so a single lookup finds all of them
+		AnagramKey foldedKey = AnagramKey.foldedOf(word);
+		//Words with non-roman characters can't have any anagrams in the corpus
+		if (foldedKey == null){
+			return Collections.emptySet();
+		}
+		WordGroup result = corpus.get().getFolded(foldedKey);
+		if (result == null){
+			return Collections.emptySet();
 		}
+		return result.view(word, limit);
 	}
 
 	@Override
-	public void deleteWord(String word) {
-		String key = generateKey(word);
-		Set<String> result = corpus.get(key);
-		//If there is a result for the key remove, otherwise it does not exist and does not need to be removed
-		if (result != null){
-			result.remove(word);
+	public int visitAnagrams(String word, Integer limit, boolean caseInsensitive, AnagramVisitor visitor) throws IOException {
+		AnagramKey key = caseInsensitive ? AnagramKey.foldedOf(word) : AnagramKey.of(word);
+		//Words with non-roman characters can't have any anagrams in the corpus
+		if (key == null){
+			return 0;
+		}
+		Corpus current = corpus.get();
+		WordGroup result = caseInsensitive ? current.getFolded(key) : current.get(key);
+		if (result == null){
+			return 0;
 		}
+		//The group is immutable, so it can be walked directly while writers swap in new ones
+		int visited = 0;
+		for (String anagram : result.view(word, limit)){
+			visitor.visit(anagram);
+			visited++;
+		}
+		return visited;
 	}
-	
-	@Override	
-	public void deleteAnagrams(String word) {
-		String key = generateKey(word);
-		corpus.remove(key);
+
+	@Override
+	public void writeAnagramsJson(String word, Integer limit, boolean caseInsensitive, OutputStream out) throws IOException {
+		AnagramKey key = caseInsensitive ? AnagramKey.foldedOf(word) : AnagramKey.of(word);
+		//Words with non-roman characters can't have any anagrams in the corpus
+		if (key == null){
+			responseCache.write(null, caseInsensitive, null, word, limit, out);
+			return;
+		}
+		Corpus current = corpus.get();
+		WordGroup group = caseInsensitive ? current.getFolded(key) : current.get(key);
+		responseCache.write(key, caseInsensitive, group, word, limit, out);
 	}
 
+	//Swaps in a whole new corpus, none of whose anagram sets are cached yet
 	@Override
-	public void deleteAllWords() {
-		corpus.clear();		
+	void publish(Corpus newCorpus){
+		super.publish(newCorpus);
+		responseCache.invalidateAll();
 	}
 
 	@Override
-	public Map<String, Object> getCorpusMetadata() {
-		Map<String, Object> results = new HashMap<String, Object>();
-		//Perform a copy of the current state of the corpus, to ensure the current analysis doesn't fail if it changes
-		Map<String,Set<String>> corpusState = new HashMap<String,Set<String>>(corpus);
-		Iterator<Entry<String, Set<String>>> corpusIterator = corpusState.entrySet().iterator();
-		ArrayList<Integer> medianCollection = new ArrayList<Integer>();
-		DecimalFormat decimalFormatter = new DecimalFormat("#.###");
-		int totalWordLength = 0;
-		int wordCount = 0;
-		int minWordLength = Integer.MAX_VALUE;
-		int maxWordLength = Integer.MIN_VALUE;
-		//If there is no collection of words to actually sort through
-		if (!corpusIterator.hasNext()){
-			results.put("word_count", 0);
-			results.put("min_length", 0);
-			results.put("max_length", 0);
-			results.put("median_length", 0);
-			results.put("avg_length", 0);
-		} else {
-			while (corpusIterator.hasNext()){
-				Entry<String, Set<String>> corpusEntry = corpusIterator.next();
-				Iterator<String> words = corpusEntry.getValue().iterator();
-				while (words.hasNext()){
-					String word = words.next();
-					//increment total word count
-					wordCount++;
-					
-					int wordLength = word.length();
-					//add to the total count of all word lengths (for average computations)
-					totalWordLength += wordLength;
-					//determine if the word is the smallest word in the new corpus
-					if (wordLength < minWordLength){
-						minWordLength = wordLength;
-					}
-					//determine if the word is the largest word in the new corpus
-					if (wordLength > maxWordLength){
-						maxWordLength = wordLength;
-					}
-					medianCollection.add(wordLength);				
-				}
+	public void deleteWord(String word) {
+		AnagramKey key = AnagramKey.of(word);
+		if (key == null){
+			return;
+		}
+		change(currentCorpus -> {
+			if (currentCorpus.remove(key, word)){
+				responseCache.invalidate(key);
 			}
-			results.put("word_count", wordCount);
-			results.put("min_length", minWordLength);
-			results.put("max_length", maxWordLength);
-			results.put("median_length", decimalFormatter.format(calculateMean(medianCollection)));
-			results.put("avg_length", decimalFormatter.format(((double) totalWordLength / (double) wordCount)));
-		}		
-		
-		return results;
+			return null;
+		});
 	}
 	
-	/**
-	 * A utility function that takes an arraylist of integers and calculates the mean value of it.
-	 * Returns zero for an empty set.
-	 * 
-	 * @param medianCollection The collection of integers to be computed
-	 * @return The floating point calculation of the mean of the set.
-	 */
-	private double calculateMean(ArrayList<Integer> medianCollection){
-		double result = 0.0;
-		medianCollection.sort(null);
-		int collectionSize = medianCollection.size();
-		if (collectionSize > 0){
-			//the set of integers is odd, so grab the middle one as the mean
-			if (collectionSize % 2 == 1){
-				result = medianCollection.get((collectionSize-1)/2);
-			}
-			//the set of integers is even, so we must calculate the mean
-			else {
-				int firstValue = medianCollection.get(collectionSize/2);
-				int secondValue = medianCollection.get((collectionSize/2)-1);
-				result = ((double) firstValue + (double) secondValue) / 2;
-			}
+	@Override	
+	public void deleteAnagrams(String word) {
+		AnagramKey key = AnagramKey.of(word);
+		if (key == null){
+			return;
 		}
-		return result;
-	}
-
-	@Override
-	public ArrayList<Set<String>> getLargestAnagramSets() {
-		int largestSetSize = 0;
-		ArrayList<Set<String>> result = new ArrayList<Set<String>>();
-		Map<String,Set<String>> corpusState = new HashMap<String,Set<String>>(corpus);
-		Iterator<Entry<String, Set<String>>> corpusIterator = corpusState.entrySet().iterator();		
-		if (corpusIterator.hasNext()){
-			while (corpusIterator.hasNext()){
-				Entry<String, Set<String>> corpusEntry = corpusIterator.next();
-				if (corpusEntry.getValue().size() > largestSetSize){
-					result.clear();
-					result.add(corpusEntry.getValue());
-					largestSetSize = corpusEntry.getValue().size();
-				} else if (corpusEntry.getValue().size() == largestSetSize){
-					result.add(corpusEntry.getValue());
-				}
+		change(currentCorpus -> {
+			if (currentCorpus.removeGroup(key)){
+				responseCache.invalidate(key);
 			}
-		}
-		return result;
+			return null;
+		});
 	}
 
 	@Override
-	public ArrayList<Set<String>> getAnagramGroupsBySize(int size) {
-		ArrayList<Set<String>> result = new ArrayList<Set<String>>();
-		Map<String,Set<String>> corpusState = new HashMap<String,Set<String>>(corpus);
-		Iterator<Entry<String, Set<String>>> corpusIterator = corpusState.entrySet().iterator();		
-		if (corpusIterator.hasNext()){
-			while (corpusIterator.hasNext()){
-				Entry<String, Set<String>> corpusEntry = corpusIterator.next();
-				if (corpusEntry.getValue().size() >= size){
-					result.add(corpusEntry.getValue());
-				}
-			}
-		}
-		return result;
+	public Map<String, Object> getMemoryFootprint() {
+		Corpus current = corpus.get();
+		Map<String,Long> structures = current.footprint();
+		structures.put("response_cache", responseCache.bytes());
+		return HeapFootprint.report("heap", current.wordCount(), current.wordBytes(), structures);
 	}
 
 }
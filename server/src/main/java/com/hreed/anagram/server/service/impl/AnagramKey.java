@@ -0,0 +1,360 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A compact, fixed-width key identifying a set of anagrams.
+ *
+ * Rather than sorting the characters of a word into a new String, the key is a packed letter-count vector.
+ * Each of the 26 lowercase letters gets a four bit counter, split across two longs (a-p in the low word, q-z in the high word).
+ * Since a valid word may only have its first letter capitalized, the single uppercase letter (if any) is stored
+ * as an index in five spare bits of the high word, which keeps "Dear" and "read" as distinct keys just like the sorted String did.
+ *
+ * In the rare case a word repeats a single letter more than 15 times, the counters can't hold it,
+ * so the key falls back to the old sorted character String to stay exact.
+ */
+public final class AnagramKey implements Comparable<AnagramKey> {
+
+	private static final int BITS_PER_LETTER = 4;
+	private static final long COUNTER_MASK = 0xFL;
+	private static final int LETTERS_IN_LOW_WORD = 16;
+	private static final int CAPITAL_SHIFT = 40;
+	private static final long CAPITAL_MASK = 0x1FL;
+
+	/**
+	 * A cheaper total ordering than the natural (alphabetical) one, comparing the packed counts as numbers.
+	 * Useful for ordered collections of keys that only need a stable order, not a meaningful one.
+	 */
+	static final Comparator<AnagramKey> PACKED_ORDER = new Comparator<AnagramKey>() {
+		@Override
+		public int compare(AnagramKey first, AnagramKey second) {
+			int result = Long.compare(first.high, second.high);
+			if (result == 0) {
+				result = Long.compare(first.low, second.low);
+			}
+			if (result == 0 && first.overflow != second.overflow) {
+				if (first.overflow == null) {
+					return -1;
+				}
+				if (second.overflow == null) {
+					return 1;
+				}
+				result = first.overflow.compareTo(second.overflow);
+			}
+			return result;
+		}
+	};
+
+	private final long low;
+	private final long high;
+	private final String overflow;
+
+	private AnagramKey(long low, long high, String overflow) {
+		this.low = low;
+		this.high = high;
+		this.overflow = overflow;
+	}
+
+	/**Generates the key for a word in a single pass over its characters.
+	 *
+	 * @param word The word used to create the key
+	 * @return The resulting key, or null if the word contains non-roman characters or more than one capital letter
+	 * (no valid word in the corpus could ever share a key with it)
+	 */
+	public static AnagramKey of(String word) {
+		long low = 0L;
+		long high = 0L;
+		//Set once a letter is too common to pack, but the rest of the word still has to be checked before falling back
+		boolean overflowed = false;
+		int length = word.length();
+		for (int i = 0; i < length; i++) {
+			char character = word.charAt(i);
+			int letter;
+			if (character >= 'a' && character <= 'z') {
+				letter = character - 'a';
+			} else if (character >= 'A' && character <= 'Z') {
+				//Only a single capital letter can ever be part of a valid word
+				if (((high >>> CAPITAL_SHIFT) & CAPITAL_MASK) != 0) {
+					return null;
+				}
+				high |= ((long) (character - 'A' + 1)) << CAPITAL_SHIFT;
+				continue;
+			} else {
+				return null;
+			}
+			if (letter < LETTERS_IN_LOW_WORD) {
+				int shift = letter * BITS_PER_LETTER;
+				if (((low >>> shift) & COUNTER_MASK) == COUNTER_MASK) {
+					overflowed = true;
+				} else {
+					low += 1L << shift;
+				}
+			} else {
+				int shift = (letter - LETTERS_IN_LOW_WORD) * BITS_PER_LETTER;
+				if (((high >>> shift) & COUNTER_MASK) == COUNTER_MASK) {
+					overflowed = true;
+				} else {
+					high += 1L << shift;
+				}
+			}
+		}
+		if (overflowed) {
+			return overflowKey(word);
+		}
+		return new AnagramKey(low, high, null);
+	}
+
+	/**Rebuilds a key from its packed letter counts, as previously returned by {@link #packedLow()} and {@link #packedHigh()}
+	 * 
+	 * @param low The packed counts for the letters a-p
+	 * @param high The packed counts for the letters q-z, plus the capital letter index
+	 * @return The equivalent key
+	 */
+	static AnagramKey fromPacked(long low, long high) {
+		return new AnagramKey(low, high, null);
+	}
+
+	/**Generates the case-folded key for a word, as if every letter in it were lowercase.
+	 * Any capitalization of a word shares the same folded key.
+	 * 
+	 * @param word The word used to create the key
+	 * @return The resulting key, or null if the word contains non-roman characters
+	 */
+	public static AnagramKey foldedOf(String word) {
+		long low = 0L;
+		long high = 0L;
+		//Set once a letter is too common to pack, but the rest of the word still has to be checked before falling back
+		boolean overflowed = false;
+		int length = word.length();
+		for (int i = 0; i < length; i++) {
+			char character = word.charAt(i);
+			int letter;
+			if (character >= 'a' && character <= 'z') {
+				letter = character - 'a';
+			} else if (character >= 'A' && character <= 'Z') {
+				letter = character - 'A';
+			} else {
+				return null;
+			}
+			if (letter < LETTERS_IN_LOW_WORD) {
+				int shift = letter * BITS_PER_LETTER;
+				if (((low >>> shift) & COUNTER_MASK) == COUNTER_MASK) {
+					overflowed = true;
+				} else {
+					low += 1L << shift;
+				}
+			} else {
+				int shift = (letter - LETTERS_IN_LOW_WORD) * BITS_PER_LETTER;
+				if (((high >>> shift) & COUNTER_MASK) == COUNTER_MASK) {
+					overflowed = true;
+				} else {
+					high += 1L << shift;
+				}
+			}
+		}
+		if (overflowed) {
+			return overflowKey(word.toLowerCase());
+		}
+		return new AnagramKey(low, high, null);
+	}
+
+	/**
+	 * @return The case-folded version of this key, where the capital letter (if any) is counted as its lowercase letter
+	 */
+	public AnagramKey folded() {
+		if (overflow != null) {
+			return foldedOf(overflow);
+		}
+		int capital = capitalLetter();
+		if (capital < 0) {
+			return this;
+		}
+		if (lowercaseCount(capital) == COUNTER_MASK) {
+			return foldedOf(toString());
+		}
+		long foldedHigh = high & ~(CAPITAL_MASK << CAPITAL_SHIFT);
+		if (capital < LETTERS_IN_LOW_WORD) {
+			return new AnagramKey(low + (1L << (capital * BITS_PER_LETTER)), foldedHigh, null);
+		}
+		return new AnagramKey(low, foldedHigh + (1L << ((capital - LETTERS_IN_LOW_WORD) * BITS_PER_LETTER)), null);
+	}
+
+	//Words that can't be packed are keyed the same way the corpus originally keyed everything
+	private static AnagramKey overflowKey(String word) {
+		char[] wordArray = word.toCharArray();
+		Arrays.sort(wordArray);
+		return new AnagramKey(0L, 0L, new String(wordArray));
+	}
+
+	/**
+	 * @return False if the key fell back to a sorted character String, in which case the packed words are meaningless
+	 */
+	boolean isPacked() {
+		return overflow == null;
+	}
+
+	long packedLow() {
+		return low;
+	}
+
+	long packedHigh() {
+		return high;
+	}
+
+	/**
+	 * @param letter The lowercase letter index (0 for 'a' through 25 for 'z')
+	 * @return The number of times the lowercase letter occurs in the key
+	 */
+	public int lowercaseCount(int letter) {
+		if (overflow != null) {
+			char character = (char) ('a' + letter);
+			int count = 0;
+			for (int i = 0; i < overflow.length(); i++) {
+				if (overflow.charAt(i) == character) {
+					count++;
+				}
+			}
+			return count;
+		}
+		if (letter < LETTERS_IN_LOW_WORD) {
+			return (int) ((low >>> (letter * BITS_PER_LETTER)) & COUNTER_MASK);
+		}
+		return (int) ((high >>> ((letter - LETTERS_IN_LOW_WORD) * BITS_PER_LETTER)) & COUNTER_MASK);
+	}
+
+	/**
+	 * @return The letter index (0 for 'A' through 25 for 'Z') of the capital letter in the key, or -1 if there is none
+	 */
+	public int capitalLetter() {
+		if (overflow != null) {
+			char first = overflow.charAt(0);
+			return (first >= 'A' && first <= 'Z') ? first - 'A' : -1;
+		}
+		return (int) ((high >>> CAPITAL_SHIFT) & CAPITAL_MASK) - 1;
+	}
+
+	/**
+	 * @return The number of letters in the key
+	 */
+	public int length() {
+		if (overflow != null) {
+			return overflow.length();
+		}
+		int length = capitalLetter() >= 0 ? 1 : 0;
+		for (int letter = 0; letter < 26; letter++) {
+			length += lowercaseCount(letter);
+		}
+		return length;
+	}
+
+	/**
+	 * @return A 26 bit mask with a bit set for every letter that appears in the key, ignoring case
+	 */
+	public int letterMask() {
+		int mask = 0;
+		for (int letter = 0; letter < 26; letter++) {
+			if (lowercaseCount(letter) > 0) {
+				mask |= 1 << letter;
+			}
+		}
+		int capital = capitalLetter();
+		if (capital >= 0) {
+			mask |= 1 << capital;
+		}
+		return mask;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof AnagramKey)) {
+			return false;
+		}
+		AnagramKey otherKey = (AnagramKey) other;
+		if (low != otherKey.low || high != otherKey.high) {
+			return false;
+		}
+		return overflow == null ? otherKey.overflow == null : overflow.equals(otherKey.overflow);
+	}
+
+	@Override
+	public int hashCode() {
+		if (overflow != null) {
+			return overflow.hashCode();
+		}
+		long hash = low * 0x9E3779B97F4A7C15L + high;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * Orders keys the same way their sorted character Strings would be ordered, without expanding them.
+	 */
+	@Override
+	public int compareTo(AnagramKey other) {
+		if (overflow != null || other.overflow != null) {
+			return toString().compareTo(other.toString());
+		}
+		int capital = capitalLetter();
+		int otherCapital = other.capitalLetter();
+		if (capital != otherCapital) {
+			//A capital letter sorts ahead of every lowercase one, but an empty key sorts ahead of everything
+			if (capital < 0) {
+				return isEmpty() ? -1 : 1;
+			}
+			if (otherCapital < 0) {
+				return other.isEmpty() ? 1 : -1;
+			}
+			return capital - otherCapital;
+		}
+		for (int letter = 0; letter < 26; letter++) {
+			int count = lowercaseCount(letter);
+			int otherCount = other.lowercaseCount(letter);
+			if (count != otherCount) {
+				//Whichever key has more of the first differing letter sorts first, unless the other key simply ends there
+				if (count > otherCount) {
+					return other.hasLettersAfter(letter) ? -1 : 1;
+				}
+				return hasLettersAfter(letter) ? 1 : -1;
+			}
+		}
+		return 0;
+	}
+
+	private boolean isEmpty() {
+		return low == 0L && high == 0L;
+	}
+
+	private boolean hasLettersAfter(int letter) {
+		for (int next = letter + 1; next < 26; next++) {
+			if (lowercaseCount(next) > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Expands the key back out into its sorted characters.
+	 * This matches the sorted String the corpus used to be keyed by, and is only meant for logging and display.
+	 */
+	@Override
+	public String toString() {
+		if (overflow != null) {
+			return overflow;
+		}
+		StringBuilder builder = new StringBuilder();
+		int capital = capitalLetter();
+		if (capital >= 0) {
+			builder.append((char) ('A' + capital));
+		}
+		for (int letter = 0; letter < 26; letter++) {
+			for (int count = lowercaseCount(letter); count > 0; count--) {
+				builder.append((char) ('a' + letter));
+			}
+		}
+		return builder.toString();
+	}
+}
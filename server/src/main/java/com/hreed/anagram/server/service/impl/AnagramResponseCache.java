@@ -0,0 +1,224 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * A bounded cache of anagram sets already serialized as JSON, so a popular lookup is a few byte copies straight to the response
+ * instead of copying the set, wrapping it in a map and running it through Jackson.
+ *
+ * Entries are per anagram set (exact or case-folded), not per request. Each holds every word of the set as a JSON string,
+ * in alphabetical order, along with where each word starts. A response is cut out of that by skipping the word that was looked up
+ * and stopping at the limit, so one entry serves every word in the set and every limit.
+ *
+ * The service invalidates an entry whenever its anagram set changes. Each entry also remembers the (immutable) group it was built from,
+ * and is only served while that is still the corpus's current group, so a lookup racing with a change can never cache or serve a stale set.
+ *
+ * Eviction is Caffeine's W-TinyLFU, weighed by the bytes each entry holds: a word has to be looked up often enough to beat
+ * the entry it would evict before it gets in, so a scan of rarely used words can't flush out the popular ones.
+ */
+final class AnagramResponseCache {
+
+	static final long DEFAULT_MAX_BYTES = 16L << 20;
+	private static final byte[] OPEN = "{\"anagrams\":[".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CLOSE = "]}".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] EMPTY = "{\"anagrams\":[]}".getBytes(StandardCharsets.US_ASCII);
+	//Rough cost of an entry beyond its bytes: the entry, its key, the arrays' headers and Caffeine's own node
+	private static final int ENTRY_OVERHEAD = 128;
+
+	private final Cache<EntryKey,Entry> cache;
+	private final LongAdder invalidations = new LongAdder();
+	private final LongAdder stale = new LongAdder();
+
+	/**
+	 * @param maxBytes Roughly how many bytes of JSON the cache may hold. Zero disables the cache.
+	 */
+	AnagramResponseCache(long maxBytes){
+		cache = Caffeine.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher((EntryKey key, Entry entry) -> entry.weight())
+				.recordStats()
+				//Evictions are done by whichever thread caused them, rather than on the common pool the dictionary loads run on
+				.executor(Runnable::run)
+				.build();
+	}
+
+	/**Writes the anagrams of a word as a JSON object ({"anagrams":[...]}), from the cache if the set is in it.
+	 *
+	 * @param key The key the group was looked up with
+	 * @param folded Whether the key is case-folded
+	 * @param group The corpus's current group for the key, or null if there isn't one
+	 * @param word The word that was looked up, which is left out of the response
+	 * @param limit Limit on the number of anagrams written. Writes all if null.
+	 * @param out Where to write the JSON
+	 */
+	void write(AnagramKey key, boolean folded, WordGroup group, String word, Integer limit, OutputStream out) throws IOException {
+		if (group == null || (limit != null && limit <= 0)){
+			out.write(EMPTY);
+			return;
+		}
+		//Most words have no anagrams at all, and those are quicker to write out than to look up, so they're kept out of the cache
+		if (group.size() == 1){
+			writeSingle(group.iterator().next(), word, out);
+			return;
+		}
+		EntryKey entryKey = new EntryKey(key, folded);
+		Entry entry = cache.getIfPresent(entryKey);
+		if (entry == null || entry.group != group){
+			if (entry != null){
+				stale.increment();
+			}
+			entry = new Entry(group);
+			cache.put(entryKey, entry);
+		}
+		entry.write(group.indexOf(word), limit, out);
+	}
+
+	private static void writeSingle(String only, String word, OutputStream out) throws IOException {
+		if (only.equals(word)){
+			out.write(EMPTY);
+			return;
+		}
+		out.write(OPEN);
+		out.write('"');
+		for (int c = 0; c < only.length(); c++){
+			out.write(only.charAt(c));
+		}
+		out.write('"');
+		out.write(CLOSE);
+	}
+
+	/**
+	 * Drops the cached sets for a key (and its case-folded key), after its anagram set has changed.
+	 */
+	void invalidate(AnagramKey key){
+		cache.invalidate(new EntryKey(key, false));
+		cache.invalidate(new EntryKey(key.folded(), true));
+		invalidations.increment();
+	}
+
+	/**
+	 * Drops every cached set, after the whole corpus has been replaced.
+	 */
+	void invalidateAll(){
+		cache.invalidateAll();
+		invalidations.increment();
+	}
+
+	CacheStats stats(){
+		return cache.stats();
+	}
+
+	long entries(){
+		return cache.estimatedSize();
+	}
+
+	long bytes(){
+		return cache.policy().eviction().get().weightedSize().orElse(0);
+	}
+
+	long invalidations(){
+		return invalidations.sum();
+	}
+
+	long stale(){
+		return stale.sum();
+	}
+
+	private static final class EntryKey {
+		private final AnagramKey key;
+		private final boolean folded;
+
+		EntryKey(AnagramKey key, boolean folded){
+			this.key = key;
+			this.folded = folded;
+		}
+
+		@Override
+		public boolean equals(Object other){
+			if (!(other instanceof EntryKey)){
+				return false;
+			}
+			EntryKey that = (EntryKey) other;
+			return folded == that.folded && key.equals(that.key);
+		}
+
+		@Override
+		public int hashCode(){
+			return folded ? ~key.hashCode() : key.hashCode();
+		}
+	}
+
+	private static final class Entry {
+		private final WordGroup group;
+		//Each word as a JSON string followed by a comma, e.g. "dare","dear","read",
+		private final byte[] json;
+		//Where each word starts in the json, plus the total length at the end
+		private final int[] starts;
+
+		Entry(WordGroup group){
+			this.group = group;
+			starts = new int[group.size() + 1];
+			int length = 0;
+			int i = 0;
+			for (String word : group){
+				starts[i++] = length;
+				//Only roman letters make it into the corpus, so every word is one byte per character and needs no escaping
+				length += word.length() + 3;
+			}
+			starts[i] = length;
+			json = new byte[length];
+			i = 0;
+			for (String word : group){
+				int start = starts[i++];
+				json[start] = '"';
+				for (int c = 0; c < word.length(); c++){
+					json[start + 1 + c] = (byte) word.charAt(c);
+				}
+				json[start + word.length() + 1] = '"';
+				json[start + word.length() + 2] = ',';
+			}
+		}
+
+		int weight(){
+			return json.length + starts.length * 4 + ENTRY_OVERHEAD;
+		}
+
+		//Words [from, to) with their commas, minus the comma after the last one
+		private void writeRun(int from, int to, OutputStream out) throws IOException {
+			out.write(json, starts[from], starts[to] - starts[from] - 1);
+		}
+
+		/**
+		 * @param skip The index of the word to leave out, or -1 to leave none out
+		 * @param limit The most words to write, or null for all of them
+		 */
+		void write(int skip, Integer limit, OutputStream out) throws IOException {
+			int count = starts.length - 1;
+			int wanted = skip >= 0 ? count - 1 : count;
+			if (limit != null && limit < wanted){
+				wanted = limit;
+			}
+			out.write(OPEN);
+			if (wanted > 0){
+				if (skip < 0 || skip >= wanted){
+					//The skipped word (if any) is past the end, so it's one unbroken run
+					writeRun(0, wanted, out);
+				} else {
+					if (skip > 0){
+						writeRun(0, skip, out);
+						out.write(',');
+					}
+					writeRun(skip + 1, wanted + 1, out);
+				}
+			}
+			out.write(CLOSE);
+		}
+	}
+}
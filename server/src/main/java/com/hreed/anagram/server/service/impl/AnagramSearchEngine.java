@@ -0,0 +1,398 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Searches a corpus for words that can be spelled from a rack of letters (sub-anagrams),
+ * and for phrases of several words that use up every letter in the rack (multi-word anagrams).
+ *
+ * Both searches start by finding every folded key that fits within the rack. Rather than scanning the corpus,
+ * they use the corpus' letter mask index: a word can only fit within the rack if the letters it uses are a subset of the rack's,
+ * so only the mask buckets for subsets of the rack's letters are probed (or for racks with many distinct letters,
+ * every mask is checked with a single bitwise test).
+ *
+ * Wildcard queries use the same index from the other direction: every word matching a query with b blanks has all of the query's letters
+ * plus b more, so its mask is the query's mask plus at most b extra letters. Only those few thousand buckets (at most) need probing,
+ * rather than trying all 26^b ways of filling in the blanks.
+ *
+ * Every search is bounded, both by a cap on the number of results and by a time budget,
+ * so a single expensive rack can't tie up a request thread. Results cut short by the time budget are flagged as timed out.
+ */
+final class AnagramSearchEngine {
+
+	static final int DEFAULT_PHRASE_WORDS = 3;
+	static final int MAX_PHRASE_WORDS = 5;
+	static final char BLANK = '?';
+	static final int MAX_BLANKS = 3;
+	//Past this many distinct letters, scanning every mask is cheaper than enumerating 2^n subsets
+	private static final int MAX_ENUMERATED_LETTERS = 16;
+
+	private final int maxResults;
+	private final long timeBudgetNanos;
+
+	/**
+	 * @param maxResults The most results a single search may return, whatever limit is asked for
+	 * @param timeBudgetMillis The longest a single search may run before returning what it has found so far
+	 */
+	AnagramSearchEngine(int maxResults, long timeBudgetMillis){
+		this.maxResults = maxResults;
+		this.timeBudgetNanos = timeBudgetMillis * 1000000L;
+	}
+
+	/**Finds every word that can be spelled from the given letters, longest words first (then by key, then alphabetically).
+	 *
+	 * @param corpus The corpus to search
+	 * @param letters The rack of letters
+	 * @param after The last word of the previous page, to list the words after it, or null to start from the first
+	 * @param limit The most words to return, or null for the engine's maximum
+	 * @param caseInsensitive Whether to include proper nouns
+	 * @return The words found under "anagrams", and whether the time budget ran out under "timed_out"
+	 */
+	Map<String, Object> subAnagrams(SearchableCorpus corpus, String letters, String after, Integer limit, boolean caseInsensitive){
+		Budget budget = new Budget(effectiveLimit(limit));
+		List<String> words = new ArrayList<String>();
+		AnagramKey rack = AnagramKey.foldedOf(letters);
+		AnagramKey afterKey = after == null ? null : AnagramKey.foldedOf(after);
+		if (rack != null && budget.limit > 0 && (after == null || afterKey != null)){
+			List<Candidate> candidates = findCandidates(corpus, rack, caseInsensitive, budget);
+			for (Candidate candidate : candidates){
+				int order = afterKey == null ? 1 : candidate.compareTo(afterKey);
+				if (order < 0){
+					continue;
+				}
+				for (String word : candidate.words){
+					if (words.size() >= budget.limit){
+						break;
+					}
+					if (order > 0 || word.compareTo(after) > 0){
+						words.add(word);
+					}
+				}
+			}
+		}
+		return result("anagrams", words, budget);
+	}
+
+	/**Finds phrases of up to maxWords words that use every one of the given letters exactly once.
+	 *
+	 * @param corpus The corpus to search
+	 * @param letters The rack of letters. Spaces are ignored, so a phrase can be given as-is.
+	 * @param limit The most phrases to return, or null for the engine's maximum
+	 * @param maxWords The most words in a single phrase
+	 * @param caseInsensitive Whether to include proper nouns
+	 * @return The phrases found under "phrases", and whether the time budget ran out under "timed_out"
+	 */
+	Map<String, Object> phrases(SearchableCorpus corpus, String letters, Integer limit, int maxWords, boolean caseInsensitive){
+		Budget budget = new Budget(effectiveLimit(limit));
+		List<String> phrases = new ArrayList<String>();
+		AnagramKey rack = AnagramKey.foldedOf(letters.replaceAll("\\s", ""));
+		maxWords = Math.max(1, Math.min(maxWords, MAX_PHRASE_WORDS));
+		if (rack != null && rack.length() > 0 && budget.limit > 0){
+			List<Candidate> candidates = findCandidates(corpus, rack, caseInsensitive, budget);
+			int[] remaining = letterCounts(rack);
+			findPhrases(candidates, 0, remaining, rack.length(), maxWords, new ArrayList<Candidate>(), phrases, budget);
+		}
+		return result("phrases", phrases, budget);
+	}
+
+	/**Finds every word that is an anagram of the given letters, where each blank may stand in for any letter.
+	 *
+	 * @param corpus The corpus to search
+	 * @param query The letters of the query, with a '?' for each blank
+	 * @param limit Limit on the number of anagrams returned. Returns all if null.
+	 * @param caseInsensitive Whether the capitalization of the query and the words should be ignored
+	 * @return The matching words in alphabetical order, cut off at the limit, or an empty set if the query contains non-roman characters
+	 * @throws IllegalArgumentException If the query has more than {@link #MAX_BLANKS} blanks
+	 */
+	Set<String> wildcardAnagrams(SearchableCorpus corpus, String query, Integer limit, boolean caseInsensitive){
+		int blanks = 0;
+		StringBuilder letters = new StringBuilder(query.length());
+		for (int i = 0; i < query.length(); i++){
+			if (query.charAt(i) == BLANK){
+				blanks++;
+			} else {
+				letters.append(query.charAt(i));
+			}
+		}
+		if (blanks > MAX_BLANKS){
+			throw new IllegalArgumentException("At most "+MAX_BLANKS+" blanks are allowed, found "+blanks);
+		}
+		//The matches are found in no particular order, so only the alphabetically first ones seen so far are kept, the same ones a lookup would keep
+		TreeSet<String> anagrams = new TreeSet<String>();
+		AnagramKey queryKey = caseInsensitive ? AnagramKey.foldedOf(letters.toString()) : AnagramKey.of(letters.toString());
+		if (queryKey == null || (limit != null && limit <= 0)){
+			return anagrams;
+		}
+		AnagramKey foldedQuery = queryKey.folded();
+		int[] queryCounts = letterCounts(foldedQuery);
+		int length = foldedQuery.length() + blanks;
+		int queryMask = foldedQuery.letterMask();
+		List<Integer> masks = new ArrayList<Integer>();
+		addMasksWithExtraLetters(queryMask, 0, blanks, masks);
+		for (int mask : masks){
+			Set<AnagramKey> keys = corpus.foldedKeysWithMask(mask);
+			if (keys == null){
+				continue;
+			}
+			for (AnagramKey key : keys){
+				if (key.length() != length || !fitsWithin(queryCounts, letterCounts(key))){
+					continue;
+				}
+				Set<String> words = corpus.getFolded(key);
+				if (words == null){
+					continue;
+				}
+				for (String word : words){
+					//Just like a regular lookup, a lowercase query only matches lowercase words and a capitalized one only matches the same capital
+					if (caseInsensitive || AnagramKey.of(word).capitalLetter() == queryKey.capitalLetter()){
+						anagrams.add(word);
+						if (limit != null && anagrams.size() > limit){
+							anagrams.pollLast();
+						}
+					}
+				}
+			}
+		}
+		return anagrams;
+	}
+
+	//Collects the mask plus every combination of up to extraLetters letters it doesn't already have
+	private static void addMasksWithExtraLetters(int mask, int fromLetter, int extraLetters, List<Integer> masks){
+		masks.add(mask);
+		if (extraLetters == 0){
+			return;
+		}
+		for (int letter = fromLetter; letter < 26; letter++){
+			if ((mask & (1 << letter)) == 0){
+				addMasksWithExtraLetters(mask | (1 << letter), letter + 1, extraLetters - 1, masks);
+			}
+		}
+	}
+
+	//Backtracks through the candidates (longest first), only ever moving forward so the same phrase isn't found in every word order
+	private void findPhrases(List<Candidate> candidates, int start, int[] remaining, int remainingLength, int wordsLeft,
+			List<Candidate> chosen, List<String> phrases, Budget budget){
+		if (remainingLength == 0){
+			expandPhrase(chosen, 0, 0, new StringBuilder(), phrases, budget);
+			return;
+		}
+		if (wordsLeft == 0 || start >= candidates.size()){
+			return;
+		}
+		//Even the longest candidate left can't use up the rack in the words remaining
+		if (remainingLength > wordsLeft * candidates.get(start).length){
+			return;
+		}
+		for (int i = start; i < candidates.size(); i++){
+			if (phrases.size() >= budget.limit || budget.expired()){
+				return;
+			}
+			Candidate candidate = candidates.get(i);
+			if (candidate.length > remainingLength || !candidate.fitsWithin(remaining)){
+				continue;
+			}
+			candidate.subtractFrom(remaining);
+			chosen.add(candidate);
+			findPhrases(candidates, i, remaining, remainingLength - candidate.length, wordsLeft - 1, chosen, phrases, budget);
+			chosen.remove(chosen.size() - 1);
+			candidate.addTo(remaining);
+		}
+	}
+
+	//Every combination of words for the chosen keys is its own phrase. A key chosen more than once takes its words in order,
+	//from the word the previous pick of it took onwards, so "tab bat" isn't also found as "bat tab".
+	private void expandPhrase(List<Candidate> chosen, int index, int fromWord, StringBuilder phrase, List<String> phrases, Budget budget){
+		if (index == chosen.size()){
+			phrases.add(phrase.toString());
+			return;
+		}
+		Candidate candidate = chosen.get(index);
+		boolean repeated = index > 0 && chosen.get(index - 1) == candidate;
+		List<String> words = candidate.words;
+		int length = phrase.length();
+		for (int w = repeated ? fromWord : 0; w < words.size(); w++){
+			if (phrases.size() >= budget.limit || budget.expired()){
+				return;
+			}
+			if (index > 0){
+				phrase.append(' ');
+			}
+			phrase.append(words.get(w));
+			expandPhrase(chosen, index + 1, w, phrase, phrases, budget);
+			phrase.setLength(length);
+		}
+	}
+
+	/**
+	 * Finds every folded key in the corpus that fits within the rack and has at least one word to offer,
+	 * sorted longest first (and alphabetically within a length).
+	 */
+	private List<Candidate> findCandidates(SearchableCorpus corpus, AnagramKey rack, boolean caseInsensitive, Budget budget){
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		int[] rackCounts = letterCounts(rack);
+		int rackMask = rack.letterMask();
+		if (Integer.bitCount(rackMask) <= MAX_ENUMERATED_LETTERS){
+			//Walks every non-empty subset of the rack's letters
+			for (int mask = rackMask; mask != 0 && !budget.expired(); mask = (mask - 1) & rackMask){
+				addCandidates(corpus, corpus.foldedKeysWithMask(mask), rackCounts, caseInsensitive, candidates);
+			}
+		} else {
+			for (Integer mask : corpus.letterMasks()){
+				if (budget.expired()){
+					break;
+				}
+				if ((mask & ~rackMask) == 0){
+					addCandidates(corpus, corpus.foldedKeysWithMask(mask), rackCounts, caseInsensitive, candidates);
+				}
+			}
+		}
+		Collections.sort(candidates, LONGEST_FIRST);
+		return candidates;
+	}
+
+	private static void addCandidates(SearchableCorpus corpus, Set<AnagramKey> keys, int[] rackCounts, boolean caseInsensitive, List<Candidate> candidates){
+		if (keys == null){
+			return;
+		}
+		for (AnagramKey key : keys){
+			int[] counts = letterCounts(key);
+			if (!fitsWithin(counts, rackCounts)){
+				continue;
+			}
+			Set<String> group = corpus.getFolded(key);
+			if (group == null){
+				continue;
+			}
+			List<String> words = new ArrayList<String>(group.size());
+			for (String word : group){
+				//Proper nouns are only included when asked for, just like a regular anagram lookup
+				if (caseInsensitive || !Character.isUpperCase(word.charAt(0))){
+					words.add(word);
+				}
+			}
+			if (!words.isEmpty()){
+				Collections.sort(words);
+				candidates.add(new Candidate(key, counts, words));
+			}
+		}
+	}
+
+	private int effectiveLimit(Integer limit){
+		if (limit == null){
+			return maxResults;
+		}
+		return Math.max(0, Math.min(limit, maxResults));
+	}
+
+	private static Map<String, Object> result(String name, List<String> results, Budget budget){
+		Map<String, Object> response = new HashMap<String, Object>();
+		response.put(name, results);
+		response.put("timed_out", budget.timedOut);
+		return response;
+	}
+
+	private static int[] letterCounts(AnagramKey foldedKey){
+		int[] counts = new int[26];
+		for (int letter = 0; letter < 26; letter++){
+			counts[letter] = foldedKey.lowercaseCount(letter);
+		}
+		return counts;
+	}
+
+	private static boolean fitsWithin(int[] counts, int[] available){
+		for (int letter = 0; letter < 26; letter++){
+			if (counts[letter] > available[letter]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final Comparator<Candidate> LONGEST_FIRST = new Comparator<Candidate>() {
+		@Override
+		public int compare(Candidate first, Candidate second){
+			if (first.length != second.length){
+				return second.length - first.length;
+			}
+			return first.key.compareTo(second.key);
+		}
+	};
+
+	/**
+	 * A folded key that fits within the rack, along with its letter counts and the words it can contribute.
+	 */
+	private static final class Candidate {
+		final AnagramKey key;
+		final int[] counts;
+		final int length;
+		final List<String> words;
+
+		Candidate(AnagramKey key, int[] counts, List<String> words){
+			this.key = key;
+			this.counts = counts;
+			this.words = words;
+			int total = 0;
+			for (int count : counts){
+				total += count;
+			}
+			this.length = total;
+		}
+
+		//Where this candidate is listed against the given folded key: before it (negative), after it (positive) or the same key (zero)
+		int compareTo(AnagramKey foldedKey){
+			if (length != foldedKey.length()){
+				return foldedKey.length() - length;
+			}
+			return key.compareTo(foldedKey);
+		}
+
+		boolean fitsWithin(int[] available){
+			return AnagramSearchEngine.fitsWithin(counts, available);
+		}
+
+		void subtractFrom(int[] available){
+			for (int letter = 0; letter < 26; letter++){
+				available[letter] -= counts[letter];
+			}
+		}
+
+		void addTo(int[] available){
+			for (int letter = 0; letter < 26; letter++){
+				available[letter] += counts[letter];
+			}
+		}
+	}
+
+	/**
+	 * The result and time limits of a single search.
+	 */
+	private final class Budget {
+		final int limit;
+		final long deadline;
+		boolean timedOut;
+		private int checks;
+
+		Budget(int limit){
+			this.limit = limit;
+			this.deadline = System.nanoTime() + timeBudgetNanos;
+		}
+
+		//Only reads the clock every so often, since it is checked in the innermost loops
+		boolean expired(){
+			if (timedOut){
+				return true;
+			}
+			if ((++checks & 0xFF) == 0 && System.nanoTime() - deadline > 0){
+				timedOut = true;
+			}
+			return timedOut;
+		}
+	}
+}
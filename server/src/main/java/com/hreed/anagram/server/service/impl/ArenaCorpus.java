@@ -0,0 +1,550 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A single generation of the corpus for the {@link AnagramCorpusServiceArena}: a packed {@link WordArena}, plus the changes made since it was built.
+ *
+ * The arena can't change, so a changed anagram set moves out of it and into an overlay, which is an ordinary {@link Corpus}.
+ * The first change to any word with a given folded key copies every word with that key into the overlay, and from then on the overlay's
+ * copy is the only one that counts, even once it has been emptied. Lookups check whether a key has moved before going to the arena.
+ *
+ * Once enough keys have moved, the service packs the whole corpus into a new arena and swaps in a new generation with an empty overlay.
+ * The changes are applied one at a time by the service, so this is the only generation ever being changed.
+ *
+ * After each change, a new {@link Version} is published: the overlay's latest version, how many keys had moved by then, and the word statistics.
+ * Keys only ever move in, never back out, so a version can tell which keys had moved as of then from the order they moved in.
+ */
+final class ArenaCorpus implements StoredCorpus {
+
+	//The overlay is packed away once it holds more than this many folded sets, or a sixteenth of the arena's, whichever is more
+	static final int MIN_COMPACTION_SETS = 1024;
+	private static final byte[] OPEN = "{\"anagrams\":[".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CLOSE = "]}".getBytes(StandardCharsets.US_ASCII);
+
+	private final WordArena arena;
+	private final Corpus overlay = new Corpus();
+	//The folded keys whose words have moved to the overlay, each with the number of keys that had moved before it
+	private final ConcurrentHashMap<AnagramKey,Integer> moved = new ConcurrentHashMap<AnagramKey,Integer>();
+	private final AtomicInteger movedGroups = new AtomicInteger();
+	//Shared with the generations before and after it, so versions keep going up when the corpus is repacked
+	private final AtomicLong versions;
+	private volatile Version version;
+
+	private ArenaCorpus(WordArena arena, CorpusStatistics statistics, AtomicLong versions){
+		this.arena = arena;
+		this.versions = versions;
+		this.version = new Version(versions.incrementAndGet(), statistics, overlay.snapshot().groups, 0);
+	}
+
+	/**
+	 * @param versions Where the corpus's version numbers come from
+	 */
+	ArenaCorpus(AtomicLong versions){
+		this(WordArena.EMPTY, new CorpusStatistics(), versions);
+	}
+
+	/**
+	 * @param groups Anagram sets to pack into the arena
+	 * @param versions Where the corpus's version numbers come from
+	 */
+	ArenaCorpus(Map<AnagramKey,? extends Collection<String>> groups, AtomicLong versions){
+		this(WordArena.build(groups), statisticsOf(groups), versions);
+	}
+
+	private static CorpusStatistics statisticsOf(Map<AnagramKey,? extends Collection<String>> groups){
+		CorpusStatistics statistics = new CorpusStatistics();
+		for (Collection<String> group : groups.values()){
+			for (String word : group){
+				statistics.wordAdded(word.length());
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * @param key The exact key of the anagram set
+	 * @param excluded A word to leave out of the set, if it is there
+	 * @param limit The most words to include, or null for all of them
+	 * @return A read-only view of the set in alphabetical order, or null if there isn't one
+	 */
+	Set<String> get(AnagramKey key, String excluded, Integer limit){
+		if (!moved.isEmpty() && moved.containsKey(key.folded())){
+			WordGroup group = overlay.get(key);
+			return group == null ? null : group.view(excluded, limit);
+		}
+		int group = arena.groupId(key);
+		return group < 0 ? null : arena.group(group, excluded, limit);
+	}
+
+	/**
+	 * Like {@link #get(AnagramKey, String, Integer)}, for every word with the folded key regardless of capitalization
+	 */
+	Set<String> getFolded(AnagramKey foldedKey, String excluded, Integer limit){
+		if (!moved.isEmpty() && moved.containsKey(foldedKey)){
+			WordGroup group = overlay.getFolded(foldedKey);
+			return group == null ? null : group.view(excluded, limit);
+		}
+		int folded = arena.foldedId(foldedKey);
+		return folded < 0 ? null : arena.folded(folded, excluded, limit);
+	}
+
+	@Override
+	public Set<String> getFolded(AnagramKey foldedKey){
+		return getFolded(foldedKey, null, null);
+	}
+
+	/**
+	 * Writes the anagrams of a word as GET /anagrams/:word.json returns them. Sets still in the arena are written straight from its bytes.
+	 *
+	 * @param key The exact key of the word, or its folded key if folded is true. Null for a word with non-roman characters, which has no anagrams.
+	 * @param word The word that was looked up, which is left out
+	 */
+	void writeJson(AnagramKey key, boolean folded, String word, Integer limit, OutputStream out) throws IOException {
+		if (key == null){
+			out.write(OPEN);
+			out.write(CLOSE);
+			return;
+		}
+		AnagramKey foldedKey = folded ? key : key.folded();
+		if (moved.isEmpty() || !moved.containsKey(foldedKey)){
+			int id = folded ? arena.foldedId(key) : arena.groupId(key);
+			if (id >= 0){
+				if (folded){
+					arena.writeFoldedJson(id, word, limit, out);
+				} else {
+					arena.writeGroupJson(id, word, limit, out);
+				}
+				return;
+			}
+		}
+		Set<String> group = folded ? getFolded(key, word, limit) : get(key, word, limit);
+		out.write(OPEN);
+		if (group != null){
+			boolean first = true;
+			for (String anagram : group){
+				if (!first){
+					out.write(',');
+				}
+				first = false;
+				out.write('"');
+				for (int c = 0; c < anagram.length(); c++){
+					out.write(anagram.charAt(c));
+				}
+				out.write('"');
+			}
+		}
+		out.write(CLOSE);
+	}
+
+	/**Adds words that all share the same key to its anagram set.
+	 *
+	 * @param key The key shared by every word
+	 * @param words The words to be added
+	 * @return How many of the words were added, which is zero if every word was already in it
+	 */
+	int insertAll(AnagramKey key, Collection<String> words){
+		Set<String> current = get(key, null, null);
+		List<String> added = new ArrayList<String>(words.size());
+		for (String word : words){
+			if ((current == null || !current.contains(word)) && !added.contains(word)){
+				added.add(word);
+			}
+		}
+		if (added.isEmpty()){
+			return 0;
+		}
+		move(key.folded());
+		overlay.insertAll(key, added);
+		publish(added, Collections.<String>emptyList());
+		return added.size();
+	}
+
+	/**Removes a single word from the anagram set for its key, if it is there.
+	 *
+	 * @return True if the anagram set changed, false if the word wasn't in it
+	 */
+	boolean remove(AnagramKey key, String word){
+		Set<String> current = get(key, null, null);
+		if (current == null || !current.contains(word)){
+			return false;
+		}
+		move(key.folded());
+		overlay.remove(key, word);
+		publish(Collections.<String>emptyList(), Collections.singleton(word));
+		return true;
+	}
+
+	/**Removes an entire anagram set
+	 *
+	 * @return True if there was a set to remove
+	 */
+	@Override
+	public boolean removeGroup(AnagramKey key){
+		Set<String> current = get(key, null, null);
+		if (current == null){
+			return false;
+		}
+		move(key.folded());
+		overlay.removeGroup(key);
+		publish(Collections.<String>emptyList(), current);
+		return true;
+	}
+
+	//Publishes a version with the change just made, and the words it added and removed
+	private void publish(Collection<String> added, Collection<String> removed){
+		CorpusStatistics statistics = new CorpusStatistics(version.statistics());
+		for (String word : added){
+			statistics.wordAdded(word.length());
+		}
+		for (String word : removed){
+			statistics.wordRemoved(word.length());
+		}
+		version = new Version(versions.incrementAndGet(), statistics, overlay.snapshot().groups, moved.size());
+	}
+
+	//Copies every word with the folded key from the arena into the overlay, the first time one of them changes
+	private void move(AnagramKey foldedKey){
+		if (moved.containsKey(foldedKey)){
+			return;
+		}
+		int folded = arena.foldedId(foldedKey);
+		if (folded >= 0){
+			for (int group = arena.firstGroupOf(folded); group < arena.endGroupOf(folded); group++){
+				overlay.insertAll(arena.groupKey(group), arena.group(group, null, null));
+			}
+			movedGroups.addAndGet(arena.endGroupOf(folded) - arena.firstGroupOf(folded));
+		}
+		//Only once the overlay has every word do lookups switch over to it
+		moved.put(foldedKey, moved.size());
+	}
+
+	/**
+	 * @return Whether enough sets have moved to the overlay that the corpus should be repacked
+	 */
+	boolean needsCompaction(){
+		return moved.size() > Math.max(MIN_COMPACTION_SETS, arena.foldedCount() / 16);
+	}
+
+	/**
+	 * @return A new generation with every word packed into its arena, and nothing in its overlay
+	 */
+	ArenaCorpus compact(){
+		return new ArenaCorpus(WordArena.build(groups()), version.statistics(), versions);
+	}
+
+	/**
+	 * @return The number of folded sets that have moved to the overlay
+	 */
+	int movedSets(){
+		return moved.size();
+	}
+
+	@Override
+	public Set<AnagramKey> foldedKeysWithMask(int letterMask){
+		final int first = arena.firstWithMask(letterMask);
+		final Set<AnagramKey> overlaid = moved.isEmpty() ? null : overlay.foldedKeysWithMask(letterMask);
+		if (first < 0 && overlaid == null){
+			return null;
+		}
+		final int end = first < 0 ? first : arena.endOfMask(letterMask);
+		return new AbstractSet<AnagramKey>() {
+			@Override
+			public int size(){
+				int size = 0;
+				for (Iterator<AnagramKey> keys = iterator(); keys.hasNext(); keys.next()){
+					size++;
+				}
+				return size;
+			}
+
+			@Override
+			public Iterator<AnagramKey> iterator(){
+				//The arena's keys that haven't moved, then the overlay's keys that have
+				return new Iterator<AnagramKey>() {
+					private int next = first;
+					private final Iterator<AnagramKey> overlayKeys = overlaid == null ? Collections.<AnagramKey>emptyIterator() : overlaid.iterator();
+					private AnagramKey ahead = advance();
+
+					private AnagramKey advance(){
+						while (next >= 0 && next < end){
+							AnagramKey key = arena.foldedKey(next++);
+							if (moved.isEmpty() || !moved.containsKey(key)){
+								return key;
+							}
+						}
+						while (overlayKeys.hasNext()){
+							AnagramKey key = overlayKeys.next();
+							if (moved.containsKey(key)){
+								return key;
+							}
+						}
+						return null;
+					}
+
+					@Override
+					public boolean hasNext(){
+						return ahead != null;
+					}
+
+					@Override
+					public AnagramKey next(){
+						if (ahead == null){
+							throw new NoSuchElementException();
+						}
+						AnagramKey key = ahead;
+						ahead = advance();
+						return key;
+					}
+				};
+			}
+		};
+	}
+
+	@Override
+	public Set<Integer> letterMasks(){
+		if (moved.isEmpty()){
+			return arena.letterMasks();
+		}
+		Set<Integer> masks = new HashSet<Integer>(arena.letterMasks());
+		masks.addAll(overlay.letterMasks());
+		return masks;
+	}
+
+	/**
+	 * @return The latest version of the corpus, which never changes however the corpus is changed afterwards
+	 */
+	@Override
+	public Version snapshot(){
+		return version;
+	}
+
+	/**
+	 * @return The number of words in the corpus
+	 */
+	@Override
+	public int wordCount(){
+		return version.statistics().wordCount();
+	}
+
+	/**
+	 * @return The number of anagram sets in the corpus
+	 */
+	@Override
+	public int groupCount(){
+		return arena.groupCount() - movedGroups.get() + overlay.groupCount();
+	}
+
+	/**
+	 * @return The combined length of every word in the corpus
+	 */
+	long wordBytes(){
+		return version.statistics().totalWordLength();
+	}
+
+	/**
+	 * @return A read-only view of every anagram set in the corpus, by key. The sets are read out of the arena as the view is walked,
+	 * rather than all being turned back into Strings up front.
+	 */
+	@Override
+	public Map<AnagramKey,Set<String>> groups(){
+		return new AbstractMap<AnagramKey,Set<String>>() {
+			@Override
+			public Set<Entry<AnagramKey,Set<String>>> entrySet(){
+				return new AbstractSet<Entry<AnagramKey,Set<String>>>() {
+					@Override
+					public int size(){
+						return groupCount();
+					}
+
+					@Override
+					public Iterator<Entry<AnagramKey,Set<String>>> iterator(){
+						return new Iterator<Entry<AnagramKey,Set<String>>>() {
+							private int next = 0;
+							private final Iterator<Entry<AnagramKey,Set<String>>> overlayGroups = overlay.groups().entrySet().iterator();
+							private Entry<AnagramKey,Set<String>> ahead = advance();
+
+							private Entry<AnagramKey,Set<String>> advance(){
+								while (next < arena.groupCount()){
+									int group = next++;
+									AnagramKey key = arena.groupKey(group);
+									if (moved.isEmpty() || !moved.containsKey(key.folded())){
+										return new SimpleImmutableEntry<AnagramKey,Set<String>>(key, arena.group(group, null, null));
+									}
+								}
+								while (overlayGroups.hasNext()){
+									Entry<AnagramKey,Set<String>> group = overlayGroups.next();
+									if (moved.containsKey(group.getKey().folded())){
+										return group;
+									}
+								}
+								return null;
+							}
+
+							@Override
+							public boolean hasNext(){
+								return ahead != null;
+							}
+
+							@Override
+							public Entry<AnagramKey,Set<String>> next(){
+								if (ahead == null){
+									throw new NoSuchElementException();
+								}
+								Entry<AnagramKey,Set<String>> entry = ahead;
+								ahead = advance();
+								return entry;
+							}
+						};
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * @return The size of each of the arena's arrays, and an estimate for everything in the overlay
+	 */
+	Map<String,Long> footprint(){
+		Map<String,Long> footprint = arena.footprint();
+		long overlaySize = HeapFootprint.hashMap(moved.size()) + moved.size() * HeapFootprint.ANAGRAM_KEY;
+		for (long bytes : overlay.footprint().values()){
+			overlaySize += bytes;
+		}
+		footprint.put("overlay", overlaySize);
+		return footprint;
+	}
+
+	/**
+	 * A version of the corpus: the overlay as it was, and how many keys had moved to it, along with the arena that never changes.
+	 */
+	final class Version extends CorpusVersion {
+
+		private final GroupTree overlaid;
+		private final int movedCount;
+
+		Version(long version, CorpusStatistics statistics, GroupTree overlaid, int movedCount){
+			super(version, statistics);
+			this.overlaid = overlaid;
+			this.movedCount = movedCount;
+		}
+
+		//Whether the folded key had moved to the overlay as of this version
+		private boolean hasMoved(AnagramKey foldedKey){
+			if (movedCount == 0){
+				return false;
+			}
+			Integer order = moved.get(foldedKey);
+			return order != null && order < movedCount;
+		}
+
+		@Override
+		int largestGroupSize(){
+			int largest = overlaid.largestSize();
+			for (int position = arena.sizeOrderLength() - 1; position >= 0; position--){
+				int group = arena.sizeOrderGroup(position);
+				if (arena.groupSize(group) <= largest){
+					break;
+				}
+				if (!hasMoved(arena.groupKey(group).folded())){
+					return arena.groupSize(group);
+				}
+			}
+			return largest;
+		}
+
+		@Override
+		Iterator<Set<String>> groups(int size, AnagramKey after, int maxSize){
+			return new SizeOrder(size, after, maxSize);
+		}
+
+		/**
+		 * Walks the anagram sets in size order, merging the sets still in the arena with the ones in the overlay.
+		 */
+		private final class SizeOrder implements Iterator<Set<String>> {
+
+			private final int maxSize;
+			private int arenaPosition;
+			private AnagramKey arenaKey;
+			private int arenaGroup = -1;
+			private final Iterator<GroupTree.Node> overlayNodes;
+			private GroupTree.Node overlayNode;
+
+			SizeOrder(int size, AnagramKey after, int maxSize){
+				this.maxSize = maxSize;
+				arenaPosition = arena.sizeOrderStart(size, after);
+				overlayNodes = overlaid.iterator(size, after);
+				advanceArena();
+				advanceOverlay();
+			}
+
+			//Moves on to the next set in the arena that hadn't moved to the overlay
+			private void advanceArena(){
+				arenaGroup = -1;
+				while (arenaPosition < arena.sizeOrderLength()){
+					int group = arena.sizeOrderGroup(arenaPosition++);
+					if (arena.groupSize(group) > maxSize){
+						break;
+					}
+					AnagramKey key = arena.groupKey(group);
+					if (!hasMoved(key.folded())){
+						arenaGroup = group;
+						arenaKey = key;
+						return;
+					}
+				}
+			}
+
+			//The overlay only ever holds keys that have moved, so every one of its sets counts
+			private void advanceOverlay(){
+				overlayNode = overlayNodes.hasNext() ? overlayNodes.next() : null;
+				if (overlayNode != null && overlayNode.group.size() > maxSize){
+					overlayNode = null;
+				}
+			}
+
+			@Override
+			public boolean hasNext(){
+				return arenaGroup >= 0 || overlayNode != null;
+			}
+
+			@Override
+			public Set<String> next(){
+				if (!hasNext()){
+					throw new NoSuchElementException();
+				}
+				boolean fromArena = overlayNode == null;
+				if (arenaGroup >= 0 && overlayNode != null){
+					int result = Integer.compare(arena.groupSize(arenaGroup), overlayNode.group.size());
+					fromArena = result < 0 || (result == 0 && AnagramKey.PACKED_ORDER.compare(arenaKey, overlayNode.key) < 0);
+				}
+				if (fromArena){
+					Set<String> group = arena.group(arenaGroup, null, null);
+					advanceArena();
+					return group;
+				}
+				Set<String> group = overlayNode.group;
+				advanceOverlay();
+				return group;
+			}
+		}
+	}
+}
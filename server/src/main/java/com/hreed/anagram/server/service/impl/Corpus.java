@@ -0,0 +1,416 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * A single generation of the corpus: every anagram set, keyed by its AnagramKey.
+ *
+ * A whole corpus can be built up off to the side (while loading a dictionary, for instance)
+ * and then published to readers in one step by swapping the service's reference to it.
+ *
+ * The anagram sets themselves are immutable {@link WordGroup}s. A change to a set swaps in a new copy from within a per-key compute on the backing map,
+ * so concurrent writers to the same key are applied one at a time and never lose each other's words,
+ * and readers can use whatever set they looked up without locking it.
+ *
+ * Every change also publishes a new {@link Version} of the corpus: the word statistics, and every anagram set in a persistent tree ordered by size.
+ * The new version is swapped in with a compare and set from within the same per-key compute, so the changes to any one key are published in order,
+ * and each version is exactly the one before it plus a single change. Readers of the metadata and the size listings take the latest version
+ * and read everything from that, so what they see always adds up, no matter what writers do in the meantime.
+ *
+ * A second index holds every word under its case-folded key (see {@link AnagramKey#folded()}),
+ * so a case insensitive lookup is a single probe no matter how long the word is.
+ * It is also only ever updated from within the compute of the word's own key.
+ *
+ * Finally, the folded keys are indexed by their letter mask (which letters they use, ignoring counts),
+ * which lets the search engine find every key that could be spelled from a set of letters without scanning the corpus.
+ */
+final class Corpus implements StoredCorpus {
+
+	private final ConcurrentHashMap<AnagramKey,WordGroup> groups;
+	private final ConcurrentHashMap<AnagramKey,WordGroup> foldedGroups;
+	//A mask's bucket is created with its first key and removed with its last, so the search engine never walks masks that are no longer in use
+	private final ConcurrentHashMap<Integer,Set<AnagramKey>> foldedKeysByMask = new ConcurrentHashMap<Integer,Set<AnagramKey>>();
+	//Where version numbers come from. Shared with the generations before and after this one, so versions keep going up when the corpus is replaced.
+	private final AtomicLong versions;
+	private final AtomicReference<Version> version;
+	private Logger log = Logger.getLogger(this.getClass());
+
+	Corpus(){
+		this(new AtomicLong());
+	}
+
+	/**
+	 * @param versions Where the corpus's version numbers come from
+	 */
+	Corpus(AtomicLong versions){
+		groups = new ConcurrentHashMap<AnagramKey,WordGroup>();
+		foldedGroups = new ConcurrentHashMap<AnagramKey,WordGroup>();
+		this.versions = versions;
+		version = new AtomicReference<Version>(new Version(versions.incrementAndGet(), GroupTree.EMPTY, new CorpusStatistics()));
+	}
+
+	/**
+	 * @param groups Anagram sets to start the corpus with. Each set is copied into a WordGroup.
+	 */
+	Corpus(Map<AnagramKey,? extends Collection<String>> groups){
+		this(groups, new AtomicLong());
+	}
+
+	/**
+	 * @param groups Anagram sets to start the corpus with. Each set is copied into a WordGroup.
+	 * @param versions Where the corpus's version numbers come from
+	 */
+	Corpus(Map<AnagramKey,? extends Collection<String>> groups, AtomicLong versions){
+		this.groups = new ConcurrentHashMap<AnagramKey,WordGroup>(groups.size() * 4 / 3 + 1);
+		this.foldedGroups = new ConcurrentHashMap<AnagramKey,WordGroup>(groups.size() * 4 / 3 + 1);
+		this.versions = versions;
+		CorpusStatistics statistics = new CorpusStatistics();
+		//The corpus isn't published yet, so the folded sets can be gathered up first and frozen once they're complete
+		Map<AnagramKey,List<String>> foldedWords = new HashMap<AnagramKey,List<String>>(groups.size() * 4 / 3 + 1);
+		for (Entry<AnagramKey,? extends Collection<String>> entry : groups.entrySet()){
+			WordGroup group = WordGroup.of(entry.getValue());
+			if (group == null){
+				continue;
+			}
+			this.groups.put(entry.getKey(), group);
+			AnagramKey foldedKey = entry.getKey().folded();
+			List<String> foldedSet = foldedWords.get(foldedKey);
+			if (foldedSet == null){
+				foldedSet = new ArrayList<String>(group.size());
+				foldedWords.put(foldedKey, foldedSet);
+				addToMaskBucket(foldedKey);
+			}
+			for (String word : group){
+				statistics.wordAdded(word.length());
+				foldedSet.add(word);
+			}
+		}
+		for (Entry<AnagramKey,List<String>> folded : foldedWords.entrySet()){
+			foldedGroups.put(folded.getKey(), WordGroup.of(folded.getValue()));
+		}
+		//Built in bulk, which is much quicker than one set at a time
+		version = new AtomicReference<Version>(new Version(versions.incrementAndGet(), GroupTree.of(this.groups), statistics));
+	}
+
+	/**
+	 * @param key The key of the anagram set
+	 * @return The anagram set for the key, or null if there isn't one
+	 */
+	WordGroup get(AnagramKey key){
+		return groups.get(key);
+	}
+
+	/**Inserts a word into the anagram set for its key, creating the set if needed.
+	 *
+	 * @param key The key of the word
+	 * @param word The word to be added
+	 * @return True if the anagram set changed, false if the word was already in it
+	 */
+	boolean insert(AnagramKey key, final String word){
+		//Set from inside the compute, since the set may also change under other writers between here and there
+		final boolean[] added = new boolean[1];
+		groups.compute(key, (groupKey, wordSet) -> {
+			if (wordSet != null && wordSet.contains(word)){
+				return wordSet;
+			}
+			//If there isn't a set for a given key, start a new one
+			WordGroup changed = wordSet == null ? WordGroup.of(Collections.singleton(word)) : wordSet.with(word);
+			addFolded(groupKey.folded(), Collections.singleton(word));
+			publish(groupKey, wordSet, changed, Collections.singleton(word), Collections.<String>emptyList());
+			added[0] = true;
+			return changed;
+		});
+		//Skips building the message for every word unless it will actually be logged
+		if (log.isDebugEnabled()){
+			log.debug("Added word : " + word);
+		}
+		return added[0];
+	}
+
+	/**Inserts a batch of words that all share the same key, in a single update of the key's anagram set.
+	 *
+	 * @param key The key shared by every word
+	 * @param words The words to be added
+	 * @return How many of the words were added, which is zero if every word was already in it
+	 */
+	int insertAll(AnagramKey key, final Collection<String> words){
+		final int[] addedCount = new int[1];
+		groups.compute(key, (groupKey, wordSet) -> {
+			List<String> added = new ArrayList<String>(words.size());
+			for (String word : words){
+				if ((wordSet == null || !wordSet.contains(word)) && !added.contains(word)){
+					added.add(word);
+				}
+			}
+			if (added.isEmpty()){
+				return wordSet;
+			}
+			WordGroup changed = wordSet == null ? WordGroup.of(added) : wordSet.withAll(added);
+			addFolded(groupKey.folded(), added);
+			publish(groupKey, wordSet, changed, added, Collections.<String>emptyList());
+			addedCount[0] = added.size();
+			return changed;
+		});
+		if (log.isDebugEnabled()){
+			log.debug("Added words : " + words);
+		}
+		return addedCount[0];
+	}
+
+	/**Removes a single word from the anagram set for its key, if it is there.
+	 * The set itself is removed once its last word is.
+	 *
+	 * @param key The key of the word
+	 * @param word The word to be removed
+	 * @return True if the anagram set changed, false if the word wasn't in it
+	 */
+	boolean remove(AnagramKey key, final String word){
+		WordGroup before = groups.get(key);
+		//If there is a set for the key remove, otherwise it does not exist and does not need to be removed
+		WordGroup after = groups.computeIfPresent(key, (groupKey, wordSet) -> {
+			if (!wordSet.contains(word)){
+				return wordSet;
+			}
+			WordGroup changed = wordSet.without(word);
+			removeFolded(groupKey.folded(), Collections.singleton(word));
+			publish(groupKey, wordSet, changed, Collections.<String>emptyList(), Collections.singleton(word));
+			return changed;
+		});
+		return after != before;
+	}
+
+	/**Removes an entire anagram set
+	 *
+	 * @param key The key of the set to be removed
+	 * @return True if there was a set to remove
+	 */
+	@Override
+	public boolean removeGroup(AnagramKey key){
+		WordGroup before = groups.get(key);
+		WordGroup after = groups.computeIfPresent(key, (groupKey, wordSet) -> {
+			removeFolded(groupKey.folded(), wordSet);
+			publish(groupKey, wordSet, null, Collections.<String>emptyList(), wordSet);
+			return null;
+		});
+		return after != before;
+	}
+
+	/**
+	 * Publishes a new version with the key's anagram set changed. Always called from within the key's compute,
+	 * so the version it builds on already has every earlier change to the key.
+	 *
+	 * @param previous The set before the change, or null if it is new
+	 * @param changed The set after the change, or null if it has been removed
+	 */
+	private void publish(AnagramKey key, WordGroup previous, WordGroup changed, Collection<String> added, Collection<String> removed){
+		//Only changes to other keys can get in first, and then the change is simply made again on top of theirs
+		while (true){
+			Version latest = version.get();
+			GroupTree sets = changed == null ? latest.groups.without(key, previous.size())
+					: latest.groups.with(key, previous == null ? 0 : previous.size(), changed);
+			CorpusStatistics statistics = new CorpusStatistics(latest.statistics());
+			for (String word : added){
+				statistics.wordAdded(word.length());
+			}
+			for (String word : removed){
+				statistics.wordRemoved(word.length());
+			}
+			if (version.compareAndSet(latest, new Version(versions.incrementAndGet(), sets, statistics))){
+				return;
+			}
+		}
+	}
+
+	private void addFolded(AnagramKey foldedKey, final Collection<String> words){
+		foldedGroups.compute(foldedKey, (groupKey, wordSet) -> {
+			if (wordSet == null){
+				addToMaskBucket(groupKey);
+				return WordGroup.of(words);
+			}
+			return words.size() == 1 ? wordSet.with(words.iterator().next()) : wordSet.withAll(words);
+		});
+	}
+
+	private void removeFolded(AnagramKey foldedKey, final Collection<String> words){
+		foldedGroups.computeIfPresent(foldedKey, (groupKey, wordSet) -> {
+			for (String word : words){
+				wordSet = wordSet.without(word);
+				if (wordSet == null){
+					removeFromMaskBucket(groupKey);
+					return null;
+				}
+			}
+			return wordSet;
+		});
+	}
+
+	//Both change the bucket inside a compute on its mask, so a key is never added to a bucket that is being removed
+	private void addToMaskBucket(final AnagramKey foldedKey){
+		foldedKeysByMask.compute(foldedKey.letterMask(), (mask, bucket) -> {
+			if (bucket == null){
+				bucket = ConcurrentHashMap.<AnagramKey>newKeySet();
+			}
+			bucket.add(foldedKey);
+			return bucket;
+		});
+	}
+
+	private void removeFromMaskBucket(final AnagramKey foldedKey){
+		foldedKeysByMask.computeIfPresent(foldedKey.letterMask(), (mask, bucket) -> {
+			bucket.remove(foldedKey);
+			return bucket.isEmpty() ? null : bucket;
+		});
+	}
+
+	@Override
+	public Set<AnagramKey> foldedKeysWithMask(int letterMask){
+		return foldedKeysByMask.get(letterMask);
+	}
+
+	@Override
+	public Set<Integer> letterMasks(){
+		return foldedKeysByMask.keySet();
+	}
+
+	@Override
+	public WordGroup getFolded(AnagramKey foldedKey){
+		return foldedGroups.get(foldedKey);
+	}
+
+	/**
+	 * @return The latest version of the corpus, which never changes however the corpus is changed afterwards
+	 */
+	@Override
+	public Version snapshot(){
+		return version.get();
+	}
+
+	/**
+	 * @return The number of words in the corpus
+	 */
+	@Override
+	public int wordCount(){
+		return version.get().statistics().wordCount();
+	}
+
+	/**
+	 * @return The number of anagram sets in the corpus
+	 */
+	@Override
+	public int groupCount(){
+		return groups.size();
+	}
+
+	/**
+	 * @return The combined length of every word in the corpus
+	 */
+	long wordBytes(){
+		return version.get().statistics().totalWordLength();
+	}
+
+	/**
+	 * @return A live, read-only view of every anagram set in the corpus, by key
+	 */
+	@Override
+	public Map<AnagramKey,Set<String>> groups(){
+		return Collections.<AnagramKey,Set<String>>unmodifiableMap(groups);
+	}
+
+	/**
+	 * Estimates how much heap each structure of the corpus takes up, by walking every anagram set.
+	 * The words are shared by the exact and case-folded sets, so they're only counted once, under "words".
+	 *
+	 * @return The estimated bytes for each structure, by name
+	 */
+	Map<String,Long> footprint(){
+		long words = 0;
+		long anagramSets = HeapFootprint.hashMap(groups.size());
+		for (WordGroup group : groups.values()){
+			for (String word : group){
+				words += HeapFootprint.string(word.length());
+			}
+			anagramSets += HeapFootprint.ANAGRAM_KEY + HeapFootprint.wordGroup(group.size());
+		}
+		long foldedSets = HeapFootprint.hashMap(foldedGroups.size());
+		for (WordGroup group : foldedGroups.values()){
+			foldedSets += HeapFootprint.ANAGRAM_KEY + HeapFootprint.wordGroup(group.size());
+		}
+		long sizeIndex = version.get().groups.footprint();
+		long maskIndex = HeapFootprint.hashMap(foldedKeysByMask.size());
+		for (Set<AnagramKey> bucket : foldedKeysByMask.values()){
+			maskIndex += HeapFootprint.hashMap(bucket.size());
+		}
+		Map<String,Long> footprint = new LinkedHashMap<String,Long>();
+		footprint.put("words", words);
+		footprint.put("anagram_sets", anagramSets);
+		footprint.put("folded_sets", foldedSets);
+		footprint.put("size_index", sizeIndex);
+		footprint.put("mask_index", maskIndex);
+		return footprint;
+	}
+
+	/**
+	 * A version of the corpus, with every anagram set in a {@link GroupTree}
+	 */
+	static final class Version extends CorpusVersion {
+
+		final GroupTree groups;
+
+		Version(long version, GroupTree groups, CorpusStatistics statistics){
+			super(version, statistics);
+			this.groups = groups;
+		}
+
+		@Override
+		int largestGroupSize(){
+			return groups.largestSize();
+		}
+
+		@Override
+		Iterator<Set<String>> groups(int size, AnagramKey after, final int maxSize){
+			final Iterator<GroupTree.Node> nodes = groups.iterator(size, after);
+			return new Iterator<Set<String>>() {
+				private WordGroup ahead = advance();
+
+				private WordGroup advance(){
+					if (!nodes.hasNext()){
+						return null;
+					}
+					WordGroup group = nodes.next().group;
+					return group.size() > maxSize ? null : group;
+				}
+
+				@Override
+				public boolean hasNext(){
+					return ahead != null;
+				}
+
+				@Override
+				public Set<String> next(){
+					if (ahead == null){
+						throw new NoSuchElementException();
+					}
+					WordGroup group = ahead;
+					ahead = advance();
+					return group;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,349 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes the precompiled binary snapshot of a corpus, so a dictionary only has to be validated and keyed once at build time.
+ *
+ * The layout of a snapshot file is a fixed header followed by a body:
+ * <pre>
+ * header: int magic, int format version, long CRC32 of the body, int group count, int word count
+ * body:   UTF source dictionary name, long source length, long CRC32 of the source, long source modification time, then for each group:
+ *         byte packed flag, [long low, long high key counts if packed], int word count, then each word as an int length and its ASCII bytes
+ * </pre>
+ * Snapshots on the file system are read through a memory mapped FileChannel, and the checksum is verified before anything is decoded.
+ * Each group is decoded straight into the {@link WordGroup} the corpus keeps, so the words are only ever copied out of the buffer once.
+ *
+ * The source's fingerprint is recorded when the snapshot is built and compared against the dictionary as it is now,
+ * so a snapshot built before the dictionary was edited is never used. Checking it doesn't read the dictionary: inside a jar
+ * the entry's size and CRC32 come from the jar's directory, and on the file system the file's length and modification time are compared.
+ * Only a dictionary file that has been touched since is read through to compare its checksum.
+ *
+ * A snapshot can be read from a file, or from the class path by giving its location as "classpath:/name". The build writes the bundled dictionary's snapshot
+ * next to the compiled classes, so it is found on the class path whether the server runs from the build directory or from the packaged jar.
+ */
+public final class CorpusSnapshot {
+
+	static final int MAGIC = 0x414E4753;
+	static final int FORMAT_VERSION = 3;
+	//Version 2 snapshots, such as the write-ahead log's from before an upgrade, don't record the source's modification time but are otherwise the same
+	private static final int OLDEST_READABLE_VERSION = 2;
+	static final String CLASSPATH_PREFIX = "classpath:";
+	private static final int HEADER_LENGTH = 24;
+	//Written in place of the length of a source that isn't on the class path, such as the write-ahead log's own snapshots
+	private static final long NO_SOURCE = -1;
+
+	private CorpusSnapshot() {
+	}
+
+	/**Writes the given corpus to a snapshot file. The file is written off to the side and moved into place once complete,
+	 * so a running server never maps a half written snapshot.
+	 *
+	 * @param corpus The corpus groups to be written, by key
+	 * @param sourceName The name of the dictionary the corpus was built from
+	 * @param snapshotFile The file to write the snapshot to
+	 * @throws IOException If the snapshot could not be written
+	 */
+	public static void write(Map<AnagramKey, ? extends Collection<String>> corpus, String sourceName, File snapshotFile) throws IOException {
+		long[] source = fingerprint(sourceName);
+		write(corpus, sourceName, source[0], source[1], source[2], snapshotFile);
+	}
+
+	/**
+	 * Writes a snapshot that records the given length, checksum and modification time for its source, rather than the source's own
+	 */
+	static void write(Map<AnagramKey, ? extends Collection<String>> corpus, String sourceName, long sourceLength, long sourceChecksum,
+			long sourceModified, File snapshotFile) throws IOException {
+		File parent = snapshotFile.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		File tempFile = new File(snapshotFile.getPath() + ".tmp");
+		int groupCount = 0;
+		int wordCount = 0;
+		CRC32 checksum = new CRC32();
+		try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.position(HEADER_LENGTH);
+			//The channel is closed by the outer try, so the stream is only flushed here
+			OutputStream channelStream = Channels.newOutputStream(channel);
+			DataOutputStream body = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(channelStream, checksum), 1 << 16));
+			body.writeUTF(sourceName);
+			body.writeLong(sourceLength);
+			body.writeLong(sourceChecksum);
+			body.writeLong(sourceModified);
+			for (Entry<AnagramKey, ? extends Collection<String>> group : corpus.entrySet()) {
+				Collection<String> words = group.getValue();
+				if (words.isEmpty()) {
+					continue;
+				}
+				AnagramKey key = group.getKey();
+				if (key.isPacked()) {
+					body.writeByte(1);
+					body.writeLong(key.packedLow());
+					body.writeLong(key.packedHigh());
+				} else {
+					body.writeByte(0);
+				}
+				body.writeInt(words.size());
+				for (String word : words) {
+					body.writeInt(word.length());
+					body.writeBytes(word);
+				}
+				groupCount++;
+				wordCount += words.size();
+			}
+			body.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(checksum.getValue()).putInt(groupCount).putInt(wordCount);
+			header.flip();
+			channel.write(header, 0);
+			channel.force(true);
+		}
+		Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**Reads a snapshot from a file or the class path and decodes it into a corpus.
+	 * A snapshot inside a jar is compressed, so it can't be mapped, and is inflated into a buffer of its exact size instead.
+	 *
+	 * @param location The snapshot file's path, or "classpath:/name" for a snapshot on the class path
+	 * @param expectedSourceName The dictionary the snapshot must have been built from
+	 * @return The corpus stored in the snapshot
+	 * @throws FileNotFoundException If there is no snapshot at the location
+	 * @throws IOException If the snapshot can't be read, was built from a different dictionary or an older copy of it, or fails its version or checksum checks
+	 */
+	public static Map<AnagramKey, Set<String>> read(String location, String expectedSourceName) throws IOException {
+		if (!location.startsWith(CLASSPATH_PREFIX)) {
+			return read(new File(location), expectedSourceName);
+		}
+		URL resource = CorpusSnapshot.class.getResource(location.substring(CLASSPATH_PREFIX.length()));
+		if (resource == null) {
+			throw new FileNotFoundException("No snapshot `" + location + "` on the class path");
+		}
+		if ("file".equals(resource.getProtocol())) {
+			try {
+				return read(new File(resource.toURI()), expectedSourceName);
+			} catch (URISyntaxException e) {
+				throw new IOException("Snapshot `" + location + "` has an invalid location " + resource, e);
+			}
+		}
+		URLConnection connection = resource.openConnection();
+		long size = connection.getContentLengthLong();
+		if (size < 0 || size > Integer.MAX_VALUE) {
+			throw new IOException("Snapshot `" + location + "` has an invalid length of " + size + " bytes");
+		}
+		try (InputStream input = connection.getInputStream()) {
+			return decode(ByteBuffer.wrap(readFully(input, (int) size)), location, expectedSourceName);
+		}
+	}
+
+	/**Maps a snapshot file into memory and decodes it into a corpus.
+	 *
+	 * @param snapshotFile The snapshot file to read
+	 * @param expectedSourceName The dictionary the snapshot must have been built from
+	 * @return The corpus stored in the snapshot
+	 * @throws FileNotFoundException If there is no snapshot file
+	 * @throws IOException If the snapshot can't be read, was built from a different dictionary or an older copy of it, or fails its version or checksum checks
+	 */
+	public static Map<AnagramKey, Set<String>> read(File snapshotFile, String expectedSourceName) throws IOException {
+		if (!snapshotFile.isFile()) {
+			throw new FileNotFoundException("No snapshot file `" + snapshotFile + "`");
+		}
+		try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot `" + snapshotFile + "` has an invalid length of " + size + " bytes");
+			}
+			return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), snapshotFile.getPath(), expectedSourceName);
+		}
+	}
+
+	private static Map<AnagramKey, Set<String>> decode(ByteBuffer buffer, String snapshotFile, String expectedSourceName) throws IOException {
+		if (buffer.remaining() < HEADER_LENGTH) {
+			throw new IOException("Snapshot `" + snapshotFile + "` has an invalid length of " + buffer.remaining() + " bytes");
+		}
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("`" + snapshotFile + "` is not a corpus snapshot");
+		}
+		int version = buffer.getInt();
+		if (version < OLDEST_READABLE_VERSION || version > FORMAT_VERSION) {
+			throw new IOException("Snapshot `" + snapshotFile + "` is format version " + version + ", expected " + FORMAT_VERSION);
+		}
+		long expectedChecksum = buffer.getLong();
+		int groupCount = buffer.getInt();
+		int wordCount = buffer.getInt();
+
+		CRC32 checksum = new CRC32();
+		checksum.update(buffer.duplicate());
+		if (checksum.getValue() != expectedChecksum) {
+			throw new IOException("Snapshot `" + snapshotFile + "` failed its checksum, it may be truncated or corrupt");
+		}
+
+		String sourceName = readUTF(buffer);
+		if (!sourceName.equals(expectedSourceName)) {
+			throw new IOException("Snapshot `" + snapshotFile + "` was built from `" + sourceName + "`, not `" + expectedSourceName + "`");
+		}
+		long sourceLength = buffer.getLong();
+		long sourceChecksum = buffer.getLong();
+		//Unknown for the older version, which has a dictionary file read through for its checksum
+		long sourceModified = version > OLDEST_READABLE_VERSION ? buffer.getLong() : -1;
+		if (!isSameSource(CorpusSnapshot.class.getResource(expectedSourceName), sourceLength, sourceChecksum, sourceModified)) {
+			throw new IOException("Snapshot `" + snapshotFile + "` was built from another copy of `" + sourceName + "`, it has changed since");
+		}
+
+		Map<AnagramKey, Set<String>> corpus = new HashMap<AnagramKey, Set<String>>(groupCount * 4 / 3 + 1);
+		byte[] scratch = new byte[64];
+		int wordsRead = 0;
+		for (int group = 0; group < groupCount; group++) {
+			boolean packed = buffer.get() == 1;
+			AnagramKey key = packed ? AnagramKey.fromPacked(buffer.getLong(), buffer.getLong()) : null;
+			int groupSize = buffer.getInt();
+			String[] words = new String[groupSize];
+			for (int i = 0; i < groupSize; i++) {
+				int length = buffer.getInt();
+				if (length > scratch.length) {
+					scratch = new byte[Math.max(length, scratch.length * 2)];
+				}
+				buffer.get(scratch, 0, length);
+				words[i] = new String(scratch, 0, length, StandardCharsets.US_ASCII);
+			}
+			//Overflowed keys aren't stored, but every word in the group shares the same key
+			if (key == null) {
+				key = AnagramKey.of(words[0]);
+			}
+			corpus.put(key, WordGroup.of(words));
+			wordsRead += groupSize;
+		}
+		if (wordsRead != wordCount) {
+			throw new IOException("Snapshot `" + snapshotFile + "` held " + wordsRead + " words, expected " + wordCount);
+		}
+		return corpus;
+	}
+
+	/**
+	 * @param sourceName The dictionary's name on the class path
+	 * @return The dictionary's length in bytes, the CRC32 of its contents and when it was last modified,
+	 * or a length of -1 if there is no such dictionary
+	 */
+	static long[] fingerprint(String sourceName) throws IOException {
+		URL source = CorpusSnapshot.class.getResource(sourceName);
+		if (source == null) {
+			return new long[] {NO_SOURCE, 0, 0};
+		}
+		long[] contents = checksum(source);
+		return new long[] {contents[0], contents[1], source.openConnection().getLastModified()};
+	}
+
+	/**Checks a dictionary against the fingerprint a snapshot recorded for it, without reading it where that can be helped.
+	 *
+	 * @param source The dictionary on the class path, or null if there is none
+	 * @return True if the dictionary is the one the snapshot was built from
+	 */
+	static boolean isSameSource(URL source, long length, long checksum, long modified) throws IOException {
+		if (source == null) {
+			return length == NO_SOURCE;
+		}
+		URLConnection connection = source.openConnection();
+		if (connection instanceof JarURLConnection) {
+			//The jar's directory has the entry's size and checksum, so the entry itself never has to be inflated
+			JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+			if (entry.getSize() >= 0 && entry.getCrc() >= 0) {
+				return entry.getSize() == length && entry.getCrc() == checksum;
+			}
+		} else if ("file".equals(source.getProtocol())) {
+			File file;
+			try {
+				file = new File(source.toURI());
+			} catch (URISyntaxException e) {
+				throw new IOException("Dictionary has an invalid location " + source, e);
+			}
+			if (file.length() != length) {
+				return false;
+			}
+			if (file.lastModified() == modified) {
+				return true;
+			}
+		}
+		long[] contents = checksum(source);
+		return contents[0] == length && contents[1] == checksum;
+	}
+
+	//The length and CRC32 of a dictionary, read through from start to end
+	private static long[] checksum(URL source) throws IOException {
+		try (InputStream input = source.openStream()) {
+			CRC32 checksum = new CRC32();
+			byte[] buffer = new byte[1 << 16];
+			long length = 0;
+			int read;
+			while ((read = input.read(buffer)) > 0) {
+				checksum.update(buffer, 0, read);
+				length += read;
+			}
+			return new long[] {length, checksum.getValue()};
+		}
+	}
+
+	private static byte[] readFully(InputStream input, int size) throws IOException {
+		byte[] bytes = new byte[size];
+		int offset = 0;
+		while (offset < size) {
+			int read = input.read(bytes, offset, size - offset);
+			if (read < 0) {
+				throw new EOFException("Snapshot ended after " + offset + " of its " + size + " bytes");
+			}
+			offset += read;
+		}
+		return bytes;
+	}
+
+	//Mirrors DataOutputStream.writeUTF for the (ASCII) dictionary name
+	private static String readUTF(ByteBuffer buffer) {
+		int length = buffer.getShort() & 0xFFFF;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Build step for precompiling a dictionary into a snapshot.
+	 * Usage: CorpusSnapshot &lt;dictionary resource&gt; &lt;snapshot file&gt;
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: CorpusSnapshot <dictionary resource> <snapshot file>");
+			System.exit(1);
+		}
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory(null);
+		if (!AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY.equals(args[0])) {
+			service.populateCorpusFromDictionaryFile(args[0]);
+		}
+		write(service.corpusGroups(), args[0], new File(args[1]));
+		System.out.println("Wrote snapshot of `" + args[0] + "` to " + args[1]);
+	}
+}
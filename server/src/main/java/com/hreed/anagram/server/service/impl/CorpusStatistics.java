@@ -0,0 +1,151 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running word statistics for a corpus, kept up to date as words are added and removed
+ * so the metadata never has to be worked out by walking the whole corpus.
+ *
+ * Alongside the word count and total length, it keeps a histogram of word lengths.
+ * Word lengths are small, so the min, max and median can all be read off of the histogram in O(max word length).
+ *
+ * Each version of a corpus holds its own statistics. A change copies the previous version's (the histogram is only a few dozen counts)
+ * and updates the copy before publishing it, so statistics are never changed once readers can see them.
+ */
+final class CorpusStatistics {
+
+	private int wordCount;
+	private long totalWordLength;
+	//lengthCounts[n] is the number of words of length n
+	private long[] lengthCounts;
+
+	CorpusStatistics(){
+		lengthCounts = new long[32];
+	}
+
+	/**
+	 * @param statistics The statistics to start from a copy of
+	 */
+	CorpusStatistics(CorpusStatistics statistics){
+		wordCount = statistics.wordCount;
+		totalWordLength = statistics.totalWordLength;
+		lengthCounts = statistics.lengthCounts.clone();
+	}
+
+	/**
+	 * @param lengthCounts The number of words of each length, indexed by length
+	 * @return The statistics of a corpus with those words
+	 */
+	static CorpusStatistics ofLengthCounts(long[] lengthCounts){
+		CorpusStatistics statistics = new CorpusStatistics();
+		statistics.lengthCounts = Arrays.copyOf(lengthCounts, Math.max(lengthCounts.length, statistics.lengthCounts.length));
+		for (int length = 0; length < lengthCounts.length; length++){
+			statistics.wordCount += lengthCounts[length];
+			statistics.totalWordLength += length * lengthCounts[length];
+		}
+		return statistics;
+	}
+
+	/**
+	 * @param wordLength The length of a word that was added to the corpus
+	 */
+	void wordAdded(int wordLength){
+		if (wordLength >= lengthCounts.length){
+			lengthCounts = Arrays.copyOf(lengthCounts, Math.max(wordLength + 1, lengthCounts.length * 2));
+		}
+		lengthCounts[wordLength]++;
+		wordCount++;
+		totalWordLength += wordLength;
+	}
+
+	/**
+	 * @param wordLength The length of a word that was removed from the corpus
+	 */
+	void wordRemoved(int wordLength){
+		lengthCounts[wordLength]--;
+		wordCount--;
+		totalWordLength -= wordLength;
+	}
+
+	/**
+	 * @return The number of words in the corpus
+	 */
+	int wordCount(){
+		return wordCount;
+	}
+
+	/**
+	 * @return The combined length of every word in the corpus
+	 */
+	long totalWordLength(){
+		return totalWordLength;
+	}
+
+	/**
+	 * @return A copy of the number of words of each length, indexed by length, up to the longest word
+	 */
+	long[] lengthCounts(){
+		int longest = lengthCounts.length - 1;
+		while (longest >= 0 && lengthCounts[longest] == 0){
+			longest--;
+		}
+		return Arrays.copyOf(lengthCounts, longest + 1);
+	}
+
+	/**
+	 * Returns the number of words, min,max,median, and average word length.
+	 * Returns zero for all values if there are no words.
+	 * @return The metadata values in a key,value collection.
+	 */
+	Map<String, Object> toMetadata(){
+		Map<String, Object> results = new HashMap<String, Object>();
+		//If there is no collection of words to actually sort through
+		if (wordCount == 0){
+			results.put("word_count", 0);
+			results.put("min_length", 0);
+			results.put("max_length", 0);
+			results.put("median_length", 0);
+			results.put("avg_length", 0);
+			return results;
+		}
+		int minWordLength = 0;
+		while (lengthCounts[minWordLength] == 0){
+			minWordLength++;
+		}
+		int maxWordLength = lengthCounts.length - 1;
+		while (lengthCounts[maxWordLength] == 0){
+			maxWordLength--;
+		}
+		DecimalFormat decimalFormatter = new DecimalFormat("#.###");
+		results.put("word_count", wordCount);
+		results.put("min_length", minWordLength);
+		results.put("max_length", maxWordLength);
+		results.put("median_length", decimalFormatter.format(calculateMedian()));
+		results.put("avg_length", decimalFormatter.format(((double) totalWordLength / (double) wordCount)));
+		return results;
+	}
+
+	/**
+	 * Finds the median word length by walking the histogram to the middle word(s).
+	 * For an even number of words, the median is the mean of the two middle word lengths.
+	 */
+	private double calculateMedian(){
+		int upperMiddle = wordCount / 2;
+		int lowerMiddle = (wordCount % 2 == 1) ? upperMiddle : upperMiddle - 1;
+		int lowerValue = -1;
+		long wordsSeen = 0;
+		for (int length = 0; length < lengthCounts.length; length++){
+			wordsSeen += lengthCounts[length];
+			if (lowerValue < 0 && wordsSeen > lowerMiddle){
+				lowerValue = length;
+			}
+			if (wordsSeen > upperMiddle){
+				return ((double) lowerValue + (double) length) / 2;
+			}
+		}
+		return 0.0;
+	}
+}
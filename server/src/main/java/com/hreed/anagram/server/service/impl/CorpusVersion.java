@@ -0,0 +1,131 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.hreed.anagram.server.service.AnagramCorpusSnapshot;
+import com.hreed.anagram.server.service.AnagramGroupVisitor;
+import com.hreed.anagram.server.service.GroupCursor;
+
+/**
+ * One published version of a corpus: its word statistics, and every anagram set in size order, exactly as they were when it was published.
+ *
+ * Each storage engine says how to walk its sets in size order, and the paging and listings are worked out here the same way for both.
+ */
+abstract class CorpusVersion implements AnagramCorpusSnapshot {
+
+	private final long version;
+	private final CorpusStatistics statistics;
+
+	/**
+	 * @param version The version number
+	 * @param statistics The word statistics as of this version, which must never be changed afterwards
+	 */
+	CorpusVersion(long version, CorpusStatistics statistics){
+		this.version = version;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * @return The size of the largest anagram set, or zero if the corpus is empty
+	 */
+	abstract int largestGroupSize();
+
+	/**
+	 * @param size The smallest size of set to start from
+	 * @param after If not null, start from the first set of the given size whose key comes after this one
+	 * @param maxSize The largest size of set to include
+	 * @return The sets from that point on, smallest first and in key order within each size
+	 */
+	abstract Iterator<Set<String>> groups(int size, AnagramKey after, int maxSize);
+
+	@Override
+	public long getVersion(){
+		return version;
+	}
+
+	CorpusStatistics statistics(){
+		return statistics;
+	}
+
+	@Override
+	public Map<String, Object> getCorpusMetadata(){
+		return statistics.toMetadata();
+	}
+
+	@Override
+	public long[] getWordLengthCounts(){
+		return statistics.lengthCounts();
+	}
+
+	@Override
+	public ArrayList<Set<String>> getLargestAnagramSets(){
+		int largest = largestGroupSize();
+		return largest == 0 ? new ArrayList<Set<String>>() : groupsOfSizes(largest, largest);
+	}
+
+	@Override
+	public ArrayList<Set<String>> getAnagramGroupsBySize(int size){
+		return groupsOfSizes(size, Integer.MAX_VALUE);
+	}
+
+	private ArrayList<Set<String>> groupsOfSizes(int minSize, int maxSize){
+		ArrayList<Set<String>> result = new ArrayList<Set<String>>();
+		for (Iterator<Set<String>> groups = groups(Math.max(minSize, 1), null, maxSize); groups.hasNext(); ){
+			result.add(groups.next());
+		}
+		return result;
+	}
+
+	@Override
+	public GroupCursor visitLargestAnagramSets(GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+		//Later pages stick to the size the first page was listing, even if a larger set has turned up since
+		int size = after == null ? largestGroupSize() : after.getSize();
+		return visitGroups(Math.max(size, 1), size, after, limit, visitor);
+	}
+
+	@Override
+	public GroupCursor visitAnagramGroupsBySize(int size, GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+		return visitGroups(size, Integer.MAX_VALUE, after, limit, visitor);
+	}
+
+	/**
+	 * Visits the anagram sets with sizes from minSize to maxSize, smallest first and in key order within each size, without copying them into a list.
+	 *
+	 * @param after Where the previous page left off, or null to start from the smallest set
+	 * @param limit The most sets to visit, or null for all of them
+	 * @return Where this page left off, or null if there are no more sets in the range
+	 */
+	GroupCursor visitGroups(int minSize, int maxSize, GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+		if (minSize > maxSize || (after != null && after.getSize() > maxSize)){
+			return null;
+		}
+		Iterator<Set<String>> groups;
+		if (after != null && after.getSize() >= minSize){
+			//The keys are compared by their packed order, so the page carries on from the right place even if the last set has since been removed
+			groups = groups(after.getSize(), after.isStart() ? null : AnagramKey.of(after.getWord()), maxSize);
+		} else {
+			groups = groups(Math.max(minSize, 1), null, maxSize);
+		}
+		Set<String> last = null;
+		int visited = 0;
+		while (groups.hasNext()){
+			Set<String> group = groups.next();
+			if (limit != null && visited >= limit){
+				//Only the last set's position is needed, so the cursor is built once the page is full rather than for every set.
+				//An empty first page still says where the listing starts, so it can be picked up from there.
+				if (last == null){
+					return after == null ? GroupCursor.start(group.size()) : after;
+				}
+				return new GroupCursor(last.size(), last.iterator().next());
+			}
+			visitor.visit(group);
+			visited++;
+			last = group;
+		}
+		return null;
+	}
+}
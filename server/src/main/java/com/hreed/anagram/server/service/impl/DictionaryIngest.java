@@ -0,0 +1,128 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
+
+/**
+ * Validates and keys the lines of a dictionary in parallel, as it is read.
+ *
+ * The lines are read into chunks, and each chunk is keyed into its own map as a separate task on the common fork-join pool while the next one is read.
+ * The reading thread merges each chunk's map into the result, oldest chunk first, once it has read a few chunks ahead of it, so the whole file
+ * is never held in memory as lines. Nothing is shared between chunks, so no locking is needed until the finished corpus is published.
+ */
+final class DictionaryIngest implements Callable<HashMap<AnagramKey,Set<String>>> {
+
+	static final int CHUNK_SIZE = 8192;
+	//How many chunks may be waiting to be keyed for each worker, before reading stops to merge the oldest one
+	private static final int CHUNKS_AHEAD_PER_WORKER = 2;
+
+	private final List<String> lines;
+	private final Predicate<AnagramKey> owned;
+
+	private DictionaryIngest(List<String> lines, Predicate<AnagramKey> owned){
+		this.lines = lines;
+		this.owned = owned;
+	}
+
+	/**Groups the valid words of a dictionary into anagram sets, on the common fork-join pool, for a corpus to be built from.
+	 * 
+	 * @param dictionary The dictionary file, one word per line. It is closed once it has been read.
+	 * @param owned Which keys to keep, when this node only holds its share of a sharded corpus, or null to keep them all
+	 * @return The anagram sets, by key, and how many lines were read
+	 */
+	static Ingested groups(InputStream dictionary, Predicate<AnagramKey> owned) throws IOException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int maxChunksAhead = Math.max(pool.getParallelism(), 1) * CHUNKS_AHEAD_PER_WORKER;
+		ArrayDeque<ForkJoinTask<HashMap<AnagramKey,Set<String>>>> chunks = new ArrayDeque<ForkJoinTask<HashMap<AnagramKey,Set<String>>>>();
+		HashMap<AnagramKey,Set<String>> groups = new HashMap<AnagramKey,Set<String>>();
+		long lineCount = 0;
+		BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(dictionary, "UTF-8"));
+		try {
+			List<String> chunk = new ArrayList<String>(CHUNK_SIZE);
+			String word;
+			while ((word=bufferedReader.readLine())!=null){
+				chunk.add(word);
+				lineCount++;
+				if (chunk.size() == CHUNK_SIZE){
+					chunks.add(pool.submit(new DictionaryIngest(chunk, owned)));
+					chunk = new ArrayList<String>(CHUNK_SIZE);
+					if (chunks.size() > maxChunksAhead){
+						groups = merge(groups, chunks.remove().join());
+					}
+				}
+			}
+			if (!chunk.isEmpty()){
+				chunks.add(pool.submit(new DictionaryIngest(chunk, owned)));
+			}
+		} finally {
+			bufferedReader.close();
+		}
+		while (!chunks.isEmpty()){
+			groups = merge(groups, chunks.remove().join());
+		}
+		return new Ingested(groups, lineCount);
+	}
+
+	//Keys one chunk of lines into a map of its own
+	@Override
+	public HashMap<AnagramKey,Set<String>> call(){
+		HashMap<AnagramKey,Set<String>> groups = new HashMap<AnagramKey,Set<String>>();
+		for (String word : lines){
+			if (AnagramCorpusServiceInMemory.isValidWord(word)){
+				AnagramKey key = AnagramKey.of(word);
+				if (owned != null && !owned.test(key)){
+					continue;
+				}
+				Set<String> wordSet = groups.get(key);
+				if (wordSet == null){
+					wordSet = new HashSet<String>();
+					groups.put(key, wordSet);
+				}
+				wordSet.add(word);
+			}
+		}
+		return groups;
+	}
+
+	//Merges the smaller map into the larger one to keep the copying down
+	private static HashMap<AnagramKey,Set<String>> merge(HashMap<AnagramKey,Set<String>> first, HashMap<AnagramKey,Set<String>> second){
+		HashMap<AnagramKey,Set<String>> into = first.size() < second.size() ? second : first;
+		HashMap<AnagramKey,Set<String>> from = into == first ? second : first;
+		for (Entry<AnagramKey,Set<String>> group : from.entrySet()){
+			Set<String> existing = into.get(group.getKey());
+			if (existing == null){
+				into.put(group.getKey(), group.getValue());
+			} else {
+				existing.addAll(group.getValue());
+			}
+		}
+		return into;
+	}
+
+	/**
+	 * The anagram sets of a dictionary, and how many lines it had (valid words or not) for the ingest throughput
+	 */
+	static final class Ingested {
+
+		final HashMap<AnagramKey,Set<String>> groups;
+		final long lines;
+
+		private Ingested(HashMap<AnagramKey,Set<String>> groups, long lines){
+			this.groups = groups;
+			this.lines = lines;
+		}
+	}
+}
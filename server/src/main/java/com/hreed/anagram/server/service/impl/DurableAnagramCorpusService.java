@@ -0,0 +1,428 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.hreed.anagram.server.metrics.MetricsRegistry;
+import com.hreed.anagram.server.service.AnagramCorpusService;
+import com.hreed.anagram.server.service.AnagramCorpusSnapshot;
+import com.hreed.anagram.server.service.AnagramGroupVisitor;
+import com.hreed.anagram.server.service.AnagramVisitor;
+import com.hreed.anagram.server.service.GroupCursor;
+
+/**
+ * Makes the corpus survive a restart, by logging every change to a {@link WriteAheadLog} before acknowledging it
+ * and periodically writing the whole corpus out as a snapshot (in the same format as the precompiled dictionary, see {@link CorpusSnapshot}).
+ *
+ * The data directory holds snapshot-N.snapshot, which covers every change logged before segment N, and the log segments from N on.
+ * On startup the newest snapshot is loaded and only the segments after it are replayed, so recovery time depends on the size of the corpus
+ * and the changes since the last snapshot, not on the whole history. With no snapshot yet, the segments are replayed on top of the dictionary.
+ *
+ * Each change is appended to the log under a lock, and only applied to the corpus once it is durable, in the order it was logged.
+ * The lock is released before waiting for the log to be synced, so concurrent writers share fsyncs rather than queueing for one each.
+ * Readers never see a change that a crash could still lose, and a change that fails to be logged is never applied.
+ * Once the log has failed, changes are refused before they are logged.
+ *
+ * Snapshots are taken without stopping writers. The log moves on to a new segment first, so any change the snapshot might miss is in the new segment.
+ * A change the snapshot did pick up may be replayed on top of it again, which is harmless since replaying a change always leaves a word in the same
+ * state (added or removed) no matter how many times it is applied.
+ *
+ * Only used when `anagram.wal.dir` is set (see {@link StorageConfig}).
+ */
+public class DurableAnagramCorpusService implements AnagramCorpusService, Closeable {
+
+	static final String SNAPSHOT_SOURCE = "write-ahead-log";
+	private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.snapshot");
+
+	private final RestorableAnagramCorpusService delegate;
+	private final File directory;
+	private final WriteAheadLog log;
+	//Held while a change is appended to the log, and while the log is rotated
+	private final Object mutationLock = new Object();
+	//Changes are applied under this, each once every change logged before it has been. Guards applied.
+	private final Object applyLock = new Object();
+	//The log position that every change before has been applied (or, if it failed to be logged, skipped)
+	private long applied;
+	//Held for the whole of a snapshot, so only one is ever being written
+	private final Object snapshotLock = new Object();
+	private volatile long snapshotPosition;
+	private volatile long lastSnapshotNanos;
+	private final ScheduledExecutorService snapshotter;
+	private Logger logger = Logger.getLogger(this.getClass());
+
+	/**
+	 * Recovers the corpus from the data directory and opens a new log segment to append to.
+	 *
+	 * @param delegate The storage engine to keep durable, created without loading the dictionary. Recovery fills it from the newest snapshot,
+	 * or from the dictionary if there is no snapshot yet, and then replays the log.
+	 * @param directory The data directory, created if it doesn't exist
+	 * @param fsync Whether to fsync the log before acknowledging a change
+	 * @param snapshotIntervalSeconds How often to check for new changes and snapshot them, or zero to only snapshot when asked to
+	 * @throws IOException If the data directory can't be read, or the newest snapshot in it is corrupt
+	 */
+	public DurableAnagramCorpusService(RestorableAnagramCorpusService delegate, String directory, boolean fsync,
+			long snapshotIntervalSeconds) throws IOException {
+		this.delegate = delegate;
+		this.directory = new File(directory.trim());
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()){
+			throw new IOException("Unable to create data directory `"+this.directory+"`");
+		}
+		long nextSegment = recover();
+		log = new WriteAheadLog(this.directory, nextSegment, fsync);
+		if (snapshotIntervalSeconds > 0){
+			snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "corpus-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			});
+			snapshotter.scheduleWithFixedDelay(this::snapshotIfChanged, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+		} else {
+			snapshotter = null;
+		}
+	}
+
+	/**Registers gauges for the write-ahead log and snapshots.
+	 *
+	 * @param metrics The registry to add the gauges to
+	 */
+	@Autowired(required = false)
+	public void registerMetrics(MetricsRegistry metrics){
+		metrics.gauge("anagram_wal_records", () -> log.records());
+		metrics.gauge("anagram_wal_syncs", () -> log.syncs());
+		metrics.gauge("anagram_wal_unsnapshotted_bytes", () -> log.appended() - snapshotPosition);
+		metrics.gauge("anagram_wal_last_snapshot_seconds", () -> lastSnapshotNanos / 1e9);
+	}
+
+	//Loads the newest snapshot and replays the log after it, returning the number of the segment to start appending to
+	private long recover() throws IOException {
+		long start = System.nanoTime();
+		long firstSegment = 0;
+		List<Long> snapshots = snapshots(directory);
+		if (!snapshots.isEmpty()){
+			firstSegment = snapshots.get(snapshots.size() - 1);
+			File snapshotFile = snapshotFile(directory, firstSegment);
+			//Refusing to start beats silently starting from an older state
+			delegate.restoreCorpus(CorpusSnapshot.read(snapshotFile, SNAPSHOT_SOURCE));
+			logger.info("Loaded corpus snapshot `"+snapshotFile+"` in "+(System.nanoTime()-start)/1000000+"ms");
+		} else {
+			//Until the first snapshot, the log holds the changes made since the dictionary was loaded
+			delegate.populateCorpusFromDictionaryFile(AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY);
+		}
+		long lastSegment = firstSegment;
+		long replayed = 0;
+		for (long segment : WriteAheadLog.segments(directory)){
+			if (segment >= firstSegment){
+				replayed += WriteAheadLog.replay(WriteAheadLog.segmentFile(directory, segment), this::apply);
+				lastSegment = segment;
+			}
+		}
+		logger.info("Recovered corpus from `"+directory+"`, replaying "+replayed+" logged changes, in "+(System.nanoTime()-start)/1000000+"ms");
+		//Never append to a segment that may end in a partly written record
+		return lastSegment + 1;
+	}
+
+	//Applies a change read back from the log, without logging it again
+	private void apply(byte operation, List<String> words){
+		switch (operation){
+		case WriteAheadLog.ADD_WORDS:
+			delegate.addWords(new HashSet<String>(words));
+			break;
+		case WriteAheadLog.DELETE_WORD:
+			delegate.deleteWord(words.get(0));
+			break;
+		case WriteAheadLog.DELETE_ANAGRAMS:
+			delegate.deleteAnagrams(words.get(0));
+			break;
+		case WriteAheadLog.DELETE_ALL_WORDS:
+			delegate.deleteAllWords();
+			break;
+		case WriteAheadLog.RELOAD:
+			delegate.populateCorpusFromDictionaryFile(words.get(0));
+			break;
+		default:
+			logger.warn("Skipping logged change of unknown type "+operation);
+		}
+	}
+
+	//Logs a change, waits for it to be durable, then applies it
+	private void logged(byte operation, List<String> words, Runnable change){
+		byte[] record = WriteAheadLog.record(operation, words);
+		long position;
+		synchronized (mutationLock){
+			try {
+				log.checkWritable();
+			} catch (IOException e){
+				throw new UncheckedIOException("Unable to write change to the write-ahead log", e);
+			}
+			position = log.append(record);
+		}
+		IOException failure = null;
+		try {
+			log.awaitDurable(position);
+		} catch (IOException e){
+			failure = e;
+		}
+		//Records are appended back to back, so the change before this one ends where this one starts
+		applyInOrder(position - record.length, position, failure == null ? change : null);
+		if (failure != null){
+			throw new UncheckedIOException("Unable to write change to the write-ahead log", failure);
+		}
+	}
+
+	//Waits for every change logged before the one at the given positions to be applied, then applies it. A null change only moves past it.
+	private void applyInOrder(long start, long end, Runnable change){
+		boolean interrupted = false;
+		synchronized (applyLock){
+			while (applied != start){
+				try {
+					applyLock.wait();
+				} catch (InterruptedException e){
+					//The changes after this one would wait forever if it gave up its turn
+					interrupted = true;
+				}
+			}
+			try {
+				if (change != null){
+					change.run();
+				}
+			} finally {
+				applied = end;
+				applyLock.notifyAll();
+			}
+		}
+		if (interrupted){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//Waits until every change logged before the given position has been applied
+	private void awaitApplied(long position) throws IOException {
+		synchronized (applyLock){
+			while (applied < position){
+				try {
+					applyLock.wait();
+				} catch (InterruptedException e){
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted waiting for logged changes to be applied", e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public int addWords(Set<String> newWords) {
+		//Invalid words would never make it into the corpus, so there's no need to log them
+		List<String> validWords = new ArrayList<String>(newWords.size());
+		for (String word : newWords){
+			if (AnagramCorpusServiceInMemory.isValidWord(word)){
+				validWords.add(word);
+			}
+		}
+		if (validWords.isEmpty()){
+			return 0;
+		}
+		final int[] added = new int[1];
+		logged(WriteAheadLog.ADD_WORDS, validWords, () -> added[0] = delegate.addWords(newWords));
+		return added[0];
+	}
+
+	@Override
+	public void deleteWord(String word) {
+		logged(WriteAheadLog.DELETE_WORD, Collections.singletonList(word), () -> delegate.deleteWord(word));
+	}
+
+	@Override
+	public void deleteAnagrams(String word) {
+		logged(WriteAheadLog.DELETE_ANAGRAMS, Collections.singletonList(word), () -> delegate.deleteAnagrams(word));
+	}
+
+	@Override
+	public void deleteAllWords() {
+		logged(WriteAheadLog.DELETE_ALL_WORDS, Collections.<String>emptyList(), () -> delegate.deleteAllWords());
+	}
+
+	@Override
+	public void populateCorpusFromDictionaryFile(String fileName) {
+		logged(WriteAheadLog.RELOAD, Collections.singletonList(fileName), () -> delegate.populateCorpusFromDictionaryFile(fileName));
+	}
+
+	/**
+	 * Writes the whole corpus out as a new snapshot, then deletes the older snapshots and the log segments it covers.
+	 *
+	 * @throws IOException If the snapshot couldn't be written. The older snapshot and log are left in place.
+	 */
+	public void snapshot() throws IOException {
+		synchronized (snapshotLock){
+			long start = System.nanoTime();
+			long segment;
+			long position;
+			synchronized (mutationLock){
+				segment = log.rotate();
+				position = log.appended();
+			}
+			//Rotating synced every change logged before the new segment, so each is applied soon after, and once they all are the corpus covers them
+			awaitApplied(position);
+			File snapshotFile = snapshotFile(directory, segment);
+			CorpusSnapshot.write(delegate.corpusGroups(), SNAPSHOT_SOURCE, snapshotFile);
+			syncDirectory();
+			for (long older : snapshots(directory)){
+				if (older < segment){
+					snapshotFile(directory, older).delete();
+				}
+			}
+			for (long older : WriteAheadLog.segments(directory)){
+				if (older < segment){
+					WriteAheadLog.segmentFile(directory, older).delete();
+				}
+			}
+			snapshotPosition = position;
+			lastSnapshotNanos = System.nanoTime() - start;
+			logger.info("Wrote corpus snapshot `"+snapshotFile+"` in "+lastSnapshotNanos/1000000+"ms");
+		}
+	}
+
+	private void snapshotIfChanged(){
+		if (log.appended() == snapshotPosition){
+			return;
+		}
+		try {
+			snapshot();
+		} catch (IOException | RuntimeException e){
+			logger.error("Failed to write corpus snapshot, will try again later", e);
+		}
+	}
+
+	//Makes the snapshot's rename durable before the log it replaces is deleted. Not every platform can sync a directory, which is fine to skip.
+	private void syncDirectory(){
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)){
+			channel.force(true);
+		} catch (IOException e){
+			if (logger.isDebugEnabled()){
+				logger.debug("Unable to sync data directory `"+directory+"` : "+e.getMessage());
+			}
+		}
+	}
+
+	static File snapshotFile(File directory, long segment){
+		return new File(directory, String.format("snapshot-%08d.snapshot", segment));
+	}
+
+	//The segment numbers of the snapshots in the directory, in order
+	private static List<Long> snapshots(File directory){
+		List<Long> snapshots = new ArrayList<Long>();
+		String[] names = directory.list();
+		if (names != null){
+			for (String name : names){
+				Matcher matcher = SNAPSHOT_NAME.matcher(name);
+				if (matcher.matches()){
+					snapshots.add(Long.parseLong(matcher.group(1)));
+				}
+			}
+		}
+		Collections.sort(snapshots);
+		return snapshots;
+	}
+
+	/**
+	 * Stops taking snapshots and closes the log. Changes are durable as soon as they're acknowledged, so nothing needs to be written out here.
+	 */
+	@PreDestroy
+	@Override
+	public void close() throws IOException {
+		if (snapshotter != null){
+			snapshotter.shutdownNow();
+		}
+		log.close();
+	}
+
+	@Override
+	public Set<String> getAnagrams(String word, Integer limit) {
+		return delegate.getAnagrams(word, limit);
+	}
+
+	@Override
+	public Set<String> getAnagramsCaseInsensitive(String word, Integer limit) {
+		return delegate.getAnagramsCaseInsensitive(word, limit);
+	}
+
+	@Override
+	public int visitAnagrams(String word, Integer limit, boolean caseInsensitive, AnagramVisitor visitor) throws IOException {
+		return delegate.visitAnagrams(word, limit, caseInsensitive, visitor);
+	}
+
+	@Override
+	public void writeAnagramsJson(String word, Integer limit, boolean caseInsensitive, OutputStream out) throws IOException {
+		delegate.writeAnagramsJson(word, limit, caseInsensitive, out);
+	}
+
+	@Override
+	public Set<String> getWildcardAnagrams(String query, Integer limit, boolean caseInsensitive) {
+		return delegate.getWildcardAnagrams(query, limit, caseInsensitive);
+	}
+
+	@Override
+	public Map<String, Object> getSubAnagrams(String letters, String after, Integer limit, boolean caseInsensitive) {
+		return delegate.getSubAnagrams(letters, after, limit, caseInsensitive);
+	}
+
+	@Override
+	public Map<String, Object> getAnagramPhrases(String letters, Integer limit, Integer maxWords, boolean caseInsensitive) {
+		return delegate.getAnagramPhrases(letters, limit, maxWords, caseInsensitive);
+	}
+
+	@Override
+	public Map<String, Object> getCorpusMetadata() {
+		return delegate.getCorpusMetadata();
+	}
+
+	@Override
+	public AnagramCorpusSnapshot getSnapshot() {
+		return delegate.getSnapshot();
+	}
+
+	@Override
+	public Map<String, Object> getMemoryFootprint() {
+		return delegate.getMemoryFootprint();
+	}
+
+	@Override
+	public ArrayList<Set<String>> getLargestAnagramSets() {
+		return delegate.getLargestAnagramSets();
+	}
+
+	@Override
+	public GroupCursor visitLargestAnagramSets(GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+		return delegate.visitLargestAnagramSets(after, limit, visitor);
+	}
+
+	@Override
+	public ArrayList<Set<String>> getAnagramGroupsBySize(int size) {
+		return delegate.getAnagramGroupsBySize(size);
+	}
+
+	@Override
+	public GroupCursor visitAnagramGroupsBySize(int size, GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+		return delegate.visitAnagramGroupsBySize(size, after, limit, visitor);
+	}
+}
@@ -0,0 +1,253 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+/**
+ * A persistent index of anagram sets, ordered by the size of the set and then by key (in {@link AnagramKey#PACKED_ORDER}).
+ *
+ * A tree is never changed once built. Adding, resizing or removing a set copies just the nodes on the path down to it
+ * (it is an AVL tree, so that's about log2 of the number of sets) and returns a new tree sharing every other node with the old one.
+ * Anyone still holding the old tree keeps a complete and unchanging view of the sets as they were, without any copying or locking.
+ */
+final class GroupTree {
+
+	static final GroupTree EMPTY = new GroupTree(null, 0);
+
+	//By size, then by key
+	private static final Comparator<Entry<AnagramKey,WordGroup>> ORDER = (a, b) -> {
+		int result = Integer.compare(a.getValue().size(), b.getValue().size());
+		return result != 0 ? result : AnagramKey.PACKED_ORDER.compare(a.getKey(), b.getKey());
+	};
+
+	private final Node root;
+	private final int count;
+
+	private GroupTree(Node root, int count){
+		this.root = root;
+		this.count = count;
+	}
+
+	/**
+	 * @param groups The anagram sets to index
+	 * @return A balanced tree of the sets, built in one go rather than one insert at a time
+	 */
+	@SuppressWarnings("unchecked")
+	static GroupTree of(Map<AnagramKey,WordGroup> groups){
+		Entry<AnagramKey,WordGroup>[] sorted = groups.entrySet().toArray(new Entry[groups.size()]);
+		Arrays.sort(sorted, ORDER);
+		return new GroupTree(build(sorted, 0, sorted.length), sorted.length);
+	}
+
+	private static Node build(Entry<AnagramKey,WordGroup>[] sorted, int from, int to){
+		if (from >= to){
+			return null;
+		}
+		int middle = (from + to) >>> 1;
+		return node(sorted[middle].getKey(), sorted[middle].getValue(), build(sorted, from, middle), build(sorted, middle + 1, to));
+	}
+
+	/**
+	 * @return The number of anagram sets in the tree
+	 */
+	int size(){
+		return count;
+	}
+
+	/**
+	 * @param key The key of the anagram set
+	 * @param previousSize The size the set was filed under, or 0 if it isn't in the tree yet
+	 * @param group The set's new words
+	 * @return A tree with the set filed under its new size
+	 */
+	GroupTree with(AnagramKey key, int previousSize, WordGroup group){
+		if (previousSize > 0 && previousSize != group.size()){
+			return without(key, previousSize).with(key, 0, group);
+		}
+		return new GroupTree(put(root, key, group), previousSize > 0 ? count : count + 1);
+	}
+
+	/**
+	 * @param key The key of the anagram set
+	 * @param size The size the set was filed under
+	 * @return A tree without the set
+	 */
+	GroupTree without(AnagramKey key, int size){
+		Node newRoot = remove(root, key, size);
+		return newRoot == root ? this : new GroupTree(newRoot, count - 1);
+	}
+
+	/**
+	 * @return The size of the largest anagram set, or zero if the tree is empty
+	 */
+	int largestSize(){
+		Node node = root;
+		if (node == null){
+			return 0;
+		}
+		while (node.right != null){
+			node = node.right;
+		}
+		return node.group.size();
+	}
+
+	/**
+	 * @param size The smallest size of set to start from
+	 * @param after If not null, start from the first set of the given size whose key comes after this one, whether or not it's in the tree
+	 * @return The sets from that point on, in order
+	 */
+	Iterator<Node> iterator(final int size, final AnagramKey after){
+		final ArrayDeque<Node> path = new ArrayDeque<Node>();
+		//Keeps every node on the way down that comes after the starting point, so the nearest is on top
+		for (Node node = root; node != null; ){
+			int result = Integer.compare(node.group.size(), size);
+			if (result == 0 && after != null){
+				result = AnagramKey.PACKED_ORDER.compare(node.key, after);
+			}
+			if (result > 0 || (result == 0 && after == null)){
+				path.push(node);
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		return new Iterator<Node>() {
+			@Override
+			public boolean hasNext(){
+				return !path.isEmpty();
+			}
+
+			@Override
+			public Node next(){
+				if (path.isEmpty()){
+					throw new NoSuchElementException();
+				}
+				Node next = path.pop();
+				for (Node node = next.right; node != null; node = node.left){
+					path.push(node);
+				}
+				return next;
+			}
+		};
+	}
+
+	/**
+	 * @return Roughly how many bytes the tree's nodes take up, not counting the keys and sets they point to
+	 */
+	long footprint(){
+		return count * HeapFootprint.align(HeapFootprint.OBJECT_HEADER + 4 * HeapFootprint.REFERENCE + 4);
+	}
+
+	private static int compare(AnagramKey key, int size, Node node){
+		int result = Integer.compare(size, node.group.size());
+		return result != 0 ? result : AnagramKey.PACKED_ORDER.compare(key, node.key);
+	}
+
+	private static Node put(Node node, AnagramKey key, WordGroup group){
+		if (node == null){
+			return node(key, group, null, null);
+		}
+		int result = compare(key, group.size(), node);
+		if (result < 0){
+			return balance(node.key, node.group, put(node.left, key, group), node.right);
+		}
+		if (result > 0){
+			return balance(node.key, node.group, node.left, put(node.right, key, group));
+		}
+		return node(key, group, node.left, node.right);
+	}
+
+	//Returns the same node if the key isn't under it, so an unchanged tree is easy to spot
+	private static Node remove(Node node, AnagramKey key, int size){
+		if (node == null){
+			return null;
+		}
+		int result = compare(key, size, node);
+		if (result < 0){
+			Node left = remove(node.left, key, size);
+			return left == node.left ? node : balance(node.key, node.group, left, node.right);
+		}
+		if (result > 0){
+			Node right = remove(node.right, key, size);
+			return right == node.right ? node : balance(node.key, node.group, node.left, right);
+		}
+		if (node.left == null){
+			return node.right;
+		}
+		if (node.right == null){
+			return node.left;
+		}
+		//Replaced by the first node of its right subtree
+		Node first = node.right;
+		while (first.left != null){
+			first = first.left;
+		}
+		return balance(first.key, first.group, node.left, removeFirst(node.right));
+	}
+
+	private static Node removeFirst(Node node){
+		if (node.left == null){
+			return node.right;
+		}
+		return balance(node.key, node.group, removeFirst(node.left), node.right);
+	}
+
+	private static int height(Node node){
+		return node == null ? 0 : node.height;
+	}
+
+	private static Node node(AnagramKey key, WordGroup group, Node left, Node right){
+		return new Node(key, group, left, right, Math.max(height(left), height(right)) + 1);
+	}
+
+	//Joins two subtrees whose heights differ by at most two under a new node, rotating once or twice if they differ by two
+	private static Node balance(AnagramKey key, WordGroup group, Node left, Node right){
+		int leftHeight = height(left);
+		int rightHeight = height(right);
+		if (leftHeight > rightHeight + 1){
+			if (height(left.left) >= height(left.right)){
+				return node(left.key, left.group, left.left, node(key, group, left.right, right));
+			}
+			Node middle = left.right;
+			return node(middle.key, middle.group, node(left.key, left.group, left.left, middle.left), node(key, group, middle.right, right));
+		}
+		if (rightHeight > leftHeight + 1){
+			if (height(right.right) >= height(right.left)){
+				return node(right.key, right.group, node(key, group, left, right.left), right.right);
+			}
+			Node middle = right.left;
+			return node(middle.key, middle.group, node(key, group, left, middle.left), node(right.key, right.group, middle.right, right.right));
+		}
+		return node(key, group, left, right);
+	}
+
+	/**
+	 * An anagram set in the tree
+	 */
+	static final class Node {
+
+		final AnagramKey key;
+		final WordGroup group;
+		private final Node left;
+		private final Node right;
+		private final int height;
+
+		private Node(AnagramKey key, WordGroup group, Node left, Node right, int height){
+			this.key = key;
+			this.group = group;
+			this.left = left;
+			this.right = right;
+			this.height = height;
+		}
+	}
+
+	//For tests: the height of the tree, which should stay within about 1.44 log2 of the number of sets
+	int height(){
+		return height(root);
+	}
+}
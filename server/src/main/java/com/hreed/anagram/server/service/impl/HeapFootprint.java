@@ -0,0 +1,90 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rough sizes of the objects the corpus is built from, for reporting how much heap each of its structures takes up.
+ *
+ * The JVM doesn't say how big an object is, so these are worked out from the usual 64-bit HotSpot layout with compressed references:
+ * a 12 byte object header, 16 bytes for an array's, 4 bytes per reference, and everything padded out to a multiple of 8.
+ * They are estimates, close enough to size a heap by, not exact measurements.
+ */
+final class HeapFootprint {
+
+	static final int OBJECT_HEADER = 12;
+	static final int ARRAY_HEADER = 16;
+	static final int REFERENCE = 4;
+	//low, high and overflow
+	static final long ANAGRAM_KEY = align(OBJECT_HEADER + 8 + 8 + REFERENCE);
+	//A ConcurrentHashMap node: hash, key, value and next
+	static final long HASH_NODE = align(OBJECT_HEADER + 4 + 3 * REFERENCE);
+	//From Java 9 on, Strings of only Latin-1 characters keep one byte per character rather than two
+	private static final boolean COMPACT_STRINGS = !System.getProperty("java.specification.version", "1.8").startsWith("1.");
+
+	private HeapFootprint(){
+	}
+
+	static long align(long bytes){
+		return (bytes + 7) & ~7L;
+	}
+
+	/**
+	 * @return The size of an array of the given length, where each element takes elementBytes
+	 */
+	static long array(long length, int elementBytes){
+		return align(ARRAY_HEADER + length * elementBytes);
+	}
+
+	/**
+	 * @return The size of a String of only roman letters, including the array holding its characters
+	 */
+	static long string(int length){
+		return align(OBJECT_HEADER + REFERENCE + 4 + 4) + array(length, COMPACT_STRINGS ? 1 : 2);
+	}
+
+	/**
+	 * @return The size of a WordGroup, not counting the words in it
+	 */
+	static long wordGroup(int size){
+		return align(OBJECT_HEADER + REFERENCE) + array(size, REFERENCE);
+	}
+
+	/**
+	 * @return The size of a ConcurrentHashMap (or a set backed by one) holding the given number of entries, not counting the keys and values
+	 */
+	static long hashMap(long entries){
+		long table = 16;
+		while (table * 3 / 4 < entries){
+			table <<= 1;
+		}
+		return align(OBJECT_HEADER + 64) + array(table, REFERENCE) + entries * HASH_NODE;
+	}
+
+	/**
+	 * Builds the report /memory.json returns.
+	 *
+	 * @param storage The name of the storage engine
+	 * @param words The number of words in the corpus
+	 * @param wordBytes The total length of every word, which is all the corpus would take up as plain text
+	 * @param structures The bytes taken up by each of the corpus's structures
+	 * @return The structures and their total, alongside the raw size of the words and how much of the heap is in use
+	 */
+	static Map<String, Object> report(String storage, int words, long wordBytes, Map<String, Long> structures){
+		long total = 0;
+		for (long bytes : structures.values()){
+			total += bytes;
+		}
+		Runtime runtime = Runtime.getRuntime();
+		Map<String, Object> report = new LinkedHashMap<String, Object>();
+		report.put("storage", storage);
+		report.put("word_count", words);
+		report.put("raw_word_bytes", wordBytes);
+		report.put("structures", structures);
+		report.put("total_bytes", total);
+		report.put("bytes_per_word", words == 0 ? 0 : total / words);
+		report.put("heap_used_bytes", runtime.totalMemory() - runtime.freeMemory());
+		report.put("heap_max_bytes", runtime.maxMemory());
+		return report;
+	}
+}
@@ -0,0 +1,25 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+
+/**
+ * A corpus service whose whole corpus can be read out and replaced in one go, which is all the {@link DurableAnagramCorpusService}
+ * needs to snapshot and recover it. Both the in memory and the arena storage engines can be made durable this way.
+ */
+public interface RestorableAnagramCorpusService extends AnagramCorpusService {
+
+	/**
+	 * @return The anagram sets of the current corpus, so they can be written out as a snapshot
+	 */
+	public Map<AnagramKey, ? extends Collection<String>> corpusGroups();
+
+	/**
+	 * Replaces the current corpus with one rebuilt from a snapshot of anagram sets, in a single swap like a dictionary reload.
+	 *
+	 * @param groups The anagram sets to rebuild the corpus from
+	 */
+	public void restoreCorpus(Map<AnagramKey, ? extends Collection<String>> groups);
+}
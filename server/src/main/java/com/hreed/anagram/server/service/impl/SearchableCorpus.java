@@ -0,0 +1,28 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.Set;
+
+/**
+ * The parts of a corpus the {@link AnagramSearchEngine} searches through: the case-folded anagram sets, and the index of their keys by letter mask.
+ * Both the {@link Corpus} and the {@link ArenaCorpus} provide them, so either storage engine can be searched the same way.
+ */
+interface SearchableCorpus {
+
+	/**
+	 * @param letterMask A letter mask, as returned by {@link AnagramKey#letterMask()}
+	 * @return The folded keys using exactly the letters in the mask, or null if there are none.
+	 * A key may turn up whose anagram set has since been emptied.
+	 */
+	Set<AnagramKey> foldedKeysWithMask(int letterMask);
+
+	/**
+	 * @return Every letter mask used by a folded key in the corpus (along with a few that may have been emptied)
+	 */
+	Set<Integer> letterMasks();
+
+	/**
+	 * @param foldedKey The case-folded key of the anagram set
+	 * @return Every word with the folded key regardless of capitalization, in alphabetical order, or null if there are none
+	 */
+	Set<String> getFolded(AnagramKey foldedKey);
+}
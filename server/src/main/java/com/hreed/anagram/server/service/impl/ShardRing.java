@@ -0,0 +1,130 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Assigns anagram keys to the nodes of a sharded corpus by consistent hashing.
+ *
+ * Each node is placed at {@link #POINTS_PER_NODE} points around a ring of 64 bit hashes, and a key belongs to the first node point at or after the key's own hash.
+ * With that many points per node the keys split evenly, and adding or removing a node only moves the keys next to its points (about 1/N of them)
+ * rather than reshuffling everything.
+ *
+ * Keys are placed by their case-folded key, so every capitalization of the same letters lives on the same node
+ * and a case insensitive lookup only ever has to ask one node, just like an exact one.
+ * The hashes only depend on the keys' packed letter counts and the nodes' names, so every router and every node works out the same placement.
+ */
+public final class ShardRing {
+
+	static final int POINTS_PER_NODE = 128;
+
+	private final List<String> nodes;
+	//Sorted hashes of every point on the ring, with the index of the node each one belongs to
+	private final long[] points;
+	private final int[] owners;
+
+	/**
+	 * @param nodes The nodes' base URLs, e.g. http://localhost:3001. The same list has to be given to every node and router of the cluster.
+	 */
+	public ShardRing(List<String> nodes){
+		if (nodes.isEmpty()){
+			throw new IllegalArgumentException("A sharded corpus needs at least one node");
+		}
+		this.nodes = Collections.unmodifiableList(new ArrayList<String>(nodes));
+		long[][] ring = new long[nodes.size() * POINTS_PER_NODE][];
+		for (int node = 0; node < nodes.size(); node++){
+			for (int point = 0; point < POINTS_PER_NODE; point++){
+				//The node's hash and the point's number go in separate halves, so no two nodes' points can land on the same spot
+				ring[node * POINTS_PER_NODE + point] = new long[] {mix(((long) nodes.get(node).hashCode() << 32) | point), node};
+			}
+		}
+		Arrays.sort(ring, (first, second) -> Long.compare(first[0], second[0]));
+		points = new long[ring.length];
+		owners = new int[ring.length];
+		for (int i = 0; i < ring.length; i++){
+			points[i] = ring[i][0];
+			owners[i] = (int) ring[i][1];
+		}
+	}
+
+	/**
+	 * @param nodes A comma separated list of the nodes' base URLs
+	 * @return The ring of those nodes, or null if the list is blank
+	 */
+	public static ShardRing parse(String nodes){
+		if (nodes == null || nodes.trim().isEmpty()){
+			return null;
+		}
+		List<String> urls = new ArrayList<String>();
+		for (String node : nodes.split(",")){
+			if (!node.trim().isEmpty()){
+				urls.add(normalize(node));
+			}
+		}
+		return new ShardRing(urls);
+	}
+
+	/**
+	 * Works out which keys a node of a sharded corpus keeps, so it only loads its own share of the dictionary.
+	 *
+	 * @param nodes A comma separated list of every node's base URL, or blank if the corpus isn't sharded
+	 * @param self This node's base URL, as it appears in the list
+	 * @return Whether a key belongs on this node, or null if the corpus isn't sharded and every key does
+	 * @throws IllegalArgumentException If this node isn't in the list
+	 */
+	public static Predicate<AnagramKey> partition(String nodes, String self){
+		final ShardRing ring = parse(nodes);
+		if (ring == null){
+			return null;
+		}
+		final int node = ring.nodes.indexOf(self == null ? "" : normalize(self));
+		if (node < 0){
+			throw new IllegalArgumentException("anagram.shard.self `"+self+"` isn't one of the anagram.shard.nodes "+ring.nodes);
+		}
+		return key -> ring.shardOf(key) == node;
+	}
+
+	/**
+	 * @return Every node's base URL, in the order they were given
+	 */
+	public List<String> nodes(){
+		return nodes;
+	}
+
+	/**
+	 * @param key The exact or case-folded key of an anagram set
+	 * @return The index of the node the set belongs on
+	 */
+	public int shardOf(AnagramKey key){
+		long hash = mix(key.folded().hashCode());
+		int point = Arrays.binarySearch(points, hash);
+		if (point < 0){
+			point = -point - 1;
+		}
+		//Past the last point the ring wraps back around to the first
+		return owners[point == points.length ? 0 : point];
+	}
+
+	/**
+	 * @param key The exact or case-folded key of an anagram set
+	 * @return The base URL of the node the set belongs on
+	 */
+	public String nodeFor(AnagramKey key){
+		return nodes.get(shardOf(key));
+	}
+
+	private static String normalize(String node){
+		node = node.trim();
+		return node.endsWith("/") ? node.substring(0, node.length() - 1) : node;
+	}
+
+	//The finalizer of SplitMix64, which spreads even neighbouring inputs evenly over all 64 bits
+	private static long mix(long value){
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return value ^ (value >>> 31);
+	}
+}
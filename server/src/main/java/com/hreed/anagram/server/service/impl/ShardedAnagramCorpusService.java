@@ -0,0 +1,650 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hreed.anagram.server.service.AnagramCorpusService;
+import com.hreed.anagram.server.service.AnagramCorpusSnapshot;
+import com.hreed.anagram.server.service.AnagramGroupVisitor;
+import com.hreed.anagram.server.service.AnagramVisitor;
+import com.hreed.anagram.server.service.GroupCursor;
+
+/**
+ * Routes requests to a corpus sharded across several nodes, for dictionaries too big for one heap and for spreading reads over more machines.
+ * The router keeps no words itself. Each node is an ordinary server holding the anagram sets the {@link ShardRing} assigns it,
+ * started with the same anagram.shard.nodes list as the router and its own URL as anagram.shard.self.
+ *
+ * Lookups and changes to a word only go to the one node holding its key. Everything else is scattered to every node at once and gathered back:
+ * the metadata is worked out from the nodes' word length counts added together, the anagram set listings are merged from each node's pages in order,
+ * and search results are merged and cut back down to the limit. Phrases can span nodes, so each node is asked for every word that fits the rack,
+ * a page at a time, and the phrases are searched for on the router.
+ *
+ * A read that gathers from every node sees each node's share at one version, but the shares aren't a single snapshot of the whole cluster.
+ * A node that can't be reached fails the request rather than leaving its share out.
+ *
+ * Only used when anagram.storage=sharded (see {@link StorageConfig}).
+ */
+public class ShardedAnagramCorpusService implements AnagramCorpusService {
+
+	static final int DEFAULT_TIMEOUT_MILLIS = 5000;
+	//How many anagram sets to ask each node for at a time when merging listings
+	static final int PAGE_SIZE = 500;
+	private static final byte[] NO_ANAGRAMS = "{\"anagrams\":[]}".getBytes(StandardCharsets.UTF_8);
+	private static final ObjectMapper JSON = new ObjectMapper();
+
+	private final ShardRing ring;
+	private final RestTemplate restTemplate;
+	//Requests to the nodes run here, so a scattered request waits on the slowest node rather than the sum of them
+	private final ExecutorService requests;
+	private int maxSearchResults = AnagramCorpusServiceInMemory.DEFAULT_SEARCH_MAX_RESULTS;
+	private AnagramSearchEngine searchEngine = new AnagramSearchEngine(AnagramCorpusServiceInMemory.DEFAULT_SEARCH_MAX_RESULTS,
+			AnagramCorpusServiceInMemory.DEFAULT_SEARCH_TIMEOUT_MILLIS);
+	private Logger log = Logger.getLogger(this.getClass());
+
+	/**
+	 * @param nodes Every node's base URL, comma separated, e.g. http://localhost:3001,http://localhost:3002
+	 * @param timeoutMillis How long to wait to connect to a node, and then for each of its responses
+	 */
+	public ShardedAnagramCorpusService(String nodes, int timeoutMillis){
+		ring = ShardRing.parse(nodes);
+		if (ring == null){
+			throw new IllegalArgumentException("anagram.shard.nodes must list the nodes of the sharded corpus");
+		}
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout(timeoutMillis);
+		requestFactory.setReadTimeout(timeoutMillis);
+		restTemplate = new RestTemplate(requestFactory);
+		requests = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "shard-requests");
+			thread.setDaemon(true);
+			return thread;
+		});
+		log.info("Routing to "+ring.nodes().size()+" nodes : "+ring.nodes());
+	}
+
+	/**Overrides the bounds placed on sub-anagram and phrase searches. The nodes have their own, which should be the same.
+	 *
+	 * @param maxResults The most results a single search may return
+	 * @param timeoutMillis How long the phrase search on the router may run before it returns what it has found so far
+	 */
+	@Autowired(required = false)
+	public void configureSearch(@Value("${anagram.search.max-results:" + AnagramCorpusServiceInMemory.DEFAULT_SEARCH_MAX_RESULTS + "}") int maxResults,
+			@Value("${anagram.search.timeout-ms:" + AnagramCorpusServiceInMemory.DEFAULT_SEARCH_TIMEOUT_MILLIS + "}") long timeoutMillis){
+		maxSearchResults = maxResults;
+		searchEngine = new AnagramSearchEngine(maxResults, timeoutMillis);
+	}
+
+	@PreDestroy
+	public void close(){
+		requests.shutdownNow();
+	}
+
+	/**
+	 * @return The ring the anagram sets are placed on the nodes by
+	 */
+	public ShardRing ring(){
+		return ring;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public int addWords(Set<String> newWords){
+		//Split up by node, so each node gets a single request with all of its words
+		final Map<String,List<String>> wordsByNode = new HashMap<String,List<String>>();
+		for (String word : newWords){
+			//Only valid words are sent, since they go one per line and no valid word can have a line break in it
+			if (AnagramCorpusServiceInMemory.isValidWord(word)){
+				AnagramKey key = AnagramKey.foldedOf(word);
+				String node = ring.nodeFor(key);
+				List<String> nodeWords = wordsByNode.get(node);
+				if (nodeWords == null){
+					nodeWords = new ArrayList<String>();
+					wordsByNode.put(node, nodeWords);
+				}
+				nodeWords.add(word);
+			}
+		}
+		//Sent as a word list upload, which reports back how many of the words were added
+		List<Map<String, Object>> responses = scatter(wordsByNode.keySet(), node -> restTemplate.postForObject(
+				uri(node, "/words/bulk.json").queryParam("mode", "append").build().toUri(), String.join("\n", wordsByNode.get(node)), Map.class));
+		int added = 0;
+		for (Map<String, Object> response : responses){
+			added += ((Number) response.get("added")).intValue();
+		}
+		return added;
+	}
+
+	@Override
+	public Set<String> getAnagrams(String word, Integer limit){
+		return lookup(word, limit, false);
+	}
+
+	@Override
+	public Set<String> getAnagramsCaseInsensitive(String word, Integer limit){
+		return lookup(word, limit, true);
+	}
+
+	@Override
+	public int visitAnagrams(String word, Integer limit, boolean caseInsensitive, AnagramVisitor visitor) throws IOException {
+		int visited = 0;
+		for (String anagram : lookup(word, limit, caseInsensitive)){
+			visitor.visit(anagram);
+			visited++;
+		}
+		return visited;
+	}
+
+	@Override
+	public void writeAnagramsJson(String word, Integer limit, boolean caseInsensitive, final OutputStream out) throws IOException {
+		AnagramKey key = caseInsensitive ? AnagramKey.foldedOf(word) : AnagramKey.of(word);
+		//Words with non-roman characters can't have any anagrams in the corpus
+		if (key == null){
+			out.write(NO_ANAGRAMS);
+			return;
+		}
+		//The node's response is already the JSON to send back, so it's copied across as it arrives rather than parsed and written out again
+		restTemplate.execute(anagramsUri(ring.nodeFor(key), word, limit, caseInsensitive), HttpMethod.GET, null,
+				response -> StreamUtils.copy(response.getBody(), out));
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<String> lookup(String word, Integer limit, boolean caseInsensitive){
+		AnagramKey key = caseInsensitive ? AnagramKey.foldedOf(word) : AnagramKey.of(word);
+		if (key == null){
+			return Collections.emptySet();
+		}
+		Map<String, Object> response = restTemplate.getForObject(anagramsUri(ring.nodeFor(key), word, limit, caseInsensitive), Map.class);
+		return Collections.unmodifiableSet(new LinkedHashSet<String>((List<String>) response.get("anagrams")));
+	}
+
+	private URI anagramsUri(String node, String word, Integer limit, boolean caseInsensitive){
+		UriComponentsBuilder builder = uri(node, "/anagrams/{word}.json");
+		if (limit != null){
+			builder.queryParam("limit", limit);
+		}
+		return builder.queryParam("caseinsensitive", caseInsensitive).buildAndExpand(word).encode().toUri();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Set<String> getWildcardAnagrams(final String query, final Integer limit, final boolean caseInsensitive){
+		//Blanks can stand in for any letter, so the matches could be on any node
+		List<Map<String, Object>> responses;
+		try {
+			responses = scatter(ring.nodes(), node -> restTemplate.getForObject(anagramsUri(node, query, limit, caseInsensitive), Map.class));
+		} catch (HttpClientErrorException e){
+			if (e.getStatusCode() == HttpStatus.BAD_REQUEST){
+				throw new IllegalArgumentException(message(e));
+			}
+			throw e;
+		}
+		//Each node sends its alphabetically first matches, so the first of them all are among them
+		TreeSet<String> anagrams = new TreeSet<String>();
+		for (Map<String, Object> response : responses){
+			anagrams.addAll((List<String>) response.get("anagrams"));
+		}
+		while (limit != null && anagrams.size() > Math.max(limit, 0)){
+			anagrams.pollLast();
+		}
+		return anagrams;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> getSubAnagrams(final String letters, final String after, final Integer limit, final boolean caseInsensitive){
+		int effectiveLimit = limit == null ? maxSearchResults : Math.max(0, Math.min(limit, maxSearchResults));
+		//Each node lists its own words after the given one, so the first of them all are among them
+		List<Map<String, Object>> responses = scatter(ring.nodes(), node -> subAnagrams(node, letters, after, limit, caseInsensitive));
+		List<String> words = new ArrayList<String>();
+		boolean timedOut = false;
+		for (Map<String, Object> response : responses){
+			words.addAll((List<String>) response.get("anagrams"));
+			timedOut |= Boolean.TRUE.equals(response.get("timed_out"));
+		}
+		//Back into the order a single node lists them in: longest first, then by key, then alphabetically
+		Collections.sort(words, LONGEST_FIRST);
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("anagrams", words.size() > effectiveLimit ? new ArrayList<String>(words.subList(0, effectiveLimit)) : words);
+		result.put("timed_out", timedOut);
+		return result;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> getAnagramPhrases(String letters, Integer limit, Integer maxWords, boolean caseInsensitive){
+		//Every word of a phrase has to fit within the rack, so the words that fit, from every node, are all the phrase search needs
+		final String rack = letters.replaceAll("\\s", "");
+		List<Map<String, Object>> responses = scatter(ring.nodes(), node -> allSubAnagrams(node, rack, caseInsensitive));
+		Map<AnagramKey,List<String>> groups = new HashMap<AnagramKey,List<String>>();
+		boolean timedOut = false;
+		for (Map<String, Object> response : responses){
+			for (String word : (List<String>) response.get("anagrams")){
+				AnagramKey key = AnagramKey.of(word);
+				List<String> group = groups.get(key);
+				if (group == null){
+					group = new ArrayList<String>(2);
+					groups.put(key, group);
+				}
+				group.add(word);
+			}
+			timedOut |= Boolean.TRUE.equals(response.get("timed_out"));
+		}
+		int words = maxWords != null ? maxWords : AnagramSearchEngine.DEFAULT_PHRASE_WORDS;
+		Map<String, Object> result = searchEngine.phrases(new Corpus(groups), letters, limit, words, caseInsensitive);
+		if (timedOut){
+			result.put("timed_out", true);
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> subAnagrams(String node, String letters, String after, Integer limit, boolean caseInsensitive){
+		UriComponentsBuilder builder = uri(node, "/subanagrams/{letters}.json");
+		if (after != null){
+			builder.queryParam("after", after);
+		}
+		if (limit != null){
+			builder.queryParam("limit", limit);
+		}
+		return restTemplate.getForObject(builder.queryParam("caseinsensitive", caseInsensitive).buildAndExpand(letters).encode().toUri(), Map.class);
+	}
+
+	//Every word on the node that fits within the rack. A node never sends more than its maximum number of results at once,
+	//so they are fetched a page at a time, each after the last word of the one before, until a page comes back empty.
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> allSubAnagrams(String node, String letters, boolean caseInsensitive){
+		List<String> words = new ArrayList<String>();
+		boolean timedOut = false;
+		String after = null;
+		while (!timedOut){
+			Map<String, Object> page = subAnagrams(node, letters, after, null, caseInsensitive);
+			List<String> pageWords = (List<String>) page.get("anagrams");
+			timedOut = Boolean.TRUE.equals(page.get("timed_out"));
+			if (pageWords.isEmpty()){
+				break;
+			}
+			words.addAll(pageWords);
+			after = pageWords.get(pageWords.size() - 1);
+		}
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("anagrams", words);
+		result.put("timed_out", timedOut);
+		return result;
+	}
+
+	@Override
+	public void deleteWord(String word){
+		AnagramKey key = AnagramKey.foldedOf(word);
+		if (key != null){
+			restTemplate.delete(uri(ring.nodeFor(key), "/words/{word}.json").buildAndExpand(word).encode().toUri());
+		}
+	}
+
+	@Override
+	public void deleteAnagrams(String word){
+		AnagramKey key = AnagramKey.foldedOf(word);
+		if (key != null){
+			restTemplate.delete(uri(ring.nodeFor(key), "/anagrams/{word}.json").buildAndExpand(word).encode().toUri());
+		}
+	}
+
+	@Override
+	public void deleteAllWords(){
+		scatter(ring.nodes(), node -> {
+			restTemplate.delete(uri(node, "/words.json").build().toUri());
+			return null;
+		});
+	}
+
+	/**Has every node reload its own share of its dictionary file. Nodes only ever reload the bundled dictionary, whatever the file name.
+	 */
+	@Override
+	public void populateCorpusFromDictionaryFile(String fileName){
+		if (!AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY.equals(fileName)){
+			log.warn("Nodes can only reload `"+AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY+"`, not `"+fileName+"`");
+		}
+		scatter(ring.nodes(), node -> restTemplate.getForObject(uri(node, "/reload.json").build().toUri(), String.class));
+	}
+
+	@Override
+	public Map<String, Object> getCorpusMetadata(){
+		return getSnapshot().getCorpusMetadata();
+	}
+
+	@Override
+	public AnagramCorpusSnapshot getSnapshot(){
+		return new ShardedSnapshot();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> getMemoryFootprint(){
+		List<Map<String, Object>> footprints = scatter(ring.nodes(), node -> restTemplate.getForObject(uri(node, "/memory.json").build().toUri(), Map.class));
+		long words = 0;
+		long wordBytes = 0;
+		long total = 0;
+		Map<String, Object> nodes = new LinkedHashMap<String, Object>();
+		for (int node = 0; node < footprints.size(); node++){
+			Map<String, Object> footprint = footprints.get(node);
+			words += ((Number) footprint.get("word_count")).longValue();
+			wordBytes += ((Number) footprint.get("raw_word_bytes")).longValue();
+			total += ((Number) footprint.get("total_bytes")).longValue();
+			nodes.put(ring.nodes().get(node), footprint);
+		}
+		Map<String, Object> report = new LinkedHashMap<String, Object>();
+		report.put("storage", "sharded");
+		report.put("word_count", words);
+		report.put("raw_word_bytes", wordBytes);
+		report.put("total_bytes", total);
+		report.put("bytes_per_word", words == 0 ? 0 : total / words);
+		report.put("nodes", nodes);
+		return report;
+	}
+
+	@Override
+	public ArrayList<Set<String>> getLargestAnagramSets(){
+		return getSnapshot().getLargestAnagramSets();
+	}
+
+	@Override
+	public GroupCursor visitLargestAnagramSets(GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+		return getSnapshot().visitLargestAnagramSets(after, limit, visitor);
+	}
+
+	@Override
+	public ArrayList<Set<String>> getAnagramGroupsBySize(int size){
+		return getSnapshot().getAnagramGroupsBySize(size);
+	}
+
+	@Override
+	public GroupCursor visitAnagramGroupsBySize(int size, GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+		return getSnapshot().visitAnagramGroupsBySize(size, after, limit, visitor);
+	}
+
+	private static UriComponentsBuilder uri(String node, String path){
+		return UriComponentsBuilder.fromHttpUrl(node).path(path);
+	}
+
+	/**
+	 * Sends a request to each of the nodes at once, and waits for all of them.
+	 *
+	 * @return Each node's response, in the same order as the nodes
+	 * @throws RuntimeException Whatever the first node to fail threw
+	 */
+	private <T> List<T> scatter(Collection<String> nodes, final Function<String, T> request){
+		List<Future<T>> futures = new ArrayList<Future<T>>(nodes.size());
+		for (final String node : nodes){
+			futures.add(requests.submit(() -> request.apply(node)));
+		}
+		List<T> responses = new ArrayList<T>(futures.size());
+		try {
+			for (Future<T> future : futures){
+				responses.add(future.get());
+			}
+		} catch (ExecutionException e){
+			for (Future<T> future : futures){
+				future.cancel(true);
+			}
+			if (e.getCause() instanceof RuntimeException){
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for the nodes", e);
+		}
+		return responses;
+	}
+
+	//The message a node rejected a request with
+	private static String message(HttpClientErrorException e){
+		try {
+			Object message = JSON.readValue(e.getResponseBodyAsByteArray(), Map.class).get("message");
+			return message == null ? e.getMessage() : message.toString();
+		} catch (IOException notJson){
+			return e.getMessage();
+		}
+	}
+
+	private static final Comparator<String> LONGEST_FIRST = (first, second) -> {
+		if (first.length() != second.length()){
+			return second.length() - first.length();
+		}
+		int result = AnagramKey.foldedOf(first).compareTo(AnagramKey.foldedOf(second));
+		return result != 0 ? result : first.compareTo(second);
+	};
+
+	//The same order a node lists its anagram sets in: by size, then by key
+	private static final Comparator<List<String>> SIZE_ORDER = (first, second) -> {
+		int result = Integer.compare(first.size(), second.size());
+		return result != 0 ? result : AnagramKey.PACKED_ORDER.compare(AnagramKey.of(first.get(0)), AnagramKey.of(second.get(0)));
+	};
+
+	/**
+	 * Reads gathered from every node. The version is the sum of the versions each node's share was read at,
+	 * so it goes up with every change anywhere in the cluster (though not when a node restarts and starts counting again).
+	 */
+	private final class ShardedSnapshot implements AnagramCorpusSnapshot {
+
+		//The version of the last read, or -1 until something has been read
+		private long version = -1;
+		private long[] lengthCounts;
+
+		@Override
+		public long getVersion(){
+			if (version < 0){
+				getWordLengthCounts();
+			}
+			return version;
+		}
+
+		@Override
+		public Map<String, Object> getCorpusMetadata(){
+			return CorpusStatistics.ofLengthCounts(getWordLengthCounts()).toMetadata();
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public long[] getWordLengthCounts(){
+			if (lengthCounts != null){
+				return lengthCounts.clone();
+			}
+			List<Map<String, Object>> responses = scatter(ring.nodes(),
+					node -> restTemplate.getForObject(uri(node, "/metadata.json").queryParam("lengths", true).build().toUri(), Map.class));
+			long[] counts = new long[0];
+			long versions = 0;
+			for (Map<String, Object> response : responses){
+				List<Number> nodeCounts = (List<Number>) response.get("length_counts");
+				if (nodeCounts.size() > counts.length){
+					long[] grown = new long[nodeCounts.size()];
+					System.arraycopy(counts, 0, grown, 0, counts.length);
+					counts = grown;
+				}
+				for (int length = 0; length < nodeCounts.size(); length++){
+					counts[length] += nodeCounts.get(length).longValue();
+				}
+				versions += ((Number) response.get("version")).longValue();
+			}
+			lengthCounts = counts;
+			version = versions;
+			return counts.clone();
+		}
+
+		@Override
+		public ArrayList<Set<String>> getLargestAnagramSets(){
+			return collect(null);
+		}
+
+		@Override
+		public ArrayList<Set<String>> getAnagramGroupsBySize(int size){
+			return collect(size);
+		}
+
+		private ArrayList<Set<String>> collect(Integer size){
+			final ArrayList<Set<String>> groups = new ArrayList<Set<String>>();
+			try {
+				visitGroups(size, null, null, group -> groups.add(group));
+			} catch (IOException e){
+				//Only the visitor could throw it, and this one doesn't
+				throw new IllegalStateException(e);
+			}
+			return groups;
+		}
+
+		@Override
+		public GroupCursor visitLargestAnagramSets(GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+			return visitGroups(null, after, limit, visitor);
+		}
+
+		@Override
+		public GroupCursor visitAnagramGroupsBySize(int size, GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+			return visitGroups(size, after, limit, visitor);
+		}
+
+		/**
+		 * Merges each node's listing into one, in the same order a single node would list them. Each node is asked for a page at a time,
+		 * and the next set always comes from whichever node's next set sorts first, so only a page per node is ever held on the router.
+		 *
+		 * @param size The smallest size of set to list, or null to list the largest sets
+		 */
+		private GroupCursor visitGroups(final Integer size, final GroupCursor after, Integer limit, AnagramGroupVisitor visitor) throws IOException {
+			final int pageSize = limit == null ? PAGE_SIZE : Math.max(1, Math.min(limit, PAGE_SIZE));
+			List<GroupPager> pagers = scatter(ring.nodes(), node -> {
+				GroupPager pager = new GroupPager(node, size, after, pageSize);
+				pager.peek();
+				return pager;
+			});
+			long versions = 0;
+			for (GroupPager pager : pagers){
+				versions += pager.version;
+			}
+			version = versions;
+			if (size == null && after == null){
+				//Each node starts on its own largest sets, and only the nodes with sets of the largest size overall have any to list
+				int largest = 0;
+				for (GroupPager pager : pagers){
+					largest = Math.max(largest, pager.peek() == null ? 0 : pager.peek().size());
+				}
+				for (Iterator<GroupPager> remaining = pagers.iterator(); remaining.hasNext(); ){
+					List<String> first = remaining.next().peek();
+					if (first == null || first.size() < largest){
+						remaining.remove();
+					}
+				}
+			}
+			PriorityQueue<GroupPager> next = new PriorityQueue<GroupPager>(Math.max(1, pagers.size()), (first, second) -> SIZE_ORDER.compare(first.peek(), second.peek()));
+			for (GroupPager pager : pagers){
+				if (pager.peek() != null){
+					next.add(pager);
+				}
+			}
+			List<String> last = null;
+			int visited = 0;
+			while (!next.isEmpty()){
+				if (limit != null && visited >= limit){
+					if (last == null){
+						return after == null ? GroupCursor.start(next.peek().peek().size()) : after;
+					}
+					return new GroupCursor(last.size(), last.get(0));
+				}
+				GroupPager pager = next.poll();
+				List<String> group = pager.next();
+				visitor.visit(Collections.unmodifiableSet(new LinkedHashSet<String>(group)));
+				visited++;
+				last = group;
+				if (pager.peek() != null){
+					next.add(pager);
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Reads one node's listing of anagram sets a page at a time, following the node's own cursors from one page to the next.
+	 */
+	private final class GroupPager {
+
+		private final String node;
+		private final Integer size;
+		private final int pageSize;
+		private String cursor;
+		private boolean lastPage;
+		private final ArrayDeque<List<String>> groups = new ArrayDeque<List<String>>();
+		long version;
+
+		GroupPager(String node, Integer size, GroupCursor after, int pageSize){
+			this.node = node;
+			this.size = size;
+			this.pageSize = pageSize;
+			this.cursor = after == null ? null : after.toString();
+		}
+
+		/**
+		 * @return The next set, or null if there are no more. Fetches the next page if the last one has run out.
+		 */
+		List<String> peek(){
+			while (groups.isEmpty() && !lastPage){
+				fetch();
+			}
+			return groups.peek();
+		}
+
+		List<String> next(){
+			peek();
+			return groups.poll();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void fetch(){
+			UriComponentsBuilder builder = size == null ? uri(node, "/most.json") : uri(node, "/groups.json").queryParam("size", size);
+			builder.queryParam("limit", pageSize);
+			if (cursor != null){
+				builder.queryParam("cursor", cursor);
+			}
+			Map<String, Object> page = restTemplate.getForObject(builder.build().encode().toUri(), Map.class);
+			groups.addAll((List<List<String>>) page.get("anagrams"));
+			if (version == 0){
+				version = ((Number) page.get("version")).longValue();
+			}
+			cursor = (String) page.get("next_cursor");
+			lastPage = cursor == null;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.hreed.anagram.server.metrics.MetricsRegistry;
+import com.hreed.anagram.server.service.AnagramCorpusService;
+
+/**
+ * Builds the corpus storage from the anagram.storage property, with a write-ahead log in front of it when anagram.wal.dir is set:
+ * <pre>
+ * heap (the default) : {@link AnagramCorpusServiceInMemory}
+ * arena              : {@link AnagramCorpusServiceArena}
+ * sharded            : {@link ShardedAnagramCorpusService}, a router that keeps no words of its own
+ * </pre>
+ * With a write-ahead log, the engine starts out empty and the durable service recovers it, so the dictionary is never loaded only to be replaced.
+ * Settings that don't go together stop the server from starting, rather than leaving it running with storage other than what was asked for.
+ */
+@Configuration
+public class StorageConfig {
+
+	public static final String HEAP = "heap";
+	public static final String ARENA = "arena";
+	public static final String SHARDED = "sharded";
+
+	private final String storage;
+	private final String walDirectory;
+
+	/**
+	 * @throws IllegalStateException If the storage is none of the above, or is the router and has a write-ahead log
+	 */
+	public StorageConfig(@Value("${anagram.storage:" + HEAP + "}") String storage, @Value("${anagram.wal.dir:}") String walDirectory){
+		this.storage = storage.trim().toLowerCase();
+		this.walDirectory = walDirectory.trim();
+		if (!HEAP.equals(this.storage) && !ARENA.equals(this.storage) && !SHARDED.equals(this.storage)){
+			throw new IllegalStateException("Unknown anagram.storage `"+storage+"`, expected `"+HEAP+"`, `"+ARENA+"` or `"+SHARDED+"`");
+		}
+		if (SHARDED.equals(this.storage) && !this.walDirectory.isEmpty()){
+			throw new IllegalStateException("anagram.storage=sharded keeps no words of its own, so it can't be given anagram.wal.dir. "
+					+"Give each node its own anagram.wal.dir instead.");
+		}
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "anagram.storage", havingValue = HEAP, matchIfMissing = true)
+	public AnagramCorpusServiceInMemory anagramCorpusServiceInMemory(@Value("${anagram.snapshot.file:}") String snapshotFile,
+			@Value("${anagram.shard.nodes:}") String shardNodes, @Value("${anagram.shard.self:}") String shardSelf){
+		return new AnagramCorpusServiceInMemory(snapshotFile, shardNodes, shardSelf, walDirectory.isEmpty());
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "anagram.storage", havingValue = ARENA)
+	public AnagramCorpusServiceArena anagramCorpusServiceArena(@Value("${anagram.snapshot.file:}") String snapshotFile,
+			@Value("${anagram.shard.nodes:}") String shardNodes, @Value("${anagram.shard.self:}") String shardSelf){
+		return new AnagramCorpusServiceArena(snapshotFile, shardNodes, shardSelf, walDirectory.isEmpty());
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "anagram.storage", havingValue = SHARDED)
+	public ShardedAnagramCorpusService shardedAnagramCorpusService(@Value("${anagram.shard.nodes:}") String nodes,
+			@Value("${anagram.shard.timeout-ms:" + ShardedAnagramCorpusService.DEFAULT_TIMEOUT_MILLIS + "}") int timeoutMillis){
+		return new ShardedAnagramCorpusService(nodes, timeoutMillis);
+	}
+
+	/**
+	 * @return Whichever service sits in front of the others, for the controllers to use (through the metrics wrapper, see MetricsConfig).
+	 * That is the write-ahead log whenever anagram.wal.dir is set, which is decided here and nowhere else.
+	 */
+	@Bean
+	public Storage anagramCorpusStorage(ObjectProvider<RestorableAnagramCorpusService> engine, ObjectProvider<ShardedAnagramCorpusService> sharded,
+			ObjectProvider<MetricsRegistry> metrics, @Value("${anagram.wal.fsync:true}") boolean fsync,
+			@Value("${anagram.wal.snapshot-interval-seconds:300}") long snapshotIntervalSeconds) throws IOException {
+		if (SHARDED.equals(storage)){
+			return new Storage(sharded.getObject(), null);
+		}
+		if (walDirectory.isEmpty()){
+			return new Storage(engine.getObject(), null);
+		}
+		DurableAnagramCorpusService durable = new DurableAnagramCorpusService(engine.getObject(), walDirectory, fsync, snapshotIntervalSeconds);
+		MetricsRegistry registry = metrics.getIfAvailable();
+		if (registry != null){
+			durable.registerMetrics(registry);
+		}
+		return new Storage(durable, durable);
+	}
+
+	/**
+	 * The configured storage. Kept apart from the services themselves, which are all AnagramCorpusServices, so that injecting it
+	 * can't pick up the wrong one.
+	 */
+	public static final class Storage implements Closeable {
+
+		private final AnagramCorpusService service;
+		//The write-ahead log, which has to be closed with the server, or null if there isn't one
+		private final Closeable log;
+
+		Storage(AnagramCorpusService service, Closeable log){
+			this.service = service;
+			this.log = log;
+		}
+
+		public AnagramCorpusService service(){
+			return service;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (log != null){
+				log.close();
+			}
+		}
+	}
+}
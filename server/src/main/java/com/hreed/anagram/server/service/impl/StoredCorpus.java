@@ -0,0 +1,39 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A corpus a storage engine keeps its words in: everything the {@link AnagramSearchEngine} needs, plus its versions and its anagram sets.
+ * Both the {@link Corpus} and the {@link ArenaCorpus} are one, so reloads, snapshots and listings are handled the same way for both
+ * (see {@link AbstractAnagramCorpusService}).
+ */
+interface StoredCorpus extends SearchableCorpus {
+
+	/**
+	 * @return The latest version of the corpus, which never changes however the corpus is changed afterwards
+	 */
+	CorpusVersion snapshot();
+
+	/**
+	 * @return The number of words in the corpus
+	 */
+	int wordCount();
+
+	/**
+	 * @return The number of anagram sets in the corpus
+	 */
+	int groupCount();
+
+	/**
+	 * @return A read-only view of every anagram set in the corpus, by key
+	 */
+	Map<AnagramKey,Set<String>> groups();
+
+	/**Removes an entire anagram set
+	 *
+	 * @param key The key of the set to be removed
+	 * @return True if there was a set to remove
+	 */
+	boolean removeGroup(AnagramKey key);
+}
@@ -0,0 +1,603 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable corpus packed into a handful of primitive arrays, rather than a String, a key and a few map nodes per word.
+ *
+ * Every valid word is plain ASCII, so the words are stored back to back as bytes in a single array, and everything else is an int offset into it:
+ * <pre>
+ * bytes          every word, ordered by case-folded anagram set and alphabetically within a set
+ * wordStart      where each word starts in bytes, plus where the last one ends
+ * groupStart     the first word of each exact anagram set, plus the word count
+ * foldedStart    the first exact set of each folded set, plus the set count
+ * keyLow/High    the packed key of each folded set
+ * slots          an open addressing hash table of folded set ids (plus one, so zero is empty), by key
+ * maskValues     every letter mask in the corpus in order, with maskStart holding the first folded set using each one
+ * bySize         the exact sets ordered by size, and by the packed order of their keys within a size
+ * </pre>
+ * Capitals sort ahead of lowercase letters, and every word in a folded set has the same letters, so the words of a folded set sorted alphabetically
+ * fall into runs by their first letter: one run for each capital a word starts with, then the lowercase words. Each run is exactly one of the
+ * exact anagram sets, so an exact set is just a range of words too, and neither kind of set needs storing twice.
+ *
+ * The folded sets are ordered by letter mask, so all of the folded sets using the same letters are a single range of ids, which is the
+ * letter mask index the search engine needs without a bucket per mask.
+ *
+ * Words are only turned back into Strings as they're read out, and JSON is written straight from the bytes.
+ */
+final class WordArena {
+
+	//Marks a folded set whose key couldn't be packed. A packed key never uses the top bits of its high word.
+	private static final long OVERFLOW = -1L;
+	private static final byte[] OPEN = "{\"anagrams\":[".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CLOSE = "]}".getBytes(StandardCharsets.US_ASCII);
+	private static final Comparator<FoldedSet> MASK_ORDER = new Comparator<FoldedSet>() {
+		@Override
+		public int compare(FoldedSet first, FoldedSet second){
+			int result = Integer.compare(first.mask, second.mask);
+			return result != 0 ? result : AnagramKey.PACKED_ORDER.compare(first.key, second.key);
+		}
+	};
+
+	static final WordArena EMPTY = build(Collections.<AnagramKey,Set<String>>emptyMap());
+
+	private final byte[] bytes;
+	private final int[] wordStart;
+	private final int[] groupStart;
+	private final int[] foldedStart;
+	private final long[] keyLow;
+	private final long[] keyHigh;
+	private final int[] slots;
+	//The few folded sets whose keys couldn't be packed, which are left out of the slots
+	private final Map<AnagramKey,Integer> overflowIds;
+	private final int[] maskValues;
+	private final int[] maskStart;
+	private final int[] bySize;
+
+	private WordArena(byte[] bytes, int[] wordStart, int[] groupStart, int[] foldedStart, long[] keyLow, long[] keyHigh,
+			int[] slots, Map<AnagramKey,Integer> overflowIds, int[] maskValues, int[] maskStart, int[] bySize){
+		this.bytes = bytes;
+		this.wordStart = wordStart;
+		this.groupStart = groupStart;
+		this.foldedStart = foldedStart;
+		this.keyLow = keyLow;
+		this.keyHigh = keyHigh;
+		this.slots = slots;
+		this.overflowIds = overflowIds;
+		this.maskValues = maskValues;
+		this.maskStart = maskStart;
+		this.bySize = bySize;
+	}
+
+	/**
+	 * Packs a corpus into an arena. The words are expected to be valid, so every character is a roman letter.
+	 *
+	 * @param groups The anagram sets, by their exact keys. Empty sets are left out.
+	 * @return An arena holding every word
+	 */
+	static WordArena build(Map<AnagramKey,? extends Collection<String>> groups){
+		//Gather up the folded sets first, since those decide the order everything is laid out in
+		Map<AnagramKey,List<String>> foldedWords = new HashMap<AnagramKey,List<String>>(groups.size() * 4 / 3 + 1);
+		for (Entry<AnagramKey,? extends Collection<String>> group : groups.entrySet()){
+			if (group.getValue().isEmpty()){
+				continue;
+			}
+			AnagramKey foldedKey = group.getKey().folded();
+			List<String> words = foldedWords.get(foldedKey);
+			if (words == null){
+				words = new ArrayList<String>(group.getValue().size());
+				foldedWords.put(foldedKey, words);
+			}
+			words.addAll(group.getValue());
+		}
+		FoldedSet[] sets = new FoldedSet[foldedWords.size()];
+		int folded = 0;
+		int wordCount = 0;
+		int groupCount = 0;
+		int byteCount = 0;
+		for (Entry<AnagramKey,List<String>> set : foldedWords.entrySet()){
+			FoldedSet foldedSet = new FoldedSet(set.getKey(), sortedDistinct(set.getValue()));
+			sets[folded++] = foldedSet;
+			wordCount += foldedSet.words.length;
+			for (int i = 0; i < foldedSet.words.length; i++){
+				byteCount += foldedSet.words[i].length();
+				if (i == 0 || startsRun(foldedSet.words[i - 1], foldedSet.words[i])){
+					groupCount++;
+				}
+			}
+		}
+		Arrays.sort(sets, MASK_ORDER);
+
+		byte[] bytes = new byte[byteCount];
+		int[] wordStart = new int[wordCount + 1];
+		int[] groupStart = new int[groupCount + 1];
+		int[] foldedStart = new int[sets.length + 1];
+		long[] keyLow = new long[sets.length];
+		long[] keyHigh = new long[sets.length];
+		Map<AnagramKey,Integer> overflowIds = new HashMap<AnagramKey,Integer>();
+		List<Integer> masks = new ArrayList<Integer>();
+		List<Integer> maskStarts = new ArrayList<Integer>();
+		int word = 0;
+		int group = 0;
+		int position = 0;
+		for (int f = 0; f < sets.length; f++){
+			FoldedSet set = sets[f];
+			foldedStart[f] = group;
+			if (set.key.isPacked()){
+				keyLow[f] = set.key.packedLow();
+				keyHigh[f] = set.key.packedHigh();
+			} else {
+				keyHigh[f] = OVERFLOW;
+				overflowIds.put(set.key, f);
+			}
+			if (masks.isEmpty() || masks.get(masks.size() - 1) != set.mask){
+				masks.add(set.mask);
+				maskStarts.add(f);
+			}
+			for (int i = 0; i < set.words.length; i++){
+				String text = set.words[i];
+				if (i == 0 || startsRun(set.words[i - 1], text)){
+					groupStart[group++] = word;
+				}
+				wordStart[word++] = position;
+				for (int c = 0; c < text.length(); c++){
+					bytes[position++] = (byte) text.charAt(c);
+				}
+			}
+		}
+		wordStart[wordCount] = position;
+		groupStart[groupCount] = wordCount;
+		foldedStart[sets.length] = groupCount;
+		maskStarts.add(sets.length);
+
+		int[] slots = new int[tableSize(sets.length)];
+		for (int f = 0; f < sets.length; f++){
+			if (keyHigh[f] != OVERFLOW){
+				int slot = spread(sets[f].key.hashCode()) & (slots.length - 1);
+				while (slots[slot] != 0){
+					slot = (slot + 1) & (slots.length - 1);
+				}
+				slots[slot] = f + 1;
+			}
+		}
+		WordArena arena = new WordArena(bytes, wordStart, groupStart, foldedStart, keyLow, keyHigh, slots, overflowIds,
+				toArray(masks), toArray(maskStarts), new int[groupCount]);
+		arena.sortBySize();
+		return arena;
+	}
+
+	private static String[] sortedDistinct(List<String> words){
+		String[] sorted = words.toArray(new String[words.size()]);
+		Arrays.sort(sorted);
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++){
+			if (distinct == 0 || !sorted[i].equals(sorted[distinct - 1])){
+				sorted[distinct++] = sorted[i];
+			}
+		}
+		return distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct);
+	}
+
+	//Whether the next word of a folded set starts a new exact set, which is whenever it starts with a different capital (or with none)
+	private static boolean startsRun(String previous, String next){
+		char before = previous.charAt(0);
+		char after = next.charAt(0);
+		return before != after && (Character.isUpperCase(before) || Character.isUpperCase(after));
+	}
+
+	private static int tableSize(int entries){
+		int size = 2;
+		while (size < entries * 2){
+			size <<= 1;
+		}
+		return size;
+	}
+
+	private static int spread(int hash){
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int[] toArray(List<Integer> values){
+		int[] array = new int[values.size()];
+		for (int i = 0; i < array.length; i++){
+			array[i] = values.get(i);
+		}
+		return array;
+	}
+
+	//Fills in bySize. The keys are only built for the sort, and then dropped.
+	private void sortBySize(){
+		final AnagramKey[] keys = new AnagramKey[bySize.length];
+		Integer[] order = new Integer[bySize.length];
+		for (int g = 0; g < bySize.length; g++){
+			keys[g] = groupKey(g);
+			order[g] = g;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second){
+				int result = Integer.compare(groupSize(first), groupSize(second));
+				return result != 0 ? result : AnagramKey.PACKED_ORDER.compare(keys[first], keys[second]);
+			}
+		});
+		for (int i = 0; i < order.length; i++){
+			bySize[i] = order[i];
+		}
+	}
+
+	int wordCount(){
+		return wordStart.length - 1;
+	}
+
+	int groupCount(){
+		return groupStart.length - 1;
+	}
+
+	int foldedCount(){
+		return foldedStart.length - 1;
+	}
+
+	/**
+	 * @param foldedKey A case-folded key
+	 * @return The id of the folded set with the key, or -1 if there isn't one
+	 */
+	int foldedId(AnagramKey foldedKey){
+		if (!foldedKey.isPacked()){
+			Integer id = overflowIds.get(foldedKey);
+			return id == null ? -1 : id;
+		}
+		long low = foldedKey.packedLow();
+		long high = foldedKey.packedHigh();
+		int mask = slots.length - 1;
+		//The table is never more than half full, so the probe always ends at an empty slot
+		for (int slot = spread(foldedKey.hashCode()) & mask; ; slot = (slot + 1) & mask){
+			int id = slots[slot] - 1;
+			if (id < 0){
+				return -1;
+			}
+			if (keyLow[id] == low && keyHigh[id] == high){
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * @param key An exact key
+	 * @return The id of the exact set with the key, or -1 if there isn't one
+	 */
+	int groupId(AnagramKey key){
+		int folded = foldedId(key.folded());
+		if (folded < 0){
+			return -1;
+		}
+		int capital = key.capitalLetter();
+		for (int g = foldedStart[folded]; g < foldedStart[folded + 1]; g++){
+			byte first = bytes[wordStart[groupStart[g]]];
+			if (capital >= 0 ? first == 'A' + capital : first >= 'a'){
+				return g;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The id of the folded set the exact set belongs to
+	 */
+	int foldedIdOf(int group){
+		int index = Arrays.binarySearch(foldedStart, 0, foldedStart.length - 1, group);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	AnagramKey foldedKey(int folded){
+		if (keyHigh[folded] == OVERFLOW){
+			return AnagramKey.foldedOf(word(groupStart[foldedStart[folded]]));
+		}
+		return AnagramKey.fromPacked(keyLow[folded], keyHigh[folded]);
+	}
+
+	AnagramKey groupKey(int group){
+		return AnagramKey.of(word(groupStart[group]));
+	}
+
+	int groupSize(int group){
+		return groupStart[group + 1] - groupStart[group];
+	}
+
+	/**
+	 * @return The ids of the exact sets making up the folded set, from the first up to (but not including) the second
+	 */
+	int firstGroupOf(int folded){
+		return foldedStart[folded];
+	}
+
+	int endGroupOf(int folded){
+		return foldedStart[folded + 1];
+	}
+
+	/**
+	 * @param excluded A word to leave out, if it is in the set
+	 * @param limit The most words to include, or null for no limit
+	 * @return A read-only view of the exact set's words, in alphabetical order
+	 */
+	Set<String> group(int group, String excluded, Integer limit){
+		return new Range(groupStart[group], groupStart[group + 1], excluded, limit);
+	}
+
+	/**
+	 * @return A read-only view of every word in the folded set, in alphabetical order
+	 */
+	Set<String> folded(int folded, String excluded, Integer limit){
+		return new Range(groupStart[foldedStart[folded]], groupStart[foldedStart[folded + 1]], excluded, limit);
+	}
+
+	/**
+	 * Writes the words of an exact set as GET /anagrams/:word.json returns them ({"anagrams":[...]}), straight from the arena.
+	 * Words are only ever roman letters, so they need no escaping.
+	 */
+	void writeGroupJson(int group, String excluded, Integer limit, OutputStream out) throws IOException {
+		writeJson(groupStart[group], groupStart[group + 1], excluded, limit, out);
+	}
+
+	/**
+	 * Writes the words of a folded set, the same way as {@link #writeGroupJson(int, String, Integer, OutputStream)}
+	 */
+	void writeFoldedJson(int folded, String excluded, Integer limit, OutputStream out) throws IOException {
+		writeJson(groupStart[foldedStart[folded]], groupStart[foldedStart[folded + 1]], excluded, limit, out);
+	}
+
+	private void writeJson(int from, int to, String excluded, Integer limit, OutputStream out) throws IOException {
+		int skip = indexOf(from, to, excluded);
+		int remaining = limit == null ? Integer.MAX_VALUE : limit;
+		boolean first = true;
+		out.write(OPEN);
+		for (int w = from; w < to && remaining > 0; w++){
+			if (w == skip){
+				continue;
+			}
+			if (!first){
+				out.write(',');
+			}
+			first = false;
+			remaining--;
+			out.write('"');
+			out.write(bytes, wordStart[w], wordStart[w + 1] - wordStart[w]);
+			out.write('"');
+		}
+		out.write(CLOSE);
+	}
+
+	private String word(int word){
+		return new String(bytes, wordStart[word], wordStart[word + 1] - wordStart[word], StandardCharsets.US_ASCII);
+	}
+
+	//Finds a word within [from, to) by comparing it against the bytes directly, returning -1 if it isn't there
+	private int indexOf(int from, int to, String word){
+		if (word == null){
+			return -1;
+		}
+		int low = from;
+		int high = to - 1;
+		while (low <= high){
+			int middle = (low + high) >>> 1;
+			int result = compare(middle, word);
+			if (result < 0){
+				low = middle + 1;
+			} else if (result > 0){
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	//Compares a word in the arena with a String, the same way String.compareTo would
+	private int compare(int word, String other){
+		int start = wordStart[word];
+		int length = wordStart[word + 1] - start;
+		int shorter = Math.min(length, other.length());
+		for (int i = 0; i < shorter; i++){
+			int result = (bytes[start + i] & 0xFF) - other.charAt(i);
+			if (result != 0){
+				return result;
+			}
+		}
+		return length - other.length();
+	}
+
+	/**
+	 * @return How many exact sets there are in the size order
+	 */
+	int sizeOrderLength(){
+		return bySize.length;
+	}
+
+	/**
+	 * @return The id of the exact set at the position in the size order
+	 */
+	int sizeOrderGroup(int position){
+		return bySize[position];
+	}
+
+	/**
+	 * @param size The smallest set size wanted
+	 * @param after A key the sets of that size have to come after in packed order, or null to start from the first set of the size
+	 * @return The position of the first exact set in the size order past the given size and key, or the length of the size order if there isn't one
+	 */
+	int sizeOrderStart(int size, AnagramKey after){
+		int low = 0;
+		int high = bySize.length;
+		while (low < high){
+			int middle = (low + high) >>> 1;
+			int group = bySize[middle];
+			int result = Integer.compare(groupSize(group), size);
+			if (result == 0 && after != null){
+				//A set of the same size only counts once it sorts past the key
+				result = AnagramKey.PACKED_ORDER.compare(groupKey(group), after) <= 0 ? -1 : 1;
+			}
+			if (result < 0){
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return Every letter mask used by a folded set, in order
+	 */
+	Set<Integer> letterMasks(){
+		return new AbstractSet<Integer>() {
+			@Override
+			public boolean contains(Object mask){
+				return mask instanceof Integer && Arrays.binarySearch(maskValues, (Integer) mask) >= 0;
+			}
+
+			@Override
+			public int size(){
+				return maskValues.length;
+			}
+
+			@Override
+			public Iterator<Integer> iterator(){
+				return new Iterator<Integer>() {
+					private int next = 0;
+
+					@Override
+					public boolean hasNext(){
+						return next < maskValues.length;
+					}
+
+					@Override
+					public Integer next(){
+						if (next >= maskValues.length){
+							throw new NoSuchElementException();
+						}
+						return maskValues[next++];
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * @param letterMask A letter mask, as returned by {@link AnagramKey#letterMask()}
+	 * @return The id of the first folded set using exactly those letters, or -1 if there isn't one.
+	 * The rest follow on up to {@link #endOfMask(int)}.
+	 */
+	int firstWithMask(int letterMask){
+		int index = Arrays.binarySearch(maskValues, letterMask);
+		return index >= 0 ? maskStart[index] : -1;
+	}
+
+	int endOfMask(int letterMask){
+		return maskStart[Arrays.binarySearch(maskValues, letterMask) + 1];
+	}
+
+	/**
+	 * @return The exact size of each array, by what it holds
+	 */
+	Map<String,Long> footprint(){
+		long overflowKeys = HeapFootprint.hashMap(overflowIds.size()) + overflowIds.size() * (HeapFootprint.ANAGRAM_KEY + 16);
+		Map<String,Long> footprint = new LinkedHashMap<String,Long>();
+		footprint.put("word_bytes", HeapFootprint.array(bytes.length, 1));
+		footprint.put("word_offsets", HeapFootprint.array(wordStart.length, 4));
+		footprint.put("set_offsets", HeapFootprint.array(groupStart.length, 4) + HeapFootprint.array(foldedStart.length, 4));
+		footprint.put("keys", HeapFootprint.array(keyLow.length, 8) + HeapFootprint.array(keyHigh.length, 8) + overflowKeys);
+		footprint.put("key_table", HeapFootprint.array(slots.length, 4));
+		footprint.put("size_index", HeapFootprint.array(bySize.length, 4));
+		footprint.put("mask_index", HeapFootprint.array(maskValues.length, 4) + HeapFootprint.array(maskStart.length, 4));
+		return footprint;
+	}
+
+	private static final class FoldedSet {
+		final AnagramKey key;
+		final int mask;
+		final String[] words;
+
+		FoldedSet(AnagramKey key, String[] words){
+			this.key = key;
+			this.mask = key.letterMask();
+			this.words = words;
+		}
+	}
+
+	/**
+	 * A run of words in the arena, minus one, cut off at a limit. Position i of the view is word from+i, or the word after it once past the skipped word.
+	 */
+	private final class Range extends AbstractSet<String> {
+
+		private final int from;
+		private final int to;
+		//The index of the word left out, or -1 if none is
+		private final int skip;
+		private final int size;
+
+		Range(int from, int to, String excluded, Integer limit){
+			this.from = from;
+			this.to = to;
+			this.skip = indexOf(from, to, excluded);
+			int size = skip >= 0 ? to - from - 1 : to - from;
+			if (limit != null && limit < size){
+				size = Math.max(limit, 0);
+			}
+			this.size = size;
+		}
+
+		@Override
+		public boolean contains(Object word){
+			if (!(word instanceof String)){
+				return false;
+			}
+			int index = indexOf(from, to, (String) word);
+			if (index < 0 || index == skip){
+				return false;
+			}
+			int position = skip >= 0 && index > skip ? index - from - 1 : index - from;
+			return position < size;
+		}
+
+		@Override
+		public int size(){
+			return size;
+		}
+
+		@Override
+		public Iterator<String> iterator(){
+			return new Iterator<String>() {
+				private int next = 0;
+
+				@Override
+				public boolean hasNext(){
+					return next < size;
+				}
+
+				@Override
+				public String next(){
+					if (next >= size){
+						throw new NoSuchElementException();
+					}
+					int word = from + next++;
+					return word(skip >= 0 && word >= skip ? word + 1 : word);
+				}
+			};
+		}
+	}
+}
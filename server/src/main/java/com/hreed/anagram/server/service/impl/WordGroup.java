@@ -0,0 +1,222 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable set of words, stored as a sorted array.
+ *
+ * The corpus never changes a group in place. Every add or remove builds a new group and swaps it in within the key's compute,
+ * so readers can iterate, copy or serialize a group they've looked up without any locking, and will never see it half changed.
+ * Anagram sets are small (rarely more than a handful of words), so copying one on write is cheap,
+ * and a bare array is far lighter than the HashSet it replaces.
+ */
+final class WordGroup extends AbstractSet<String> {
+
+	private final String[] words;
+
+	private WordGroup(String[] words){
+		this.words = words;
+	}
+
+	/**
+	 * @param words The words in the group, in any order and possibly with duplicates
+	 * @return A group holding each of the words once, or null if there are none
+	 */
+	static WordGroup of(Collection<String> words){
+		if (words instanceof WordGroup){
+			return (WordGroup) words;
+		}
+		if (words.isEmpty()){
+			return null;
+		}
+		return new WordGroup(sortedDistinct(words.toArray(new String[words.size()])));
+	}
+
+	/**
+	 * @param words The words in the group, in any order and possibly with duplicates. The array is kept by the group rather than copied,
+	 * so it mustn't be changed afterwards.
+	 * @return A group holding each of the words once, or null if there are none
+	 */
+	static WordGroup of(String[] words){
+		if (words.length == 0){
+			return null;
+		}
+		return new WordGroup(sortedDistinct(words));
+	}
+
+	/**
+	 * @param word The word to add
+	 * @return A group with the word added, or this group if the word is already in it
+	 */
+	WordGroup with(String word){
+		int index = Arrays.binarySearch(words, word);
+		if (index >= 0){
+			return this;
+		}
+		int insertAt = -index - 1;
+		String[] added = new String[words.length + 1];
+		System.arraycopy(words, 0, added, 0, insertAt);
+		added[insertAt] = word;
+		System.arraycopy(words, insertAt, added, insertAt + 1, words.length - insertAt);
+		return new WordGroup(added);
+	}
+
+	/**
+	 * @param newWords The words to add
+	 * @return A group with every new word added, or this group if it already had all of them
+	 */
+	WordGroup withAll(Collection<String> newWords){
+		String[] merged = Arrays.copyOf(words, words.length + newWords.size());
+		int length = words.length;
+		for (String word : newWords){
+			merged[length++] = word;
+		}
+		merged = sortedDistinct(merged);
+		return merged.length == words.length ? this : new WordGroup(merged);
+	}
+
+	/**
+	 * @param word The word to remove
+	 * @return A group without the word, this group if the word wasn't in it, or null if it was the last word
+	 */
+	WordGroup without(String word){
+		int index = Arrays.binarySearch(words, word);
+		if (index < 0){
+			return this;
+		}
+		if (words.length == 1){
+			return null;
+		}
+		String[] removed = new String[words.length - 1];
+		System.arraycopy(words, 0, removed, 0, index);
+		System.arraycopy(words, index + 1, removed, index, words.length - index - 1);
+		return new WordGroup(removed);
+	}
+
+	private static String[] sortedDistinct(String[] words){
+		Arrays.sort(words);
+		int distinct = 0;
+		for (int i = 0; i < words.length; i++){
+			if (distinct == 0 || !words[i].equals(words[distinct - 1])){
+				words[distinct++] = words[i];
+			}
+		}
+		return distinct == words.length ? words : Arrays.copyOf(words, distinct);
+	}
+
+	/**
+	 * @param word The word to find
+	 * @return The word's position in the group's alphabetical order, or -1 if it isn't in the group
+	 */
+	int indexOf(String word){
+		int index = Arrays.binarySearch(words, word);
+		return index >= 0 ? index : -1;
+	}
+
+	/**
+	 * @param excluded A word to leave out, if it is in the group
+	 * @param limit The most words to include, or null for no limit
+	 * @return A read-only view of the group's words in alphabetical order, without the excluded word and cut off at the limit.
+	 * Nothing is copied, so building the view is a single binary search however big the group is.
+	 */
+	Set<String> view(String excluded, Integer limit){
+		int skip = excluded == null ? -1 : indexOf(excluded);
+		int size = skip >= 0 ? words.length - 1 : words.length;
+		if (limit != null && limit < size){
+			size = Math.max(limit, 0);
+		}
+		if (skip < 0 && size == words.length){
+			return this;
+		}
+		return new View(skip, size);
+	}
+
+	@Override
+	public boolean contains(Object word){
+		return word instanceof String && Arrays.binarySearch(words, (String) word) >= 0;
+	}
+
+	@Override
+	public int size(){
+		return words.length;
+	}
+
+	@Override
+	public Iterator<String> iterator(){
+		return new Iterator<String>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext(){
+				return next < words.length;
+			}
+
+			@Override
+			public String next(){
+				if (next >= words.length){
+					throw new NoSuchElementException();
+				}
+				return words[next++];
+			}
+		};
+	}
+
+	/**
+	 * The first few words of the group, minus one. Position i of the view is word i of the group, or word i+1 once past the skipped word.
+	 */
+	private final class View extends AbstractSet<String> {
+
+		//The index of the word left out, or -1 if none is
+		private final int skip;
+		private final int size;
+
+		View(int skip, int size){
+			this.skip = skip;
+			this.size = size;
+		}
+
+		@Override
+		public boolean contains(Object word){
+			if (!(word instanceof String)){
+				return false;
+			}
+			int index = Arrays.binarySearch(words, (String) word);
+			if (index < 0 || index == skip){
+				return false;
+			}
+			int position = skip >= 0 && index > skip ? index - 1 : index;
+			return position < size;
+		}
+
+		@Override
+		public int size(){
+			return size;
+		}
+
+		@Override
+		public Iterator<String> iterator(){
+			return new Iterator<String>() {
+				private int next = 0;
+
+				@Override
+				public boolean hasNext(){
+					return next < size;
+				}
+
+				@Override
+				public String next(){
+					if (next >= size){
+						throw new NoSuchElementException();
+					}
+					int position = next++;
+					return words[skip >= 0 && position >= skip ? position + 1 : position];
+				}
+			};
+		}
+	}
+}
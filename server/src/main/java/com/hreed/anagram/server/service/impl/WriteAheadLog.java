@@ -0,0 +1,346 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the changes made to the corpus, split into numbered segment files (wal-00000001.log, wal-00000002.log...).
+ *
+ * Each record is laid out as:
+ * <pre>
+ * int payload length, int CRC32 of the payload, then the payload: byte operation, int word count, then each word as an int length and its UTF-8 bytes
+ * </pre>
+ * Appending a record only copies it into a memory buffer. It becomes durable once a writer calls {@link #awaitDurable(long)},
+ * which writes out and fsyncs everything appended so far, not just that writer's record. Writers queue up to do this one at a time,
+ * and by the time a writer's turn comes the writer before it has usually already synced its record, so one fsync covers
+ * every record appended while the previous one was in progress (group commit).
+ *
+ * A crash can leave a partly written record at the end of a segment, or a tail of zeros where the file grew but the record never reached the disk.
+ * Replay stops quietly at either. A record that fails its checksum anywhere else is damage to changes that were acknowledged, so replay fails instead
+ * of skipping the rest of the segment. A damaged length can't be told apart from a record cut short, since the checksum only covers the payload.
+ */
+final class WriteAheadLog implements Closeable {
+
+	static final byte ADD_WORDS = 1;
+	static final byte DELETE_WORD = 2;
+	static final byte DELETE_ANAGRAMS = 3;
+	static final byte DELETE_ALL_WORDS = 4;
+	static final byte RELOAD = 5;
+
+	private static final Pattern SEGMENT_NAME = Pattern.compile("wal-(\\d+)\\.log");
+	private static final int RECORD_HEADER_LENGTH = 8;
+
+	private final File directory;
+	private final boolean fsync;
+	//Only the thread writing out the buffer holds this, so the file is written and synced in the same order the records were appended
+	private final Object ioLock = new Object();
+	private FileChannel channel;
+	private OutputStream channelStream;
+	private long segment;
+	//Appended records waiting to be written out, and the spare buffer swapped in while they are
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream(1 << 16);
+	private ByteArrayOutputStream writing = new ByteArrayOutputStream(1 << 16);
+	//Positions are counted in bytes across every segment since the log was opened
+	private long appended;
+	private volatile long durable;
+	private final LongAdder records = new LongAdder();
+	private final LongAdder syncs = new LongAdder();
+	//Once a write fails it is unknown what made it to disk, so nothing more is written
+	private volatile IOException failure;
+
+	/**
+	 * @param directory The directory holding the segment files
+	 * @param segment The number of the segment to start appending to. It is created if it doesn't exist.
+	 * @param fsync Whether to fsync the log before a write is acknowledged. Without it, writes survive the server process dying but not the machine.
+	 */
+	WriteAheadLog(File directory, long segment, boolean fsync) throws IOException {
+		this.directory = directory;
+		this.fsync = fsync;
+		open(segment);
+	}
+
+	private void open(long segment) throws IOException {
+		this.segment = segment;
+		channel = FileChannel.open(segmentFile(directory, segment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		channelStream = Channels.newOutputStream(channel);
+	}
+
+	/**
+	 * @param operation The kind of change
+	 * @param words The words it applies to, if any
+	 * @return The change encoded as a log record, ready to be appended. Encoding is done up front so it happens outside any lock.
+	 */
+	static byte[] record(byte operation, Collection<String> words){
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(RECORD_HEADER_LENGTH + 5 + words.size() * 16);
+		DataOutputStream payload = new DataOutputStream(bytes);
+		try {
+			payload.writeLong(0);
+			payload.writeByte(operation);
+			payload.writeInt(words.size());
+			for (String word : words){
+				byte[] encoded = word.getBytes(StandardCharsets.UTF_8);
+				payload.writeInt(encoded.length);
+				payload.write(encoded);
+			}
+		} catch (IOException e){
+			throw new IllegalStateException("Writing to a byte array can't fail", e);
+		}
+		ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+		CRC32 checksum = new CRC32();
+		checksum.update(record.array(), RECORD_HEADER_LENGTH, record.capacity() - RECORD_HEADER_LENGTH);
+		record.putInt(0, record.capacity() - RECORD_HEADER_LENGTH);
+		record.putInt(4, (int) checksum.getValue());
+		return record.array();
+	}
+
+	/**
+	 * @param record A record built by {@link #record(byte, Collection)}
+	 * @return The position just past the record, to be passed to {@link #awaitDurable(long)}
+	 */
+	synchronized long append(byte[] record){
+		pending.write(record, 0, record.length);
+		appended += record.length;
+		records.increment();
+		return appended;
+	}
+
+	/**
+	 * Lets a writer find out the log has failed before it appends a record, rather than once it has waited for the record to be synced.
+	 *
+	 * @throws IOException If a write to the log has already failed
+	 */
+	void checkWritable() throws IOException {
+		IOException failed = failure;
+		if (failed != null){
+			throw new IOException("The write-ahead log failed earlier and is no longer being written", failed);
+		}
+	}
+
+	/**
+	 * Blocks until everything up to the given position has been written to the log file (and fsynced, if enabled).
+	 *
+	 * @param position A position returned by {@link #append(byte[])}
+	 * @throws IOException If the log couldn't be written
+	 */
+	void awaitDurable(long position) throws IOException {
+		if (durable >= position){
+			return;
+		}
+		synchronized (ioLock){
+			//Whoever held the lock before may well have written this record out along with its own
+			if (durable >= position){
+				return;
+			}
+			flush();
+		}
+	}
+
+	//Writes out and syncs every record appended so far. Always called holding the ioLock.
+	private void flush() throws IOException {
+		checkWritable();
+		long target;
+		synchronized (this){
+			ByteArrayOutputStream swap = pending;
+			pending = writing;
+			writing = swap;
+			target = appended;
+		}
+		try {
+			writing.writeTo(channelStream);
+			if (fsync){
+				channel.force(false);
+			}
+		} catch (IOException e){
+			failure = e;
+			throw e;
+		}
+		writing.reset();
+		syncs.increment();
+		durable = target;
+	}
+
+	/**
+	 * Closes off the current segment and starts appending to the next one, so the segments before it can be dropped
+	 * once a snapshot covers them. The caller has to make sure no changes are logged while this runs, or a change could be
+	 * applied to the corpus on one side of the rotation and logged on the other.
+	 *
+	 * @return The number of the new segment. Every change logged before it is in an earlier segment.
+	 */
+	long rotate() throws IOException {
+		synchronized (ioLock){
+			flush();
+			channel.close();
+			open(segment + 1);
+			return segment;
+		}
+	}
+
+	/**
+	 * @return The position just past the last record appended
+	 */
+	synchronized long appended(){
+		return appended;
+	}
+
+	long records(){
+		return records.sum();
+	}
+
+	long syncs(){
+		return syncs.sum();
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (ioLock){
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	static File segmentFile(File directory, long segment){
+		return new File(directory, String.format("wal-%08d.log", segment));
+	}
+
+	/**
+	 * @return The numbers of the segment files in the directory, in order
+	 */
+	static List<Long> segments(File directory){
+		List<Long> segments = new ArrayList<Long>();
+		String[] names = directory.list();
+		if (names != null){
+			for (String name : names){
+				Matcher matcher = SEGMENT_NAME.matcher(name);
+				if (matcher.matches()){
+					segments.add(Long.parseLong(matcher.group(1)));
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * Receives each change read back from the log.
+	 */
+	interface Replayer {
+		void apply(byte operation, List<String> words);
+	}
+
+	/**
+	 * Reads the records of a segment back in order, stopping at the end of the file or at a record a crash left unfinished at the end of it.
+	 *
+	 * @return The number of records replayed
+	 * @throws IOException If the segment can't be read, or a record before the end of it is corrupt
+	 */
+	static long replay(File segmentFile, Replayer replayer) throws IOException {
+		long replayed = 0;
+		long size = segmentFile.length();
+		long offset = 0;
+		try (InputStream file = Files.newInputStream(segmentFile.toPath())){
+			DataInputStream input = new DataInputStream(new BufferedInputStream(file, 1 << 16));
+			byte[] payload = new byte[256];
+			CRC32 checksum = new CRC32();
+			while (true){
+				int length;
+				int expectedChecksum;
+				try {
+					length = input.readInt();
+					expectedChecksum = input.readInt();
+				} catch (EOFException e){
+					//The end of the segment, or a header cut short
+					return replayed;
+				}
+				long end = offset + RECORD_HEADER_LENGTH + length;
+				if (length < 5){
+					checkUnfinished(segmentFile, offset, offset + RECORD_HEADER_LENGTH, size);
+					return replayed;
+				}
+				//A length that runs past the end of the file is the header of a record that was never finished
+				if (end > size){
+					return replayed;
+				}
+				if (length > payload.length){
+					payload = new byte[Math.max(length, payload.length * 2)];
+				}
+				input.readFully(payload, 0, length);
+				checksum.reset();
+				checksum.update(payload, 0, length);
+				if ((int) checksum.getValue() != expectedChecksum){
+					checkUnfinished(segmentFile, offset, end, size);
+					return replayed;
+				}
+				ByteBuffer record = ByteBuffer.wrap(payload, 0, length);
+				byte operation = record.get();
+				int wordCount = record.getInt();
+				List<String> words = new ArrayList<String>(wordCount);
+				for (int i = 0; i < wordCount; i++){
+					int wordLength = record.getInt();
+					words.add(new String(payload, record.position(), wordLength, StandardCharsets.UTF_8));
+					record.position(record.position() + wordLength);
+				}
+				replayer.apply(operation, words);
+				replayed++;
+				offset = end;
+			}
+		}
+	}
+
+	/**
+	 * Checks that a bad record is one a crash could have left: the last record in the segment, or the start of a tail of zeros.
+	 *
+	 * @throws IOException If there is more after it, which replay would otherwise have skipped
+	 */
+	private static void checkUnfinished(File segmentFile, long offset, long end, long size) throws IOException {
+		if (end >= size || onlyZeros(segmentFile, offset)){
+			return;
+		}
+		throw new IOException("Corrupt record at byte "+offset+" of `"+segmentFile+"`, with "+(size - end)+" more bytes of the log after it");
+	}
+
+	private static boolean onlyZeros(File segmentFile, long offset) throws IOException {
+		try (InputStream file = Files.newInputStream(segmentFile.toPath())){
+			InputStream input = new BufferedInputStream(file, 1 << 16);
+			long skipped = 0;
+			while (skipped < offset){
+				long step = input.skip(offset - skipped);
+				if (step <= 0){
+					return true;
+				}
+				skipped += step;
+			}
+			int read;
+			while ((read = input.read()) != -1){
+				if (read != 0){
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.hreed.anagram.server.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.log4j.Logger;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+import com.hreed.anagram.server.service.AnagramVisitor;
+
+/**
+ * Streams the anagrams of a batch of words back as NDJSON, one line per word, as the words are read from the request.
+ *
+ * The request body is either JSON (an array of words, or an object with them under "words" like POST /words.json)
+ * or plain text / NDJSON with one word per line. Neither the request nor the response is ever held in memory as a whole:
+ * each word is parsed, looked up and written out before the next is read, and the anagrams are written straight
+ * from the corpus's own sets through {@link AnagramCorpusService#visitAnagrams}.
+ */
+final class AnagramBatchResponse implements StreamingResponseBody, AnagramVisitor {
+
+	static final String CONTENT_TYPE = "application/x-ndjson";
+	//Lines are pushed out to the client in chunks rather than one at a time, which would cost a network write per word
+	private static final int FLUSH_EVERY = 64;
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private final Logger log = Logger.getLogger(this.getClass());
+	private final AnagramCorpusService anagramCorpusService;
+	private final InputStream body;
+	private final boolean jsonBody;
+	private final Integer limit;
+	private final boolean caseInsensitive;
+	private JsonGenerator generator;
+	private int unflushed;
+
+	/**
+	 * @param anagramCorpusService The service to look up each word in
+	 * @param body The request body
+	 * @param contentType The content type of the request body. Anything other than JSON is read as one word per line.
+	 * @param limit Limit on the number of anagrams returned per word. Returns all if null.
+	 * @param caseInsensitive Whether to return anagrams regardless of capitalization
+	 */
+	AnagramBatchResponse(AnagramCorpusService anagramCorpusService, InputStream body, String contentType, Integer limit, boolean caseInsensitive){
+		this.anagramCorpusService = anagramCorpusService;
+		this.body = body;
+		this.jsonBody = contentType != null && contentType.contains("json") && !contentType.contains(CONTENT_TYPE);
+		this.limit = limit;
+		this.caseInsensitive = caseInsensitive;
+	}
+
+	@Override
+	public void writeTo(OutputStream output) throws IOException {
+		generator = JSON.createGenerator(output);
+		generator.setRootValueSeparator(null);
+		try {
+			if (jsonBody){
+				readJson();
+			} else {
+				readLines();
+			}
+		} catch (JsonProcessingException e){
+			//The response is already under way, so the failure can only be reported as a last line
+			log.error("Failed to parse batch of words. "+e.getOriginalMessage());
+			generator.writeStartObject();
+			generator.writeBooleanField("success", false);
+			generator.writeStringField("message", "Invalid JSON in request body : "+e.getOriginalMessage());
+			generator.writeEndObject();
+			generator.writeRaw('\n');
+		}
+		generator.close();
+	}
+
+	private void readJson() throws IOException {
+		JsonParser parser = JSON.createParser(body);
+		JsonToken token = parser.nextToken();
+		if (token == JsonToken.START_OBJECT){
+			//Skip ahead to the words, ignoring any other fields
+			while ((token = parser.nextToken()) == JsonToken.FIELD_NAME){
+				token = parser.nextToken();
+				if ("words".equals(parser.getCurrentName()) && token == JsonToken.START_ARRAY){
+					break;
+				}
+				parser.skipChildren();
+			}
+		}
+		if (token != JsonToken.START_ARRAY){
+			throw new JsonParseException(parser, "Expected an array of words, or an object with an array of words under \"words\"");
+		}
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY){
+			if (token != JsonToken.VALUE_STRING){
+				throw new JsonParseException(parser, "Expected a word but found "+token);
+			}
+			writeAnagrams(parser.getText());
+		}
+	}
+
+	private void readLines() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+		String line;
+		while ((line = reader.readLine()) != null){
+			String word = line.trim();
+			if (word.isEmpty()){
+				continue;
+			}
+			//NDJSON lines are JSON strings, which may have escapes in them
+			if (word.charAt(0) == '"'){
+				JsonParser parser = JSON.createParser(word);
+				if (parser.nextToken() != JsonToken.VALUE_STRING){
+					throw new JsonParseException(parser, "Expected a word but found "+word);
+				}
+				word = parser.getText();
+			}
+			writeAnagrams(word);
+		}
+	}
+
+	private void writeAnagrams(String word) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("word", word);
+		generator.writeArrayFieldStart("anagrams");
+		anagramCorpusService.visitAnagrams(word, limit, caseInsensitive, this);
+		generator.writeEndArray();
+		generator.writeEndObject();
+		generator.writeRaw('\n');
+		if (++unflushed == FLUSH_EVERY){
+			generator.flush();
+			unflushed = 0;
+		}
+	}
+
+	@Override
+	public void visit(String anagram) throws IOException {
+		generator.writeString(anagram);
+	}
+}
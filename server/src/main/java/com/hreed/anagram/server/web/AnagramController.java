@@ -1,17 +1,20 @@
 package com.hreed.anagram.server.web;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.IOException;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -19,51 +22,112 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.hreed.anagram.server.metrics.QueryTracker;
 import com.hreed.anagram.server.service.AnagramCorpusService;
 
+/**
+ * Serves the anagram endpoints on Tomcat, a thread per request. This is the default serving mode;
+ * the {@link ReactiveAnagramController} serves the same endpoints when the server is started in reactive mode.
+ */
 @RestController
+@ConditionalOnWebApplication(type = Type.SERVLET)
 public class AnagramController {
 
 	@Autowired
 	private AnagramCorpusService anagramCorpusService;
-	private Logger log = Logger.getLogger(this.getClass());
+	@Autowired
+	private QueryTracker queryTracker;
+	//Adds the batches of uploaded word lists to the corpus, while the request threads carry on reading the rest of them
+	private final ExecutorService uploads = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "word-uploads");
+		thread.setDaemon(true);
+		return thread;
+	});
 	
+	@PreDestroy
+	public void close(){
+		uploads.shutdownNow();
+	}
 	
 	@RequestMapping(value = "/words.json",method = RequestMethod.POST)
 	@ResponseStatus(value = HttpStatus.CREATED)
 	public void addWords(@RequestBody Map<String, Object> payload) throws Exception {		
-		Set<String> newWords = new HashSet<String>((Collection<String>) payload.get("words"));
-		anagramCorpusService.addWords(newWords);
+		anagramCorpusService.addWords(Endpoints.words(payload));
+	}
+	
+	/**
+	 * Adds a word list streamed in the request body, one word per line as plain text or gzipped, without ever holding the whole list in memory.
+	 * Responds with how many words were added and how many lines were rejected for each reason.
+	 */
+	@RequestMapping(value = "/words/bulk.json",method = RequestMethod.POST,consumes = {WordListUpload.TEXT, WordListUpload.GZIP, WordListUpload.X_GZIP, WordListUpload.BINARY})
+	public Map<String, Object> uploadWords(HttpServletRequest request, 
+			@RequestParam(value="mode",required=false) String mode,
+			HttpServletResponse httpResponse) throws IOException {
+		WordListUpload upload;
+		try {
+			upload = new WordListUpload(anagramCorpusService, mode, uploads);
+		} catch (IllegalArgumentException e){
+			httpResponse.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+			return Endpoints.rejected("word list upload", e.getMessage());
+		}
+		httpResponse.setStatus(HttpServletResponse.SC_CREATED);
+		return upload.load(request.getInputStream());
 	}
 	
 	@RequestMapping(value = "/anagrams/{word}.json",method = RequestMethod.GET)
 	public Map<String, Object> getAnagrams(@PathVariable("word") String word, 
 			@RequestParam(value="limit",required=false) String limitQuery, 
-			@RequestParam(value="caseinsensitive",required=false) String caseInsensitive) {
-		//Check to see if the limit flag was set to a valid integer
-		Integer value = null;
-		if (limitQuery != null){
+			@RequestParam(value="caseinsensitive",required=false) String caseInsensitive,
+			HttpServletResponse httpResponse) throws IOException {
+		queryTracker.record(word);
+		Integer value = Endpoints.parseIntParam("limit", limitQuery);
+		boolean includeCapitals = Boolean.parseBoolean(caseInsensitive);
+		//A '?' in the word is a blank tile that can be any letter (it has to be sent URL encoded as %3F)
+		if (word.indexOf('?') >= 0){
 			try {
-				value = Integer.parseInt(limitQuery);
-			} catch (NumberFormatException e){
-				log.error("Failed to parse int from limit param : "+limitQuery +". Defaulting to no limit.");
+				return Endpoints.anagrams(anagramCorpusService.getWildcardAnagrams(word, value, includeCapitals));
+			} catch (IllegalArgumentException e){
+				httpResponse.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+				return Endpoints.rejected("wildcard query : "+word, e.getMessage());
 			}
 		}
-		Boolean includeCapitals = false;
-		if (caseInsensitive != null){
-			includeCapitals = Boolean.parseBoolean(caseInsensitive);
-		}
-		Map<String, Object> response = new HashMap<String, Object>();
-		Set<String> anagrams;
-		if (includeCapitals == false){
-			anagrams = anagramCorpusService.getAnagrams(word,value);	
-		} else {
-			anagrams = anagramCorpusService.getAnagramsCaseInsensitive(word, value);
-		}
-		
-		response.put("anagrams", anagrams);
-		return response;
+		//Plain lookups are written straight to the response, usually from JSON the service already has cached
+		httpResponse.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		anagramCorpusService.writeAnagramsJson(word, value, includeCapitals, httpResponse.getOutputStream());
+		return null;
+	}
+	
+	/**
+	 * Looks up the anagrams of many words in one request. The words are read from the body as JSON or one per line,
+	 * and the results are streamed back as NDJSON while the body is still being read.
+	 */
+	@RequestMapping(value = "/anagrams.json",method = RequestMethod.POST)
+	public StreamingResponseBody getAnagramsBatch(HttpServletRequest request, 
+			@RequestParam(value="limit",required=false) String limitQuery, 
+			@RequestParam(value="caseinsensitive",required=false) String caseInsensitive,
+			HttpServletResponse httpResponse) throws IOException {
+		httpResponse.setContentType(AnagramBatchResponse.CONTENT_TYPE);
+		return new AnagramBatchResponse(anagramCorpusService, request.getInputStream(), request.getContentType(), 
+				Endpoints.parseIntParam("limit", limitQuery), Boolean.parseBoolean(caseInsensitive));
+	}
+	
+	@RequestMapping(value = "/subanagrams/{letters}.json",method = RequestMethod.GET)
+	public Map<String, Object> getSubAnagrams(@PathVariable("letters") String letters, 
+			@RequestParam(value="after",required=false) String after,
+			@RequestParam(value="limit",required=false) String limitQuery, 
+			@RequestParam(value="caseinsensitive",required=false) String caseInsensitive) {
+		return anagramCorpusService.getSubAnagrams(letters, after, Endpoints.parseIntParam("limit", limitQuery), Boolean.parseBoolean(caseInsensitive));
+	}
+	
+	@RequestMapping(value = "/phrases/{letters}.json",method = RequestMethod.GET)
+	public Map<String, Object> getAnagramPhrases(@PathVariable("letters") String letters, 
+			@RequestParam(value="limit",required=false) String limitQuery, 
+			@RequestParam(value="maxwords",required=false) String maxWordsQuery, 
+			@RequestParam(value="caseinsensitive",required=false) String caseInsensitive) {
+		return anagramCorpusService.getAnagramPhrases(letters, Endpoints.parseIntParam("limit", limitQuery), 
+				Endpoints.parseIntParam("maxwords", maxWordsQuery), Boolean.parseBoolean(caseInsensitive));
 	}
 	
 	@RequestMapping(value = "/anagrams/{word}.json",method = RequestMethod.DELETE)
@@ -89,36 +153,51 @@ public class AnagramController {
 		anagramCorpusService.populateCorpusFromDictionaryFile("/dictionary.txt");
 	}
 	
+	/**
+	 * Reports the corpus statistics, along with the "version" of the corpus they were all read from.
+	 * With lengths=true the number of words of each length is included too, which is what a router adds up across the nodes of a sharded corpus.
+	 */
 	@RequestMapping(value = "/metadata.json",method = RequestMethod.GET)
-	public Map<String, Object> getDictionaryMetadata(){
-		Map<String, Object> response = new HashMap<String, Object>();
-		response = anagramCorpusService.getCorpusMetadata();
-		return response;
+	public Map<String, Object> getDictionaryMetadata(@RequestParam(value="lengths",required=false) String lengths){
+		return Endpoints.metadata(anagramCorpusService.getSnapshot(), lengths);
+	}
+
+	/**
+	 * Reports how much of the heap the corpus takes up, by structure, for sizing the server's heap
+	 */
+	@RequestMapping(value = "/memory.json",method = RequestMethod.GET)
+	public Map<String, Object> getMemoryFootprint(){
+		return anagramCorpusService.getMemoryFootprint();
 	}
 	
+	/**
+	 * Lists the largest anagram sets, streamed straight from the corpus. With a limit, the listing is split into pages,
+	 * and each page's "next_cursor" is passed back as the cursor param to fetch the next.
+	 */
 	@RequestMapping(value = "/most.json",method = RequestMethod.GET)
-	public Map<String, Object> getLargestAnagramSets(){
-		Map<String, Object> response = new HashMap<String, Object>();
-		response.put("anagrams", anagramCorpusService.getLargestAnagramSets());
-		return response;
+	public StreamingResponseBody getLargestAnagramSets(@RequestParam(value="limit",required=false) String limitQuery, 
+			@RequestParam(value="cursor",required=false) String cursorQuery, 
+			HttpServletResponse response){
+		return listing(Endpoints.GroupListing.largest(cursorQuery, limitQuery), response);
 	}
 	
+	/**
+	 * Lists the anagram sets at least as large as the size param, smallest first, streamed and paged the same way as /most.json
+	 */
 	@RequestMapping(value = "groups.json",method = RequestMethod.GET)
-	public Map<String, Object> getAnagramGroupsBySize(@RequestParam("size") String size, HttpServletResponse response){
-		Map<String, Object> result = new HashMap<String, Object>();
-		Integer value = null;
-		if (size != null){
-			try {
-				value = Integer.parseInt(size);
-				result.put("anagrams", anagramCorpusService.getAnagramGroupsBySize(value));
-			} catch (NumberFormatException e){
-				log.error("Failed to parse int from size param : "+size +". Returning bad request.");
-				result.put("success", false);
-				result.put("message", "Invalid value for size param");
-				response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-			}
-		}		
-		return result;
+	public StreamingResponseBody getAnagramGroupsBySize(@RequestParam("size") String size, 
+			@RequestParam(value="limit",required=false) String limitQuery, 
+			@RequestParam(value="cursor",required=false) String cursorQuery, 
+			HttpServletResponse response){
+		return listing(Endpoints.GroupListing.ofAtLeast(size, cursorQuery, limitQuery), response);
+	}
+
+	private StreamingResponseBody listing(Endpoints.GroupListing listing, HttpServletResponse response){
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		if (!listing.isValid()){
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+		}
+		return listing.respond(anagramCorpusService);
 	}
 	
 }
@@ -0,0 +1,99 @@
+package com.hreed.anagram.server.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import com.hreed.anagram.server.service.AnagramCorpusSnapshot;
+import com.hreed.anagram.server.service.AnagramGroupVisitor;
+import com.hreed.anagram.server.service.GroupCursor;
+
+/**
+ * Streams a page of anagram sets back as JSON, in the same {"anagrams": [...]} shape the listings have always had,
+ * plus a "next_cursor" for fetching the page after it (null on the last page), and the "version" of the corpus the page was listed from.
+ *
+ * Each set is written straight from the corpus as it is visited, so even a listing of every set in the dictionary
+ * is never copied into a list or buffered as a whole response.
+ */
+final class AnagramGroupsResponse implements StreamingResponseBody, AnagramGroupVisitor {
+
+	//Sets are pushed out to the client in chunks rather than one at a time, which would cost a network write per set
+	private static final int FLUSH_EVERY = 64;
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private final AnagramCorpusSnapshot snapshot;
+	//The minimum size of the sets listed, or null to list the largest sets
+	private final Integer size;
+	private final GroupCursor after;
+	private final Integer limit;
+	private JsonGenerator generator;
+	private int unflushed;
+
+	private AnagramGroupsResponse(AnagramCorpusSnapshot snapshot, Integer size, GroupCursor after, Integer limit){
+		this.snapshot = snapshot;
+		this.size = size;
+		this.after = after;
+		this.limit = limit;
+	}
+
+	/**
+	 * @return A page of the sets tied for the largest size
+	 */
+	static AnagramGroupsResponse largest(AnagramCorpusSnapshot snapshot, GroupCursor after, Integer limit){
+		return new AnagramGroupsResponse(snapshot, null, after, limit);
+	}
+
+	/**
+	 * @return A page of the sets of the given size or larger
+	 */
+	static AnagramGroupsResponse ofAtLeast(AnagramCorpusSnapshot snapshot, int size, GroupCursor after, Integer limit){
+		return new AnagramGroupsResponse(snapshot, size, after, limit);
+	}
+
+	/**
+	 * @return A response with just the given error message, for requests rejected before any sets were listed
+	 */
+	static StreamingResponseBody failure(final String message){
+		return output -> {
+			JsonGenerator generator = JSON.createGenerator(output);
+			generator.writeStartObject();
+			generator.writeBooleanField("success", false);
+			generator.writeStringField("message", message);
+			generator.writeEndObject();
+			generator.close();
+		};
+	}
+
+	@Override
+	public void writeTo(OutputStream output) throws IOException {
+		generator = JSON.createGenerator(output);
+		generator.writeStartObject();
+		generator.writeArrayFieldStart("anagrams");
+		GroupCursor next = size == null
+				? snapshot.visitLargestAnagramSets(after, limit, this)
+				: snapshot.visitAnagramGroupsBySize(size, after, limit, this);
+		generator.writeEndArray();
+		generator.writeStringField("next_cursor", next == null ? null : next.toString());
+		generator.writeNumberField("version", snapshot.getVersion());
+		generator.writeEndObject();
+		generator.close();
+	}
+
+	@Override
+	public void visit(Set<String> group) throws IOException {
+		generator.writeStartArray();
+		for (String word : group){
+			generator.writeString(word);
+		}
+		generator.writeEndArray();
+		if (++unflushed == FLUSH_EVERY){
+			generator.flush();
+			unflushed = 0;
+		}
+	}
+}
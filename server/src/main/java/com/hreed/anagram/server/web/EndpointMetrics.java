@@ -0,0 +1,59 @@
+package com.hreed.anagram.server.web;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.hreed.anagram.server.metrics.LatencyHistogram;
+import com.hreed.anagram.server.metrics.MetricsRegistry;
+
+/**
+ * The latency, request and error metrics of each controller endpoint, shared by the servlet {@link MetricsInterceptor}
+ * and the reactive {@link MetricsWebFilter} so both serving modes report the same metrics.
+ */
+final class EndpointMetrics {
+
+	static final String LATENCY = "anagram_http_latency_seconds";
+	static final String REQUESTS = "anagram_http_requests_total";
+	static final String ERRORS = "anagram_http_errors_total";
+
+	private final MetricsRegistry metrics;
+	private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+	EndpointMetrics(MetricsRegistry metrics){
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @param name The name of the controller method that handled the request
+	 * @param startNanos When the request came in
+	 * @param error Whether the request failed or got a 4xx or 5xx response
+	 */
+	void record(String name, long startNanos, boolean error){
+		Endpoint endpoint = endpoint(name);
+		endpoint.latency.recordSince(startNanos);
+		endpoint.requests.increment();
+		if (error){
+			endpoint.errors.increment();
+		}
+	}
+
+	private Endpoint endpoint(String name){
+		Endpoint endpoint = endpoints.get(name);
+		if (endpoint == null){
+			endpoint = endpoints.computeIfAbsent(name, newName -> new Endpoint(metrics, newName));
+		}
+		return endpoint;
+	}
+
+	private static final class Endpoint {
+		final LatencyHistogram latency;
+		final LongAdder requests;
+		final LongAdder errors;
+
+		Endpoint(MetricsRegistry metrics, String name){
+			latency = metrics.timer(LATENCY, "endpoint", name);
+			requests = metrics.counter(REQUESTS, "endpoint", name);
+			errors = metrics.counter(ERRORS, "endpoint", name);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.hreed.anagram.server.web;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+import com.hreed.anagram.server.service.AnagramCorpusSnapshot;
+import com.hreed.anagram.server.service.GroupCursor;
+
+/**
+ * The request parsing and response building the controllers share, so the servlet and reactive modes (and the metrics endpoints)
+ * read params and report errors the same way. Each controller only deals with how its responses are sent.
+ */
+final class Endpoints {
+
+	private static final Logger log = Logger.getLogger(Endpoints.class);
+
+	private Endpoints(){
+	}
+
+	/**
+	 * @return The parsed value of an optional integer param, or null if it is missing or invalid (which leaves the default in place)
+	 */
+	static Integer parseIntParam(String name, String query){
+		if (query == null){
+			return null;
+		}
+		try {
+			return Integer.parseInt(query);
+		} catch (NumberFormatException e){
+			log.error("Failed to parse int from "+name+" param : "+query +". Using the default.");
+			return null;
+		}
+	}
+
+	/**
+	 * @return The words in a POST /words.json body
+	 */
+	@SuppressWarnings("unchecked")
+	static Set<String> words(Map<String, Object> payload){
+		return new HashSet<String>((Collection<String>) payload.get("words"));
+	}
+
+	/**
+	 * Logs a rejected request
+	 *
+	 * @param request What was rejected, for the log
+	 * @param message Why, which is sent back to the client
+	 * @return The body of the bad request response
+	 */
+	static Map<String, Object> rejected(String request, String message){
+		log.error("Rejected "+request+". "+message);
+		Map<String, Object> response = new HashMap<String, Object>();
+		response.put("success", false);
+		response.put("message", message);
+		return response;
+	}
+
+	static Map<String, Object> anagrams(Set<String> anagrams){
+		Map<String, Object> response = new HashMap<String, Object>();
+		response.put("anagrams", anagrams);
+		return response;
+	}
+
+	/**
+	 * @param lengths The lengths param. When true the number of words of each length is included, which is what a router adds up across the nodes of a sharded corpus.
+	 * @return The corpus statistics, along with the "version" of the corpus they were all read from
+	 */
+	static Map<String, Object> metadata(AnagramCorpusSnapshot snapshot, String lengths){
+		Map<String, Object> response = new HashMap<String, Object>(snapshot.getCorpusMetadata());
+		if (Boolean.parseBoolean(lengths)){
+			response.put("length_counts", snapshot.getWordLengthCounts());
+		}
+		response.put("version", snapshot.getVersion());
+		return response;
+	}
+
+	/**
+	 * The params of a /most.json or /groups.json listing, or the reason they were rejected
+	 */
+	static final class GroupListing {
+
+		//Null for /most.json, which lists every size
+		private final Integer size;
+		private final GroupCursor after;
+		private final Integer limit;
+		private final String error;
+
+		private GroupListing(Integer size, GroupCursor after, Integer limit, String error){
+			this.size = size;
+			this.after = after;
+			this.limit = limit;
+			this.error = error;
+		}
+
+		static GroupListing largest(String cursorQuery, String limitQuery){
+			return parse(null, cursorQuery, limitQuery);
+		}
+
+		static GroupListing ofAtLeast(String sizeQuery, String cursorQuery, String limitQuery){
+			Integer size;
+			try {
+				size = Integer.parseInt(sizeQuery);
+			} catch (NumberFormatException e){
+				log.error("Failed to parse int from size param : "+sizeQuery +". Returning bad request.");
+				return new GroupListing(null, null, null, "Invalid value for size param");
+			}
+			return parse(size, cursorQuery, limitQuery);
+		}
+
+		private static GroupListing parse(Integer size, String cursorQuery, String limitQuery){
+			GroupCursor after;
+			try {
+				after = GroupCursor.parse(cursorQuery);
+			} catch (IllegalArgumentException e){
+				log.error(e.getMessage()+". Returning bad request.");
+				return new GroupListing(null, null, null, "Invalid value for cursor param");
+			}
+			return new GroupListing(size, after, parseIntParam("limit", limitQuery), null);
+		}
+
+		/**
+		 * @return False if the response is a bad request
+		 */
+		boolean isValid(){
+			return error == null;
+		}
+
+		/**
+		 * @return The page of the listing, read from one snapshot of the corpus, or why the request was rejected
+		 */
+		StreamingResponseBody respond(AnagramCorpusService anagramCorpusService){
+			if (error != null){
+				return AnagramGroupsResponse.failure(error);
+			}
+			AnagramCorpusSnapshot snapshot = anagramCorpusService.getSnapshot();
+			return size == null ? AnagramGroupsResponse.largest(snapshot, after, limit) : AnagramGroupsResponse.ofAtLeast(snapshot, size, after, limit);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.hreed.anagram.server.web;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.hreed.anagram.server.metrics.MetricsRegistry;
+import com.hreed.anagram.server.metrics.QueryTracker;
+
+@RestController
+public class MetricsController {
+
+	@Autowired
+	private MetricsRegistry metrics;
+	@Autowired
+	private QueryTracker queryTracker;
+	
+	@RequestMapping(value = "/metrics.json",method = RequestMethod.GET)
+	public Map<String, Object> getMetrics(){
+		return metrics.toMap();
+	}
+	
+	//The same metrics in the Prometheus text format, for scrapers
+	@RequestMapping(value = "/metrics",method = RequestMethod.GET,produces = "text/plain; version=0.0.4; charset=utf-8")
+	public String getMetricsText(){
+		return metrics.toText();
+	}
+	
+	/**
+	 * Lists the words most recently looked up through GET /anagrams/:word.json, newest first
+	 */
+	@RequestMapping(value = "/recent.json",method = RequestMethod.GET)
+	public Map<String, Object> getRecentQueries(@RequestParam(value="limit",required=false) String limitQuery){
+		Map<String, Object> response = new HashMap<String, Object>();
+		response.put("recent", queryTracker.getRecentQueries(Endpoints.parseIntParam("limit", limitQuery)));
+		return response;
+	}
+	
+	/**
+	 * Lists the words and anagram keys looked up the most lately, with their counts
+	 */
+	@RequestMapping(value = "/popular.json",method = RequestMethod.GET)
+	public Map<String, Object> getPopularQueries(@RequestParam(value="limit",required=false) String limitQuery){
+		return queryTracker.getPopularQueries(Endpoints.parseIntParam("limit", limitQuery));
+	}
+}
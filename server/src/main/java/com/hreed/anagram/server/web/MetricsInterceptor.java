@@ -0,0 +1,42 @@
+package com.hreed.anagram.server.web;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import com.hreed.anagram.server.metrics.MetricsRegistry;
+
+/**
+ * Times every request to a controller endpoint, and counts the requests and the errors (4xx and 5xx responses) per endpoint.
+ * Endpoints are named after the controller method that handles them, so new endpoints are picked up without any extra wiring.
+ */
+public class MetricsInterceptor implements HandlerInterceptor {
+
+	private static final String START_ATTRIBUTE = MetricsInterceptor.class.getName() + ".start";
+
+	private final EndpointMetrics endpoints;
+
+	public MetricsInterceptor(MetricsRegistry metrics){
+		this.endpoints = new EndpointMetrics(metrics);
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler){
+		//Streamed responses come back through here a second time once they finish, and should be timed from the first
+		if (request.getAttribute(START_ATTRIBUTE) == null){
+			request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception exception){
+		Object start = request.getAttribute(START_ATTRIBUTE);
+		if (start == null || !(handler instanceof HandlerMethod)){
+			return;
+		}
+		endpoints.record(((HandlerMethod) handler).getMethod().getName(), (Long) start, exception != null || response.getStatus() >= 400);
+	}
+}
@@ -0,0 +1,41 @@
+package com.hreed.anagram.server.web;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import com.hreed.anagram.server.metrics.MetricsRegistry;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * The reactive counterpart of the {@link MetricsInterceptor}: times every request to a controller endpoint from when it comes in
+ * until its response has been written, and counts the requests and the errors per endpoint under the same metric names.
+ */
+public class MetricsWebFilter implements WebFilter {
+
+	private final EndpointMetrics endpoints;
+
+	public MetricsWebFilter(MetricsRegistry metrics){
+		this.endpoints = new EndpointMetrics(metrics);
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain){
+		final long start = System.nanoTime();
+		return chain.filter(exchange).doFinally(signal -> {
+			//The handler is only known once the request has been mapped, so requests that never reached a controller aren't counted
+			Object handler = exchange.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+			if (!(handler instanceof HandlerMethod)){
+				return;
+			}
+			HttpStatus status = exchange.getResponse().getStatusCode();
+			boolean error = signal == SignalType.ON_ERROR || (status != null && status.value() >= 400);
+			endpoints.record(((HandlerMethod) handler).getMethod().getName(), start, error);
+		});
+	}
+}
@@ -0,0 +1,270 @@
+package com.hreed.anagram.server.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.hreed.anagram.server.metrics.QueryTracker;
+import com.hreed.anagram.server.service.AnagramCorpusService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The same endpoints as the {@link AnagramController}, served by WebFlux on a handful of Netty event loop threads instead of
+ * a Tomcat thread per request. It takes over from the AnagramController when the server is started with
+ * spring.main.web-application-type=reactive, so open connections no longer each cost a thread.
+ *
+ * Lookups only touch the corpus in memory, so they run right on the event loop. Changes to the corpus can block
+ * (on the write-ahead log's fsync, or on reading the dictionary file), so they are handed off to a small pool of writer threads.
+ * Word list uploads block on their request bodies as well, so those are read on threads of their own (see {@link #upload}).
+ * The listings from /most.json and /groups.json and the batch lookups from POST /anagrams.json can run to megabytes,
+ * so they're written on response threads and streamed out as they go (see {@link StreamedResponse}), like the AnagramController does.
+ */
+@RestController
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveAnagramController {
+
+	private final AnagramCorpusService anagramCorpusService;
+	private final QueryTracker queryTracker;
+	private final Scheduler writes;
+	//Reads word list upload bodies, each of which holds a thread until the client has sent the whole list
+	private final Scheduler uploads;
+	//Write the streamed responses, each of which holds a thread until the client has read the whole response
+	private final Scheduler responses;
+
+	@Autowired
+	public ReactiveAnagramController(AnagramCorpusService anagramCorpusService, QueryTracker queryTracker,
+			@Value("${anagram.reactive.write-threads:16}") int writeThreads){
+		this.anagramCorpusService = anagramCorpusService;
+		this.queryTracker = queryTracker;
+		this.writes = Schedulers.newParallel("anagram-writes", writeThreads, true);
+		this.uploads = Schedulers.newElastic("anagram-uploads", 60, true);
+		this.responses = Schedulers.newElastic("anagram-responses", 60, true);
+	}
+
+	@PreDestroy
+	public void close(){
+		writes.dispose();
+		uploads.dispose();
+		responses.dispose();
+	}
+
+	@RequestMapping(value = "/words.json",method = RequestMethod.POST)
+	@ResponseStatus(value = HttpStatus.CREATED)
+	public Mono<Void> addWords(@RequestBody Mono<Map<String, Object>> payload){
+		return payload.publishOn(writes).doOnNext(body -> anagramCorpusService.addWords(Endpoints.words(body))).then();
+	}
+
+	/**
+	 * Adds a word list streamed in the request body, like the AnagramController. The list is read on an upload thread,
+	 * which only asks Netty for the next few buffers of the body once it has worked through the last ones.
+	 */
+	@RequestMapping(value = "/words/bulk.json",method = RequestMethod.POST,consumes = {WordListUpload.TEXT, WordListUpload.GZIP, WordListUpload.X_GZIP, WordListUpload.BINARY})
+	public Mono<ResponseEntity<Map<String, Object>>> uploadWords(ServerHttpRequest request,
+			@RequestParam(value="mode",required=false) String mode){
+		try {
+			return upload(mode, request.getBody()).map(result -> ResponseEntity.status(HttpStatus.CREATED).body(result));
+		} catch (IllegalArgumentException e){
+			return Mono.just(ResponseEntity.badRequest().body(Endpoints.rejected("word list upload", e.getMessage())));
+		}
+	}
+
+	/**
+	 * Loads a word list as it arrives. The body is read on an upload thread, which blocks until Netty has each buffer, while the words are added
+	 * on a writer thread. Writer threads never wait on a body, so however many uploads are running at once, each one's words can always be added
+	 * and its body read to the end. Reading on the writer threads as well, uploads could take up every one of them while their words waited behind them.
+	 *
+	 * @throws IllegalArgumentException If the mode isn't one WordListUpload knows
+	 */
+	Mono<Map<String, Object>> upload(String mode, Flux<DataBuffer> body){
+		WordListUpload upload = new WordListUpload(anagramCorpusService, mode, writes::schedule);
+		return Mono.fromCallable(() -> upload.load(blockingBody(body))).subscribeOn(uploads);
+	}
+
+	//The request body as a stream that blocks for each buffer, with only a few of them requested from Netty ahead of time
+	private static InputStream blockingBody(Flux<DataBuffer> body){
+		final Iterator<DataBuffer> buffers = body.toIterable(WordListUpload.QUEUED_BATCHES).iterator();
+		return new SequenceInputStream(new Enumeration<InputStream>() {
+			public boolean hasMoreElements(){
+				return buffers.hasNext();
+			}
+
+			public InputStream nextElement(){
+				//Each buffer goes back to Netty's pool once it's been read
+				return buffers.next().asInputStream(true);
+			}
+		});
+	}
+
+	@RequestMapping(value = "/anagrams/{word}.json",method = RequestMethod.GET)
+	public ResponseEntity<?> getAnagrams(@PathVariable("word") String word,
+			@RequestParam(value="limit",required=false) String limitQuery,
+			@RequestParam(value="caseinsensitive",required=false) String caseInsensitive,
+			ServerHttpResponse httpResponse){
+		queryTracker.record(word);
+		Integer value = Endpoints.parseIntParam("limit", limitQuery);
+		boolean includeCapitals = Boolean.parseBoolean(caseInsensitive);
+		//A '?' in the word is a blank tile that can be any letter (it has to be sent URL encoded as %3F)
+		if (word.indexOf('?') >= 0){
+			try {
+				return ResponseEntity.ok(Endpoints.anagrams(anagramCorpusService.getWildcardAnagrams(word, value, includeCapitals)));
+			} catch (IllegalArgumentException e){
+				return ResponseEntity.badRequest().body(Endpoints.rejected("wildcard query : "+word, e.getMessage()));
+			}
+		}
+		//Plain lookups are written straight into the response buffer, usually from JSON the service already has cached
+		return render(HttpStatus.OK, MediaType.APPLICATION_JSON_UTF8,
+				output -> anagramCorpusService.writeAnagramsJson(word, value, includeCapitals, output), httpResponse.bufferFactory());
+	}
+
+	/**
+	 * Looks up the anagrams of many words in one request. The words are read from the body as JSON or one per line,
+	 * and the results are sent back as NDJSON. Like the AnagramController, each word is looked up and written out as it's read,
+	 * with the body read and the response written on a response thread, so neither ever blocks the event loop.
+	 */
+	@RequestMapping(value = "/anagrams.json",method = RequestMethod.POST)
+	public ResponseEntity<Flux<DataBuffer>> getAnagramsBatch(ServerHttpRequest request,
+			@RequestParam(value="limit",required=false) String limitQuery,
+			@RequestParam(value="caseinsensitive",required=false) String caseInsensitive,
+			ServerHttpResponse httpResponse){
+		MediaType contentType = request.getHeaders().getContentType();
+		Integer limit = Endpoints.parseIntParam("limit", limitQuery);
+		return ResponseEntity.ok().contentType(MediaType.parseMediaType(AnagramBatchResponse.CONTENT_TYPE))
+				.body(batch(request.getBody(), contentType == null ? null : contentType.toString(), limit,
+						Boolean.parseBoolean(caseInsensitive), httpResponse.bufferFactory()));
+	}
+
+	Flux<DataBuffer> batch(Flux<DataBuffer> body, String contentType, Integer limit, boolean caseInsensitive, DataBufferFactory buffers){
+		return StreamedResponse.of(output -> new AnagramBatchResponse(anagramCorpusService, blockingBody(body), contentType, limit, caseInsensitive).writeTo(output),
+				buffers, responses);
+	}
+
+	@RequestMapping(value = "/subanagrams/{letters}.json",method = RequestMethod.GET)
+	public Map<String, Object> getSubAnagrams(@PathVariable("letters") String letters,
+			@RequestParam(value="after",required=false) String after,
+			@RequestParam(value="limit",required=false) String limitQuery,
+			@RequestParam(value="caseinsensitive",required=false) String caseInsensitive) {
+		return anagramCorpusService.getSubAnagrams(letters, after, Endpoints.parseIntParam("limit", limitQuery), Boolean.parseBoolean(caseInsensitive));
+	}
+
+	@RequestMapping(value = "/phrases/{letters}.json",method = RequestMethod.GET)
+	public Map<String, Object> getAnagramPhrases(@PathVariable("letters") String letters,
+			@RequestParam(value="limit",required=false) String limitQuery,
+			@RequestParam(value="maxwords",required=false) String maxWordsQuery,
+			@RequestParam(value="caseinsensitive",required=false) String caseInsensitive) {
+		return anagramCorpusService.getAnagramPhrases(letters, Endpoints.parseIntParam("limit", limitQuery),
+				Endpoints.parseIntParam("maxwords", maxWordsQuery), Boolean.parseBoolean(caseInsensitive));
+	}
+
+	@RequestMapping(value = "/anagrams/{word}.json",method = RequestMethod.DELETE)
+	@ResponseStatus(value = HttpStatus.NO_CONTENT)
+	public Mono<Void> deleteAnagrams(@PathVariable("word") String word){
+		return write(() -> anagramCorpusService.deleteAnagrams(word));
+	}
+
+	@RequestMapping(value = "/words.json",method = RequestMethod.DELETE)
+	@ResponseStatus(value = HttpStatus.NO_CONTENT)
+	public Mono<Void> deleteAllWords() {
+		return write(() -> anagramCorpusService.deleteAllWords());
+	}
+
+	@RequestMapping(value = "/words/{word}.json",method = RequestMethod.DELETE)
+	@ResponseStatus(value = HttpStatus.NO_CONTENT)
+	public Mono<Void> deleteWord(@PathVariable("word") String word){
+		return write(() -> anagramCorpusService.deleteWord(word));
+	}
+
+	@RequestMapping(value = "/reload.json",method = RequestMethod.GET)
+	public Mono<Void> reloadDictionary(){
+		return write(() -> anagramCorpusService.populateCorpusFromDictionaryFile("/dictionary.txt"));
+	}
+
+	//Runs a change to the corpus on the writer threads, completing once it has been made
+	private Mono<Void> write(Runnable change){
+		return Mono.fromRunnable(change).subscribeOn(writes).then();
+	}
+
+	@RequestMapping(value = "/metadata.json",method = RequestMethod.GET)
+	public Map<String, Object> getDictionaryMetadata(@RequestParam(value="lengths",required=false) String lengths){
+		return Endpoints.metadata(anagramCorpusService.getSnapshot(), lengths);
+	}
+
+	@RequestMapping(value = "/memory.json",method = RequestMethod.GET)
+	public Map<String, Object> getMemoryFootprint(){
+		return anagramCorpusService.getMemoryFootprint();
+	}
+
+	/**
+	 * Lists the largest anagram sets. With a limit, the listing is split into pages,
+	 * and each page's "next_cursor" is passed back as the cursor param to fetch the next.
+	 */
+	@RequestMapping(value = "/most.json",method = RequestMethod.GET)
+	public ResponseEntity<Flux<DataBuffer>> getLargestAnagramSets(@RequestParam(value="limit",required=false) String limitQuery,
+			@RequestParam(value="cursor",required=false) String cursorQuery,
+			ServerHttpResponse response){
+		return listing(Endpoints.GroupListing.largest(cursorQuery, limitQuery), response.bufferFactory());
+	}
+
+	/**
+	 * Lists the anagram sets at least as large as the size param, smallest first, paged the same way as /most.json
+	 */
+	@RequestMapping(value = "groups.json",method = RequestMethod.GET)
+	public ResponseEntity<Flux<DataBuffer>> getAnagramGroupsBySize(@RequestParam("size") String size,
+			@RequestParam(value="limit",required=false) String limitQuery,
+			@RequestParam(value="cursor",required=false) String cursorQuery,
+			ServerHttpResponse response){
+		return listing(Endpoints.GroupListing.ofAtLeast(size, cursorQuery, limitQuery), response.bufferFactory());
+	}
+
+	ResponseEntity<Flux<DataBuffer>> listing(Endpoints.GroupListing listing, DataBufferFactory buffers){
+		return ResponseEntity.status(listing.isValid() ? HttpStatus.OK : HttpStatus.BAD_REQUEST).contentType(MediaType.APPLICATION_JSON_UTF8)
+				.body(StreamedResponse.of(listing.respond(anagramCorpusService), buffers, responses));
+	}
+
+	/**
+	 * Writes a small response body into a buffer on the event loop, to be sent as is
+	 */
+	private ResponseEntity<DataBuffer> render(HttpStatus status, MediaType contentType, StreamingResponseBody body, DataBufferFactory buffers){
+		DataBuffer buffer = buffers.allocateBuffer();
+		try {
+			body.writeTo(buffer.asOutputStream());
+		} catch (IOException e){
+			DataBufferUtils.release(buffer);
+			throw new UncheckedIOException(e);
+		} catch (RuntimeException e){
+			DataBufferUtils.release(buffer);
+			throw e;
+		}
+		return ResponseEntity.status(status).contentType(contentType).body(buffer);
+	}
+}
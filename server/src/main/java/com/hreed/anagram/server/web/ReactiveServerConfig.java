@@ -0,0 +1,35 @@
+package com.hreed.anagram.server.web;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import reactor.ipc.netty.resources.LoopResources;
+
+/**
+ * Runs the reactive mode on Netty. Spring Boot would otherwise run it on Tomcat, which is also on the classpath for the servlet mode.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveServerConfig {
+
+	/**
+	 * The event loops Netty serves requests on, plus one thread of its own for accepting connections. By default Netty
+	 * accepts on the same threads that serve requests, and under a burst of new connections the OS's queue of connections
+	 * waiting to be accepted overflows while they are busy. The connections that don't fit are reset, or left waiting
+	 * on TCP retries for up to half a minute.
+	 */
+	@Bean(destroyMethod = "dispose")
+	public LoopResources anagramLoopResources(){
+		return LoopResources.create("anagram-http", 1, LoopResources.DEFAULT_IO_WORKER_COUNT, true);
+	}
+
+	@Bean
+	public NettyReactiveWebServerFactory nettyReactiveWebServerFactory(LoopResources anagramLoopResources){
+		NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory();
+		factory.addServerCustomizers(options -> options.loopResources(anagramLoopResources));
+		return factory;
+	}
+}
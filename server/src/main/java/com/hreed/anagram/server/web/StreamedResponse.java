@@ -0,0 +1,138 @@
+package com.hreed.anagram.server.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.log4j.Logger;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Sends a {@link StreamingResponseBody} to a WebFlux client as it's written, for the ReactiveAnagramController.
+ *
+ * The body is written on a thread of the given scheduler rather than the event loop. Each time the body flushes
+ * (the listings and batch lookups flush every 64 sets or words), or once {@link #CHUNK_SIZE} bytes have built up,
+ * what it has written so far is sent on as one buffer. The writing thread waits whenever Netty hasn't asked for another buffer,
+ * so a slow client holds the body back instead of the rest of the response piling up in memory.
+ * If the client goes away, the body's next write fails and it stops there.
+ */
+final class StreamedResponse extends OutputStream {
+
+	static final int CHUNK_SIZE = 64 * 1024;
+
+	private final Logger log = Logger.getLogger(this.getClass());
+	private final FluxSink<DataBuffer> sink;
+	private final DataBufferFactory buffers;
+	//Signalled whenever Netty asks for more buffers, or cancels
+	private final Object demand = new Object();
+	private DataBuffer chunk;
+
+	private StreamedResponse(FluxSink<DataBuffer> sink, DataBufferFactory buffers){
+		this.sink = sink;
+		this.buffers = buffers;
+		sink.onRequest(requested -> signal());
+		sink.onCancel(this::signal);
+	}
+
+	/**
+	 * @param body The response body
+	 * @param buffers Where the buffers sent are allocated from
+	 * @param writers The threads the body is written on. Each one is held until its client has read the whole response.
+	 * @return The buffers of the body, written as they're asked for
+	 */
+	static Flux<DataBuffer> of(StreamingResponseBody body, DataBufferFactory buffers, Scheduler writers){
+		//Written from a task of its own rather than through subscribeOn, which would queue Netty's requests behind the writing thread they're meant to wake
+		return Flux.create(sink -> writers.schedule(() -> new StreamedResponse(sink, buffers).write(body)));
+	}
+
+	private void write(StreamingResponseBody body){
+		try {
+			body.writeTo(this);
+			flush();
+			sink.complete();
+		} catch (IOException | RuntimeException e){
+			discard();
+			if (sink.isCancelled()){
+				log.debug("Client went away part way through the response");
+			} else {
+				sink.error(e);
+			}
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		chunk().write((byte) b);
+		if (chunk.readableByteCount() >= CHUNK_SIZE){
+			flush();
+		}
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0){
+			int part = Math.min(length, CHUNK_SIZE - chunk().readableByteCount());
+			chunk.write(bytes, offset, part);
+			offset += part;
+			length -= part;
+			if (chunk.readableByteCount() >= CHUNK_SIZE){
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Sends what's been written since the last flush, once Netty is ready for it
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (chunk == null){
+			return;
+		}
+		synchronized (demand){
+			while (sink.requestedFromDownstream() == 0 && !sink.isCancelled()){
+				try {
+					demand.wait();
+				} catch (InterruptedException e){
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting to send the response", e);
+				}
+			}
+		}
+		if (sink.isCancelled()){
+			throw new IOException("Response cancelled");
+		}
+		DataBuffer sent = chunk;
+		chunk = null;
+		sink.next(sent);
+	}
+
+	private DataBuffer chunk() throws IOException {
+		if (sink.isCancelled()){
+			throw new IOException("Response cancelled");
+		}
+		if (chunk == null){
+			chunk = buffers.allocateBuffer();
+		}
+		return chunk;
+	}
+
+	private void discard(){
+		if (chunk != null){
+			DataBufferUtils.release(chunk);
+			chunk = null;
+		}
+	}
+
+	private void signal(){
+		synchronized (demand){
+			demand.notifyAll();
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package com.hreed.anagram.server.web;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.Logger;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+
+/**
+ * Loads a word list into the corpus as it's read from the request, for lists too big to send to POST /words.json as one JSON array.
+ *
+ * The body is plain text with one word per line, and may be gzipped. It's read a buffer at a time, and each line is checked a byte at a time
+ * against a table of which bytes can go where in a word, so only the words that will be added ever become Strings. The valid words are
+ * gathered into batches, and the batches are handed to another thread that adds them to the corpus through a queue only {@link #QUEUED_BATCHES} long.
+ * When the corpus can't keep up the queue fills and reading stops, so the client is held back by TCP flow control
+ * instead of the rest of the list piling up in memory.
+ *
+ * Replacing the corpus deletes every word just before the first batch is added (or once the list is read, if it has no valid words),
+ * so a list that fails before any of it is read leaves the corpus alone. Lookups while it loads see the new list filling in.
+ */
+final class WordListUpload {
+
+	//The content types a word list can be sent as. Form content types are left out, since the servlet filters read those bodies as form fields.
+	static final String TEXT = "text/plain";
+	static final String GZIP = "application/gzip";
+	static final String X_GZIP = "application/x-gzip";
+	static final String BINARY = "application/octet-stream";
+	static final String APPEND = "append";
+	static final String REPLACE = "replace";
+	static final int BATCH_SIZE = 10000;
+	static final int QUEUED_BATCHES = 2;
+	//Longer lines are rejected rather than buffered, so a body with no line breaks can't take up any more memory than the buffer
+	static final int MAX_WORD_LENGTH = 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final byte OTHER = 0;
+	private static final byte LOWERCASE = 1;
+	private static final byte CAPITAL = 2;
+	//What each byte can be in a word. Bytes of multi-byte UTF-8 characters are all 0x80 or above, so they're never letters.
+	private static final byte[] LETTERS = new byte[256];
+	static {
+		for (char letter = 'a'; letter <= 'z'; letter++){
+			LETTERS[letter] = LOWERCASE;
+			LETTERS[Character.toUpperCase(letter)] = CAPITAL;
+		}
+	}
+	//Stands in for a batch to say there are no more
+	private static final Set<String> END = Collections.emptySet();
+
+	private final Logger log = Logger.getLogger(this.getClass());
+	private final AnagramCorpusService anagramCorpusService;
+	private final boolean replace;
+	private final Executor executor;
+	private final BlockingQueue<Set<String>> batches = new ArrayBlockingQueue<Set<String>>(QUEUED_BATCHES);
+	private final FutureTask<Void> adder = new FutureTask<Void>(this::addBatches, null);
+	//Whether the whole list was read, as opposed to reading having stopped part way through
+	private volatile boolean complete;
+	private long lines;
+	private long words;
+	private long nonRoman;
+	private long capitalization;
+	private long tooLong;
+	private long added;
+
+	/**
+	 * @param anagramCorpusService The service to add the words to
+	 * @param mode Either "append" to add the words to the corpus, or "replace" to replace the whole corpus with them
+	 * @param executor Runs the thread that adds the batches to the corpus
+	 * @throws IllegalArgumentException If the mode isn't one of those
+	 */
+	WordListUpload(AnagramCorpusService anagramCorpusService, String mode, Executor executor){
+		if (mode != null && !APPEND.equals(mode) && !REPLACE.equals(mode)){
+			throw new IllegalArgumentException("Unknown mode `"+mode+"`, expected `"+APPEND+"` or `"+REPLACE+"`");
+		}
+		this.anagramCorpusService = anagramCorpusService;
+		this.replace = REPLACE.equals(mode);
+		this.executor = executor;
+	}
+
+	/**
+	 * Reads the whole word list and adds it to the corpus, returning once every word has been added.
+	 *
+	 * @param body The word list, one word per line, either as plain text or gzipped (which is recognized from the data itself)
+	 * @return How many lines were read and words added, and how many lines were rejected for each reason
+	 * @throws IOException If the body couldn't be read, in which case the words before the failure may already have been added
+	 */
+	Map<String, Object> load(InputStream body) throws IOException {
+		long start = System.nanoTime();
+		executor.execute(adder);
+		try {
+			complete = read(decompressed(body));
+		} finally {
+			//Even when reading fails, the adder is told to stop, and finishes the batches it already has
+			hand(END);
+		}
+		try {
+			adder.get();
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for the words to be added", e);
+		} catch (ExecutionException e){
+			if (e.getCause() instanceof RuntimeException){
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		long elapsedNanos = Math.max(System.nanoTime() - start, 1);
+		log.info("Uploaded "+lines+" lines ("+(replace ? REPLACE : APPEND)+"), adding "+added+" words in "+elapsedNanos/1000000+"ms ("
+				+(long) (lines * 1e9 / elapsedNanos)+" lines/sec)");
+		return result(elapsedNanos);
+	}
+
+	private Map<String, Object> result(long elapsedNanos){
+		Map<String, Object> rejected = new LinkedHashMap<String, Object>();
+		//Valid words that weren't added were either already in the corpus or earlier in the list
+		rejected.put("duplicate", words - added);
+		rejected.put("non_roman", nonRoman);
+		rejected.put("capitalization", capitalization);
+		rejected.put("too_long", tooLong);
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("mode", replace ? REPLACE : APPEND);
+		result.put("lines", lines);
+		result.put("added", added);
+		result.put("rejected", rejected);
+		result.put("elapsed_ms", elapsedNanos / 1000000);
+		return result;
+	}
+
+	private static InputStream decompressed(InputStream body) throws IOException {
+		InputStream buffered = new BufferedInputStream(body, BUFFER_SIZE);
+		buffered.mark(2);
+		int first = buffered.read();
+		int second = buffered.read();
+		buffered.reset();
+		//Every gzip stream starts with the same two bytes, neither of which can start a line of text
+		if (first == 0x1f && second == 0x8b){
+			return new GZIPInputStream(buffered, BUFFER_SIZE);
+		}
+		return buffered;
+	}
+
+	/**
+	 * @return True if the whole list was read, or false if reading stopped because the adder had failed
+	 */
+	private boolean read(InputStream in) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		Set<String> batch = new HashSet<String>();
+		int filled = 0;
+		//Whether the rest of the current line is being skipped, because it's already too long to be kept
+		boolean skipping = false;
+		int read;
+		while ((read = in.read(buffer, filled, buffer.length - filled)) != -1){
+			filled += read;
+			int lineStart = 0;
+			for (int i = 0; i < filled; i++){
+				if (buffer[i] == '\n'){
+					if (skipping){
+						skipping = false;
+					} else {
+						batch = line(buffer, lineStart, i, batch);
+						if (batch == null){
+							return false;
+						}
+					}
+					lineStart = i + 1;
+				}
+			}
+			if (!skipping && filled - lineStart > MAX_WORD_LENGTH + 2){
+				//Longer than any word that could be kept, even allowing for the whitespace around it
+				lines++;
+				tooLong++;
+				skipping = true;
+			}
+			if (skipping){
+				filled = 0;
+			} else {
+				//The start of the last line is kept for the next read to finish
+				System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+				filled -= lineStart;
+			}
+		}
+		if (!skipping){
+			batch = line(buffer, 0, filled, batch);
+		}
+		return batch != null && (batch.isEmpty() || hand(batch));
+	}
+
+	/**
+	 * Checks a line and adds it to the batch if it's a valid word, handing the batch off once it's full.
+	 *
+	 * @return The batch to carry on filling, or null if the adder has failed and won't take any more
+	 */
+	private Set<String> line(byte[] buffer, int start, int end, Set<String> batch){
+		//Trimmed the same way as String.trim, which also takes care of the \r of Windows line endings
+		while (start < end && (buffer[start] & 0xff) <= ' '){
+			start++;
+		}
+		while (end > start && (buffer[end - 1] & 0xff) <= ' '){
+			end--;
+		}
+		if (start == end){
+			return batch;
+		}
+		lines++;
+		if (end - start > MAX_WORD_LENGTH){
+			tooLong++;
+			return batch;
+		}
+		boolean misplacedCapital = false;
+		for (int i = start; i < end; i++){
+			byte letter = LETTERS[buffer[i] & 0xff];
+			if (letter == OTHER){
+				nonRoman++;
+				return batch;
+			}
+			//Only the first letter of a word may be a capital
+			misplacedCapital |= letter == CAPITAL && i > start;
+		}
+		if (misplacedCapital){
+			capitalization++;
+			return batch;
+		}
+		words++;
+		//Every byte is a letter, so they map straight to chars
+		batch.add(new String(buffer, start, end - start, StandardCharsets.ISO_8859_1));
+		if (batch.size() < BATCH_SIZE){
+			return batch;
+		}
+		return hand(batch) ? new HashSet<String>() : null;
+	}
+
+	/**
+	 * Queues a batch for the adder, waiting for room if the queue is full. That wait is the backpressure on the client.
+	 *
+	 * @return True if the batch was queued, or false if the adder has already stopped, which it only does early if it failed
+	 */
+	private boolean hand(Set<String> batch){
+		try {
+			while (!batches.offer(batch, 100, TimeUnit.MILLISECONDS)){
+				if (adder.isDone()){
+					return false;
+				}
+			}
+			return true;
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted handing words to the corpus", e);
+		}
+	}
+
+	private void addBatches(){
+		boolean first = true;
+		try {
+			Set<String> batch;
+			while ((batch = batches.take()) != END){
+				if (first && replace){
+					anagramCorpusService.deleteAllWords();
+				}
+				first = false;
+				added += anagramCorpusService.addWords(batch);
+			}
+			if (first && replace && complete){
+				anagramCorpusService.deleteAllWords();
+			}
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted adding words to the corpus", e);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.hreed.anagram.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class HeavyHittersTest extends TestCase {
+
+	/**
+	 * Counts a long tail of rare words mixed in with a few common ones, and checks the common ones come out on top
+	 * in order, with counts never below the true counts and only a little above them.
+	 */
+	public void testFindsTheMostFrequentItems() {
+		HeavyHitters<String> hitters = new HeavyHitters<String>(5, 1024);
+		Random random = new Random(42);
+		int[] common = {5000, 4000, 3000, 2000, 1000};
+		List<String> stream = new ArrayList<String>();
+		for (int i = 0; i < common.length; i++) {
+			for (int n = 0; n < common[i]; n++) {
+				stream.add("common" + i);
+			}
+		}
+		for (int n = 0; n < 20000; n++) {
+			stream.add("rare" + random.nextInt(10000));
+		}
+		Collections.shuffle(stream, random);
+		for (String item : stream) {
+			hitters.add(item);
+		}
+		List<Entry<String, Long>> top = hitters.top(10);
+		assertEquals(5, top.size());
+		for (int i = 0; i < common.length; i++) {
+			assertEquals("common" + i, top.get(i).getKey());
+			assertTrue(top.get(i).getValue() >= common[i]);
+			assertTrue(top.get(i).getValue() <= common[i] + stream.size() / 100);
+		}
+		assertEquals(2, hitters.top(2).size());
+	}
+
+	public void testDecayHalvesCountsAndLetsNewItemsTakeOver() {
+		HeavyHitters<String> hitters = new HeavyHitters<String>(2, 256);
+		for (int n = 0; n < 100; n++) {
+			hitters.add("read");
+		}
+		for (int n = 0; n < 60; n++) {
+			hitters.add("dear");
+		}
+		hitters.decay(1);
+		assertEquals(50L, (long) hitters.top(1).get(0).getValue());
+		hitters.decay(2);
+		assertEquals(12L, (long) hitters.top(1).get(0).getValue());
+		for (int n = 0; n < 20; n++) {
+			hitters.add("stop");
+		}
+		assertEquals("stop", hitters.top(1).get(0).getKey());
+		assertEquals("read", hitters.top(2).get(1).getKey());
+		//Counts that decay all the way away take their items with them
+		hitters.decay(10);
+		assertTrue(hitters.top(5).isEmpty());
+	}
+
+	public void testEqualCountsAreAlphabetical() {
+		HeavyHitters<String> hitters = new HeavyHitters<String>(3, 256);
+		hitters.add("stop");
+		hitters.add("pots");
+		hitters.add("tops");
+		assertEquals("pots", hitters.top(3).get(0).getKey());
+		assertEquals("tops", hitters.top(3).get(2).getKey());
+	}
+
+	/**
+	 * Fills the candidates, then checks each newcomer takes the place of whichever candidate is smallest at the time,
+	 * as the counts of the candidates already there keep changing.
+	 */
+	public void testNewItemsReplaceTheSmallestCandidate() {
+		HeavyHitters<String> hitters = new HeavyHitters<String>(3, 1 << 16);
+		hitters.add("read", 5);
+		hitters.add("stop", 3);
+		hitters.add("dear", 4);
+		for (int n = 0; n < 5; n++) {
+			hitters.add("pots");
+		}
+		for (int n = 0; n < 5; n++) {
+			hitters.add("tops");
+		}
+		List<Entry<String, Long>> top = hitters.top(5);
+		assertEquals(3, top.size());
+		assertEquals("pots", top.get(0).getKey());
+		assertEquals("read", top.get(1).getKey());
+		assertEquals("tops", top.get(2).getKey());
+		assertEquals(5L, (long) top.get(2).getValue());
+	}
+
+	public void testAddingManyAtOnceCountsEachOne() {
+		HeavyHitters<String> hitters = new HeavyHitters<String>(2, 256);
+		assertEquals(4L, hitters.add("read", 4));
+		assertEquals(5L, hitters.add("read"));
+		hitters.add("stop", 8);
+		assertEquals("stop", hitters.top(1).get(0).getKey());
+	}
+}
@@ -0,0 +1,159 @@
+package com.hreed.anagram.server.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+import com.hreed.anagram.server.service.AnagramCorpusSnapshot;
+import com.hreed.anagram.server.service.AnagramGroupVisitor;
+import com.hreed.anagram.server.service.AnagramVisitor;
+import com.hreed.anagram.server.service.GroupCursor;
+
+import junit.framework.TestCase;
+
+public class InstrumentedAnagramCorpusServiceTest extends TestCase {
+
+	private final MetricsRegistry metrics = new MetricsRegistry();
+	private final AnagramCorpusService service = new InstrumentedAnagramCorpusService(new FixedAnagramCorpusService(), metrics);
+
+	@SuppressWarnings("unchecked")
+	public void testCallsAndErrorsAreRecordedPerOperation() {
+		service.getAnagrams("read", null);
+		service.getAnagrams("read", 1);
+		try {
+			service.getWildcardAnagrams("????", null, false);
+			fail("Expected the delegate's exception to be rethrown");
+		} catch (IllegalArgumentException e) {
+		}
+
+		Map<String, Object> latency = (Map<String, Object>) metrics.toMap().get(InstrumentedAnagramCorpusService.LATENCY);
+		assertEquals(2L, ((Map<String, Object>) latency.get("getAnagrams")).get("count"));
+		assertEquals(1L, ((Map<String, Object>) latency.get("getWildcardAnagrams")).get("count"));
+		assertEquals(0L, ((Map<String, Object>) latency.get("deleteWord")).get("count"));
+		Map<String, Object> errors = (Map<String, Object>) metrics.toMap().get(InstrumentedAnagramCorpusService.ERRORS);
+		assertEquals(1L, errors.get("getWildcardAnagrams"));
+		assertEquals(0L, errors.get("getAnagrams"));
+
+		String text = metrics.toText();
+		assertTrue(text.contains("# TYPE anagram_service_latency_seconds summary\n"));
+		assertTrue(text.contains("anagram_service_latency_seconds_count{operation=\"getAnagrams\"} 2\n"));
+		assertTrue(text.contains("anagram_service_latency_seconds{operation=\"getAnagrams\",quantile=\"0.99\"} "));
+		assertTrue(text.contains("anagram_service_errors_total{operation=\"getWildcardAnagrams\"} 1\n"));
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testSnapshotReadsAreRecordedUnderTheServiceOperations() {
+		AnagramCorpusSnapshot snapshot = service.getSnapshot();
+		assertEquals(7L, snapshot.getVersion());
+		snapshot.getCorpusMetadata();
+		snapshot.getLargestAnagramSets();
+		service.getLargestAnagramSets();
+
+		Map<String, Object> latency = (Map<String, Object>) metrics.toMap().get(InstrumentedAnagramCorpusService.LATENCY);
+		assertEquals(1L, ((Map<String, Object>) latency.get("getSnapshot")).get("count"));
+		assertEquals(1L, ((Map<String, Object>) latency.get("getCorpusMetadata")).get("count"));
+		assertEquals(2L, ((Map<String, Object>) latency.get("getLargestAnagramSets")).get("count"));
+	}
+
+	public void testGaugesAreReadWhenReported() {
+		final int[] words = {3};
+		metrics.gauge("anagram_corpus_words", () -> words[0]);
+		words[0] = 5;
+		assertEquals(5, metrics.toMap().get("anagram_corpus_words"));
+		assertTrue(metrics.toText().contains("# TYPE anagram_corpus_words gauge\nanagram_corpus_words 5\n"));
+	}
+
+	/**
+	 * Returns the same results for every call without doing any work, so only the instrumentation is being tested.
+	 */
+	private static final class FixedAnagramCorpusService implements AnagramCorpusService, AnagramCorpusSnapshot {
+		private static final Set<String> ANAGRAMS = Collections.singleton("dear");
+		private static final ArrayList<Set<String>> GROUPS = new ArrayList<Set<String>>();
+		private static final Map<String, Object> RESULT = Collections.emptyMap();
+
+		public int addWords(Set<String> newWords) {
+			return 0;
+		}
+
+		public Set<String> getAnagrams(String word, Integer limit) {
+			return ANAGRAMS;
+		}
+
+		public Set<String> getAnagramsCaseInsensitive(String word, Integer limit) {
+			return ANAGRAMS;
+		}
+
+		public int visitAnagrams(String word, Integer limit, boolean caseInsensitive, AnagramVisitor visitor) throws IOException {
+			visitor.visit("dear");
+			return 1;
+		}
+
+		public void writeAnagramsJson(String word, Integer limit, boolean caseInsensitive, OutputStream out) throws IOException {
+			out.write("{\"anagrams\":[\"dear\"]}".getBytes("UTF-8"));
+		}
+
+		public Set<String> getWildcardAnagrams(String query, Integer limit, boolean caseInsensitive) {
+			throw new IllegalArgumentException("Too many blanks");
+		}
+
+		public Map<String, Object> getSubAnagrams(String letters, String after, Integer limit, boolean caseInsensitive) {
+			return RESULT;
+		}
+
+		public Map<String, Object> getAnagramPhrases(String letters, Integer limit, Integer maxWords, boolean caseInsensitive) {
+			return RESULT;
+		}
+
+		public void deleteWord(String word) {
+		}
+
+		public void deleteAnagrams(String word) {
+		}
+
+		public void deleteAllWords() {
+		}
+
+		public void populateCorpusFromDictionaryFile(String fileName) {
+		}
+
+		public Map<String, Object> getCorpusMetadata() {
+			return RESULT;
+		}
+
+		public Map<String, Object> getMemoryFootprint() {
+			return RESULT;
+		}
+
+		public AnagramCorpusSnapshot getSnapshot() {
+			return this;
+		}
+
+		public long getVersion() {
+			return 7;
+		}
+
+		public long[] getWordLengthCounts() {
+			return new long[0];
+		}
+
+		public ArrayList<Set<String>> getLargestAnagramSets() {
+			return GROUPS;
+		}
+
+		public GroupCursor visitLargestAnagramSets(GroupCursor after, Integer limit, AnagramGroupVisitor visitor) {
+			return null;
+		}
+
+		public ArrayList<Set<String>> getAnagramGroupsBySize(int size) {
+			return GROUPS;
+		}
+
+		public GroupCursor visitAnagramGroupsBySize(int size, GroupCursor after, Integer limit, AnagramGroupVisitor visitor) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.hreed.anagram.server.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+	public void testBucketsCoverEveryValueWithinPrecision() {
+		for (long value = 0; value < 1L << 20; value += 1 + value / 97) {
+			long highest = LatencyHistogram.highestValueIn(LatencyHistogram.bucketOf(value));
+			assertTrue(value + " <= " + highest, value <= highest);
+			//A bucket is never more than 1/16th as wide as the values in it
+			assertTrue(value + " within " + highest, highest - value <= value / 16);
+		}
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueIn(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+	}
+
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000L, histogram.getMaxNanos());
+		assertEquals(500000, histogram.getValueAtQuantile(0.5), 500000 / 16);
+		assertEquals(990000, histogram.getValueAtQuantile(0.99), 990000 / 16);
+		assertEquals(1000000L, histogram.getValueAtQuantile(1.0));
+		assertEquals(500.5, (Double) histogram.toMap().get("mean_us"), 0.1);
+		assertEquals(0L, new LatencyHistogram().getValueAtQuantile(0.99));
+	}
+
+	public void testConcurrentRecordingLosesNothing() throws InterruptedException {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 100000; i++) {
+						histogram.record(i % 5000);
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(400000, histogram.getCount());
+		assertEquals(400000L, histogram.toMap().get("count"));
+		assertEquals(4999L, histogram.getMaxNanos());
+	}
+}
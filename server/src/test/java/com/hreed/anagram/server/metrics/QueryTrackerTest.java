@@ -0,0 +1,99 @@
+package com.hreed.anagram.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+public class QueryTrackerTest extends TestCase {
+
+	public void testRecentQueries() {
+		QueryTracker tracker = new QueryTracker(3, 10, TimeUnit.HOURS.toNanos(1), Runnable::run);
+		for (String word : Arrays.asList("read", "dear", "stop", "pots")) {
+			tracker.record(word);
+		}
+		assertEquals(Arrays.asList("pots", "stop", "dear"), tracker.getRecentQueries(null));
+		assertEquals(Arrays.asList("pots", "stop"), tracker.getRecentQueries(2));
+		assertEquals(3, tracker.getRecentQueries(50).size());
+	}
+
+	/**
+	 * Words are counted as they were looked up, and their keys are counted case-folded, so every capitalization of an anagram counts towards the same key.
+	 */
+	public void testPopularWordsAndKeys() {
+		QueryTracker tracker = new QueryTracker(100, 10, TimeUnit.HOURS.toNanos(1), Runnable::run);
+		for (String word : Arrays.asList("read", "read", "read", "Dear", "dare", "stop", "stop", "r&ad", "re?d")) {
+			tracker.record(word);
+		}
+		Map<String, Object> popular = tracker.getPopularQueries(2);
+		List<?> words = (List<?>) popular.get("words");
+		assertEquals(2, words.size());
+		assertEquals("read", ((Map<?, ?>) words.get(0)).get("word"));
+		assertEquals(3L, ((Map<?, ?>) words.get(0)).get("count"));
+		assertEquals("stop", ((Map<?, ?>) words.get(1)).get("word"));
+		List<?> keys = (List<?>) popular.get("keys");
+		assertEquals("ader", ((Map<?, ?>) keys.get(0)).get("key"));
+		assertEquals(5L, ((Map<?, ?>) keys.get(0)).get("count"));
+		assertEquals("opst", ((Map<?, ?>) keys.get(1)).get("key"));
+		assertEquals(9L, popular.get("recorded"));
+		assertEquals(0L, popular.get("dropped"));
+		//Words that can't have a key are still counted as words
+		assertEquals(6, ((List<?>) tracker.getPopularQueries(null).get("words")).size());
+		assertEquals(2, ((List<?>) tracker.getPopularQueries(null).get("keys")).size());
+	}
+
+	/**
+	 * Lookups that lap the drain halve the share of lookups sampled, and the sampled ones are counted for the ones skipped.
+	 */
+	public void testSamplesFewerLookupsOnceTheyLapTheDrain() {
+		final List<Runnable> drains = new ArrayList<Runnable>();
+		QueryTracker tracker = new QueryTracker(100, 10, TimeUnit.HOURS.toNanos(1), drains::add);
+		for (int i = 0; i < 1000; i++) {
+			tracker.record("read");
+		}
+		assertEquals(1, drains.size());
+		drains.get(0).run();
+		Map<String, Object> popular = tracker.getPopularQueries(null);
+		assertEquals(1000L, popular.get("recorded"));
+		assertEquals(744L, popular.get("dropped"));
+		assertEquals(2, popular.get("sample_rate"));
+
+		for (int i = 0; i < 100; i++) {
+			tracker.record("stop");
+		}
+		popular = tracker.getPopularQueries(null);
+		assertEquals(1100L, popular.get("recorded"));
+		List<?> words = (List<?>) popular.get("words");
+		assertEquals("read", ((Map<?, ?>) words.get(0)).get("word"));
+		assertEquals(256L, ((Map<?, ?>) words.get(0)).get("count"));
+		assertEquals("stop", ((Map<?, ?>) words.get(1)).get("word"));
+		assertEquals(100L, ((Map<?, ?>) words.get(1)).get("count"));
+		assertEquals("stop", tracker.getRecentQueries(1).get(0));
+	}
+
+	public void testCountsDecayOverTime() {
+		AtomicLong now = new AtomicLong();
+		QueryTracker tracker = new QueryTracker(100, 10, TimeUnit.SECONDS.toNanos(1), Runnable::run, now::get);
+		for (int i = 0; i < 64; i++) {
+			tracker.record("read");
+		}
+		//Lookups still waiting to be counted when a half-life goes by are halved with it, and the ones after it aren't
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+		for (int i = 0; i < 64; i++) {
+			tracker.record("read");
+		}
+		assertEquals(96L, count(tracker));
+		now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+		assertEquals(24L, count(tracker));
+	}
+
+	//The count of the most looked up word
+	private static Object count(QueryTracker tracker) {
+		List<?> words = (List<?>) tracker.getPopularQueries(null).get("words");
+		return ((Map<?, ?>) words.get(0)).get("count");
+	}
+}
@@ -0,0 +1,96 @@
+package com.hreed.anagram.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+public class RecentQueriesTest extends TestCase {
+
+	public void testLatestAreNewestFirst() {
+		RecentQueries recent = new RecentQueries(4, 2);
+		assertTrue(recent.latest(10).isEmpty());
+		for (String word : Arrays.asList("read", "dear", "stop", "pots", "tops", "read")) {
+			recent.record(word);
+		}
+		assertEquals(Arrays.asList("read", "tops", "pots"), recent.latest(3));
+		//Only the capacity is kept, older words have been overwritten
+		assertEquals(Arrays.asList("read", "tops", "pots", "stop"), recent.latest(10));
+		assertTrue(recent.latest(-1).isEmpty());
+		assertEquals(6, recent.recorded());
+	}
+
+	public void testDrainHandsOverEachWordOnce() {
+		RecentQueries recent = new RecentQueries(8, 1);
+		final List<String> drained = new ArrayList<String>();
+		recent.record("read");
+		recent.record("dear");
+		recent.drain((word, nanos, weight) -> drained.add(word));
+		assertEquals(Arrays.asList("read", "dear"), drained);
+		recent.drain((word, nanos, weight) -> drained.add(word));
+		assertEquals(2, drained.size());
+
+		//Twelve more words lap the ring of eight, so the first four of them are gone by the time it's drained
+		for (int i = 0; i < 12; i++) {
+			recent.record("word" + i);
+		}
+		drained.clear();
+		recent.drain((word, nanos, weight) -> drained.add(word));
+		assertEquals(Arrays.asList("word4", "word5", "word6", "word7", "word8", "word9", "word10", "word11"), drained);
+		assertEquals(4, recent.dropped());
+	}
+
+	public void testSamplingOnlyWritesEveryNthSearch() {
+		RecentQueries recent = new RecentQueries(8, 1);
+		final List<Integer> weights = new ArrayList<Integer>();
+		for (int i = 0; i < 8; i++) {
+			long sequence = recent.record("word" + i, 3);
+			assertEquals(i % 4 == 0 ? i / 4 : -1, sequence);
+		}
+		assertEquals(Arrays.asList("word4", "word0"), recent.latest(10));
+		recent.drain((word, nanos, weight) -> weights.add(weight));
+		assertEquals(Arrays.asList(4, 4), weights);
+		assertEquals(8, recent.recorded());
+	}
+
+	/**
+	 * Has many threads record at once while another keeps draining, then checks that every word recorded was either drained or counted as dropped.
+	 */
+	public void testConcurrentRecordingIsAllAccountedFor() throws InterruptedException {
+		final RecentQueries recent = new RecentQueries(64, 4);
+		final AtomicBoolean recording = new AtomicBoolean(true);
+		final AtomicLong drained = new AtomicLong();
+		Thread drainer = new Thread(new Runnable() {
+			public void run() {
+				while (recording.get()) {
+					recent.drain((word, nanos, weight) -> drained.incrementAndGet());
+				}
+			}
+		});
+		drainer.start();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 100000; i++) {
+						recent.record("word");
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		recording.set(false);
+		drainer.join();
+		recent.drain((word, nanos, weight) -> drained.incrementAndGet());
+		assertEquals(800000, recent.recorded());
+		assertEquals(800000, drained.get() + recent.dropped());
+	}
+}
@@ -0,0 +1,26 @@
+package com.hreed.anagram.server.service;
+
+import junit.framework.TestCase;
+
+public class GroupCursorTest extends TestCase {
+
+	public void testRoundTrip() {
+		GroupCursor cursor = new GroupCursor(5, "Alerts");
+		assertEquals("5-Alerts", cursor.toString());
+		assertEquals(cursor, GroupCursor.parse(cursor.toString()));
+		assertNull(GroupCursor.parse(null));
+		assertTrue(GroupCursor.parse("5-").isStart());
+		assertEquals(GroupCursor.start(5), GroupCursor.parse(GroupCursor.start(5).toString()));
+		assertFalse(cursor.isStart());
+	}
+
+	public void testMalformedCursorsAreRejected() {
+		for (String cursor : new String[] {"", "5", "-alerts", "5-ALERTS", "5-AlErts", "0-alerts", "5-al3rts", "5-alerts-x", "12345678901-alerts"}) {
+			try {
+				GroupCursor.parse(cursor);
+				fail("Expected cursor to be rejected : " + cursor);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+	}
+}
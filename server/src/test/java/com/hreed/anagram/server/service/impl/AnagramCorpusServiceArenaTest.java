@@ -0,0 +1,268 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+import com.hreed.anagram.server.service.AnagramCorpusSnapshot;
+
+import junit.framework.TestCase;
+
+public class AnagramCorpusServiceArenaTest extends TestCase {
+
+	private static AnagramCorpusServiceArena arenaDictionary;
+	private static AnagramCorpusServiceInMemory heapDictionary;
+
+	@Override
+	protected void setUp() throws Exception {
+		if (arenaDictionary == null) {
+			arenaDictionary = new AnagramCorpusServiceArena();
+			heapDictionary = new AnagramCorpusServiceInMemory();
+		}
+	}
+
+	/**
+	 * Every lookup, listing and search on the whole dictionary has to come back exactly as the heap engine returns it.
+	 */
+	public void testDictionaryMatchesHeapEngine() throws IOException {
+		assertEquals(heapDictionary.getCorpusMetadata(), arenaDictionary.getCorpusMetadata());
+		List<String> words = new ArrayList<String>();
+		for (Set<String> group : heapDictionary.corpusGroups().values()) {
+			words.addAll(group);
+		}
+		for (int i = 0; i < words.size(); i += 37) {
+			String word = words.get(i);
+			assertEquals(new ArrayList<String>(heapDictionary.getAnagrams(word, null)), new ArrayList<String>(arenaDictionary.getAnagrams(word, null)));
+			assertEquals(new ArrayList<String>(heapDictionary.getAnagramsCaseInsensitive(word, 2)), new ArrayList<String>(arenaDictionary.getAnagramsCaseInsensitive(word, 2)));
+			assertEquals(ServiceReads.json(heapDictionary, word, null, false), ServiceReads.json(arenaDictionary, word, null, false));
+			assertEquals(ServiceReads.json(heapDictionary, word.toUpperCase(), 3, true), ServiceReads.json(arenaDictionary, word.toUpperCase(), 3, true));
+		}
+		assertEquals(ServiceReads.json(heapDictionary, "r&ad", null, false), ServiceReads.json(arenaDictionary, "r&ad", null, false));
+		assertEquals(heapDictionary.getLargestAnagramSets(), arenaDictionary.getLargestAnagramSets());
+		assertEquals(heapDictionary.getAnagramGroupsBySize(5), arenaDictionary.getAnagramGroupsBySize(5));
+		assertEquals(ServiceReads.pages(heapDictionary, 3, 100), ServiceReads.pages(arenaDictionary, 3, 100));
+		assertEquals(heapDictionary.getWildcardAnagrams("re?d", null, true), arenaDictionary.getWildcardAnagrams("re?d", null, true));
+		assertEquals(heapDictionary.getSubAnagrams("stare", null, null, false), arenaDictionary.getSubAnagrams("stare", null, null, false));
+	}
+
+	public void testFootprintIsReportedPerStructure() {
+		Map<String, Object> arena = arenaDictionary.getMemoryFootprint();
+		Map<String, Object> heap = heapDictionary.getMemoryFootprint();
+		assertEquals("arena", arena.get("storage"));
+		assertEquals("heap", heap.get("storage"));
+		assertEquals(heap.get("raw_word_bytes"), arena.get("raw_word_bytes"));
+		assertTrue(((Map<?, ?>) arena.get("structures")).containsKey("word_bytes"));
+		assertTrue(((Map<?, ?>) heap.get("structures")).containsKey("anagram_sets"));
+		long arenaTotal = (Long) arena.get("total_bytes");
+		long heapTotal = (Long) heap.get("total_bytes");
+		assertTrue(arenaTotal * 3 < heapTotal);
+	}
+
+	/**
+	 * Applies the same changes to both engines, enough of them to repack the arena, and checks they still agree after every step.
+	 */
+	public void testChangesMatchHeapEngineThroughCompaction() throws IOException {
+		AnagramCorpusServiceArena arena = new AnagramCorpusServiceArena();
+		AnagramCorpusServiceInMemory heap = new AnagramCorpusServiceInMemory();
+		arena.deleteAllWords();
+		heap.deleteAllWords();
+		for (AnagramCorpusService service : Arrays.asList(arena, heap)) {
+			service.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare", "Read", "Dear", "stop", "pots", "tops")));
+		}
+		arena.restoreCorpus(heap.corpusGroups());
+		assertSameCorpus(heap, arena);
+
+		for (AnagramCorpusService service : Arrays.asList(arena, heap)) {
+			service.addWords(new HashSet<String>(Arrays.asList("ared", "spot", "Tops", "cat")));
+			service.deleteWord("Dear");
+			service.deleteWord("pots");
+			service.deleteAnagrams("dear");
+		}
+		assertSameCorpus(heap, arena);
+		assertEquals("{\"anagrams\":[\"Read\"]}", ServiceReads.json(arena, "dear", null, true));
+
+		//Enough new anagram sets to go past the overlay's limit, with every one of them a different set
+		for (int i = 0; i < ArenaCorpus.MIN_COMPACTION_SETS + 100; i++) {
+			Set<String> batch = new HashSet<String>(Arrays.asList(letters(i), new StringBuilder(letters(i)).reverse().toString()));
+			arena.addWords(batch);
+			heap.addWords(batch);
+		}
+		assertEquals(1, arena.compactionCount());
+		assertSameCorpus(heap, arena);
+		for (AnagramCorpusService service : Arrays.asList(arena, heap)) {
+			service.deleteWord(letters(7));
+			service.addWords(new HashSet<String>(Arrays.asList("act")));
+		}
+		assertSameCorpus(heap, arena);
+
+		arena.deleteAllWords();
+		assertEquals(0, arena.getCorpusMetadata().get("word_count"));
+		assertTrue(arena.getLargestAnagramSets().isEmpty());
+	}
+
+	/**
+	 * A snapshot keeps listing the sets as they were when it was taken, through the arena being repacked and the dictionary being replaced,
+	 * and every later snapshot has a higher version.
+	 */
+	public void testSnapshotsOutliveCompactionAndReload() throws IOException {
+		AnagramCorpusServiceArena arena = new AnagramCorpusServiceArena();
+		arena.deleteAllWords();
+		arena.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare", "stop", "pots")));
+		AnagramCorpusSnapshot first = arena.getSnapshot();
+		List<Set<String>> firstSets = new ArrayList<Set<String>>(first.getAnagramGroupsBySize(1));
+
+		for (int i = 0; i < ArenaCorpus.MIN_COMPACTION_SETS + 100; i++) {
+			arena.addWords(new HashSet<String>(Arrays.asList(letters(i))));
+		}
+		arena.deleteWord("dear");
+		assertEquals(1, arena.compactionCount());
+		AnagramCorpusSnapshot second = arena.getSnapshot();
+		assertTrue(second.getVersion() > first.getVersion());
+
+		arena.populateCorpusFromDictionaryFile("/dictionary.txt");
+		AnagramCorpusSnapshot third = arena.getSnapshot();
+		assertTrue(third.getVersion() > second.getVersion());
+
+		assertEquals(firstSets, first.getAnagramGroupsBySize(1));
+		assertEquals(5, first.getCorpusMetadata().get("word_count"));
+		assertEquals(Arrays.asList(Arrays.asList("dare", "dear", "read")), lists(first.getLargestAnagramSets()));
+		assertEquals(ArenaCorpus.MIN_COMPACTION_SETS + 104, second.getCorpusMetadata().get("word_count"));
+		assertEquals(ArenaCorpus.MIN_COMPACTION_SETS + 102, second.getAnagramGroupsBySize(1).size());
+		assertEquals(arenaDictionary.getCorpusMetadata(), third.getCorpusMetadata());
+	}
+
+	private static List<List<String>> lists(List<Set<String>> groups) {
+		List<List<String>> lists = new ArrayList<List<String>>();
+		for (Set<String> group : groups) {
+			lists.add(new ArrayList<String>(group));
+		}
+		return lists;
+	}
+
+	//A word whose letters are different from every other i's
+	private static String letters(int i) {
+		StringBuilder word = new StringBuilder();
+		for (int c = 0; c <= i % 15; c++) {
+			word.append('a');
+		}
+		for (int c = 0; c <= i / 15 % 15; c++) {
+			word.append('b');
+		}
+		for (int c = 0; c <= i / 225; c++) {
+			word.append('c');
+		}
+		return word.toString();
+	}
+
+	private static void assertSameCorpus(AnagramCorpusServiceInMemory heap, AnagramCorpusServiceArena arena) throws IOException {
+		assertEquals(copy(heap.corpusGroups()), copy(arena.corpusGroups()));
+		assertEquals(heap.getCorpusMetadata(), arena.getCorpusMetadata());
+		assertEquals(heap.getLargestAnagramSets(), arena.getLargestAnagramSets());
+		assertEquals(heap.getAnagramGroupsBySize(1), arena.getAnagramGroupsBySize(1));
+		assertEquals(ServiceReads.pages(heap, 1, 3), ServiceReads.pages(arena, 1, 3));
+		for (Set<String> group : heap.corpusGroups().values()) {
+			for (String word : group) {
+				assertEquals(ServiceReads.json(heap, word, null, false), ServiceReads.json(arena, word, null, false));
+				assertEquals(ServiceReads.json(heap, word, null, true), ServiceReads.json(arena, word, null, true));
+			}
+		}
+		assertEquals(heap.getSubAnagrams("stoapcder", null, null, true), arena.getSubAnagrams("stoapcder", null, null, true));
+	}
+
+	private static Map<AnagramKey, Set<String>> copy(Map<AnagramKey, ? extends Set<String>> groups) {
+		Map<AnagramKey, Set<String>> copy = new HashMap<AnagramKey, Set<String>>();
+		for (Map.Entry<AnagramKey, ? extends Set<String>> group : groups.entrySet()) {
+			copy.put(group.getKey(), new HashSet<String>(group.getValue()));
+		}
+		return copy;
+	}
+
+	//Every page of the sets of at least the given size, fetched with the given limit
+
+	/**
+	 * Has writers add words across enough anagram sets to repack the arena several times over, while readers keep looking up a few sets
+	 * that are only ever added to, then checks that nothing was lost to a repack and no reader ever saw a set shrink.
+	 */
+	public void testNoWritesLostAcrossCompactions() throws InterruptedException {
+		final AnagramCorpusServiceArena service = new AnagramCorpusServiceArena();
+		service.deleteAllWords();
+		final int writerCount = 3;
+		final int wordsPerWriter = 1500;
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int w = 0; w < writerCount; w++) {
+			final int writer = w;
+			writers.add(new Thread(new Runnable() {
+				public void run() {
+					for (int i = writer; i < wordsPerWriter * writerCount; i += writerCount) {
+						String word = letters(i);
+						service.addWords(new HashSet<String>(Arrays.asList(word, "z" + word, word + "z")));
+					}
+				}
+			}));
+		}
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				int lastSize = 0;
+				try {
+					while (writing.get()) {
+						Set<String> anagrams = service.getAnagrams("zabbc", null);
+						for (String anagram : anagrams) {
+							assertEquals(AnagramKey.of("zabbc"), AnagramKey.of(anagram));
+						}
+						assertTrue(anagrams.size() >= lastSize);
+						lastSize = anagrams.size();
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		});
+		reader.start();
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		writing.set(false);
+		reader.join();
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertEquals(wordsPerWriter * writerCount * 3, service.getCorpusMetadata().get("word_count"));
+		assertEquals(wordsPerWriter * writerCount * 2, service.getAnagramGroupsBySize(1).size());
+		assertTrue(service.compactionCount() > 1);
+	}
+
+	public void testWritesDuringReloadAreKept() throws InterruptedException {
+		int dictionaryWords = (Integer) new AnagramCorpusServiceArena().getCorpusMetadata().get("word_count");
+		final DictionaryIngestTest.HeldReload held = new DictionaryIngestTest.HeldReload();
+		final AnagramCorpusServiceArena service = new AnagramCorpusServiceArena(null, null, null, false) {
+			@Override
+			InputStream openDictionary(String fileName) {
+				return held.open(super.openDictionary(fileName));
+			}
+		};
+		Thread reloader = held.reload(service);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(1, service.addWords(Collections.singleton(DictionaryIngestTest.word(i))));
+		}
+		service.deleteWord(DictionaryIngestTest.word(0));
+		held.release(reloader);
+		assertEquals(dictionaryWords + 99, service.getCorpusMetadata().get("word_count"));
+		assertTrue(service.getAnagrams(DictionaryIngestTest.word(0), null).isEmpty());
+		assertEquals(4, service.getAnagrams("read", null).size());
+	}
+}
@@ -0,0 +1,240 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.hreed.anagram.server.service.AnagramVisitor;
+
+import junit.framework.TestCase;
+
+public class AnagramCorpusServiceInMemoryTest extends TestCase {
+
+	private static AnagramCorpusServiceInMemory dictionaryService;
+
+	@Override
+	protected void setUp() throws Exception {
+		//Loading the dictionary is the slow part, so it is shared by the tests that only read from it
+		if (dictionaryService == null) {
+			dictionaryService = new AnagramCorpusServiceInMemory();
+		}
+	}
+
+	public void testCaseInsensitiveLookupFindsEveryCapitalization() {
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+		service.deleteAllWords();
+		assertEquals(6, service.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare", "Read", "Dear", "Dare"))));
+		//Only the words that weren't already there, or aren't valid, are counted
+		assertEquals(1, service.addWords(new HashSet<String>(Arrays.asList("read", "Dear", "ared", "dEar", "r&ad"))));
+		service.deleteWord("ared");
+		assertEquals(new HashSet<String>(Arrays.asList("Dare", "Dear", "Read", "dare", "read")), service.getAnagramsCaseInsensitive("dear", null));
+		assertEquals(new HashSet<String>(Arrays.asList("Dare", "Dear", "Read", "dare", "dear", "read")), service.getAnagramsCaseInsensitive("DEAR", null));
+
+		service.deleteAnagrams("Dear");
+		service.deleteWord("dare");
+		assertEquals(new HashSet<String>(Arrays.asList("Read", "dear")), service.getAnagramsCaseInsensitive("read", null));
+		assertTrue(service.getAnagramsCaseInsensitive("r&ad", null).isEmpty());
+	}
+
+	public void testVisitAnagramsMatchesLookupsInOrder() throws IOException {
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+		service.deleteAllWords();
+		service.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare", "Read", "Dare")));
+		final List<String> visited = new ArrayList<String>();
+		AnagramVisitor visitor = new AnagramVisitor() {
+			public void visit(String word) {
+				visited.add(word);
+			}
+		};
+		assertEquals(2, service.visitAnagrams("read", null, false, visitor));
+		assertEquals(Arrays.asList("dare", "dear"), visited);
+		visited.clear();
+		assertEquals(3, service.visitAnagrams("dear", 3, true, visitor));
+		assertEquals(Arrays.asList("Dare", "Read", "dare"), visited);
+		visited.clear();
+		assertEquals(0, service.visitAnagrams("read", 0, false, visitor));
+		assertEquals(0, service.visitAnagrams("r&ad", null, false, visitor));
+		assertEquals(0, service.visitAnagrams("zyx", null, true, visitor));
+		assertTrue(visited.isEmpty());
+	}
+
+	public void testLimitedLookupsAreAlphabetical() {
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+		service.deleteAllWords();
+		service.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare", "ared", "Read", "Dare")));
+		assertEquals(Arrays.asList("ared", "dare"), new ArrayList<String>(service.getAnagrams("read", 2)));
+		assertEquals(Arrays.asList("ared", "dare", "dear"), new ArrayList<String>(service.getAnagrams("read", null)));
+		assertEquals(Arrays.asList("Dare", "Read", "ared"), new ArrayList<String>(service.getAnagramsCaseInsensitive("dear", 3)));
+		assertTrue(service.getAnagrams("read", 0).isEmpty());
+		assertTrue(service.getAnagrams("zyx", null).isEmpty());
+		try {
+			service.getAnagrams("read", null).clear();
+			fail("Expected the anagrams to be read-only");
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	public void testCachedJsonFollowsEveryChange() throws IOException {
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+		service.deleteAllWords();
+		service.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare", "Read")));
+		assertEquals("{\"anagrams\":[\"dare\",\"dear\"]}", ServiceReads.json(service, "read", null, false));
+		assertEquals("{\"anagrams\":[\"Read\",\"dare\"]}", ServiceReads.json(service, "dear", 2, true));
+
+		service.addWords(new HashSet<String>(Arrays.asList("ared")));
+		assertEquals("{\"anagrams\":[\"ared\",\"dare\",\"dear\"]}", ServiceReads.json(service, "read", null, false));
+		assertEquals("{\"anagrams\":[\"Read\",\"ared\"]}", ServiceReads.json(service, "dear", 2, true));
+
+		service.deleteWord("Read");
+		assertEquals("{\"anagrams\":[\"ared\",\"dare\"]}", ServiceReads.json(service, "dear", 2, true));
+
+		service.deleteAnagrams("dare");
+		assertEquals("{\"anagrams\":[]}", ServiceReads.json(service, "read", null, false));
+		service.addWords(new HashSet<String>(Arrays.asList("read", "dear")));
+		assertEquals("{\"anagrams\":[\"read\"]}", ServiceReads.json(service, "dear", null, true));
+
+		service.deleteAllWords();
+		assertEquals("{\"anagrams\":[]}", ServiceReads.json(service, "dear", null, true));
+		assertEquals("{\"anagrams\":[]}", ServiceReads.json(service, "r&ad", null, false));
+	}
+
+	/**
+	 * Has several writers add disjoint batches of words that all land in the same few anagram sets,
+	 * while readers keep looking those sets up, then checks that every word made it in and that no reader ever saw a broken set.
+	 */
+	public void testNoWritesLostUnderConcurrentReadersAndWriters() throws InterruptedException {
+		final AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+		service.deleteAllWords();
+		final String[] bases = {"abcdef", "ghijkl", "mnopqr", "stuvwx"};
+		final List<String> words = new ArrayList<String>();
+		for (String base : bases) {
+			permute("", base, words);
+		}
+		final int writerCount = 4;
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int w = 0; w < writerCount; w++) {
+			final int writer = w;
+			writers.add(new Thread(new Runnable() {
+				public void run() {
+					//Each writer takes every writerCount-th word, in batches that span all of the sets
+					Set<String> batch = new HashSet<String>();
+					for (int i = writer; i < words.size(); i += writerCount) {
+						batch.add(words.get(i));
+						if (batch.size() == 7) {
+							service.addWords(batch);
+							batch = new HashSet<String>();
+						}
+					}
+					service.addWords(batch);
+				}
+			}));
+		}
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int r = 0; r < 2; r++) {
+			readers.add(new Thread(new Runnable() {
+				public void run() {
+					int[] lastSizes = new int[bases.length];
+					try {
+						while (writing.get()) {
+							for (int b = 0; b < bases.length; b++) {
+								AnagramKey key = AnagramKey.of(bases[b]);
+								Set<String> anagrams = service.getAnagramsCaseInsensitive(bases[b], null);
+								for (String anagram : anagrams) {
+									assertEquals(key, AnagramKey.of(anagram));
+								}
+								//Words are only ever added, so a set can never be seen shrinking
+								assertTrue(anagrams.size() >= lastSizes[b]);
+								lastSizes[b] = anagrams.size();
+							}
+							for (Set<String> group : service.getLargestAnagramSets()) {
+								assertEquals(group.size(), new ArrayList<String>(group).size());
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			}));
+		}
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		writing.set(false);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+
+		for (String base : bases) {
+			Set<String> group = new HashSet<String>(service.getAnagrams(base, null));
+			group.add(base);
+			assertEquals(720, group.size());
+		}
+		assertEquals(words.size(), service.getCorpusMetadata().get("word_count"));
+		assertEquals(bases.length, service.getLargestAnagramSets().size());
+	}
+
+	private static void permute(String prefix, String remaining, List<String> permutations) {
+		if (remaining.isEmpty()) {
+			permutations.add(prefix);
+		}
+		for (int i = 0; i < remaining.length(); i++) {
+			permute(prefix + remaining.charAt(i), remaining.substring(0, i) + remaining.substring(i + 1), permutations);
+		}
+	}
+
+	/**
+	 * Compares the single folded-key probe against the original lookup, which probed the corpus once for the lowercase word
+	 * and once more for each capitalized position, for the longest words in the dictionary. CorpusReadBenchmark times the two.
+	 */
+	public void testFoldedLookupMatchesPerPositionProbes() {
+		Map<AnagramKey, Set<String>> groups = dictionaryService.corpusGroups();
+		List<String> longWords = new ArrayList<String>();
+		for (Set<String> group : groups.values()) {
+			for (String word : group) {
+				if (word.length() >= 15) {
+					longWords.add(word);
+				}
+			}
+		}
+		for (String word : longWords) {
+			assertEquals(perPositionLookup(groups, word), dictionaryService.getAnagramsCaseInsensitive(word, null));
+		}
+	}
+
+	//The original getAnagramsCaseInsensitive, against the exact key groups
+	private static Set<String> perPositionLookup(Map<AnagramKey, Set<String>> groups, String word) {
+		Set<String> anagrams = new HashSet<String>();
+		String normalizedWord = word.toLowerCase();
+		Set<String> result = groups.get(AnagramKey.of(normalizedWord));
+		if (result != null) {
+			anagrams.addAll(result);
+		}
+		for (int i = 0; i < normalizedWord.length(); i++) {
+			char[] characterArray = normalizedWord.toCharArray();
+			characterArray[i] = Character.toUpperCase(characterArray[i]);
+			result = groups.get(AnagramKey.of(new String(characterArray)));
+			if (result != null) {
+				anagrams.addAll(result);
+			}
+		}
+		anagrams.remove(word);
+		return anagrams;
+	}
+}
@@ -0,0 +1,108 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the packed AnagramKey against the sorted character String keys the corpus originally used.
+ */
+public class AnagramKeyTest extends TestCase {
+
+	public void testKeysMatchCharacterMultiset() {
+		assertEquals(AnagramKey.of("read"), AnagramKey.of("dare"));
+		assertEquals(AnagramKey.of("Dear"), AnagramKey.of("eaDr"));
+		assertFalse(AnagramKey.of("Dear").equals(AnagramKey.of("read")));
+		assertFalse(AnagramKey.of("read").equals(AnagramKey.of("reads")));
+		assertEquals("Daer", AnagramKey.of("Dear").toString());
+	}
+
+	public void testKeysOrderLikeSortedStrings() {
+		String[] words = {"", "a", "aa", "ab", "b", "ba", "Dear", "Abby", "zebra", "read", "reads", "Zeal", "aaaaaaaaaaaaaaaaz"};
+		for (String first : words) {
+			for (String second : words) {
+				int expected = Integer.signum(sortedKey(first).compareTo(sortedKey(second)));
+				assertEquals(first + " vs " + second, expected, Integer.signum(AnagramKey.of(first).compareTo(AnagramKey.of(second))));
+			}
+		}
+	}
+
+	public void testFoldedKeysIgnoreCapitalization() {
+		assertEquals(AnagramKey.of("read"), AnagramKey.of("Dear").folded());
+		assertEquals(AnagramKey.of("read"), AnagramKey.foldedOf("DEAR"));
+		assertEquals(AnagramKey.of("zebra"), AnagramKey.of("Zebra").folded());
+		String fifteen = "aaaaaaaaaaaaaaa";
+		assertEquals(AnagramKey.of(fifteen + "a"), AnagramKey.of("A" + fifteen).folded());
+		assertNull(AnagramKey.foldedOf("r&ad"));
+	}
+
+	public void testInvalidWordsHaveNoKey() {
+		assertNull(AnagramKey.of("r&ad"));
+		assertNull(AnagramKey.of("Jean-Pierre"));
+		assertNull(AnagramKey.of("DeAr"));
+	}
+
+	public void testRepeatedLettersFallBackToSortedKey() {
+		String sixteen = "aaaaaaaaaaaaaaaa";
+		assertEquals(AnagramKey.of(sixteen + "b"), AnagramKey.of("b" + sixteen));
+		assertFalse(AnagramKey.of(sixteen).equals(AnagramKey.of(sixteen.substring(1))));
+		assertEquals(16, AnagramKey.of(sixteen).lowercaseCount(0));
+		assertEquals(sixteen + "b", AnagramKey.of("b" + sixteen).toString());
+		//The rest of the word is still checked once a letter overflows
+		assertNull(AnagramKey.of(sixteen + "&"));
+		assertNull(AnagramKey.of("B" + sixteen + "C"));
+		assertNull(AnagramKey.foldedOf(sixteen + "-b"));
+		assertEquals(AnagramKey.of(sixteen + "b"), AnagramKey.foldedOf(sixteen + "B"));
+	}
+
+	/**
+	 * Keys the bundled dictionary both ways, making sure the two produce exactly the same anagram groups.
+	 * How long each keying takes is measured by AnagramKeyBenchmark.
+	 */
+	public void testDictionaryGroupsMatchSortedStringKeys() throws IOException {
+		List<String> words = loadDictionary();
+
+		Map<AnagramKey, String> keyPairs = new HashMap<AnagramKey, String>();
+		Map<String, AnagramKey> reversePairs = new HashMap<String, AnagramKey>();
+		for (String word : words) {
+			AnagramKey key = AnagramKey.of(word);
+			String sortedKey = sortedKey(word);
+			assertNotNull(key);
+			assertEquals(sortedKey, key.toString());
+			String previous = keyPairs.put(key, sortedKey);
+			assertTrue(previous == null || previous.equals(sortedKey));
+			AnagramKey previousKey = reversePairs.put(sortedKey, key);
+			assertTrue(previousKey == null || previousKey.equals(key));
+		}
+		assertEquals(220674, keyPairs.size());
+	}
+
+	private static String sortedKey(String word) {
+		char[] wordArray = word.toCharArray();
+		Arrays.sort(wordArray);
+		return new String(wordArray);
+	}
+
+	private List<String> loadDictionary() throws IOException {
+		List<String> words = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/dictionary.txt"), "UTF-8"));
+		try {
+			String word;
+			while ((word = reader.readLine()) != null) {
+				if (word.matches("^[A-Za-z][a-z]*")) {
+					words.add(word);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return words;
+	}
+}
@@ -0,0 +1,77 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class AnagramResponseCacheTest extends TestCase {
+
+	private final AnagramResponseCache cache = new AnagramResponseCache(AnagramResponseCache.DEFAULT_MAX_BYTES);
+	private final AnagramKey key = AnagramKey.of("dear");
+	private final WordGroup group = WordGroup.of(Arrays.asList("read", "dear", "dare", "ared"));
+
+	private String write(WordGroup group, String word, Integer limit) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		cache.write(key, false, group, word, limit, out);
+		return out.toString("UTF-8");
+	}
+
+	public void testLookedUpWordIsLeftOutWhereverItIs() throws IOException {
+		assertEquals("{\"anagrams\":[\"dare\",\"dear\",\"read\"]}", write(group, "ared", null));
+		assertEquals("{\"anagrams\":[\"ared\",\"dare\",\"read\"]}", write(group, "dear", null));
+		assertEquals("{\"anagrams\":[\"ared\",\"dare\",\"dear\"]}", write(group, "read", null));
+		assertEquals("{\"anagrams\":[\"ared\",\"dare\",\"dear\",\"read\"]}", write(group, "eard", null));
+	}
+
+	public void testSingleWordSetsSkipTheCache() throws IOException {
+		WordGroup single = WordGroup.of(Arrays.asList("stop"));
+		assertEquals("{\"anagrams\":[]}", write(single, "stop", null));
+		assertEquals("{\"anagrams\":[\"stop\"]}", write(single, "pots", null));
+		assertEquals(0, cache.entries());
+	}
+
+	public void testLimitCutsOffAlphabetically() throws IOException {
+		assertEquals("{\"anagrams\":[\"ared\",\"dare\"]}", write(group, "read", 2));
+		assertEquals("{\"anagrams\":[\"ared\",\"dear\"]}", write(group, "dare", 2));
+		assertEquals("{\"anagrams\":[\"dare\"]}", write(group, "ared", 1));
+		assertEquals("{\"anagrams\":[\"ared\",\"dare\",\"dear\"]}", write(group, "read", 10));
+		assertEquals("{\"anagrams\":[]}", write(group, "read", 0));
+		assertEquals("{\"anagrams\":[]}", write(group, "read", -1));
+		assertEquals("{\"anagrams\":[]}", write(WordGroup.of(Arrays.asList("read")), "read", null));
+		assertEquals("{\"anagrams\":[]}", write(null, "read", null));
+	}
+
+	public void testEntryIsSharedAcrossWordsAndLimits() throws IOException {
+		write(group, "read", null);
+		write(group, "dear", 2);
+		write(group, "dare", null);
+		assertEquals(1, cache.entries());
+		assertEquals(1, cache.stats().missCount());
+		assertEquals(2, cache.stats().hitCount());
+	}
+
+	public void testChangedGroupIsNeverServedStale() throws IOException {
+		write(group, "read", null);
+		//As if a lookup had raced with a change and missed its invalidation
+		WordGroup changed = group.without("dare");
+		assertEquals("{\"anagrams\":[\"ared\",\"dear\"]}", write(changed, "read", null));
+		assertEquals(1, cache.stale());
+
+		cache.invalidate(key);
+		assertEquals(0, cache.entries());
+	}
+
+	public void testEvictsToStayWithinItsSize() throws IOException {
+		AnagramResponseCache small = new AnagramResponseCache(4096);
+		for (int i = 0; i < 1000; i++) {
+			//Far more anagram sets than fit, so the cache has to evict to stay within its size
+			String word = "word" + (char) ('a' + i % 26) + (char) ('a' + i / 26 % 26);
+			String anagram = new StringBuilder(word).reverse().toString();
+			small.write(AnagramKey.of(word), false, WordGroup.of(Arrays.asList(word, anagram)), word, null, new ByteArrayOutputStream());
+		}
+		assertTrue(small.bytes() <= 4096);
+		assertTrue(small.stats().evictionCount() > 0);
+	}
+}
@@ -0,0 +1,206 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class AnagramSearchEngineTest extends TestCase {
+
+	private final AnagramSearchEngine engine = new AnagramSearchEngine(Integer.MAX_VALUE, 10000);
+
+	public void testSubAnagramsLongestFirst() {
+		Corpus corpus = corpusOf("read", "dear", "dare", "dares", "red", "ad", "a", "Ra", "zebra");
+		assertEquals(Arrays.asList("dares", "dare", "dear", "read", "red", "ad", "a"), subAnagrams(corpus, "reads", null, false));
+		assertEquals(Arrays.asList("dares", "dare"), subAnagrams(corpus, "reads", 2, false));
+		assertEquals(Arrays.asList("Ra", "a"), subAnagrams(corpus, "AR", null, true));
+		assertTrue(subAnagrams(corpus, "reads", 0, false).isEmpty());
+		assertTrue(subAnagrams(corpus, "r&ad", null, false).isEmpty());
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testSubAnagramsPageOnFromTheLastWord() {
+		Corpus corpus = corpusOf("read", "dear", "dare", "dares", "red", "ad", "a", "Ra", "zebra");
+		assertEquals(Arrays.asList("dear", "read"), subAnagrams(corpus, "reads", "dare", 2, false));
+		assertEquals(Arrays.asList("red", "ad"), subAnagrams(corpus, "reads", "read", 2, false));
+		assertEquals(Arrays.asList("a"), subAnagrams(corpus, "reads", "ad", 2, false));
+		assertTrue(subAnagrams(corpus, "reads", "a", 2, false).isEmpty());
+		//The word a page starts after doesn't have to be in the corpus, or fit the rack
+		assertEquals(Arrays.asList("ad", "a"), subAnagrams(corpus, "reads", "zed", null, false));
+		assertEquals(Arrays.asList("dares", "dare"), subAnagrams(corpus, "reads", "zebra", 2, false));
+
+		//Pages of a big rack add up to the whole list
+		AnagramSearchEngine capped = new AnagramSearchEngine(1000, 10000);
+		Corpus dictionary = new Corpus(new AnagramCorpusServiceInMemory().corpusGroups());
+		List<String> all = subAnagrams(dictionary, "conversationalist", null, Integer.MAX_VALUE, false);
+		assertTrue(all.size() > 1000);
+		List<String> paged = new ArrayList<String>();
+		String after = null;
+		List<String> page;
+		do {
+			page = (List<String>) capped.subAnagrams(dictionary, "conversationalist", after, null, false).get("anagrams");
+			paged.addAll(page);
+			after = page.isEmpty() ? null : page.get(page.size() - 1);
+		} while (!page.isEmpty());
+		assertEquals(all, paged);
+	}
+
+	public void testSubAnagramsRespectLetterCounts() {
+		Corpus corpus = corpusOf("noon", "non", "on", "no");
+		assertEquals(Arrays.asList("non", "no", "on"), subAnagrams(corpus, "nno", null, false));
+		assertEquals(Arrays.asList("noon", "non", "no", "on"), subAnagrams(corpus, "noon", null, false));
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testPhrasesUseEveryLetter() {
+		Corpus corpus = corpusOf("dormitory", "dirty", "room", "dorm", "I", "toy", "rot", "my");
+		List<String> phrases = (List<String>) engine.phrases(corpus, "dirty room", null, 3, false).get("phrases");
+		assertTrue(phrases.contains("dormitory"));
+		assertTrue(phrases.contains("dirty room"));
+		assertFalse(phrases.contains("room dirty"));
+		for (String phrase : phrases) {
+			assertEquals(AnagramKey.foldedOf("dirtyroom"), AnagramKey.foldedOf(phrase.replace(" ", "")));
+		}
+
+		phrases = (List<String>) engine.phrases(corpus, "dirtyroom", null, 1, false).get("phrases");
+		assertEquals(Arrays.asList("dormitory"), phrases);
+		phrases = (List<String>) engine.phrases(corpus, "dirtyroom", 1, 3, false).get("phrases");
+		assertEquals(1, phrases.size());
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testRepeatedKeysGiveEachPhraseOnce() {
+		Corpus corpus = corpusOf("tab", "bat");
+		List<String> phrases = (List<String>) engine.phrases(corpus, "tabbat", null, 2, false).get("phrases");
+		assertEquals(3, phrases.size());
+		assertEquals(new HashSet<String>(Arrays.asList("bat bat", "bat tab", "tab tab")), new HashSet<String>(phrases));
+	}
+
+	public void testSearchesGiveUpAtTheirTimeBudget() {
+		List<String> words = new ArrayList<String>();
+		String letters = "abcdefghijklmnopqrstuvwxyz";
+		for (int first = 0; first < 26; first++) {
+			for (int second = 0; second < 26; second++) {
+				words.add("" + letters.charAt(first) + letters.charAt(second));
+				words.add("" + letters.charAt(first));
+			}
+		}
+		Corpus corpus = corpusOf(words.toArray(new String[words.size()]));
+		AnagramSearchEngine impatient = new AnagramSearchEngine(Integer.MAX_VALUE, 0);
+		Map<String, Object> result = impatient.phrases(corpus, letters + letters, null, 5, false);
+		assertEquals(Boolean.TRUE, result.get("timed_out"));
+	}
+
+	public void testWildcardAnagrams() {
+		Corpus corpus = corpusOf("read", "dear", "dare", "Dare", "reads", "ready", "red", "aa");
+		assertEquals(set("dare", "dear", "read"), engine.wildcardAnagrams(corpus, "de?r", null, false));
+		assertEquals(set("Dare"), engine.wildcardAnagrams(corpus, "D?re", null, false));
+		assertEquals(set("Dare", "dare", "dear", "read"), engine.wildcardAnagrams(corpus, "?ear", null, true));
+		assertEquals(set("reads", "ready"), engine.wildcardAnagrams(corpus, "?e?rd", null, false));
+		assertEquals(set("aa", "red"), new HashSet<String>(union(engine.wildcardAnagrams(corpus, "??", null, false), engine.wildcardAnagrams(corpus, "???", null, false))));
+		assertEquals(1, engine.wildcardAnagrams(corpus, "de?r", 1, false).size());
+		assertTrue(engine.wildcardAnagrams(corpus, "de?r", 0, false).isEmpty());
+		assertTrue(engine.wildcardAnagrams(corpus, "d&?r", null, false).isEmpty());
+		try {
+			engine.wildcardAnagrams(corpus, "????", null, false);
+			fail("Expected too many blanks to be rejected");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Compares the mask index against filling in every blank with each of the 26 letters and probing the exact key.
+	 * WildcardBenchmark times the two.
+	 */
+	public void testDictionaryWildcardsMatchExpandedBlanks() {
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+		Corpus corpus = new Corpus(service.corpusGroups());
+		String[] queries = {"ap?le", "?rain", "st??e", "qu??k", "??t", "an?gr?m?"};
+		for (String query : queries) {
+			Set<String> expanded = new HashSet<String>();
+			expandBlanks(corpus, query, expanded);
+			assertEquals(query, expanded, engine.wildcardAnagrams(corpus, query, null, false));
+			//A limit keeps the alphabetically first matches, however they are spread over the anagram sets
+			List<String> sorted = new ArrayList<String>(new TreeSet<String>(expanded));
+			assertEquals(query, sorted.subList(0, Math.min(5, sorted.size())), new ArrayList<String>(engine.wildcardAnagrams(corpus, query, 5, false)));
+		}
+	}
+
+	private static void expandBlanks(Corpus corpus, String query, Set<String> words) {
+		int blank = query.indexOf('?');
+		if (blank < 0) {
+			Set<String> group = corpus.get(AnagramKey.of(query));
+			if (group != null) {
+				words.addAll(group);
+			}
+			return;
+		}
+		for (char letter = 'a'; letter <= 'z'; letter++) {
+			expandBlanks(corpus, query.substring(0, blank) + letter + query.substring(blank + 1), words);
+		}
+	}
+
+	private static Set<String> set(String... words) {
+		return new HashSet<String>(Arrays.asList(words));
+	}
+
+	private static Set<String> union(Set<String> first, Set<String> second) {
+		Set<String> union = new HashSet<String>(first);
+		union.addAll(second);
+		return union;
+	}
+
+	/**
+	 * Compares the indexed sub-anagram search against a brute force scan of every word in the dictionary.
+	 * SubAnagramBenchmark times the two.
+	 */
+	public void testDictionarySubAnagramsMatchFullScan() {
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+		Corpus corpus = new Corpus(service.corpusGroups());
+		String[] racks = {"anagrams", "retinas", "education", "stone", "quartzes", "abcdefghijklmnopqrstuvwxyz"};
+		for (String rack : racks) {
+			Set<String> indexed = new HashSet<String>(subAnagrams(corpus, rack, Integer.MAX_VALUE, true));
+			assertEquals(rack, scanSubAnagrams(corpus, rack), indexed);
+		}
+	}
+
+	private Set<String> scanSubAnagrams(Corpus corpus, String rack) {
+		AnagramKey rackKey = AnagramKey.foldedOf(rack);
+		Set<String> words = new HashSet<String>();
+		for (Map.Entry<AnagramKey, Set<String>> group : corpus.groups().entrySet()) {
+			AnagramKey key = group.getKey().folded();
+			boolean fits = true;
+			for (int letter = 0; letter < 26 && fits; letter++) {
+				fits = key.lowercaseCount(letter) <= rackKey.lowercaseCount(letter);
+			}
+			if (fits) {
+				words.addAll(group.getValue());
+			}
+		}
+		return words;
+	}
+
+	private List<String> subAnagrams(Corpus corpus, String letters, Integer limit, boolean caseInsensitive) {
+		return subAnagrams(corpus, letters, null, limit, caseInsensitive);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<String> subAnagrams(Corpus corpus, String letters, String after, Integer limit, boolean caseInsensitive) {
+		Map<String, Object> result = engine.subAnagrams(corpus, letters, after, limit, caseInsensitive);
+		assertEquals(Boolean.FALSE, result.get("timed_out"));
+		return (List<String>) result.get("anagrams");
+	}
+
+	private static Corpus corpusOf(String... words) {
+		Corpus corpus = new Corpus();
+		for (String word : words) {
+			corpus.insert(AnagramKey.of(word), word);
+		}
+		return corpus;
+	}
+}
@@ -0,0 +1,193 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+public class CorpusSnapshotTest extends TestCase {
+
+	private File snapshotFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		snapshotFile = File.createTempFile("corpus", ".snapshot");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		snapshotFile.delete();
+	}
+
+	public void testSnapshotRoundTrip() throws IOException {
+		Map<AnagramKey, Set<String>> corpus = new HashMap<AnagramKey, Set<String>>();
+		addGroup(corpus, "read", "dear", "dare");
+		addGroup(corpus, "Dear");
+		addGroup(corpus, "aaaaaaaaaaaaaaaaab", "baaaaaaaaaaaaaaaaa");
+		CorpusSnapshot.write(corpus, "/test.txt", snapshotFile);
+
+		Map<AnagramKey, Set<String>> read = CorpusSnapshot.read(snapshotFile, "/test.txt");
+		assertEquals(corpus, read);
+		//Decoded into the groups the corpus keeps, so building it doesn't copy them again
+		for (Set<String> group : read.values()) {
+			assertTrue(group instanceof WordGroup);
+		}
+	}
+
+	public void testSnapshotFromTheLastVersionIsRead() throws IOException {
+		Map<AnagramKey, Set<String>> corpus = new HashMap<AnagramKey, Set<String>>();
+		addGroup(corpus, "read", "dear", "dare");
+		CorpusSnapshot.write(corpus, "/test.txt", snapshotFile);
+		//Rewritten without the source's modification time, the one field version 2 didn't have
+		ByteBuffer current = ByteBuffer.wrap(Files.readAllBytes(snapshotFile.toPath()));
+		int nameLength = current.getShort(24) & 0xFFFF;
+		int modifiedAt = 24 + 2 + nameLength + 16;
+		ByteBuffer body = ByteBuffer.allocate(current.capacity() - 24 - 8);
+		body.put(current.array(), 24, modifiedAt - 24).put(current.array(), modifiedAt + 8, current.capacity() - modifiedAt - 8);
+		CRC32 checksum = new CRC32();
+		checksum.update(body.array(), 0, body.capacity());
+		ByteBuffer older = ByteBuffer.allocate(24 + body.capacity());
+		older.putInt(CorpusSnapshot.MAGIC).putInt(2).putLong(checksum.getValue()).putInt(current.getInt(16)).putInt(current.getInt(20)).put(body.array());
+		Files.write(snapshotFile.toPath(), older.array());
+
+		assertEquals(corpus, CorpusSnapshot.read(snapshotFile, "/test.txt"));
+	}
+
+	public void testDictionaryFileIsOnlyReadOnceTouched() throws IOException {
+		File dictionary = File.createTempFile("dictionary", ".txt");
+		try {
+			byte[] words = "read\ndear\n".getBytes(StandardCharsets.US_ASCII);
+			Files.write(dictionary.toPath(), words);
+			URL source = dictionary.toURI().toURL();
+			long modified = dictionary.lastModified();
+			assertTrue(CorpusSnapshot.isSameSource(source, words.length, crc(words), modified));
+			assertFalse(CorpusSnapshot.isSameSource(source, words.length + 1, crc(words), modified));
+			//Untouched, so it isn't read to check the checksum
+			assertTrue(CorpusSnapshot.isSameSource(source, words.length, crc(words) ^ 1, modified));
+			assertTrue(CorpusSnapshot.isSameSource(source, words.length, crc(words), modified - 1000));
+			assertFalse(CorpusSnapshot.isSameSource(source, words.length, crc(words) ^ 1, modified - 1000));
+			assertFalse(CorpusSnapshot.isSameSource(null, words.length, crc(words), modified));
+		} finally {
+			dictionary.delete();
+		}
+	}
+
+	public void testDictionaryInAJarIsCheckedAgainstItsEntry() throws IOException {
+		File jar = File.createTempFile("dictionary", ".jar");
+		try {
+			byte[] words = "read\ndear\n".getBytes(StandardCharsets.US_ASCII);
+			JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+			try {
+				output.putNextEntry(new JarEntry("dictionary.txt"));
+				output.write(words);
+				output.closeEntry();
+			} finally {
+				output.close();
+			}
+			URL source = new URL("jar:" + jar.toURI() + "!/dictionary.txt");
+			assertTrue(CorpusSnapshot.isSameSource(source, words.length, crc(words), 0));
+			assertFalse(CorpusSnapshot.isSameSource(source, words.length, crc(words) ^ 1, 0));
+			assertFalse(CorpusSnapshot.isSameSource(source, words.length - 1, crc(words), 0));
+		} finally {
+			jar.delete();
+		}
+	}
+
+	private static long crc(byte[] bytes) {
+		CRC32 checksum = new CRC32();
+		checksum.update(bytes, 0, bytes.length);
+		return checksum.getValue();
+	}
+
+	public void testSnapshotFromAnotherDictionaryIsRejected() throws IOException {
+		Map<AnagramKey, Set<String>> corpus = new HashMap<AnagramKey, Set<String>>();
+		addGroup(corpus, "read", "dear");
+		CorpusSnapshot.write(corpus, "/test.txt", snapshotFile);
+		try {
+			CorpusSnapshot.read(snapshotFile, "/dictionary.txt");
+			fail("Expected the snapshot to be rejected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("/test.txt"));
+		}
+	}
+
+	public void testSnapshotFromAnOlderCopyOfTheDictionaryIsRejected() throws IOException {
+		Map<AnagramKey, Set<String>> corpus = new HashMap<AnagramKey, Set<String>>();
+		addGroup(corpus, "read", "dear");
+		long[] source = CorpusSnapshot.fingerprint(AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY);
+		CorpusSnapshot.write(corpus, AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY, source[0] - 1, source[1], source[2], snapshotFile);
+		try {
+			CorpusSnapshot.read(snapshotFile, AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY);
+			fail("Expected the snapshot to be rejected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("changed"));
+		}
+	}
+
+	public void testCorruptSnapshotFailsChecksum() throws IOException {
+		Map<AnagramKey, Set<String>> corpus = new HashMap<AnagramKey, Set<String>>();
+		addGroup(corpus, "read", "dear");
+		CorpusSnapshot.write(corpus, "/test.txt", snapshotFile);
+		RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+		try {
+			file.seek(file.length() - 1);
+			file.write('x');
+		} finally {
+			file.close();
+		}
+		try {
+			CorpusSnapshot.read(snapshotFile, "/test.txt");
+			fail("Expected the snapshot to fail its checksum");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("checksum"));
+		}
+	}
+
+	public void testServiceFallsBackToDictionaryWithoutSnapshot() {
+		snapshotFile.delete();
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory(snapshotFile.getPath());
+		assertEquals(new HashSet<String>(Arrays.asList("ared", "daer", "dare", "dear")), service.getAnagrams("read", null));
+	}
+
+	public void testServiceLoadsFromSnapshot() throws IOException {
+		Map<AnagramKey, Set<String>> corpus = new HashMap<AnagramKey, Set<String>>();
+		addGroup(corpus, "read", "dear");
+		CorpusSnapshot.write(corpus, AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY, snapshotFile);
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory(snapshotFile.getPath());
+		assertEquals(new HashSet<String>(Arrays.asList("dear")), service.getAnagrams("read", null));
+		assertEquals(2, service.getCorpusMetadata().get("word_count"));
+	}
+
+	public void testServiceFallsBackToDictionaryWithoutSnapshotOnTheClassPath() {
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory("classpath:/missing.snapshot");
+		assertEquals(new HashSet<String>(Arrays.asList("ared", "daer", "dare", "dear")), service.getAnagrams("read", null));
+	}
+
+	public void testServiceFallsBackToDictionaryWithStaleSnapshot() throws IOException {
+		Map<AnagramKey, Set<String>> corpus = new HashMap<AnagramKey, Set<String>>();
+		addGroup(corpus, "read", "dear");
+		long[] source = CorpusSnapshot.fingerprint(AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY);
+		//Touched since as well, or the file's length and modification time would be taken as a match without reading it
+		CorpusSnapshot.write(corpus, AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY, source[0], source[1] ^ 1, source[2] - 1, snapshotFile);
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory(snapshotFile.getPath());
+		assertEquals(new HashSet<String>(Arrays.asList("ared", "daer", "dare", "dear")), service.getAnagrams("read", null));
+	}
+
+	private static void addGroup(Map<AnagramKey, Set<String>> corpus, String... words) {
+		corpus.put(AnagramKey.of(words[0]), new HashSet<String>(Arrays.asList(words)));
+	}
+}
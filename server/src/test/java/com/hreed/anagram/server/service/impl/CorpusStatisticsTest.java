@@ -0,0 +1,44 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class CorpusStatisticsTest extends TestCase {
+
+	public void testEmptyStatisticsAreZero() {
+		Map<String, Object> metadata = new CorpusStatistics().toMetadata();
+		assertEquals(0, metadata.get("word_count"));
+		assertEquals(0, metadata.get("median_length"));
+	}
+
+	public void testMedianOfEvenWordCountAveragesMiddleLengths() {
+		CorpusStatistics statistics = new CorpusStatistics();
+		for (int length : new int[] {4, 4, 4, 5, 5, 5, 5, 5}) {
+			statistics.wordAdded(length);
+		}
+		Map<String, Object> metadata = statistics.toMetadata();
+		assertEquals(8, metadata.get("word_count"));
+		assertEquals(4, metadata.get("min_length"));
+		assertEquals(5, metadata.get("max_length"));
+		assertEquals("5", metadata.get("median_length"));
+		assertEquals("4.625", metadata.get("avg_length"));
+
+		statistics.wordRemoved(5);
+		statistics.wordRemoved(5);
+		metadata = statistics.toMetadata();
+		assertEquals("4.5", metadata.get("median_length"));
+	}
+
+	public void testRemovingLongestWordsMovesMaximum() {
+		CorpusStatistics statistics = new CorpusStatistics();
+		statistics.wordAdded(1);
+		statistics.wordAdded(3);
+		statistics.wordAdded(60);
+		assertEquals(60, statistics.toMetadata().get("max_length"));
+		assertEquals("3", statistics.toMetadata().get("median_length"));
+		statistics.wordRemoved(60);
+		assertEquals(3, statistics.toMetadata().get("max_length"));
+		assertEquals("2", statistics.toMetadata().get("median_length"));
+	}
+}
@@ -0,0 +1,202 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.hreed.anagram.server.service.GroupCursor;
+
+import junit.framework.TestCase;
+
+public class CorpusTest extends TestCase {
+
+	public void testSizeIndexFollowsInsertsAndDeletes() {
+		Corpus corpus = new Corpus();
+		insert(corpus, "read", "dear", "dare", "slate", "stale", "steal", "tales", "zebra");
+		assertEquals(1, corpus.snapshot().getLargestAnagramSets().size());
+		assertEquals(4, corpus.snapshot().getLargestAnagramSets().get(0).size());
+		assertEquals(2, corpus.snapshot().getAnagramGroupsBySize(3).size());
+		assertEquals(3, corpus.snapshot().getAnagramGroupsBySize(0).size());
+
+		corpus.remove(AnagramKey.of("tales"), "tales");
+		assertEquals(2, corpus.snapshot().getLargestAnagramSets().size());
+
+		corpus.removeGroup(AnagramKey.of("read"));
+		corpus.remove(AnagramKey.of("zebra"), "zebra");
+		assertEquals(1, corpus.snapshot().getAnagramGroupsBySize(1).size());
+		assertNull(corpus.get(AnagramKey.of("zebra")));
+
+		corpus.removeGroup(AnagramKey.of("slate"));
+		assertTrue(corpus.snapshot().getLargestAnagramSets().isEmpty());
+		//Nothing is left behind for sizes and letters no longer in use
+		assertEquals(0, corpus.snapshot().largestGroupSize());
+		assertTrue(corpus.letterMasks().isEmpty());
+		assertNull(corpus.foldedKeysWithMask(AnagramKey.foldedOf("zebra").letterMask()));
+	}
+
+	public void testPagesOfGroupsCoverEveryGroupOnce() throws IOException {
+		Corpus corpus = new Corpus();
+		insert(corpus, "read", "dear", "dare", "slate", "stale", "steal", "tales", "zebra", "on", "no", "tab", "bat", "opt", "top", "pot");
+		List<Set<String>> all = corpus.snapshot().getAnagramGroupsBySize(2);
+		for (int limit = 1; limit <= all.size() + 1; limit++) {
+			final List<Set<String>> paged = new ArrayList<Set<String>>();
+			GroupCursor cursor = null;
+			int pages = 0;
+			do {
+				cursor = corpus.snapshot().visitGroups(2, Integer.MAX_VALUE, cursor, limit, group -> paged.add(group));
+				pages++;
+			} while (cursor != null);
+			assertEquals(all, paged);
+			assertEquals((all.size() + limit - 1) / limit, pages);
+		}
+
+		//Removing the set a page ended on doesn't lose the place
+		final List<Set<String>> page = new ArrayList<Set<String>>();
+		GroupCursor cursor = corpus.snapshot().visitGroups(2, Integer.MAX_VALUE, null, 2, group -> page.add(group));
+		String lastWord = all.get(1).iterator().next();
+		assertEquals(new GroupCursor(2, lastWord), cursor);
+		corpus.removeGroup(AnagramKey.of(lastWord));
+		page.clear();
+		corpus.snapshot().visitGroups(2, Integer.MAX_VALUE, cursor, 1, group -> page.add(group));
+		assertEquals(all.subList(2, 3), page);
+
+		//An empty first page still hands back a cursor to carry on from, starting with the first set
+		page.clear();
+		cursor = corpus.snapshot().visitGroups(2, Integer.MAX_VALUE, null, 0, group -> page.add(group));
+		assertEquals(GroupCursor.start(2), cursor);
+		assertTrue(page.isEmpty());
+		corpus.snapshot().visitGroups(2, Integer.MAX_VALUE, cursor, 1, group -> page.add(group));
+		assertEquals(all.subList(0, 1), page);
+
+		page.clear();
+		assertNull(corpus.snapshot().visitGroups(4, 4, null, null, group -> page.add(group)));
+		assertEquals(Arrays.asList(corpus.get(AnagramKey.of("tales"))), page);
+		assertEquals(4, corpus.snapshot().largestGroupSize());
+		assertEquals(0, new Corpus().snapshot().largestGroupSize());
+	}
+
+	public void testSizeIndexStaysConsistentUnderConcurrentWriters() throws InterruptedException {
+		final Corpus corpus = new Corpus();
+		final String[] letters = {"ab", "abc", "abcd"};
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int seed = t;
+			writers.add(new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 20000; i++) {
+						String base = letters[(i + seed) % letters.length];
+						//Rotations of the same letters all share a key, so the writers keep fighting over the same few sets
+						int rotation = (i * 7 + seed) % base.length();
+						String word = base.substring(rotation) + base.substring(0, rotation);
+						if ((i + seed) % 3 == 0) {
+							corpus.remove(AnagramKey.of(word), word);
+						} else {
+							corpus.insert(AnagramKey.of(word), word);
+						}
+					}
+				}
+			}));
+		}
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		for (int size = 1; size <= 5; size++) {
+			int expectedGroups = 0;
+			for (Set<String> group : corpus.groups().values()) {
+				if (group.size() >= size) {
+					expectedGroups++;
+				}
+			}
+			assertEquals(expectedGroups, corpus.snapshot().getAnagramGroupsBySize(size).size());
+		}
+	}
+
+	public void testSnapshotIsUnchangedByLaterWrites() {
+		Corpus corpus = new Corpus();
+		insert(corpus, "read", "dear", "dare", "slate", "stale", "zebra");
+		Corpus.Version before = corpus.snapshot();
+
+		insert(corpus, "steal", "tales");
+		corpus.removeGroup(AnagramKey.of("read"));
+		corpus.remove(AnagramKey.of("zebra"), "zebra");
+		Corpus.Version after = corpus.snapshot();
+
+		assertTrue(after.getVersion() > before.getVersion());
+		assertEquals(6, before.getCorpusMetadata().get("word_count"));
+		assertEquals(3, before.getLargestAnagramSets().get(0).size());
+		assertEquals(3, before.getAnagramGroupsBySize(1).size());
+		assertEquals(4, after.getCorpusMetadata().get("word_count"));
+		assertEquals(4, after.getLargestAnagramSets().get(0).size());
+		assertEquals(1, after.getAnagramGroupsBySize(1).size());
+		//Reading doesn't publish anything
+		assertSame(after, corpus.snapshot());
+	}
+
+	public void testSnapshotsStayConsistentUnderConcurrentWriters() throws InterruptedException {
+		final Corpus corpus = new Corpus();
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int t = 0; t < 3; t++) {
+			final int seed = t;
+			writers.add(new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 20000; i++) {
+						String word = "abcde".substring(0, 2 + (i + seed) % 4) + (char) ('f' + (i * 7 + seed) % 20);
+						if ((i + seed) % 3 == 0) {
+							corpus.remove(AnagramKey.of(word), word);
+						} else {
+							corpus.insert(AnagramKey.of(word), word);
+						}
+					}
+				}
+			}));
+		}
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				long lastVersion = 0;
+				while (!done.get()) {
+					Corpus.Version snapshot = corpus.snapshot();
+					int words = 0;
+					for (Set<String> group : snapshot.getAnagramGroupsBySize(1)) {
+						words += group.size();
+					}
+					//The word count and the listing always come from the same version, however the writers are interleaved
+					if (!Integer.valueOf(words).equals(snapshot.getCorpusMetadata().get("word_count")) || snapshot.getVersion() < lastVersion) {
+						failure.set("Version " + snapshot.getVersion() + " listed " + words + " words but counted " + snapshot.getCorpusMetadata().get("word_count"));
+					}
+					lastVersion = snapshot.getVersion();
+				}
+			}
+		});
+		reader.start();
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		done.set(true);
+		reader.join();
+		assertNull(failure.get());
+		int words = 0;
+		for (Set<String> group : corpus.groups().values()) {
+			words += group.size();
+		}
+		assertEquals(words, corpus.wordCount());
+		assertEquals(corpus.groups().size(), corpus.snapshot().getAnagramGroupsBySize(1).size());
+	}
+
+	private static void insert(Corpus corpus, String... words) {
+		for (String word : words) {
+			corpus.insert(AnagramKey.of(word), word);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+
+import junit.framework.TestCase;
+
+public class DictionaryIngestTest extends TestCase {
+
+	public void testChunkedIngestMergesGroupsAcrossChunks() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		//Spread the same anagram set across several chunks, along with words that fail validation
+		for (int i = 0; i < DictionaryIngest.CHUNK_SIZE * 3; i++) {
+			lines.add(i % 1000 == 0 ? "Jean-Pierre" : "filler" + (char) ('a' + i % 26));
+		}
+		lines.add(0, "read");
+		lines.add(DictionaryIngest.CHUNK_SIZE + 5, "dear");
+		lines.add("dare");
+
+		StringBuilder dictionary = new StringBuilder();
+		for (String line : lines) {
+			dictionary.append(line).append('\n');
+		}
+		DictionaryIngest.Ingested ingested = DictionaryIngest.groups(new ByteArrayInputStream(dictionary.toString().getBytes(StandardCharsets.UTF_8)), null);
+		Corpus corpus = new Corpus(ingested.groups, new AtomicLong());
+		assertEquals(lines.size(), ingested.lines);
+		assertEquals(3, corpus.get(AnagramKey.of("read")).size());
+		assertEquals(27, corpus.groups().size());
+		assertNull(corpus.get(AnagramKey.of("Jean")));
+	}
+
+	public void testReloadNeverExposesPartialCorpus() throws InterruptedException {
+		final AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+		final AtomicBoolean reloading = new AtomicBoolean(true);
+		final AtomicInteger emptyReads = new AtomicInteger();
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				while (reloading.get()) {
+					if (service.getAnagrams("read", null).size() != 4) {
+						emptyReads.incrementAndGet();
+					}
+				}
+			}
+		});
+		reader.start();
+		for (int i = 0; i < 3; i++) {
+			service.populateCorpusFromDictionaryFile(AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY);
+		}
+		reloading.set(false);
+		reader.join();
+		assertEquals(0, emptyReads.get());
+	}
+
+	/**
+	 * Adds and deletes words while a reload is held partway through reading the dictionary, then checks that every change made it into the corpus
+	 * the reload published.
+	 */
+	public void testWritesDuringReloadAreKept() throws InterruptedException {
+		int dictionaryWords = (Integer) new AnagramCorpusServiceInMemory().getCorpusMetadata().get("word_count");
+		final HeldReload held = new HeldReload();
+		final AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory(null, null, null, false) {
+			@Override
+			InputStream openDictionary(String fileName) {
+				return held.open(super.openDictionary(fileName));
+			}
+		};
+		Thread reloader = held.reload(service);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(1, service.addWords(Collections.singleton(word(i))));
+		}
+		service.deleteWord(word(0));
+		held.release(reloader);
+		assertEquals(dictionaryWords + 99, service.getCorpusMetadata().get("word_count"));
+		assertTrue(service.getAnagrams(word(0), null).isEmpty());
+		assertEquals(4, service.getAnagrams("read", null).size());
+	}
+
+	/**
+	 * Runs a reload that stops once it has started reading the dictionary, until it is released
+	 */
+	static final class HeldReload {
+
+		private final CountDownLatch reading = new CountDownLatch(1);
+		private final CountDownLatch released = new CountDownLatch(1);
+
+		//The dictionary, holding up its first read until the reload is released
+		InputStream open(InputStream dictionary) {
+			return new FilterInputStream(dictionary) {
+				@Override
+				public int read(byte[] buffer, int offset, int length) throws IOException {
+					reading.countDown();
+					try {
+						released.await();
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+					return super.read(buffer, offset, length);
+				}
+			};
+		}
+
+		//Starts the reload, and returns once it is reading the dictionary
+		Thread reload(final AnagramCorpusService service) throws InterruptedException {
+			Thread reloader = new Thread(new Runnable() {
+				public void run() {
+					service.populateCorpusFromDictionaryFile(AnagramCorpusServiceInMemory.DEFAULT_DICTIONARY);
+				}
+			});
+			reloader.start();
+			assertTrue(reading.await(30, TimeUnit.SECONDS));
+			return reloader;
+		}
+
+		//Lets the reload finish, and waits for it to
+		void release(Thread reloader) throws InterruptedException {
+			released.countDown();
+			reloader.join();
+		}
+	}
+
+	//A different word for every number, none of them in the dictionary
+	static String word(int i) {
+		StringBuilder word = new StringBuilder("qxz");
+		do {
+			word.append((char) ('a' + i % 26));
+			i /= 26;
+		} while (i > 0);
+		return word.toString();
+	}
+}
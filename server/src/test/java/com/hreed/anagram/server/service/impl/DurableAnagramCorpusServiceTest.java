@@ -0,0 +1,115 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+public class DurableAnagramCorpusServiceTest extends TestCase {
+
+	private File directory;
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = Files.createTempDirectory("durable").toFile();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File file : directory.listFiles()){
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private DurableAnagramCorpusService open() throws IOException {
+		return new DurableAnagramCorpusService(new AnagramCorpusServiceInMemory(null, null, null, false), directory.getPath(), true, 0);
+	}
+
+	public void testDictionaryIsLoadedUntilTheFirstSnapshot() throws IOException {
+		DurableAnagramCorpusService service = open();
+		service.deleteWord("dare");
+		service.close();
+		DurableAnagramCorpusService restarted = open();
+		assertEquals(new HashSet<String>(Arrays.asList("ared", "daer", "dear")), restarted.getAnagrams("read", null));
+		restarted.close();
+	}
+
+	public void testChangesSurviveRestart() throws IOException {
+		DurableAnagramCorpusService service = open();
+		service.deleteAllWords();
+		service.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare", "stop", "pots", "not a word")));
+		service.deleteWord("dare");
+		service.deleteAnagrams("stop");
+		//No close, as if the server had been killed
+		DurableAnagramCorpusService restarted = open();
+		assertEquals(new HashSet<String>(Arrays.asList("dear")), restarted.getAnagrams("read", null));
+		assertTrue(restarted.getAnagrams("opts", null).isEmpty());
+		assertEquals(2, ((Number) restarted.getCorpusMetadata().get("word_count")).intValue());
+		service.close();
+		restarted.close();
+	}
+
+	public void testSnapshotReplacesOlderLog() throws IOException {
+		DurableAnagramCorpusService service = open();
+		service.deleteAllWords();
+		service.addWords(new HashSet<String>(Arrays.asList("read", "dear")));
+		service.snapshot();
+		service.addWords(new HashSet<String>(Arrays.asList("dare")));
+		service.close();
+
+		assertEquals(1, WriteAheadLog.segments(directory).size());
+		assertTrue(DurableAnagramCorpusService.snapshotFile(directory, WriteAheadLog.segments(directory).get(0)).isFile());
+
+		DurableAnagramCorpusService restarted = open();
+		assertEquals(new HashSet<String>(Arrays.asList("dear", "dare")), restarted.getAnagrams("read", null));
+		//The dictionary is no longer part of the corpus once a snapshot has been loaded
+		assertEquals(3, ((Number) restarted.getCorpusMetadata().get("word_count")).intValue());
+		restarted.close();
+	}
+
+	public void testChangeIsOnlyAppliedOnceLogged() throws IOException {
+		DurableAnagramCorpusService service = open();
+		//Closing the log makes the next write to it fail
+		service.close();
+		try {
+			service.deleteWord("dare");
+			fail("Expected the change to fail to be logged");
+		} catch (UncheckedIOException e){
+			//Expected
+		}
+		assertTrue(service.getAnagrams("read", null).contains("dare"));
+		try {
+			service.deleteWord("dear");
+			fail("Expected the change to be refused");
+		} catch (UncheckedIOException e){
+			assertTrue(e.getCause().getMessage().contains("failed earlier"));
+		}
+		assertTrue(service.getAnagrams("read", null).contains("dear"));
+	}
+
+	public void testCorruptSnapshotRefusesToStart() throws IOException {
+		DurableAnagramCorpusService service = open();
+		service.deleteAllWords();
+		service.snapshot();
+		service.close();
+		File snapshotFile = DurableAnagramCorpusService.snapshotFile(directory, WriteAheadLog.segments(directory).get(0));
+		RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+		try {
+			file.setLength(file.length() - 1);
+		} finally {
+			file.close();
+		}
+		try {
+			open();
+			fail("Expected a corrupt snapshot to stop the service from starting");
+		} catch (IOException e){
+			assertTrue(e.getMessage().contains(snapshotFile.getName()));
+		}
+	}
+}
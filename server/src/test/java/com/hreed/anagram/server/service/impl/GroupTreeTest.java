@@ -0,0 +1,135 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class GroupTreeTest extends TestCase {
+
+	public void testTreeMatchesTheSetsThroughRandomChanges() {
+		Random random = new Random(42);
+		Map<AnagramKey, WordGroup> model = new HashMap<AnagramKey, WordGroup>();
+		GroupTree tree = GroupTree.EMPTY;
+		for (int i = 0; i < 20000; i++) {
+			String word = word(random.nextInt(500));
+			AnagramKey key = AnagramKey.of(word);
+			WordGroup previous = model.get(key);
+			if (previous != null && random.nextInt(3) == 0) {
+				tree = tree.without(key, previous.size());
+				model.remove(key);
+			} else {
+				//Sets of a few sizes, so sets keep moving between sizes
+				WordGroup group = WordGroup.of(words(word, 1 + random.nextInt(4)));
+				tree = tree.with(key, previous == null ? 0 : previous.size(), group);
+				model.put(key, group);
+			}
+			if (i % 1000 == 0) {
+				assertSameSets(model, tree);
+			}
+		}
+		assertSameSets(model, tree);
+		assertEquals(tree.size(), GroupTree.of(model).size());
+		assertEquals(list(GroupTree.of(model).iterator(1, null)), list(tree.iterator(1, null)));
+	}
+
+	public void testOlderTreesAreUnchanged() {
+		Map<AnagramKey, WordGroup> model = new HashMap<AnagramKey, WordGroup>();
+		for (int i = 0; i < 100; i++) {
+			model.put(AnagramKey.of(word(i)), WordGroup.of(words(word(i), 1 + i % 3)));
+		}
+		GroupTree before = GroupTree.of(model);
+		List<AnagramKey> listed = list(before.iterator(1, null));
+
+		GroupTree after = before;
+		for (int i = 0; i < 100; i += 2) {
+			AnagramKey key = AnagramKey.of(word(i));
+			after = after.without(key, model.get(key).size());
+		}
+		after = after.with(AnagramKey.of(word(1)), 2, WordGroup.of(words(word(1), 4)));
+
+		assertEquals(listed, list(before.iterator(1, null)));
+		assertEquals(100, before.size());
+		assertEquals(3, before.largestSize());
+		assertEquals(50, after.size());
+		assertEquals(4, after.largestSize());
+		//Removing a set that isn't there changes nothing
+		assertSame(after, after.without(AnagramKey.of(word(0)), 1));
+	}
+
+	public void testIteratorStartsAfterTheGivenKey() {
+		Map<AnagramKey, WordGroup> model = new HashMap<AnagramKey, WordGroup>();
+		for (String word : Arrays.asList("b", "c", "d", "e")) {
+			model.put(AnagramKey.of(word), WordGroup.of(words(word, 2)));
+		}
+		model.put(AnagramKey.of("f"), WordGroup.of(words("f", 3)));
+		GroupTree tree = GroupTree.of(model);
+		List<AnagramKey> all = list(tree.iterator(2, null));
+		assertEquals(5, all.size());
+		assertEquals(AnagramKey.of("f"), all.get(4));
+
+		for (int i = 0; i < all.size(); i++) {
+			int size = model.get(all.get(i)).size();
+			assertEquals(all.subList(i + 1, all.size()), list(tree.iterator(size, all.get(i))));
+		}
+		//A key that isn't in the tree still starts from the right place
+		AnagramKey missing = AnagramKey.of("cc");
+		List<AnagramKey> after = list(tree.iterator(2, missing));
+		for (AnagramKey key : all.subList(0, 4)) {
+			assertEquals(AnagramKey.PACKED_ORDER.compare(key, missing) > 0, after.contains(key));
+		}
+		assertTrue(after.contains(AnagramKey.of("f")));
+		assertTrue(list(tree.iterator(4, null)).isEmpty());
+		assertTrue(list(GroupTree.EMPTY.iterator(1, null)).isEmpty());
+		assertEquals(0, GroupTree.EMPTY.largestSize());
+	}
+
+	private static void assertSameSets(Map<AnagramKey, WordGroup> model, GroupTree tree) {
+		assertEquals(model.size(), tree.size());
+		List<AnagramKey> listed = list(tree.iterator(1, null));
+		assertEquals(model.size(), listed.size());
+		int largest = 0;
+		for (int i = 0; i < listed.size(); i++) {
+			assertTrue(model.containsKey(listed.get(i)));
+			if (i > 0) {
+				int previousSize = model.get(listed.get(i - 1)).size();
+				int size = model.get(listed.get(i)).size();
+				assertTrue(previousSize < size || (previousSize == size && AnagramKey.PACKED_ORDER.compare(listed.get(i - 1), listed.get(i)) < 0));
+			}
+			largest = Math.max(largest, model.get(listed.get(i)).size());
+		}
+		assertEquals(largest, tree.largestSize());
+		//An AVL tree is never more than about 1.44 log2(n) high
+		assertTrue(tree.height() <= 1.45 * Math.log(tree.size() + 2) / Math.log(2));
+	}
+
+	private static List<AnagramKey> list(Iterator<GroupTree.Node> nodes) {
+		List<AnagramKey> keys = new ArrayList<AnagramKey>();
+		while (nodes.hasNext()) {
+			keys.add(nodes.next().key);
+		}
+		return keys;
+	}
+
+	//A letter repeated a different number of times for each i, so every word has its own key
+	private static String word(int i) {
+		StringBuilder word = new StringBuilder();
+		for (int n = 0; n <= i / 26; n++) {
+			word.append((char) ('a' + i % 26));
+		}
+		return word.toString();
+	}
+
+	private static List<String> words(String word, int count) {
+		List<String> words = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			words.add(word + i);
+		}
+		return words;
+	}
+}
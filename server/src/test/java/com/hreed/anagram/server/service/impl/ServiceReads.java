@@ -0,0 +1,60 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.hreed.anagram.server.service.AnagramCorpusService;
+import com.hreed.anagram.server.service.AnagramGroupVisitor;
+import com.hreed.anagram.server.service.GroupCursor;
+
+/**
+ * Reads the tests of every storage engine compare between engines: the JSON a lookup writes, and every page of a listing.
+ */
+final class ServiceReads {
+
+	private ServiceReads() {
+	}
+
+	static String json(AnagramCorpusService service, String word, Integer limit, boolean caseInsensitive) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		service.writeAnagramsJson(word, limit, caseInsensitive, out);
+		return out.toString("UTF-8");
+	}
+
+	/**
+	 * @return Every anagram set of at least the given size, read a page of limit sets at a time
+	 */
+	static List<List<String>> pages(AnagramCorpusService service, int size, int limit) throws IOException {
+		List<List<String>> groups = new ArrayList<List<String>>();
+		AnagramGroupVisitor visitor = collector(groups);
+		GroupCursor cursor = service.visitAnagramGroupsBySize(size, null, limit, visitor);
+		while (cursor != null) {
+			cursor = service.visitAnagramGroupsBySize(size, cursor, limit, visitor);
+		}
+		return groups;
+	}
+
+	/**
+	 * @return The largest anagram sets, read a page of limit sets at a time
+	 */
+	static List<List<String>> largestPages(AnagramCorpusService service, int limit) throws IOException {
+		List<List<String>> groups = new ArrayList<List<String>>();
+		AnagramGroupVisitor visitor = collector(groups);
+		GroupCursor cursor = service.visitLargestAnagramSets(null, limit, visitor);
+		while (cursor != null) {
+			cursor = service.visitLargestAnagramSets(cursor, limit, visitor);
+		}
+		return groups;
+	}
+
+	private static AnagramGroupVisitor collector(final List<List<String>> groups) {
+		return new AnagramGroupVisitor() {
+			public void visit(Set<String> group) {
+				groups.add(new ArrayList<String>(group));
+			}
+		};
+	}
+}
@@ -0,0 +1,90 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import junit.framework.TestCase;
+
+public class ShardRingTest extends TestCase {
+
+	private static final List<String> NODES = Arrays.asList("http://localhost:3001", "http://localhost:3002", "http://localhost:3003", "http://localhost:3004");
+
+	public void testKeysAreSpreadEvenly() {
+		ShardRing ring = new ShardRing(NODES);
+		int[] counts = new int[NODES.size()];
+		List<AnagramKey> keys = keys(40000);
+		for (AnagramKey key : keys) {
+			counts[ring.shardOf(key)]++;
+		}
+		for (int count : counts) {
+			assertTrue(Arrays.toString(counts), Math.abs(count - keys.size() / NODES.size()) < keys.size() / NODES.size() / 5);
+		}
+	}
+
+	public void testAddingANodeOnlyMovesItsShare() {
+		ShardRing before = new ShardRing(NODES);
+		List<String> more = new ArrayList<String>(NODES);
+		more.add("http://localhost:3005");
+		ShardRing after = new ShardRing(more);
+		int moved = 0;
+		List<AnagramKey> keys = keys(40000);
+		for (AnagramKey key : keys) {
+			if (!before.nodeFor(key).equals(after.nodeFor(key))) {
+				//Keys only ever move onto the new node, never between the old ones
+				assertEquals("http://localhost:3005", after.nodeFor(key));
+				moved++;
+			}
+		}
+		assertTrue(moved > keys.size() / 8);
+		assertTrue(moved < keys.size() / 4);
+	}
+
+	public void testEveryCapitalizationIsOnTheSameNode() {
+		ShardRing ring = new ShardRing(NODES);
+		for (String word : Arrays.asList("read", "Dear", "daRe", "stop", "Pots")) {
+			assertEquals(ring.shardOf(AnagramKey.foldedOf(word)), ring.shardOf(AnagramKey.of(word)));
+			assertEquals(ring.shardOf(AnagramKey.of(word.toLowerCase())), ring.shardOf(AnagramKey.of(word)));
+		}
+		assertEquals(ring.shardOf(AnagramKey.of("read")), ring.shardOf(AnagramKey.foldedOf("DARE")));
+	}
+
+	public void testPartitionsSplitTheKeysBetweenTheNodes() {
+		String nodes = " http://localhost:3001/, http://localhost:3002,http://localhost:3003 ";
+		List<Predicate<AnagramKey>> partitions = new ArrayList<Predicate<AnagramKey>>();
+		for (String self : Arrays.asList("http://localhost:3001", "http://localhost:3002/", " http://localhost:3003")) {
+			partitions.add(ShardRing.partition(nodes, self));
+		}
+		for (AnagramKey key : keys(1000)) {
+			int owners = 0;
+			for (Predicate<AnagramKey> partition : partitions) {
+				owners += partition.test(key) ? 1 : 0;
+			}
+			assertEquals(1, owners);
+		}
+		assertNull(ShardRing.partition("", "http://localhost:3001"));
+		assertNull(ShardRing.parse(" "));
+		assertEquals(Arrays.asList("http://localhost:3001", "http://localhost:3002", "http://localhost:3003"), ShardRing.parse(nodes).nodes());
+		try {
+			ShardRing.partition(nodes, "http://localhost:3009");
+			fail("A node that isn't in the list has no share");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	private static List<AnagramKey> keys(int count) {
+		Random random = new Random(42);
+		List<AnagramKey> keys = new ArrayList<AnagramKey>();
+		for (int i = 0; i < count; i++) {
+			char[] letters = new char[3 + random.nextInt(8)];
+			for (int c = 0; c < letters.length; c++) {
+				letters[c] = (char) ('a' + random.nextInt(26));
+			}
+			keys.add(AnagramKey.of(new String(letters)));
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,174 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.hreed.anagram.server.App;
+import com.hreed.anagram.server.service.AnagramCorpusService;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Starts three real nodes on free local ports, each holding its share of the dictionary, and checks that the router in front of them
+ * answers everything exactly the way a single server holding the whole dictionary does.
+ */
+public class ShardedAnagramCorpusServiceTest extends TestCase {
+
+	private static final int NODE_COUNT = 3;
+
+	private static List<ConfigurableApplicationContext> nodes;
+	private static ShardedAnagramCorpusService router;
+	private static AnagramCorpusServiceInMemory heapDictionary;
+
+	/**
+	 * Starts the nodes once for every test, and shuts them down again after the last one.
+	 */
+	public static Test suite() {
+		return new TestSetup(new TestSuite(ShardedAnagramCorpusServiceTest.class)) {
+			@Override
+			protected void setUp() throws Exception {
+				startNodes();
+			}
+
+			@Override
+			protected void tearDown() throws Exception {
+				stopNodes();
+			}
+		};
+	}
+
+	private static void startNodes() throws IOException {
+		List<String> urls = new ArrayList<String>();
+		for (int i = 0; i < NODE_COUNT; i++) {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				urls.add("http://localhost:" + socket.getLocalPort());
+			}
+		}
+		String shardNodes = String.join(",", urls);
+		nodes = new ArrayList<ConfigurableApplicationContext>();
+		for (String url : urls) {
+			nodes.add(SpringApplication.run(App.class, "--server.port=" + url.substring(url.lastIndexOf(':') + 1), "--spring.jmx.enabled=false",
+					"--anagram.shard.nodes=" + shardNodes, "--anagram.shard.self=" + url));
+		}
+		router = new ShardedAnagramCorpusService(shardNodes, ShardedAnagramCorpusService.DEFAULT_TIMEOUT_MILLIS);
+		heapDictionary = new AnagramCorpusServiceInMemory();
+		//Room for the phrase searches to finish on a slow machine, so the router and the single server can be compared
+		router.configureSearch(AnagramCorpusServiceInMemory.DEFAULT_SEARCH_MAX_RESULTS, 10000);
+		heapDictionary.configureSearch(AnagramCorpusServiceInMemory.DEFAULT_SEARCH_MAX_RESULTS, 10000);
+	}
+
+	private static void stopNodes() {
+		for (ConfigurableApplicationContext node : nodes) {
+			node.close();
+		}
+		nodes = null;
+		router = null;
+		heapDictionary = null;
+	}
+
+	public void testEachNodeOnlyHoldsItsShare() {
+		long total = wordCount(heapDictionary);
+		long words = 0;
+		for (ConfigurableApplicationContext node : nodes) {
+			long nodeWords = wordCount(node.getBean(AnagramCorpusService.class));
+			assertTrue(nodeWords < total / 2);
+			words += nodeWords;
+		}
+		assertEquals(total, words);
+		assertEquals(total, ((Number) router.getMemoryFootprint().get("word_count")).longValue());
+	}
+
+	public void testReadsMatchASingleServer() throws IOException {
+		assertEquals(heapDictionary.getCorpusMetadata(), router.getCorpusMetadata());
+		List<String> words = new ArrayList<String>();
+		for (Set<String> group : heapDictionary.corpusGroups().values()) {
+			words.addAll(group);
+		}
+		for (int i = 0; i < words.size(); i += 997) {
+			String word = words.get(i);
+			assertEquals(new ArrayList<String>(heapDictionary.getAnagrams(word, null)), new ArrayList<String>(router.getAnagrams(word, null)));
+			assertEquals(new ArrayList<String>(heapDictionary.getAnagramsCaseInsensitive(word, 2)), new ArrayList<String>(router.getAnagramsCaseInsensitive(word, 2)));
+			assertEquals(ServiceReads.json(heapDictionary, word.toUpperCase(), 3, true), ServiceReads.json(router, word.toUpperCase(), 3, true));
+		}
+		assertEquals(ServiceReads.json(heapDictionary, "r&ad", null, false), ServiceReads.json(router, "r&ad", null, false));
+		assertEquals(heapDictionary.getLargestAnagramSets(), router.getLargestAnagramSets());
+		assertEquals(heapDictionary.getAnagramGroupsBySize(5), router.getAnagramGroupsBySize(5));
+		assertEquals(ServiceReads.pages(heapDictionary, 4, 250), ServiceReads.pages(router, 4, 250));
+		assertEquals(ServiceReads.largestPages(heapDictionary, 1), ServiceReads.largestPages(router, 1));
+	}
+
+	public void testSearchesMatchASingleServer() {
+		assertEquals(heapDictionary.getWildcardAnagrams("re?d", null, true), router.getWildcardAnagrams("re?d", null, true));
+		assertEquals(new ArrayList<String>(heapDictionary.getWildcardAnagrams("st??e", 10, false)), new ArrayList<String>(router.getWildcardAnagrams("st??e", 10, false)));
+		try {
+			router.getWildcardAnagrams("r????d", null, false);
+			fail("The nodes' limit on blanks should come back as a bad query");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("blanks"));
+		}
+		assertEquals(heapDictionary.getSubAnagrams("stare", null, null, false), router.getSubAnagrams("stare", null, null, false));
+		assertEquals(heapDictionary.getSubAnagrams("Dormitory", null, 20, true), router.getSubAnagrams("Dormitory", null, 20, true));
+		assertEquals(heapDictionary.getAnagramPhrases("dormitory", 10, null, false), router.getAnagramPhrases("dormitory", 10, null, false));
+	}
+
+	/**
+	 * A node sends at most its maximum number of sub-anagrams at once, longest first, which for this rack leaves out short words that
+	 * the phrases need. The router pages through every node's words, so it still finds the same phrases a single server does.
+	 */
+	@SuppressWarnings("unchecked")
+	public void testPhrasesFromARackOverTheResultCap() {
+		List<String> capped = (List<String>) heapDictionary.getSubAnagrams("conversationalist", null, null, false).get("anagrams");
+		assertEquals(AnagramCorpusServiceInMemory.DEFAULT_SEARCH_MAX_RESULTS, capped.size());
+		Map<String, Object> phrases = heapDictionary.getAnagramPhrases("conversationalist", 100, 2, false);
+		assertEquals(Boolean.FALSE, phrases.get("timed_out"));
+		Set<String> beyondCap = new HashSet<String>();
+		for (String phrase : (List<String>) phrases.get("phrases")) {
+			beyondCap.addAll(Arrays.asList(phrase.split(" ")));
+		}
+		beyondCap.removeAll(capped);
+		assertFalse(beyondCap.isEmpty());
+		assertEquals(phrases, router.getAnagramPhrases("conversationalist", 100, 2, false));
+	}
+
+	/**
+	 * Changes go to the one node holding the words' key, and show up through the router straight away.
+	 */
+	public void testChangesGoToTheNodeHoldingTheKey() {
+		long version = router.getSnapshot().getVersion();
+		router.addWords(new HashSet<String>(Arrays.asList("zzqx", "xqzz", "Xzqz", "qqxz")));
+		assertEquals(Arrays.asList("Xzqz", "xqzz"), new ArrayList<String>(router.getAnagramsCaseInsensitive("zzqx", null)));
+		assertEquals(Arrays.asList("qqxz"), new ArrayList<String>(router.getAnagrams("xzqq", null)));
+		assertTrue(router.getSnapshot().getVersion() > version);
+		int owners = 0;
+		for (ConfigurableApplicationContext node : nodes) {
+			owners += node.getBean(AnagramCorpusService.class).getAnagrams("zzqx", null).isEmpty() ? 0 : 1;
+		}
+		assertEquals(1, owners);
+
+		router.deleteWord("xqzz");
+		assertEquals(Arrays.asList("Xzqz"), new ArrayList<String>(router.getAnagramsCaseInsensitive("zzqx", null)));
+		router.deleteWord("Xzqz");
+		router.deleteAnagrams("zzqx");
+		router.deleteAnagrams("qqxz");
+		assertTrue(router.getAnagramsCaseInsensitive("xqzz", null).isEmpty());
+		assertEquals(heapDictionary.getCorpusMetadata(), router.getCorpusMetadata());
+	}
+
+	private static long wordCount(AnagramCorpusService service) {
+		return ((Number) service.getCorpusMetadata().get("word_count")).longValue();
+	}
+
+	//Every page of the sets of at least the given size, fetched with the given limit
+}
@@ -0,0 +1,89 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import com.hreed.anagram.server.metrics.MetricsRegistry;
+
+import junit.framework.TestCase;
+
+public class StorageConfigTest extends TestCase {
+
+	public void testSupportedStorageIsAccepted() {
+		new StorageConfig(StorageConfig.HEAP, "");
+		new StorageConfig(StorageConfig.ARENA, "data");
+		new StorageConfig(StorageConfig.SHARDED, " ");
+	}
+
+	public void testUnknownStorageIsRejected() {
+		try {
+			new StorageConfig("disk", "");
+			fail("Expected unknown storage to be rejected");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("disk"));
+		}
+	}
+
+	public void testShardedStorageWithWriteAheadLogIsRejected() {
+		try {
+			new StorageConfig(StorageConfig.SHARDED, "data");
+			fail("Expected a write-ahead log on the router to be rejected");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("anagram.wal.dir"));
+		}
+	}
+
+	public void testBlankWriteAheadLogDirectoryServesTheEngine() throws Exception {
+		AnagramCorpusServiceInMemory engine = new AnagramCorpusServiceInMemory(null, null, null, false);
+		StorageConfig.Storage storage = new StorageConfig(StorageConfig.HEAP, " ").anagramCorpusStorage(
+				new Provider<RestorableAnagramCorpusService>(engine), new Provider<ShardedAnagramCorpusService>(null), new Provider<MetricsRegistry>(null), false, 0);
+		assertSame(engine, storage.service());
+		storage.close();
+	}
+
+	public void testWriteAheadLogDirectoryPutsTheLogInFront() throws Exception {
+		File directory = Files.createTempDirectory("storage-config").toFile();
+		try {
+			AnagramCorpusServiceInMemory engine = new AnagramCorpusServiceInMemory(null, null, null, false);
+			StorageConfig.Storage storage = new StorageConfig(StorageConfig.HEAP, directory.getPath()).anagramCorpusStorage(
+					new Provider<RestorableAnagramCorpusService>(engine), new Provider<ShardedAnagramCorpusService>(null), new Provider<MetricsRegistry>(null), false, 0);
+			assertTrue(storage.service() instanceof DurableAnagramCorpusService);
+			storage.close();
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	private static final class Provider<T> implements ObjectProvider<T> {
+
+		private final T object;
+
+		Provider(T object) {
+			this.object = object;
+		}
+
+		public T getObject() {
+			if (object == null) {
+				throw new IllegalStateException("No bean");
+			}
+			return object;
+		}
+
+		public T getObject(Object... args) {
+			return getObject();
+		}
+
+		public T getIfAvailable() {
+			return object;
+		}
+
+		public T getIfUnique() {
+			return object;
+		}
+	}
+}
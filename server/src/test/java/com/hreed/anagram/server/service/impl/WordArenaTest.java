@@ -0,0 +1,122 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class WordArenaTest extends TestCase {
+
+	private static WordArena arena(String... words) {
+		Map<AnagramKey, Set<String>> groups = new HashMap<AnagramKey, Set<String>>();
+		for (String word : words) {
+			AnagramKey key = AnagramKey.of(word);
+			if (!groups.containsKey(key)) {
+				groups.put(key, new HashSet<String>());
+			}
+			groups.get(key).add(word);
+		}
+		return WordArena.build(groups);
+	}
+
+	public void testExactSetsAreRunsOfTheirFoldedSet() {
+		WordArena arena = arena("read", "dear", "dare", "Read", "Dear", "Dare", "Ared", "stop", "pots", "Spot");
+		assertEquals(10, arena.wordCount());
+		//Ared, Dare/Dear, Read, dare/dear/read, Spot, pots/stop
+		assertEquals(6, arena.groupCount());
+		assertEquals(2, arena.foldedCount());
+
+		assertEquals(Arrays.asList("dare", "dear"), new ArrayList<String>(arena.group(arena.groupId(AnagramKey.of("read")), "read", null)));
+		assertEquals(Arrays.asList("Dare", "Dear"), new ArrayList<String>(arena.group(arena.groupId(AnagramKey.of("Dear")), null, null)));
+		assertEquals(Arrays.asList("Read"), new ArrayList<String>(arena.group(arena.groupId(AnagramKey.of("Rade")), null, null)));
+		assertEquals(-1, arena.groupId(AnagramKey.of("Erad")));
+		assertEquals(-1, arena.groupId(AnagramKey.of("Tops")));
+		assertEquals(-1, arena.foldedId(AnagramKey.foldedOf("reads")));
+
+		int folded = arena.foldedId(AnagramKey.foldedOf("READ"));
+		assertEquals(AnagramKey.foldedOf("read"), arena.foldedKey(folded));
+		assertEquals(Arrays.asList("Dare", "Dear", "Read", "dare", "dear"), new ArrayList<String>(arena.folded(folded, "Ared", 5)));
+		for (int group = arena.firstGroupOf(folded); group < arena.endGroupOf(folded); group++) {
+			assertEquals(folded, arena.foldedIdOf(group));
+			assertEquals(AnagramKey.foldedOf("read"), arena.groupKey(group).folded());
+		}
+	}
+
+	public void testViewsMatchWordGroups() {
+		WordArena arena = arena("read", "dear", "dare", "ared");
+		Set<String> view = arena.group(arena.groupId(AnagramKey.of("dear")), "dear", 2);
+		assertEquals(WordGroup.of(Arrays.asList("read", "dear", "dare", "ared")).view("dear", 2), view);
+		assertTrue(view.contains("dare"));
+		assertFalse(view.contains("dear"));
+		assertFalse(view.contains("read"));
+		assertTrue(arena.group(arena.groupId(AnagramKey.of("dear")), "dear", 0).isEmpty());
+		assertTrue(arena.group(arena.groupId(AnagramKey.of("dear")), "dear", -1).isEmpty());
+	}
+
+	public void testJsonIsWrittenFromTheBytes() throws IOException {
+		WordArena arena = arena("read", "dear", "dare", "Read");
+		int group = arena.groupId(AnagramKey.of("read"));
+		assertEquals("{\"anagrams\":[\"dare\",\"dear\"]}", json(arena, group, false, "read", null));
+		assertEquals("{\"anagrams\":[\"dear\"]}", json(arena, group, false, "dare", 1));
+		assertEquals("{\"anagrams\":[]}", json(arena, group, false, "dare", 0));
+		int folded = arena.foldedId(AnagramKey.foldedOf("read"));
+		assertEquals("{\"anagrams\":[\"Read\",\"dare\",\"dear\",\"read\"]}", json(arena, folded, true, "r&ad", null));
+	}
+
+	private static String json(WordArena arena, int id, boolean folded, String word, Integer limit) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (folded) {
+			arena.writeFoldedJson(id, word, limit, out);
+		} else {
+			arena.writeGroupJson(id, word, limit, out);
+		}
+		return out.toString("UTF-8");
+	}
+
+	public void testSizeOrderAndMaskRanges() {
+		WordArena arena = arena("read", "dear", "dare", "stop", "pots", "tops", "spot", "ab", "ba", "cat", "Tac");
+		List<Integer> sizes = new ArrayList<Integer>();
+		for (int i = 0; i < arena.sizeOrderLength(); i++) {
+			sizes.add(arena.groupSize(arena.sizeOrderGroup(i)));
+		}
+		assertEquals(Arrays.asList(1, 1, 2, 3, 4), sizes);
+		assertEquals(2, arena.sizeOrderStart(2, null));
+		assertEquals(3, arena.sizeOrderStart(2, AnagramKey.of("ab")));
+		assertEquals(5, arena.sizeOrderStart(5, null));
+		AnagramKey firstSingle = arena.groupKey(arena.sizeOrderGroup(0));
+		assertEquals(1, arena.sizeOrderStart(1, firstSingle));
+
+		int catMask = AnagramKey.of("cat").letterMask();
+		int first = arena.firstWithMask(catMask);
+		assertEquals(first + 1, arena.endOfMask(catMask));
+		assertEquals(AnagramKey.foldedOf("cat"), arena.foldedKey(first));
+		assertEquals(-1, arena.firstWithMask(AnagramKey.of("xyz").letterMask()));
+		assertEquals(4, arena.letterMasks().size());
+		assertTrue(arena.letterMasks().contains(catMask));
+	}
+
+	public void testOverflowKeysAreFound() {
+		String longWord = "aaaaaaaaaaaaaaaaaab";
+		String anagram = "baaaaaaaaaaaaaaaaaa";
+		WordArena arena = arena(longWord, anagram, "ab");
+		assertFalse(AnagramKey.foldedOf(longWord).isPacked());
+		int folded = arena.foldedId(AnagramKey.foldedOf(longWord));
+		assertTrue(folded >= 0);
+		assertEquals(AnagramKey.foldedOf(longWord), arena.foldedKey(folded));
+		assertEquals(Arrays.asList(longWord), new ArrayList<String>(arena.group(arena.groupId(AnagramKey.of(anagram)), anagram, null)));
+	}
+
+	public void testEmptyArena() {
+		assertEquals(0, WordArena.EMPTY.wordCount());
+		assertEquals(-1, WordArena.EMPTY.foldedId(AnagramKey.foldedOf("read")));
+		assertEquals(0, WordArena.EMPTY.sizeOrderStart(1, null));
+		assertTrue(WordArena.EMPTY.letterMasks().isEmpty());
+	}
+}
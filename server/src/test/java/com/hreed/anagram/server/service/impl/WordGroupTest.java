@@ -0,0 +1,72 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class WordGroupTest extends TestCase {
+
+	public void testCopyOnWriteLeavesOriginalUntouched() {
+		WordGroup group = WordGroup.of(Arrays.asList("read", "dare", "read"));
+		assertEquals(new HashSet<String>(Arrays.asList("dare", "read")), group);
+
+		WordGroup added = group.with("dear");
+		assertEquals(2, group.size());
+		assertEquals(Arrays.asList("dare", "dear", "read"), Arrays.asList(added.toArray()));
+		assertSame(added, added.with("dear"));
+
+		WordGroup merged = added.withAll(Arrays.asList("ared", "read", "daer"));
+		assertEquals(Arrays.asList("ared", "daer", "dare", "dear", "read"), Arrays.asList(merged.toArray()));
+		assertSame(merged, merged.withAll(Arrays.asList("read", "dare")));
+
+		assertEquals(new HashSet<String>(Arrays.asList("dare", "dear")), added.without("read"));
+		assertSame(added, added.without("reads"));
+		assertNull(WordGroup.of(Collections.singleton("read")).without("read"));
+		assertNull(WordGroup.of(Collections.<String>emptyList()));
+	}
+
+	public void testViewSkipsWordAndStopsAtLimit() {
+		WordGroup group = WordGroup.of(Arrays.asList("read", "dear", "dare", "ared"));
+		assertEquals(Arrays.asList("ared", "dare", "read"), new ArrayList<String>(group.view("dear", null)));
+		assertEquals(Arrays.asList("dare", "dear"), new ArrayList<String>(group.view("ared", 2)));
+		assertEquals(Arrays.asList("ared", "dare"), new ArrayList<String>(group.view("read", 2)));
+		assertEquals(Arrays.asList("ared"), new ArrayList<String>(group.view("eard", 1)));
+		assertSame(group, group.view("eard", null));
+		assertTrue(group.view("read", 0).isEmpty());
+		assertTrue(group.view("read", -1).isEmpty());
+
+		Set<String> view = group.view("dare", 2);
+		assertEquals(2, view.size());
+		assertTrue(view.contains("ared"));
+		assertTrue(view.contains("dear"));
+		assertFalse(view.contains("dare"));
+		assertFalse(view.contains("read"));
+		assertEquals(new HashSet<String>(Arrays.asList("ared", "dear")), view);
+		try {
+			view.remove("ared");
+			fail("Expected the view to be read-only");
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	public void testGroupsCannotBeChangedInPlace() {
+		WordGroup group = WordGroup.of(Arrays.asList("read", "dare"));
+		try {
+			group.add("dear");
+			fail("Expected the group to be immutable");
+		} catch (UnsupportedOperationException e) {
+		}
+		try {
+			group.iterator().remove();
+			fail("Expected the group to be immutable");
+		} catch (UnsupportedOperationException e) {
+		} catch (IllegalStateException e) {
+		}
+		assertTrue(group.contains("dare"));
+		assertFalse(group.contains(1));
+	}
+}
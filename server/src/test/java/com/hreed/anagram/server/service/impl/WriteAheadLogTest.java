@@ -0,0 +1,180 @@
+package com.hreed.anagram.server.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class WriteAheadLogTest extends TestCase {
+
+	private File directory;
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = Files.createTempDirectory("wal").toFile();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File file : directory.listFiles()){
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	public void testRecordsReplayInOrder() throws IOException {
+		WriteAheadLog log = new WriteAheadLog(directory, 1, true);
+		log.awaitDurable(log.append(WriteAheadLog.record(WriteAheadLog.ADD_WORDS, Arrays.asList("read", "dear", "caf\u00e9"))));
+		log.awaitDurable(log.append(WriteAheadLog.record(WriteAheadLog.DELETE_WORD, Collections.singletonList("dear"))));
+		log.awaitDurable(log.append(WriteAheadLog.record(WriteAheadLog.DELETE_ALL_WORDS, Collections.<String>emptyList())));
+		log.close();
+
+		List<String> replayed = replay(WriteAheadLog.segmentFile(directory, 1));
+		assertEquals(Arrays.asList("1[read, dear, caf\u00e9]", "2[dear]", "4[]"), replayed);
+	}
+
+	public void testReplayStopsAtTornRecord() throws IOException {
+		WriteAheadLog log = new WriteAheadLog(directory, 1, false);
+		log.append(WriteAheadLog.record(WriteAheadLog.ADD_WORDS, Arrays.asList("read", "dear")));
+		log.append(WriteAheadLog.record(WriteAheadLog.ADD_WORDS, Arrays.asList("stop", "pots")));
+		log.close();
+		File segmentFile = WriteAheadLog.segmentFile(directory, 1);
+		//Cut the second record short, as a crash part way through writing it would
+		RandomAccessFile file = new RandomAccessFile(segmentFile, "rw");
+		try {
+			file.setLength(file.length() - 3);
+		} finally {
+			file.close();
+		}
+		assertEquals(Arrays.asList("1[read, dear]"), replay(segmentFile));
+	}
+
+	public void testReplayStopsAtCorruptRecord() throws IOException {
+		WriteAheadLog log = new WriteAheadLog(directory, 1, false);
+		log.append(WriteAheadLog.record(WriteAheadLog.ADD_WORDS, Arrays.asList("read", "dear")));
+		long end = log.append(WriteAheadLog.record(WriteAheadLog.ADD_WORDS, Arrays.asList("stop", "pots")));
+		log.close();
+		File segmentFile = WriteAheadLog.segmentFile(directory, 1);
+		RandomAccessFile file = new RandomAccessFile(segmentFile, "rw");
+		try {
+			file.seek(end - 1);
+			file.write('x');
+		} finally {
+			file.close();
+		}
+		assertEquals(Arrays.asList("1[read, dear]"), replay(segmentFile));
+	}
+
+	public void testCorruptRecordMidSegmentFailsReplay() throws IOException {
+		WriteAheadLog log = new WriteAheadLog(directory, 1, false);
+		long end = log.append(WriteAheadLog.record(WriteAheadLog.ADD_WORDS, Arrays.asList("read", "dear")));
+		log.append(WriteAheadLog.record(WriteAheadLog.ADD_WORDS, Arrays.asList("stop", "pots")));
+		log.close();
+		File segmentFile = WriteAheadLog.segmentFile(directory, 1);
+		RandomAccessFile file = new RandomAccessFile(segmentFile, "rw");
+		try {
+			file.seek(end - 1);
+			file.write('x');
+		} finally {
+			file.close();
+		}
+		try {
+			replay(segmentFile);
+			fail("Expected replay to stop at the corrupt record rather than skip the rest of the segment");
+		} catch (IOException e){
+			assertTrue(e.getMessage().contains("byte 0"));
+		}
+	}
+
+	public void testReplayStopsAtTailOfZeros() throws IOException {
+		WriteAheadLog log = new WriteAheadLog(directory, 1, false);
+		log.append(WriteAheadLog.record(WriteAheadLog.ADD_WORDS, Arrays.asList("read", "dear")));
+		log.close();
+		File segmentFile = WriteAheadLog.segmentFile(directory, 1);
+		//The file grew but the record never made it to disk, as a crash can leave it on some file systems
+		RandomAccessFile file = new RandomAccessFile(segmentFile, "rw");
+		try {
+			file.setLength(file.length() + 100);
+		} finally {
+			file.close();
+		}
+		assertEquals(Arrays.asList("1[read, dear]"), replay(segmentFile));
+	}
+
+	public void testFailedLogRefusesMoreRecords() throws IOException {
+		WriteAheadLog log = new WriteAheadLog(directory, 1, false);
+		log.close();
+		log.checkWritable();
+		try {
+			log.awaitDurable(log.append(WriteAheadLog.record(WriteAheadLog.DELETE_WORD, Collections.singletonList("read"))));
+			fail("Expected writing to a closed log to fail");
+		} catch (IOException e){
+			//Expected
+		}
+		try {
+			log.checkWritable();
+			fail("Expected the failed log to refuse more records");
+		} catch (IOException e){
+			assertTrue(e.getMessage().contains("failed earlier"));
+		}
+	}
+
+	public void testConcurrentWritersShareSyncs() throws Exception {
+		final WriteAheadLog log = new WriteAheadLog(directory, 1, true);
+		final int writers = 8;
+		final int perWriter = 200;
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < writers; i++){
+			final String word = "word" + i;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					for (int j = 0; j < perWriter; j++){
+						log.awaitDurable(log.append(WriteAheadLog.record(WriteAheadLog.DELETE_WORD, Collections.singletonList(word))));
+					}
+				} catch (Throwable e){
+					failure.set(e);
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads){
+			thread.join();
+		}
+		log.close();
+		assertNull(failure.get());
+		assertEquals(writers * perWriter, log.records());
+		assertTrue(log.syncs() <= log.records());
+		assertEquals(writers * perWriter, replay(WriteAheadLog.segmentFile(directory, 1)).size());
+	}
+
+	public void testRotateStartsNewSegment() throws IOException {
+		WriteAheadLog log = new WriteAheadLog(directory, 3, true);
+		log.append(WriteAheadLog.record(WriteAheadLog.DELETE_WORD, Collections.singletonList("read")));
+		assertEquals(4, log.rotate());
+		log.awaitDurable(log.append(WriteAheadLog.record(WriteAheadLog.DELETE_WORD, Collections.singletonList("dear"))));
+		log.close();
+
+		assertEquals(Arrays.asList(3L, 4L), WriteAheadLog.segments(directory));
+		assertEquals(Arrays.asList("2[read]"), replay(WriteAheadLog.segmentFile(directory, 3)));
+		assertEquals(Arrays.asList("2[dear]"), replay(WriteAheadLog.segmentFile(directory, 4)));
+	}
+
+	private static List<String> replay(File segmentFile) throws IOException {
+		List<String> replayed = new ArrayList<String>();
+		WriteAheadLog.replay(segmentFile, (operation, words) -> replayed.add(operation + words.toString()));
+		return replayed;
+	}
+}
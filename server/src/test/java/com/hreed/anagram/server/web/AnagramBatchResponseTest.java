@@ -0,0 +1,52 @@
+package com.hreed.anagram.server.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import com.hreed.anagram.server.service.impl.AnagramCorpusServiceInMemory;
+
+import junit.framework.TestCase;
+
+public class AnagramBatchResponseTest extends TestCase {
+
+	private final AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+
+	@Override
+	protected void setUp() throws Exception {
+		service.deleteAllWords();
+		service.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare", "Dare")));
+	}
+
+	public void testJsonArrayAndObjectBodies() throws IOException {
+		String expected = "{\"word\":\"read\",\"anagrams\":[\"dare\",\"dear\"]}\n"
+				+ "{\"word\":\"zyx\",\"anagrams\":[]}\n";
+		assertEquals(expected, stream("[\"read\",\"zyx\"]", "application/json", null, false));
+		assertEquals(expected, stream("{\"limit\":{\"ignored\":[1]},\"words\":[\"read\",\"zyx\"],\"other\":1}", "application/json;charset=UTF-8", null, false));
+	}
+
+	public void testLineBodiesWithLimitAndCapitals() throws IOException {
+		assertEquals("{\"word\":\"read\",\"anagrams\":[\"dare\"]}\n{\"word\":\"dear\",\"anagrams\":[\"dare\"]}\n",
+				stream("read\r\n\n  dear  \n", "text/plain", 1, false));
+		assertEquals("{\"word\":\"read\",\"anagrams\":[\"Dare\",\"dare\",\"dear\"]}\n",
+				stream("\"read\"\n", AnagramBatchResponse.CONTENT_TYPE, null, true));
+	}
+
+	public void testInvalidJsonEndsTheStreamWithAnError() throws IOException {
+		String response = stream("[\"read\", 7]", "application/json", null, false);
+		String[] lines = response.split("\n");
+		assertEquals(2, lines.length);
+		assertEquals("{\"word\":\"read\",\"anagrams\":[\"dare\",\"dear\"]}", lines[0]);
+		assertTrue(lines[1], lines[1].startsWith("{\"success\":false,\"message\":"));
+	}
+
+	private String stream(String body, String contentType, Integer limit, boolean caseInsensitive) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new AnagramBatchResponse(service, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), contentType, limit, caseInsensitive)
+				.writeTo(output);
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
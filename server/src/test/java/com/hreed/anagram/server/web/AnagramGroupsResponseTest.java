@@ -0,0 +1,74 @@
+package com.hreed.anagram.server.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.hreed.anagram.server.service.AnagramCorpusSnapshot;
+import com.hreed.anagram.server.service.GroupCursor;
+import com.hreed.anagram.server.service.impl.AnagramCorpusServiceInMemory;
+
+import junit.framework.TestCase;
+
+public class AnagramGroupsResponseTest extends TestCase {
+
+	private final AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+
+	@Override
+	protected void setUp() throws Exception {
+		service.deleteAllWords();
+		service.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare", "slate", "stale", "steal", "least", "tab", "bat", "zebra")));
+	}
+
+	public void testGroupsArePagedByCursor() throws IOException {
+		AnagramCorpusSnapshot snapshot = service.getSnapshot();
+		String version = ",\"version\":" + snapshot.getVersion() + "}";
+		assertEquals("{\"anagrams\":[[\"bat\",\"tab\"]],\"next_cursor\":\"2-bat\"" + version,
+				stream(AnagramGroupsResponse.ofAtLeast(snapshot, 2, null, 1)));
+		assertEquals("{\"anagrams\":[[\"dare\",\"dear\",\"read\"]],\"next_cursor\":\"3-dare\"" + version,
+				stream(AnagramGroupsResponse.ofAtLeast(snapshot, 2, GroupCursor.parse("2-bat"), 1)));
+		assertEquals("{\"anagrams\":[[\"least\",\"slate\",\"stale\",\"steal\"]],\"next_cursor\":null" + version,
+				stream(AnagramGroupsResponse.ofAtLeast(snapshot, 2, GroupCursor.parse("3-dare"), null)));
+		assertEquals("{\"anagrams\":[],\"next_cursor\":null" + version,
+				stream(AnagramGroupsResponse.ofAtLeast(snapshot, 5, null, null)));
+	}
+
+	public void testLargestSetsStayOnTheirSizeAcrossPages() throws IOException {
+		service.addWords(new HashSet<String>(Arrays.asList("tesla", "braze")));
+		AnagramCorpusSnapshot snapshot = service.getSnapshot();
+		String version = ",\"version\":" + snapshot.getVersion() + "}";
+		assertEquals("{\"anagrams\":[[\"least\",\"slate\",\"stale\",\"steal\",\"tesla\"]],\"next_cursor\":null" + version,
+				stream(AnagramGroupsResponse.largest(snapshot, null, 1)));
+		//A page that started on sets of four only ever lists sets of four
+		assertEquals("{\"anagrams\":[],\"next_cursor\":null" + version,
+				stream(AnagramGroupsResponse.largest(snapshot, GroupCursor.parse("4-least"), null)));
+		service.deleteAllWords();
+		snapshot = service.getSnapshot();
+		assertEquals("{\"anagrams\":[],\"next_cursor\":null,\"version\":" + snapshot.getVersion() + "}",
+				stream(AnagramGroupsResponse.largest(snapshot, null, null)));
+	}
+
+	public void testPageIsListedFromTheSnapshotItWasGiven() throws IOException {
+		AnagramCorpusSnapshot snapshot = service.getSnapshot();
+		service.addWords(new HashSet<String>(Arrays.asList("tesla", "abt")));
+		service.deleteWord("read");
+		assertEquals("{\"anagrams\":[[\"least\",\"slate\",\"stale\",\"steal\"]],\"next_cursor\":null,\"version\":" + snapshot.getVersion() + "}",
+				stream(AnagramGroupsResponse.largest(snapshot, null, null)));
+		assertTrue(service.getSnapshot().getVersion() > snapshot.getVersion());
+	}
+
+	public void testFailure() throws IOException {
+		assertEquals("{\"success\":false,\"message\":\"Invalid value for cursor param\"}",
+				stream(AnagramGroupsResponse.failure("Invalid value for cursor param")));
+	}
+
+	private static String stream(StreamingResponseBody response) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		response.writeTo(output);
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,42 @@
+package com.hreed.anagram.server.web;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import com.hreed.anagram.server.service.impl.AnagramCorpusServiceInMemory;
+
+import junit.framework.TestCase;
+
+public class EndpointsTest extends TestCase {
+
+	public void testInvalidIntParamFallsBackToTheDefault() {
+		assertEquals(Integer.valueOf(5), Endpoints.parseIntParam("limit", "5"));
+		assertNull(Endpoints.parseIntParam("limit", null));
+		assertNull(Endpoints.parseIntParam("limit", "five"));
+	}
+
+	public void testRejectedRequestReportsTheMessage() {
+		assertEquals(Boolean.FALSE, Endpoints.rejected("upload", "too long").get("success"));
+		assertEquals("too long", Endpoints.rejected("upload", "too long").get("message"));
+	}
+
+	public void testInvalidGroupListingParamsAreRejected() throws Exception {
+		AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+		service.deleteAllWords();
+		service.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare")));
+
+		assertTrue(Endpoints.GroupListing.largest(null, "x").isValid());
+		assertFalse(Endpoints.GroupListing.ofAtLeast("x", null, null).isValid());
+		assertFalse(Endpoints.GroupListing.largest("not a cursor", null).isValid());
+		assertTrue(written(Endpoints.GroupListing.ofAtLeast("x", null, null), service).contains("Invalid value for size param"));
+		assertTrue(written(Endpoints.GroupListing.ofAtLeast("3", null, null), service).contains("dare"));
+	}
+
+	private String written(Endpoints.GroupListing listing, AnagramCorpusServiceInMemory service) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		listing.respond(service).writeTo(out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,116 @@
+package com.hreed.anagram.server.web;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.hreed.anagram.server.metrics.QueryTracker;
+import com.hreed.anagram.server.service.impl.AnagramCorpusServiceInMemory;
+
+import junit.framework.TestCase;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class ReactiveAnagramControllerTest extends TestCase {
+
+	private static final int WRITE_THREADS = 2;
+
+	private final AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+	private final QueryTracker queryTracker = new QueryTracker(10, 10, TimeUnit.MINUTES.toNanos(5), null);
+	private ReactiveAnagramController controller;
+
+	@Override
+	protected void setUp() throws Exception {
+		service.deleteAllWords();
+		controller = new ReactiveAnagramController(service, queryTracker, WRITE_THREADS);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		controller.close();
+		queryTracker.close();
+	}
+
+	public void testMoreUploadsThanWriterThreadsAllFinish() {
+		DefaultDataBufferFactory buffers = new DefaultDataBufferFactory();
+		List<Mono<Map<String, Object>>> uploads = new ArrayList<Mono<Map<String, Object>>>();
+		for (int i = 0; i < WRITE_THREADS * 3; i++) {
+			String words = "upload" + (char) ('a' + i) + "\nupload" + (char) ('a' + i) + "s\n";
+			//Held back for a moment, so every upload is waiting on its body at the same time
+			Flux<DataBuffer> body = Flux.just(buffers.wrap(words.getBytes(StandardCharsets.UTF_8))).delaySubscription(Duration.ofMillis(200));
+			uploads.add(controller.upload(WordListUpload.APPEND, body));
+		}
+		List<Map<String, Object>> results = Flux.merge(uploads).collectList().block(Duration.ofSeconds(30));
+
+		assertEquals(WRITE_THREADS * 3, results.size());
+		for (Map<String, Object> result : results) {
+			assertEquals(2L, result.get("added"));
+		}
+		assertEquals(WRITE_THREADS * 6, service.getCorpusMetadata().get("word_count"));
+	}
+
+	public void testBatchIsAnsweredAsTheBodyArrives() {
+		service.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare", "stop", "pots")));
+		DefaultDataBufferFactory buffers = new DefaultDataBufferFactory();
+		//The words are split across buffers, with the second held back
+		Flux<DataBuffer> body = Flux.concat(Flux.just(buffers.wrap("read\nst".getBytes(StandardCharsets.UTF_8))),
+				Flux.just(buffers.wrap("op\n".getBytes(StandardCharsets.UTF_8))).delaySubscription(Duration.ofMillis(100)));
+		String response = join(controller.batch(body, WordListUpload.TEXT, null, false, buffers));
+
+		String[] lines = response.split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0], lines[0].contains("\"dear\""));
+		assertTrue(lines[1], lines[1].contains("\"pots\""));
+	}
+
+	public void testListingsAreStreamedInChunks() {
+		Set<String> words = new HashSet<String>();
+		for (char first = 'a'; first <= 'z'; first++) {
+			for (char second = 'a'; second < first; second++) {
+				words.add("" + first + second + "x");
+				words.add("" + second + first + "x");
+			}
+		}
+		service.addWords(words);
+		DefaultDataBufferFactory buffers = new DefaultDataBufferFactory();
+		ResponseEntity<Flux<DataBuffer>> listing = controller.listing(Endpoints.GroupListing.ofAtLeast("2", null, null), buffers);
+		assertEquals(HttpStatus.OK, listing.getStatusCode());
+		List<DataBuffer> sent = listing.getBody().collectList().block(Duration.ofSeconds(30));
+		//325 sets, flushed every 64
+		assertTrue(sent.size() > 1);
+
+		String json = join(Flux.fromIterable(sent));
+		assertTrue(json.contains("\"abx\""));
+		assertTrue(json.endsWith("}"));
+
+		assertEquals(HttpStatus.BAD_REQUEST, controller.listing(Endpoints.GroupListing.ofAtLeast("two", null, null), buffers).getStatusCode());
+	}
+
+	private static String join(Flux<DataBuffer> body) {
+		StringBuilder joined = new StringBuilder();
+		for (DataBuffer buffer : body.collectList().block(Duration.ofSeconds(30))) {
+			joined.append(StandardCharsets.UTF_8.decode(buffer.asByteBuffer()));
+		}
+		return joined.toString();
+	}
+
+	public void testUnknownModeIsRejected() {
+		try {
+			controller.upload("merge", Flux.<DataBuffer>empty());
+			fail("Expected the mode to be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("merge"));
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.hreed.anagram.server.web;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import junit.framework.TestCase;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+public class StreamedResponseTest extends TestCase {
+
+	private final DefaultDataBufferFactory buffers = new DefaultDataBufferFactory();
+	private final Scheduler writers = Schedulers.newElastic("test-responses", 60, true);
+
+	@Override
+	protected void tearDown() throws Exception {
+		writers.dispose();
+	}
+
+	public void testEachFlushIsSentAsABuffer() {
+		StreamingResponseBody body = output -> {
+			output.write("first".getBytes(StandardCharsets.UTF_8));
+			output.flush();
+			output.write("second".getBytes(StandardCharsets.UTF_8));
+			output.write(',');
+			output.flush();
+			//Flushing with nothing written sends nothing
+			output.flush();
+			output.write("last".getBytes(StandardCharsets.UTF_8));
+		};
+		assertEquals(Arrays.asList("first", "second,", "last"), strings(StreamedResponse.of(body, buffers, writers).collectList().block(Duration.ofSeconds(30))));
+	}
+
+	public void testLargeWritesAreSplitIntoChunks() {
+		byte[] bytes = new byte[StreamedResponse.CHUNK_SIZE * 2 + 1];
+		List<DataBuffer> sent = StreamedResponse.of(output -> output.write(bytes), buffers, writers).collectList().block(Duration.ofSeconds(30));
+		assertEquals(3, sent.size());
+		assertEquals(StreamedResponse.CHUNK_SIZE, sent.get(0).readableByteCount());
+		assertEquals(StreamedResponse.CHUNK_SIZE, sent.get(1).readableByteCount());
+		assertEquals(1, sent.get(2).readableByteCount());
+	}
+
+	public void testBodyWaitsForTheClientToAskForMore() throws InterruptedException {
+		CountDownLatch secondSent = new CountDownLatch(1);
+		CountDownLatch stopped = new CountDownLatch(1);
+		StreamingResponseBody body = output -> {
+			try {
+				output.write('a');
+				output.flush();
+				output.write('b');
+				output.flush();
+				secondSent.countDown();
+				while (true){
+					output.write('c');
+					output.flush();
+				}
+			} finally {
+				stopped.countDown();
+			}
+		};
+		Client client = new Client();
+		StreamedResponse.of(body, buffers, writers).subscribe(client);
+		client.request(1);
+		assertTrue(client.received.await(30, TimeUnit.SECONDS));
+		assertFalse(secondSent.await(200, TimeUnit.MILLISECONDS));
+
+		//Going away stops the body at its next write
+		client.cancel();
+		assertTrue(stopped.await(30, TimeUnit.SECONDS));
+	}
+
+	public void testFailuresAreSentOn() {
+		try {
+			StreamedResponse.of(output -> {
+				throw new IOException("Failed");
+			}, buffers, writers).collectList().block(Duration.ofSeconds(30));
+			fail("Expected the body's failure");
+		} catch (RuntimeException e) {
+			assertEquals("Failed", e.getCause().getMessage());
+		}
+	}
+
+	private static List<String> strings(List<DataBuffer> sent) {
+		List<String> strings = new ArrayList<String>();
+		for (DataBuffer buffer : sent) {
+			strings.add(StandardCharsets.UTF_8.decode(buffer.asByteBuffer()).toString());
+		}
+		return strings;
+	}
+
+	//Asks for buffers one at a time, only when told to
+	private static final class Client extends BaseSubscriber<DataBuffer> {
+
+		private final CountDownLatch received = new CountDownLatch(1);
+
+		@Override
+		protected void hookOnSubscribe(Subscription subscription) {
+		}
+
+		@Override
+		protected void hookOnNext(DataBuffer buffer) {
+			received.countDown();
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.hreed.anagram.server.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPOutputStream;
+
+import com.hreed.anagram.server.service.impl.AnagramCorpusServiceInMemory;
+
+import junit.framework.TestCase;
+
+public class WordListUploadTest extends TestCase {
+
+	private static final Executor THREADS = runnable -> new Thread(runnable).start();
+
+	private final AnagramCorpusServiceInMemory service = new AnagramCorpusServiceInMemory();
+
+	@Override
+	protected void setUp() throws Exception {
+		service.deleteAllWords();
+		service.addWords(new HashSet<String>(Arrays.asList("read", "dear", "dare", "Dare")));
+	}
+
+	public void testRejectedLinesAreCountedByReason() throws IOException {
+		StringBuilder tooLong = new StringBuilder();
+		for (int i = 0; i <= WordListUpload.MAX_WORD_LENGTH; i++) {
+			tooLong.append('a');
+		}
+		Map<String, Object> result = upload("read\nDear\r\nstop\n  pots \nJean-Pierre\ncaf\u00e9\nsToP\n\nread\n" + tooLong + "\ntops", null);
+		assertEquals("append", result.get("mode"));
+		assertEquals(10L, result.get("lines"));
+		assertEquals(4L, result.get("added"));
+		Map<?, ?> rejected = (Map<?, ?>) result.get("rejected");
+		assertEquals(2L, rejected.get("duplicate"));
+		assertEquals(2L, rejected.get("non_roman"));
+		assertEquals(1L, rejected.get("capitalization"));
+		assertEquals(1L, rejected.get("too_long"));
+		assertEquals(Arrays.asList("Dare", "Dear", "dare", "dear"), Arrays.asList(service.getAnagramsCaseInsensitive("read", null).toArray()));
+		assertEquals(Arrays.asList("pots", "stop"), Arrays.asList(service.getAnagrams("tops", null).toArray()));
+	}
+
+	public void testLinesLongerThanTheBufferAreSkipped() throws IOException {
+		StringBuilder body = new StringBuilder("stop\n");
+		for (int i = 0; i < 200000; i++) {
+			body.append('a');
+		}
+		body.append("\npots\n");
+		Map<String, Object> result = upload(body.toString(), WordListUpload.APPEND);
+		assertEquals(3L, result.get("lines"));
+		assertEquals(2L, result.get("added"));
+		assertEquals(1L, ((Map<?, ?>) result.get("rejected")).get("too_long"));
+		assertEquals(6, service.getCorpusMetadata().get("word_count"));
+	}
+
+	/**
+	 * A gzipped list spanning several batches replaces the corpus, ending up with exactly the same words as adding them directly.
+	 */
+	public void testGzippedListReplacesTheCorpus() throws IOException {
+		AnagramCorpusServiceInMemory expected = new AnagramCorpusServiceInMemory();
+		expected.deleteAllWords();
+		Set<String> words = new HashSet<String>();
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+			for (int i = 0; i < WordListUpload.BATCH_SIZE * 3 + 7; i++) {
+				words.add(word(i));
+				out.write((word(i) + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		expected.addWords(words);
+		Map<String, Object> result = new WordListUpload(service, WordListUpload.REPLACE, THREADS).load(new ByteArrayInputStream(gzipped.toByteArray()));
+		assertEquals("replace", result.get("mode"));
+		assertEquals((long) words.size(), result.get("added"));
+		assertEquals(expected.getCorpusMetadata(), service.getCorpusMetadata());
+		assertEquals(expected.getLargestAnagramSets(), service.getLargestAnagramSets());
+		assertTrue(service.getAnagrams("dare", null).isEmpty());
+
+		//An empty list still replaces the corpus, leaving it empty
+		upload("", WordListUpload.REPLACE);
+		assertEquals(0, service.getCorpusMetadata().get("word_count"));
+	}
+
+	/**
+	 * If the corpus fails to take a batch, the upload stops reading and reports the failure, rather than waiting forever on the full queue.
+	 */
+	public void testFailureAddingWordsStopsTheUpload() throws IOException {
+		AnagramCorpusServiceInMemory failing = new AnagramCorpusServiceInMemory() {
+			@Override
+			public int addWords(Set<String> newWords) {
+				throw new IllegalStateException("Unable to add words");
+			}
+		};
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < WordListUpload.BATCH_SIZE * (WordListUpload.QUEUED_BATCHES + 3); i++) {
+			body.append(word(i)).append('\n');
+		}
+		try {
+			new WordListUpload(failing, WordListUpload.APPEND, THREADS).load(new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+			fail("The failure adding words should be reported");
+		} catch (IllegalStateException e) {
+			assertEquals("Unable to add words", e.getMessage());
+		}
+	}
+
+	public void testUnknownModeIsRejected() {
+		try {
+			new WordListUpload(service, "merge", THREADS);
+			fail("Only append and replace are allowed");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("merge"));
+		}
+	}
+
+	private Map<String, Object> upload(String body, String mode) throws IOException {
+		return new WordListUpload(service, mode, THREADS).load(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	//A different word for every i, all lowercase
+	private static String word(int i) {
+		StringBuilder word = new StringBuilder("w");
+		do {
+			word.append((char) ('a' + i % 26));
+			i /= 26;
+		} while (i > 0);
+		return word.toString();
+	}
+}
@@ -23,6 +23,14 @@ class AnagramClient
     res = http.request(req)
   end
 
+  def post_text(path, query=nil, body=nil, content_type='text/plain')
+    uri = build_uri(path, query)
+    req = Net::HTTP::Post.new(uri.request_uri, initheader = {'Content-Type' => content_type})
+    req.body = body
+    http = Net::HTTP.new(uri.host, uri.port)
+    res = http.request(req)
+  end
+
   def get(path, query=nil)
     Net::HTTP.get_response(build_uri(path, query))
   end
@@ -299,7 +299,7 @@ class TestCases < Test::Unit::TestCase
 
     body = JSON.parse(res.body)
 	
-	assert_equal(5, body.size)
+	assert_equal(6, body.size)
 	assert_equal(8, body['word_count'])
 	assert_equal(4, body['min_length'])
 	assert_equal(5, body['max_length'])
@@ -307,6 +307,86 @@ class TestCases < Test::Unit::TestCase
 	assert_equal('4.625', body['avg_length'])
   end
   
+  def test_bulk_upload_counts_rejected_lines
+  
+    res = @client.post_text('/words/bulk.json', nil, "stop\npots\nJean-Pierre\nsToP\nread\n\ntops\n")
+  
+    assert_equal('201', res.code, "Unexpected response code")
+
+    body = JSON.parse(res.body)
+	
+	assert_equal('append', body['mode'])
+	assert_equal(6, body['lines'])
+	assert_equal(3, body['added'])
+	assert_equal({"duplicate" => 1, "non_roman" => 1, "capitalization" => 1, "too_long" => 0}, body['rejected'])
+	
+	res = @client.get('/anagrams/read.json')
+	assert_equal(['dare', 'dear'], JSON.parse(res.body)['anagrams'])
+  end
+  
+  def test_bulk_upload_replaces_the_corpus
+  
+    res = @client.post_text('/words/bulk.json', 'mode=replace', "stop\npots\n")
+  
+    assert_equal('201', res.code, "Unexpected response code")
+	assert_equal(2, JSON.parse(res.body)['added'])
+	
+	res = @client.get('/anagrams/read.json')
+	assert_equal([], JSON.parse(res.body)['anagrams'])
+	
+    res = @client.post_text('/words/bulk.json', 'mode=merge', "stop\n")
+    assert_equal('400', res.code, "Unexpected response code")
+  end
+  
+  def test_recent_searches
+  
+    @client.get('/anagrams/stale.json')
+    @client.get('/anagrams/dear.json')
+  
+    res = @client.get('/recent.json', 'limit=2')
+  
+    assert_equal('200', res.code, "Unexpected response code")
+	
+	# newest first
+	assert_equal(['dear', 'stale'], JSON.parse(res.body)['recent'])
+  end
+  
+  def test_popular_searches
+  
+    3.times { @client.get('/anagrams/zqxj.json') }
+    @client.get('/anagrams/Jxqz.json')
+  
+    res = @client.get('/popular.json')
+  
+    assert_equal('200', res.code, "Unexpected response code")
+
+    body = JSON.parse(res.body)
+	words = Hash[body['words'].map { |count| [count['word'], count['count']] }]
+	keys = Hash[body['keys'].map { |count| [count['key'], count['count']] }]
+	
+	# words are counted as they were looked up, keys are counted case-folded
+	assert_equal(3, words['zqxj'])
+	assert_equal(1, words['Jxqz'])
+	assert_equal(4, keys['jqxz'])
+	# a handful of lookups is nowhere near enough to need sampling
+	assert_equal(1, body['sample_rate'])
+  end
+  
+  def test_metadata_with_length_counts
+  
+    res = @client.post('/words.json', nil, {"words" => ["least", "slate", "ad"] })
+  
+    res = @client.get('/metadata.json', 'lengths=true')
+  
+    assert_equal('200', res.code, "Unexpected response code")
+
+    body = JSON.parse(res.body)
+	
+	# counts of the words of each length, starting from length zero
+	assert_equal([0, 0, 1, 0, 3, 2], body['length_counts'])
+	assert_equal(6, body['word_count'])
+  end
+  
   def test_metadata_dictionary    
 	 
 	# refresh dataset
@@ -322,7 +402,7 @@ class TestCases < Test::Unit::TestCase
 	
 	#dev note: although there are 235886 entries in the dictionary, 
 	#two words include hyphens which violates the provided definition of a word as only consisting of the 26 roman characters.
-	assert_equal(5, body.size)
+	assert_equal(6, body.size)
 	assert_equal(235884, body['word_count'])
 	assert_equal(1, body['min_length'])
 	assert_equal(24, body['max_length'])
@@ -344,7 +424,7 @@ class TestCases < Test::Unit::TestCase
 
     body = JSON.parse(res.body)
 	
-	assert_equal(5, body.size)
+	assert_equal(6, body.size)
 	assert_equal(0, body['word_count'])
 	assert_equal(0, body['min_length'])
 	assert_equal(0, body['max_length'])
@@ -353,6 +433,26 @@ class TestCases < Test::Unit::TestCase
 	
   end
   
+  def test_memory_footprint
+	
+	#add more words to dictionary
+    res = @client.post('/words.json', nil, {"words" => ["least", "slate", "stale", "steal", "tales"] })
+    assert_equal('201', res.code, "Unexpected response code")
+	
+    res = @client.get('/memory.json')
+  
+    assert_equal('200', res.code, "Unexpected response code")
+
+    body = JSON.parse(res.body)
+	
+	assert_equal(8, body['word_count'])
+	assert_equal(37, body['raw_word_bytes'])
+	assert(body['structures'].size > 0)
+	assert_equal(body['structures'].values.inject(:+), body['total_bytes'])
+	assert(body['heap_used_bytes'] <= body['heap_max_bytes'])
+	
+  end
+  
   def test_largest_anagram_set_manual
 	
 	#add more words to dictionary
@@ -388,10 +488,12 @@ class TestCases < Test::Unit::TestCase
 	assert_equal(2, body['anagrams'].size)
 	assert_equal(3, body['anagrams'][0].size)
 	assert_equal(3, body['anagrams'][1].size)
+	# tied sets come back in no particular order
+	anagram_sets = body['anagrams'].map(&:sort).sort
 	expected_anagrams = %w(dare dear read)
-    assert_equal(expected_anagrams, body['anagrams'][0].sort)		
+    assert_equal(expected_anagrams, anagram_sets[0])		
 	expected_anagrams = %w(slate stale steal)
-    assert_equal(expected_anagrams, body['anagrams'][1].sort)	
+    assert_equal(expected_anagrams, anagram_sets[1])	
   end
   
   def test_largest_anagram_set_dictionary
@@ -410,12 +512,14 @@ class TestCases < Test::Unit::TestCase
 	assert_equal(9, body['anagrams'][0].size)
 	assert_equal(9, body['anagrams'][1].size)
 	assert_equal(9, body['anagrams'][2].size)
+	# tied sets come back in no particular order
+	anagram_sets = body['anagrams'].map(&:sort).sort
+	expected_anagrams = %w(angor argon goran grano groan nagor orang organ rogan)
+    assert_equal(expected_anagrams, anagram_sets[0])		
 	expected_anagrams = %w(caret carte cater crate creat creta react recta trace)
-    assert_equal(expected_anagrams, body['anagrams'][0].sort)		
+    assert_equal(expected_anagrams, anagram_sets[1])	
 	expected_anagrams = %w(ester estre reest reset steer stere stree terse tsere)
-    assert_equal(expected_anagrams, body['anagrams'][1].sort)	
-	expected_anagrams = %w(angor argon goran grano groan nagor orang organ rogan)
-    assert_equal(expected_anagrams, body['anagrams'][2].sort)		
+    assert_equal(expected_anagrams, anagram_sets[2])		
   end
   
   def test_largest_anagram_set_empty_dictionary
@@ -775,6 +879,312 @@ class TestCases < Test::Unit::TestCase
 
     expected_anagrams = %w(read)
     assert_equal(expected_anagrams, body['anagrams'].sort)
-  end  
+  end
+  
+  def test_sub_anagrams
+    
+	res = @client.post('/words.json', nil, {"words" => ["a", "ad", "red", "dares", "Ra"] })
+	
+	#every word spelled from some of the letters, longest first
+	res = @client.get('/subanagrams/reads.json')
+
+    assert_equal('200', res.code, "Unexpected response code")
+
+    body = JSON.parse(res.body)
+
+    assert_not_nil(body['anagrams'])
+    assert_equal(false, body['timed_out'])
+
+    expected_anagrams = %w(dares dare dear read red ad a)
+    assert_equal(expected_anagrams, body['anagrams'])
+  end
+  
+  def test_sub_anagrams_with_limit_and_proper_nouns
+    
+	res = @client.post('/words.json', nil, {"words" => ["a", "ad", "Ra"] })
+	
+	res = @client.get('/subanagrams/reads.json','limit=3&caseinsensitive=true')
+
+    assert_equal('200', res.code, "Unexpected response code")
+
+    body = JSON.parse(res.body)
+
+    expected_anagrams = %w(dare dear read)
+    assert_equal(expected_anagrams, body['anagrams'])
+	
+	res = @client.get('/subanagrams/ar.json','caseinsensitive=true')
+
+    body = JSON.parse(res.body)
+
+    expected_anagrams = %w(Ra a)
+    assert_equal(expected_anagrams, body['anagrams'])
+  end
+  
+  def test_anagram_phrases
+    
+	res = @client.post('/words.json', nil, {"words" => ["a", "ad", "red", "ear", "d"] })
+	
+	res = @client.get('/phrases/dearad.json')
+
+    assert_equal('200', res.code, "Unexpected response code")
+
+    body = JSON.parse(res.body)
+
+    assert_not_nil(body['phrases'])
+    assert_equal(false, body['timed_out'])
+    assert(body['phrases'].include?("dare ad"), "Missing two word phrase")
+    assert(body['phrases'].include?("ear ad d"), "Missing three word phrase")
+	
+	#every phrase uses exactly the letters given
+    body['phrases'].each do |phrase|
+      assert_equal("aadder", phrase.delete(' ').chars.sort.join)
+    end
+	
+	res = @client.get('/phrases/dearad.json','maxwords=2')
+
+    body = JSON.parse(res.body)
+
+    body['phrases'].each do |phrase|
+      assert(phrase.split(' ').size <= 2, "Phrase has too many words")
+    end
+  end
+  
+  def test_anagram_phrases_with_no_result
+    
+	res = @client.get('/phrases/zzz.json')
+
+    assert_equal('200', res.code, "Unexpected response code")
+
+    body = JSON.parse(res.body)
+
+    assert_equal(0, body['phrases'].size)
+  end
+  
+  def test_wildcard_anagrams
+    
+	res = @client.post('/words.json', nil, {"words" => ["reads", "ready", "Dare", "red"] })
+	
+	#the blank has to be URL encoded, a bare ? would start the query string
+	res = @client.get('/anagrams/de%3Fr.json')
+
+    assert_equal('200', res.code, "Unexpected response code")
+
+    body = JSON.parse(res.body)
+
+    assert_not_nil(body['anagrams'])
+
+    expected_anagrams = %w(dare dear read)
+    assert_equal(expected_anagrams, body['anagrams'].sort)
+	
+	res = @client.get('/anagrams/de%3Fr%3F.json')
+
+    body = JSON.parse(res.body)
+
+    expected_anagrams = %w(reads ready)
+    assert_equal(expected_anagrams, body['anagrams'].sort)
+  end
+  
+  def test_wildcard_anagrams_with_limit_and_case_insensitive_param
+    
+	res = @client.post('/words.json', nil, {"words" => ["Dare"] })
+	
+	res = @client.get('/anagrams/%3Fear.json','caseinsensitive=true')
+
+    body = JSON.parse(res.body)
+
+    expected_anagrams = %w(Dare dare dear read)
+    assert_equal(expected_anagrams, body['anagrams'].sort)
+	
+	res = @client.get('/anagrams/%3Fear.json','limit=1')
+
+    body = JSON.parse(res.body)
+
+    assert_equal(1, body['anagrams'].size)
+  end
+  
+  def test_wildcard_anagrams_with_too_many_blanks
+    
+	res = @client.get('/anagrams/%3F%3F%3F%3F.json')
+
+    assert_equal('400', res.code, "Unexpected response code")
+  end
+  
+  def test_metrics
+    
+	#start from just the words added in setup, in case the dictionary is still loaded
+	res = @client.delete('/words.json')
+	res = @client.post('/words.json', nil, {"words" => ["read", "dear", "dare"] })
+	res = @client.get('/anagrams/read.json')
+	
+	res = @client.get('/metrics.json')
+
+    assert_equal('200', res.code, "Unexpected response code")
+
+    body = JSON.parse(res.body)
+
+    assert(body['anagram_http_requests_total']['getAnagrams'] >= 1, "Request not counted")
+    assert(body['anagram_service_latency_seconds']['getAnagrams']['count'] >= 1, "Service call not timed")
+    assert_equal(3, body['anagram_corpus_words'])
+	
+	res = @client.get('/metrics')
+
+    assert_equal('200', res.code, "Unexpected response code")
+    assert(res.body.include?('anagram_http_latency_seconds_count{endpoint="getAnagrams"}'), "Missing text metrics")
+  end
+  
+  def test_fetching_anagrams_in_batch
+    
+	res = @client.post('/anagrams.json', nil, {"words" => ["read", "zyxwv", "dear"] })
+
+    assert_equal('200', res.code, "Unexpected response code")
+    assert(res['Content-Type'].start_with?('application/x-ndjson'), "Unexpected content type")
+
+    lines = res.body.lines.map { |line| JSON.parse(line) }
+
+    assert_equal(%w(read zyxwv dear), lines.map { |line| line['word'] })
+    assert_equal(%w(dare dear), lines[0]['anagrams'])
+    assert_equal([], lines[1]['anagrams'])
+    assert_equal(%w(dare read), lines[2]['anagrams'])
+  end
+  
+  def test_fetching_anagrams_in_batch_from_text_with_params
+    
+	res = @client.post('/words.json', nil, {"words" => ["Dare"] })
+	
+	res = @client.post_text('/anagrams.json', 'limit=1', "read\n\ndear\n")
+
+    lines = res.body.lines.map { |line| JSON.parse(line) }
+
+    assert_equal(%w(read dear), lines.map { |line| line['word'] })
+    assert_equal([1, 1], lines.map { |line| line['anagrams'].size })
+	
+	res = @client.post_text('/anagrams.json', 'caseinsensitive=true', "\"read\"\n", 'application/x-ndjson')
+
+    lines = res.body.lines.map { |line| JSON.parse(line) }
+
+    assert_equal(%w(Dare dare dear), lines[0]['anagrams'])
+  end
+  
+  def test_anagram_groups_paged_with_cursor
+    
+	res = @client.post('/words.json', nil, {"words" => ["slate", "stale", "steal", "tab", "bat"] })
+	
+	sets = []
+	cursor = nil
+	pages = 0
+	loop do
+	  res = @client.get('/groups.json', cursor ? "size=2&limit=1&cursor=#{cursor}" : 'size=2&limit=1')
+
+      assert_equal('200', res.code, "Unexpected response code")
+
+      body = JSON.parse(res.body)
+
+      assert(body['anagrams'].size <= 1, "Page larger than the limit")
+	  sets.concat(body['anagrams'])
+	  pages += 1
+	  cursor = body['next_cursor']
+	  break if cursor.nil?
+	end
+
+    assert_equal(3, pages)
+    assert_equal([%w(bat tab), %w(dare dear read), %w(slate stale steal)], sets.map(&:sort).sort)
+  end
+  
+  def test_largest_anagram_sets_paged_with_cursor
+    
+	res = @client.post('/words.json', nil, {"words" => ["tab", "bat", "abt"] })
+	
+	res = @client.get('/most.json', 'limit=1')
+
+    body = JSON.parse(res.body)
+
+    assert_equal(1, body['anagrams'].size)
+    assert_not_nil(body['next_cursor'])
+	
+	res = @client.get('/most.json', "limit=1&cursor=#{body['next_cursor']}")
+
+    body = JSON.parse(res.body)
+
+    assert_equal(1, body['anagrams'].size)
+    assert_nil(body['next_cursor'])
+  end
+  
+  def test_empty_first_page_returns_a_cursor_to_start_from
+    
+	res = @client.post('/words.json', nil, {"words" => ["tab", "bat", "abt"] })
+	
+	res = @client.get('/most.json', 'limit=0')
+
+    body = JSON.parse(res.body)
+
+    assert_equal([], body['anagrams'])
+    assert_not_nil(body['next_cursor'])
+	
+	res = @client.get('/most.json', "limit=1&cursor=#{body['next_cursor']}")
+
+    body = JSON.parse(res.body)
+
+    assert_equal(1, body['anagrams'].size)
+  end
+  
+  def test_listings_report_the_corpus_version
+    
+	res = @client.get('/metadata.json')
+	version = JSON.parse(res.body)['version']
+	
+	res = @client.get('/groups.json', 'size=1')
+	
+    body = JSON.parse(res.body)
+	
+	# nothing has changed since, so the listing comes from the same version
+    assert_equal(version, body['version'])
+	
+	res = @client.post('/words.json', nil, {"words" => ["tab", "bat", "abt"] })
+	res = @client.get('/most.json')
+
+    body = JSON.parse(res.body)
+
+    assert_operator(body['version'], :>, version)
+    assert_equal(body['version'], JSON.parse(@client.get('/metadata.json').body)['version'])
+  end
+  
+  def test_anagram_groups_with_invalid_cursor
+    
+	res = @client.get('/groups.json', 'size=2&cursor=not-a-cursor')
+
+    assert_equal('400', res.code, "Unexpected response code")
+	
+	res = @client.get('/groups.json', 'size=2&cursor=2-ReAd')
+
+    assert_equal('400', res.code, "Unexpected response code")
+  end
+
+  def test_fetching_anagrams_follows_changes
+    # the first lookup caches the set, later lookups must still see every change to it
+    res = @client.get('/anagrams/read.json')
+    assert_equal(['dare', 'dear'], JSON.parse(res.body)['anagrams'])
+
+    res = @client.post('/words.json', nil, {"words" => ["ared"] })
+    assert_equal('201', res.code, "Unexpected response code")
+
+    res = @client.get('/anagrams/read.json', 'limit=2')
+    assert_equal(['ared', 'dare'], JSON.parse(res.body)['anagrams'])
+
+    res = @client.delete('/words/dare.json')
+    assert_equal('204', res.code, "Unexpected response code")
+
+    res = @client.get('/anagrams/read.json')
+    assert_equal('200', res.code, "Unexpected response code")
+    assert_equal(['ared', 'dear'], JSON.parse(res.body)['anagrams'])
+
+    # another word from the same set is served from the same cached set
+    res = @client.get('/anagrams/dear.json')
+    assert_equal(['ared', 'read'], JSON.parse(res.body)['anagrams'])
+
+    res = @client.get('/metrics.json')
+    body = JSON.parse(res.body)
+    assert(body['anagram_response_cache_hits'] > 0)
+    assert(body['anagram_response_cache_invalidations'] > 0)
+  end
   
 end
\ No newline at end of file